@@ -114,6 +114,58 @@ public final class VectorUtil {
     return (a < 1.) ? a : 1.;
   }
 
+  /**
+   * Compute the absolute cosine of the angle for rows stored in a contiguous
+   * row-major double array.
+   *
+   * @param d1 Data array of the first vector
+   * @param o1 Offset of the first vector
+   * @param d2 Data array of the second vector
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @return angle
+   */
+  public static double angleDense(double[] d1, int o1, double[] d2, int o2, int dim) {
+    double cross = 0, l1 = 0, l2 = 0;
+    for(int k = 0; k < dim; k++) {
+      final double r1 = d1[o1 + k];
+      final double r2 = d2[o2 + k];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+
+  /**
+   * Compute the absolute cosine of the angle for rows stored in a contiguous
+   * row-major float array.
+   *
+   * @param d1 Data array of the first vector
+   * @param o1 Offset of the first vector
+   * @param d2 Data array of the second vector
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @return angle
+   */
+  public static double angleDense(float[] d1, int o1, float[] d2, int o2, int dim) {
+    double cross = 0, l1 = 0, l2 = 0;
+    for(int k = 0; k < dim; k++) {
+      final double r1 = d1[o1 + k];
+      final double r2 = d2[o2 + k];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+
   /**
    * Compute the angle for sparse vectors.
    *
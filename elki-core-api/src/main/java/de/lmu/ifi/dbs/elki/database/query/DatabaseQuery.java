@@ -59,4 +59,9 @@ public interface DatabaseQuery {
    * Optimizer hint: no cache instances
    */
   public static final String HINT_NO_CACHE = "no-cache";
+
+  /**
+   * Optimizer hint: bulk queries may use multiple threads
+   */
+  public static final String HINT_PARALLEL = "parallel";
 }
\ No newline at end of file
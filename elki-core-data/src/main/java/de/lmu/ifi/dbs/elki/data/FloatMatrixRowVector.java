@@ -0,0 +1,231 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Light-weight vector view onto one row of a row-major {@code float[]}
+ * matrix, using half the memory of {@link DoubleMatrixRowVector}.
+ *
+ * The view does not copy the data, and is cheap to create. It is used by
+ * relations that store all vectors in a single contiguous array, to avoid the
+ * per-object overhead of {@link FloatVector} and to improve memory locality.
+ *
+ * Note: the underlying array must not be modified while the view is in use.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class FloatMatrixRowVector extends AbstractNumberVector {
+  /**
+   * Static factory instance.
+   */
+  public static final FloatMatrixRowVector.Factory FACTORY = new FloatMatrixRowVector.Factory();
+
+  /**
+   * Serializer using varint encoding.
+   */
+  public static final ByteBufferSerializer<FloatMatrixRowVector> VARIABLE_SERIALIZER = new VariableSerializer();
+
+  /**
+   * Matrix data, in row-major order.
+   */
+  private final float[] data;
+
+  /**
+   * Offset of the first value of this row.
+   */
+  private final int offset;
+
+  /**
+   * Dimensionality (row length).
+   */
+  private final int dim;
+
+  /**
+   * Constructor.
+   *
+   * @param data Matrix data, in row-major order (not copied)
+   * @param offset Offset of the first value
+   * @param dim Dimensionality
+   */
+  public FloatMatrixRowVector(float[] data, int offset, int dim) {
+    assert (offset >= 0 && offset + dim <= data.length) : "Row out of bounds.";
+    this.data = data;
+    this.offset = offset;
+    this.dim = dim;
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    return data[offset + dimension];
+  }
+
+  @Override
+  public float floatValue(int dimension) {
+    return data[offset + dimension];
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    return (long) data[offset + dimension];
+  }
+
+  @Override
+  public double[] toArray() {
+    double[] values = new double[dim];
+    for(int i = 0; i < dim; i++) {
+      values[i] = data[offset + i];
+    }
+    return values;
+  }
+
+  /**
+   * Get the underlying matrix data. Do not modify.
+   *
+   * @return Matrix data
+   */
+  public float[] getData() {
+    return data;
+  }
+
+  /**
+   * Get the offset of this row in the matrix data.
+   *
+   * @return Offset
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder();
+    for(int i = 0; i < dim; i++) {
+      featureLine.append(data[offset + i]);
+      if(i + 1 < dim) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+    }
+    return featureLine.toString();
+  }
+
+  /**
+   * Factory for row vectors. Vectors created by the factory are backed by a
+   * separate array each.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has FloatMatrixRowVector
+   */
+  public static class Factory extends AbstractNumberVector.Factory<FloatMatrixRowVector> {
+    @Override
+    public <A> FloatMatrixRowVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      int dim = adapter.size(array);
+      float[] values = new float[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.get(array, i).floatValue();
+      }
+      return new FloatMatrixRowVector(values, 0, dim);
+    }
+
+    @Override
+    public <A> FloatMatrixRowVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      final int dim = adapter.size(array);
+      float[] values = new float[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.getFloat(array, i);
+      }
+      return new FloatMatrixRowVector(values, 0, dim);
+    }
+
+    @Override
+    public ByteBufferSerializer<FloatMatrixRowVector> getDefaultSerializer() {
+      return VARIABLE_SERIALIZER;
+    }
+
+    @Override
+    public Class<? super FloatMatrixRowVector> getRestrictionClass() {
+      return FloatMatrixRowVector.class;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected FloatMatrixRowVector.Factory makeInstance() {
+        return FACTORY;
+      }
+    }
+  }
+
+  /**
+   * Serialization class for variable dimensionality by using VarInt encoding.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.uses FloatMatrixRowVector - - «serializes»
+   */
+  public static class VariableSerializer implements ByteBufferSerializer<FloatMatrixRowVector> {
+    @Override
+    public FloatMatrixRowVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      final int dimensionality = ByteArrayUtil.readUnsignedVarint(buffer);
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_FLOAT * dimensionality) : "Not enough data remaining in buffer to read " + dimensionality + " floats";
+      final float[] values = new float[dimensionality];
+      for(int i = 0; i < dimensionality; i++) {
+        values[i] = buffer.getFloat();
+      }
+      return new FloatMatrixRowVector(values, 0, dimensionality);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, FloatMatrixRowVector vec) throws IOException {
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_FLOAT * vec.dim) : "Not enough space remaining in buffer to write " + vec.dim + " floats";
+      ByteArrayUtil.writeUnsignedVarint(buffer, vec.dim);
+      for(int i = 0; i < vec.dim; i++) {
+        buffer.putFloat(vec.data[vec.offset + i]);
+      }
+    }
+
+    @Override
+    public int getByteSize(FloatMatrixRowVector vec) {
+      return ByteArrayUtil.getUnsignedVarintSize(vec.dim) + ByteArrayUtil.SIZE_FLOAT * vec.dim;
+    }
+  }
+}
@@ -61,12 +61,10 @@ public class KNNSubList implements KNNList {
     this.k = k;
     // Compute list size
     if(k < inner.getK()) {
-      DoubleDBIDPair dist = inner.get(k);
+      final double kdist = inner.get(k - 1).doubleValue();
+      // Add all values tied:
       int i = k;
-      while(i + 1 < inner.size()) {
-        if(dist.doubleValue() < inner.get(i + 1).doubleValue()) {
-          break;
-        }
+      while(i < inner.size() && inner.get(i).doubleValue() <= kdist) {
         i++;
       }
       size = i;
@@ -95,7 +93,7 @@ public class KNNSubList implements KNNList {
 
   @Override
   public double getKNNDistance() {
-    return inner.get(k).doubleValue();
+    return inner.get(k - 1).doubleValue();
   }
 
   @Override
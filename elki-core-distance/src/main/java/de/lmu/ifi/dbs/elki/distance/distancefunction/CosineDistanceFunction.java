@@ -69,6 +69,36 @@ public class CosineDistanceFunction extends AbstractSpatialDistanceFunction {
     return (d <= 1) ? 1 - d : 0;
   }
 
+  /**
+   * Special version for rows stored in a contiguous row-major double array.
+   *
+   * @param d1 Data array of the first vector
+   * @param o1 Offset of the first vector
+   * @param d2 Data array of the second vector
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @return Cosine distance
+   */
+  public double distance(double[] d1, int o1, double[] d2, int o2, int dim) {
+    double d = VectorUtil.angleDense(d1, o1, d2, o2, dim);
+    return (d <= 1) ? 1 - d : 0;
+  }
+
+  /**
+   * Special version for rows stored in a contiguous row-major float array.
+   *
+   * @param d1 Data array of the first vector
+   * @param o1 Offset of the first vector
+   * @param d2 Data array of the second vector
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @return Cosine distance
+   */
+  public double distance(float[] d1, int o1, float[] d2, int o2, int dim) {
+    double d = VectorUtil.angleDense(d1, o1, d2, o2, dim);
+    return (d <= 1) ? 1 - d : 0;
+  }
+
   @Override
   public double minDist(SpatialComparable mbr1, SpatialComparable mbr2) {
     double d = VectorUtil.minCosAngle(mbr1, mbr2);
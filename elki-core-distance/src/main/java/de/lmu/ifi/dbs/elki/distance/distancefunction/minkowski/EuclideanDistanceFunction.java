@@ -126,6 +126,45 @@ public class EuclideanDistanceFunction extends LPIntegerNormDistanceFunction {
     return FastMath.sqrt(agg);
   }
 
+  /**
+   * Special version for rows stored in a contiguous row-major array.
+   *
+   * @param d1 Data array of the first vector
+   * @param o1 Offset of the first vector
+   * @param d2 Data array of the second vector
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @return Euclidean distance
+   */
+  public double distance(double[] d1, int o1, double[] d2, int o2, int dim) {
+    double agg = 0.;
+    for(int i = 0; i < dim; i++) {
+      final double delta = d1[o1 + i] - d2[o2 + i];
+      agg += delta * delta;
+    }
+    return FastMath.sqrt(agg);
+  }
+
+  /**
+   * Special version for rows stored in a contiguous row-major float array.
+   * Computations are performed in double precision.
+   *
+   * @param d1 Data array of the first vector
+   * @param o1 Offset of the first vector
+   * @param d2 Data array of the second vector
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @return Euclidean distance
+   */
+  public double distance(float[] d1, int o1, float[] d2, int o2, int dim) {
+    double agg = 0.;
+    for(int i = 0; i < dim; i++) {
+      final double delta = (double) d1[o1 + i] - d2[o2 + i];
+      agg += delta * delta;
+    }
+    return FastMath.sqrt(agg);
+  }
+
   @Override
   public double norm(NumberVector v) {
     return FastMath.sqrt(preNorm(v, 0, v.getDimensionality()));
@@ -0,0 +1,344 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.parallel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+
+/**
+ * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
+ * 
+ * By default, a shared static core using all available processors is used.
+ * Jobs that need isolation (e.g., when multiple ELKI jobs run inside the same
+ * JVM) can create their own core with a limited number of threads and a custom
+ * {@link ThreadFactory}, and bind it to the current thread (and threads
+ * created by it) using {@link #setCore}.
+ * 
+ * A core with a single thread runs all tasks directly in the submitting
+ * thread. Binding {@link #SEQUENTIAL} inside a task therefore allows nested
+ * parallel code to run without waiting for workers of the (busy) outer core.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.0
+ */
+public class ParallelCore {
+  /**
+   * The number of CPUs to use.
+   */
+  public static final int ALL_PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Static core
+   */
+  private static final ParallelCore STATIC = new ParallelCore(ALL_PROCESSORS);
+
+  /**
+   * Core that runs all tasks in the calling thread.
+   */
+  public static final ParallelCore SEQUENTIAL = new ParallelCore(1);
+
+  /**
+   * Core bound to the current job, if any.
+   */
+  private static final InheritableThreadLocal<ParallelCore> CURRENT = new InheritableThreadLocal<>();
+
+  /**
+   * Marker for worker threads of any core.
+   */
+  private static final ThreadLocal<Boolean> WORKER = new ThreadLocal<>();
+
+  /**
+   * Executor service.
+   */
+  volatile ThreadPoolExecutor executor;
+
+  /**
+   * Flag set once the core was shut down.
+   */
+  private boolean shutdown;
+
+  /**
+   * Number of connected submitters.
+   */
+  private AtomicInteger connected = new AtomicInteger(0);
+
+  /**
+   * Maximum number of processors to use.
+   */
+  private int processors;
+
+  /**
+   * Factory for worker threads.
+   */
+  private ThreadFactory factory;
+
+  /**
+   * Number of submitted tasks.
+   */
+  private AtomicLong submitted = new AtomicLong(0);
+
+  /**
+   * Peak number of concurrently busy threads.
+   */
+  private AtomicInteger peakActive = new AtomicInteger(0);
+
+  /**
+   * Peak queue depth observed.
+   */
+  private AtomicInteger peakQueue = new AtomicInteger(0);
+
+  /**
+   * Constructor.
+   * 
+   * @param processors Number of threads to use
+   */
+  public ParallelCore(int processors) {
+    this(processors, Executors.defaultThreadFactory());
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param processors Number of threads to use
+   * @param factory Factory for worker threads
+   */
+  public ParallelCore(int processors, ThreadFactory factory) {
+    super();
+    this.processors = processors > 0 ? processors : ALL_PROCESSORS;
+    this.factory = factory;
+  }
+
+  /**
+   * Get the core to use for the current job.
+   * 
+   * This is the core bound via {@link #setCore}, or the static core otherwise.
+   * 
+   * @return Core
+   */
+  public static ParallelCore getCore() {
+    ParallelCore core = CURRENT.get();
+    return core != null ? core : STATIC;
+  }
+
+  /**
+   * Bind a core to the current thread (and threads created by it).
+   * 
+   * @param core Core to use, {@code null} to use the static core again.
+   */
+  public static void setCore(ParallelCore core) {
+    if(core == null || core == STATIC) {
+      CURRENT.remove();
+      return;
+    }
+    CURRENT.set(core);
+  }
+
+  /**
+   * Test whether the current thread is a worker thread of a core.
+   * 
+   * Code running in a worker must not submit tasks and wait for them, as this
+   * can deadlock when all workers are waiting.
+   * 
+   * @return {@code true} when called from a worker thread
+   */
+  public static boolean isWorkerThread() {
+    return WORKER.get() != null;
+  }
+
+  /**
+   * Get desired level of parallelism
+   * 
+   * @return Number of threads to run in parallel
+   */
+  public int getParallelism() {
+    final ThreadPoolExecutor ex = executor;
+    return ex != null ? ex.getMaximumPoolSize() : processors;
+  }
+
+  /**
+   * Submit a task to the executor core.
+   * 
+   * @param task Submitted task
+   * 
+   * @return Future to observe completion
+   */
+  public <T> Future<T> submit(Callable<T> task) {
+    if(processors == 1) {
+      // Run in the calling thread.
+      FutureTask<T> fut = new FutureTask<>(task);
+      fut.run();
+      submitted.incrementAndGet();
+      return fut;
+    }
+    final ThreadPoolExecutor ex = executor;
+    if(ex == null) {
+      throw new IllegalStateException("Tasks can only be submitted to a connected core.");
+    }
+    Future<T> fut = ex.submit(task);
+    submitted.incrementAndGet();
+    updatePeak(peakQueue, ex.getQueue().size());
+    return fut;
+  }
+
+  /**
+   * Connect to the executor.
+   * 
+   * @throws IllegalStateException if the core was shut down
+   */
+  public synchronized void connect() {
+    if(shutdown) {
+      throw new IllegalStateException("The parallel core was shut down.");
+    }
+    ThreadPoolExecutor ex = executor;
+    if(ex == null) {
+      ex = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new WorkerFactory(factory)) {
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+          super.beforeExecute(t, r);
+          updatePeak(peakActive, getActiveCount());
+        }
+      };
+      ex.allowCoreThreadTimeOut(true);
+      executor = ex;
+    }
+    if(connected.incrementAndGet() == 1) {
+      ex.allowCoreThreadTimeOut(false);
+      ex.setCorePoolSize(ex.getMaximumPoolSize());
+    }
+  }
+
+  /**
+   * Disconnect to the executor.
+   * 
+   * If the core was shut down, the last disconnect shuts down the pool.
+   */
+  public synchronized void disconnect() {
+    if(connected.decrementAndGet() > 0) {
+      return;
+    }
+    final ThreadPoolExecutor ex = executor;
+    if(ex == null) {
+      return;
+    }
+    if(shutdown) {
+      ex.shutdown();
+      executor = null;
+      return;
+    }
+    ex.allowCoreThreadTimeOut(true);
+    ex.setCorePoolSize(0);
+  }
+
+  /**
+   * Shut down the thread pool of this core, once all connected jobs have
+   * disconnected. The core cannot be connected again afterwards.
+   * 
+   * The static and the sequential core cannot be shut down.
+   */
+  public synchronized void shutdown() {
+    if(this == STATIC || this == SEQUENTIAL) {
+      return;
+    }
+    shutdown = true;
+    final ThreadPoolExecutor ex = executor;
+    if(ex != null && connected.get() == 0) {
+      ex.shutdown();
+      executor = null;
+    }
+  }
+
+  /**
+   * Thread factory marking the threads as workers.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class WorkerFactory implements ThreadFactory {
+    /**
+     * Factory to create the threads.
+     */
+    private ThreadFactory factory;
+
+    /**
+     * Constructor.
+     * 
+     * @param factory Factory to create the threads
+     */
+    WorkerFactory(ThreadFactory factory) {
+      this.factory = factory;
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      return factory.newThread(new Runnable() {
+        @Override
+        public void run() {
+          WORKER.set(Boolean.TRUE);
+          r.run();
+        }
+      });
+    }
+  }
+
+  /**
+   * Update a peak value.
+   * 
+   * @param peak Peak value
+   * @param val Current value
+   */
+  private static void updatePeak(AtomicInteger peak, int val) {
+    for(int cur = peak.get(); val > cur; cur = peak.get()) {
+      if(peak.compareAndSet(cur, val)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Log the usage statistics of this core.
+   * 
+   * @param log Logger to use
+   */
+  public void logStatistics(Logging log) {
+    final String prefix = ParallelCore.class.getName();
+    log.statistics(new LongStatistic(prefix + ".threads", getParallelism()));
+    log.statistics(new LongStatistic(prefix + ".tasks", submitted.get()));
+    log.statistics(new LongStatistic(prefix + ".peak-busy-threads", peakActive.get()));
+    log.statistics(new LongStatistic(prefix + ".peak-queue-depth", peakQueue.get()));
+    ThreadPoolExecutor ex = executor;
+    if(ex != null) {
+      log.statistics(new LongStatistic(prefix + ".busy-threads", ex.getActiveCount()));
+      log.statistics(new LongStatistic(prefix + ".queue-depth", ex.getQueue().size()));
+    }
+  }
+}
@@ -33,7 +33,7 @@ import de.lmu.ifi.dbs.elki.index.tree.metrical.MetricalIndexTree;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.split.Assignments;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.split.DistanceEntry;
 import de.lmu.ifi.dbs.elki.logging.Logging;
-import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongAdderCounter;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.utilities.pairs.DoubleIntPair;
@@ -488,27 +488,28 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
   }
 
   /**
-   * Class for tracking some statistics.
+   * Class for tracking some statistics. The counters are thread safe, so that
+   * a frozen tree can be queried concurrently.
    * 
    * @author Erich Schubert
    * 
-   * @apiviz.composedOf Counter
+   * @apiviz.composedOf LongAdderCounter
    */
   public class Statistics {
     /**
      * For counting the number of distance computations.
      */
-    protected final Counter distanceCalcs;
+    protected final LongAdderCounter distanceCalcs;
 
     /**
      * For counting the number of knn queries answered.
      */
-    protected final Counter knnQueries;
+    protected final LongAdderCounter knnQueries;
 
     /**
      * For counting the number of range queries answered.
      */
-    protected final Counter rangeQueries;
+    protected final LongAdderCounter rangeQueries;
 
     /**
      * Constructor.
@@ -516,9 +517,9 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
     public Statistics() {
       super();
       Logging log = getLogger();
-      distanceCalcs = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".distancecalcs") : null;
-      knnQueries = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".knnqueries") : null;
-      rangeQueries = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".rangequeries") : null;
+      distanceCalcs = log.isStatistics() ? new LongAdderCounter(this.getClass().getName() + ".distancecalcs") : null;
+      knnQueries = log.isStatistics() ? new LongAdderCounter(this.getClass().getName() + ".knnqueries") : null;
+      rangeQueries = log.isStatistics() ? new LongAdderCounter(this.getClass().getName() + ".rangequeries") : null;
     }
 
     /**
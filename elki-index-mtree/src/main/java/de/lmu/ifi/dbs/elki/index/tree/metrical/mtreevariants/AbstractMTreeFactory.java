@@ -32,6 +32,7 @@ import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.split.MT
 import de.lmu.ifi.dbs.elki.persistent.PageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -109,6 +110,14 @@ public abstract class AbstractMTreeFactory<O, N extends AbstractMTreeNode<O, N,
      */
     public static final OptionID INSERT_STRATEGY_ID = new OptionID("mtree.insert", "Insertion strategy to use for constructing the M-tree.");
 
+    /**
+     * Flag to make the tree read-only after construction.
+     * <p>
+     * Key: {@code -mtree.frozen}
+     * </p>
+     */
+    public static final OptionID FROZEN_ID = new OptionID("mtree.frozen", "Make the tree read-only after construction, to allow concurrent queries.");
+
     /**
      * Tree settings.
      */
@@ -130,6 +139,10 @@ public abstract class AbstractMTreeFactory<O, N extends AbstractMTreeNode<O, N,
       if (config.grab(insertStrategyP)) {
         settings.insertStrategy = insertStrategyP.instantiateClass(config);
       }
+      Flag frozenF = new Flag(FROZEN_ID);
+      if (config.grab(frozenF)) {
+        settings.frozen = frozenF.isTrue();
+      }
     }
 
     abstract protected S makeSettings();
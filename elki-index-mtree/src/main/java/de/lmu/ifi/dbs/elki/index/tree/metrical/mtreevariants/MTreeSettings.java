@@ -49,4 +49,16 @@ public class MTreeSettings<O, N extends AbstractMTreeNode<O, N, E>, E extends MT
    * Insertion strategy.
    */
   protected MTreeInsert<O, N, E> insertStrategy;
+
+  /**
+   * Freeze the tree after construction, for concurrent read-only use.
+   */
+  protected boolean frozen = false;
+
+  /**
+   * @return whether to freeze the tree after construction
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
 }
@@ -152,15 +152,20 @@ public class MTreeIndex<O> extends MTree<O>implements RangeIndex<O>, KNNIndex<O>
   public void initialize() {
     super.initialize();
     insertAll(relation.getDBIDs());
+    if(settings.isFrozen()) {
+      freeze();
+    }
   }
 
   @Override
   public void insert(DBIDRef id) {
+    checkNotFrozen();
     insert(createNewLeafEntry(DBIDUtil.deref(id), relation.get(id), Double.NaN), false);
   }
 
   @Override
   public void insertAll(DBIDs ids) {
+    checkNotFrozen();
     List<MTreeEntry> objs = new ArrayList<>(ids.size());
     for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
       DBID id = DBIDUtil.deref(iter);
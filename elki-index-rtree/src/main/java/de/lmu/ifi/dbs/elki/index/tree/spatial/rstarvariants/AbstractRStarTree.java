@@ -43,7 +43,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialIndexTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.util.NodeArrayAdapter;
 import de.lmu.ifi.dbs.elki.logging.Logging;
-import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongAdderCounter;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
@@ -833,27 +833,28 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
   }
 
   /**
-   * Class for tracking some statistics.
+   * Class for tracking some statistics. The counters are thread safe, so that
+   * a frozen tree can be queried concurrently.
    *
    * @author Erich Schubert
    *
-   * @apiviz.composedOf Counter
+   * @apiviz.composedOf LongAdderCounter
    */
   public class Statistics {
     /**
      * For counting the number of distance computations.
      */
-    protected final Counter distanceCalcs;
+    protected final LongAdderCounter distanceCalcs;
 
     /**
      * For counting the number of knn queries answered.
      */
-    protected final Counter knnQueries;
+    protected final LongAdderCounter knnQueries;
 
     /**
      * For counting the number of range queries answered.
      */
-    protected final Counter rangeQueries;
+    protected final LongAdderCounter rangeQueries;
 
     /**
      * Constructor.
@@ -862,9 +863,9 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       super();
       Logging log = getLogger();
       final String prefix = AbstractRStarTree.this.getClass().getName();
-      distanceCalcs = log.isStatistics() ? log.newCounter(prefix + ".distancecalcs") : null;
-      knnQueries = log.isStatistics() ? log.newCounter(prefix + ".knnqueries") : null;
-      rangeQueries = log.isStatistics() ? log.newCounter(prefix + ".rangequeries") : null;
+      distanceCalcs = log.isStatistics() ? new LongAdderCounter(prefix + ".distancecalcs") : null;
+      knnQueries = log.isStatistics() ? new LongAdderCounter(prefix + ".knnqueries") : null;
+      rangeQueries = log.isStatistics() ? new LongAdderCounter(prefix + ".rangequeries") : null;
     }
 
     /**
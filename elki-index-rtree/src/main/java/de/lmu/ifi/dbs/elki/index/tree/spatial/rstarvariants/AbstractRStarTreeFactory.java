@@ -37,6 +37,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -111,6 +112,11 @@ public abstract class AbstractRStarTreeFactory<O extends NumberVector, N extends
      */
     public static OptionID OVERFLOW_STRATEGY_ID = new OptionID("rtree.overflowtreatment", "The strategy to use for handling overflows.");
 
+    /**
+     * Freeze the tree after construction.
+     */
+    public static final OptionID FROZEN_ID = new OptionID("rtree.frozen", "Make the tree read-only after construction, to allow concurrent queries.");
+
     /**
      * Tree settings
      */
@@ -145,6 +151,10 @@ public abstract class AbstractRStarTreeFactory<O extends NumberVector, N extends
       if(config.grab(overflowP)) {
         settings.setOverflowTreatment(overflowP.instantiateClass(config));
       }
+      Flag frozenF = new Flag(FROZEN_ID);
+      if(config.grab(frozenF)) {
+        settings.frozen = frozenF.isTrue();
+      }
       configBulkLoad(config);
     }
 
@@ -65,6 +65,11 @@ public class RTreeSettings {
    */
   protected double relativeMinFill = 0.4;
 
+  /**
+   * Freeze the tree after construction, for concurrent read-only use.
+   */
+  protected boolean frozen = false;
+
   /**
    * Constructor with default values.
    */
@@ -125,6 +130,23 @@ public class RTreeSettings {
     this.relativeMinFill = relative;
   }
 
+  /**
+   * Set whether to freeze the tree after construction, for concurrent
+   * read-only use.
+   *
+   * @param frozen Freeze flag
+   */
+  public void setFrozen(boolean frozen) {
+    this.frozen = frozen;
+  }
+
+  /**
+   * @return whether to freeze the tree after construction
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
   /**
    * @return the overflowTreatment
    */
@@ -89,6 +89,9 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
   public void initialize() {
     super.initialize();
     insertAll(relation.getDBIDs()); // Will check for actual bulk load!
+    if(settings.isFrozen()) {
+      freeze();
+    }
   }
 
   /**
@@ -98,6 +101,7 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
    */
   @Override
   public void insert(DBIDRef id) {
+    checkNotFrozen();
     insertLeaf(createNewLeafEntry(id));
   }
 
@@ -112,6 +116,7 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
     if(ids.isEmpty() || (ids.size() == 1)) {
       return;
     }
+    checkNotFrozen();
 
     // Make an example leaf
     if(canBulkLoad()) {
@@ -138,6 +143,7 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
    */
   @Override
   public boolean delete(DBIDRef id) {
+    checkNotFrozen();
     // find the leaf node containing o
     O obj = relation.get(id);
     IndexTreePath<SpatialEntry> deletionPath = findPathToObject(getRootPath(), obj, id);
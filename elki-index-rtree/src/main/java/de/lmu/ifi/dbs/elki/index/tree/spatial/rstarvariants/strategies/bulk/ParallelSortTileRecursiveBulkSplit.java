@@ -0,0 +1,125 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of the Sort-Tile-Recursive bulk split.
+ *
+ * After partitioning the data into slabs along the first dimension, the slabs
+ * are independent, and are partitioned concurrently along the remaining
+ * dimensions (using the current {@link ParallelCore}). Small data sets are
+ * processed sequentially. The result is the same as with
+ * {@link SortTileRecursiveBulkSplit}, so the resulting trees (and pages) are
+ * identical; the upper levels of the tree are built from these partitions by
+ * the tree as usual.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Alias({ "pstr", "PSTR" })
+public class ParallelSortTileRecursiveBulkSplit extends SortTileRecursiveBulkSplit {
+  /**
+   * Static instance.
+   */
+  public static final ParallelSortTileRecursiveBulkSplit STATIC = new ParallelSortTileRecursiveBulkSplit();
+
+  /**
+   * Data sets smaller than this are partitioned sequentially.
+   */
+  private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+  @Override
+  public <T extends SpatialComparable> List<List<T>> partition(final List<T> spatialObjects, final int minEntries, final int maxEntries) {
+    final int dims = spatialObjects.get(0).getDimensionality();
+    final int size = spatialObjects.size();
+    // Do not wait for other tasks when already running inside a worker.
+    ParallelCore core = size >= SEQUENTIAL_THRESHOLD && dims > 1 && !ParallelCore.isWorkerThread() ? ParallelCore.getCore() : null;
+    if(core == null || core.getParallelism() <= 1) {
+      return super.partition(spatialObjects, minEntries, maxEntries);
+    }
+    // Split into slabs along the first dimension, as in strPartition.
+    final int p = (int) FastMath.ceil(size / (double) maxEntries);
+    final int s = (int) FastMath.ceil(FastMath.pow(p, 1.0 / dims));
+    final double len = size; // double intentional!
+    SpatialSingleMeanComparator c = new SpatialSingleMeanComparator(0);
+    List<Future<List<List<T>>>> slabs = new ArrayList<>(s);
+    core.connect();
+    try {
+      for(int i = 0; i < s; i++) {
+        final int s2 = (int) ((i * len) / s), e2 = (int) (((i + 1) * len) / s);
+        if(e2 < size) {
+          QuickSelect.quickSelect(spatialObjects, c, s2, size, e2);
+        }
+        // The remaining slabs no longer change the current one:
+        slabs.add(core.submit(new Callable<List<List<T>>>() {
+          @Override
+          public List<List<T>> call() {
+            List<List<T>> ret = new ArrayList<>();
+            strPartition(spatialObjects, s2, e2, 1, dims, maxEntries, new SpatialSingleMeanComparator(1), ret);
+            return ret;
+          }
+        }));
+      }
+      List<List<T>> ret = new ArrayList<>(p);
+      for(Future<List<List<T>>> slab : slabs) {
+        ret.addAll(slab.get());
+      }
+      return ret;
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Parallel bulk split failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    @Override
+    protected ParallelSortTileRecursiveBulkSplit makeInstance() {
+      return STATIC;
+    }
+  }
+}
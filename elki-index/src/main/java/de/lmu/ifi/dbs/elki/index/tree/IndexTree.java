@@ -20,6 +20,9 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
@@ -78,6 +81,12 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    */
   private E rootEntry;
 
+  /**
+   * Snapshot of all nodes (indexed by page id) when the tree is frozen, or
+   * {@code null}.
+   */
+  private Object[] frozen;
+
   /**
    * Constructor.
    *
@@ -131,7 +140,7 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    * @return the root node of this index
    */
   public N getRoot() {
-    return file.readPage(getPageID(rootEntry));
+    return getNode(getPageID(rootEntry));
   }
 
   /**
@@ -163,12 +172,10 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    * @param nodeID the page id of the node to be returned
    * @return the node with the specified id
    */
+  @SuppressWarnings("unchecked")
   public N getNode(int nodeID) {
-    if (nodeID == getPageID(rootEntry)) {
-      return getRoot();
-    } else {
-      return file.readPage(nodeID);
-    }
+    final Object[] frozen = this.frozen;
+    return frozen != null ? (N) frozen[nodeID] : file.readPage(nodeID);
   }
 
   /**
@@ -187,6 +194,7 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    * @param node Node to write
    */
   protected void writeNode(N node) {
+    checkNotFrozen();
     file.writePage(node);
   }
 
@@ -196,9 +204,67 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    * @param node Node to delete
    */
   protected void deleteNode(N node) {
+    checkNotFrozen();
     file.deletePage(node.getPageID());
   }
 
+  /**
+   * Freeze the tree: switch to a read-only mode, in which the tree can be
+   * queried from multiple threads concurrently.
+   *
+   * All nodes are read once from the page file, and subsequent accesses no
+   * longer go through the page file (which usually is not thread safe, and
+   * which would modify cache and access statistics on each read). The tree
+   * must not be modified afterwards.
+   */
+  public void freeze() {
+    if (frozen != null) {
+      return;
+    }
+    // Collect all nodes reachable from the root.
+    List<N> nodes = new ArrayList<>();
+    int maxid = -1;
+    nodes.add(file.readPage(getRootID()));
+    for (int i = 0; i < nodes.size(); i++) {
+      N node = nodes.get(i);
+      maxid = Math.max(maxid, node.getPageID());
+      if (!node.isLeaf()) {
+        for (int j = 0; j < node.getNumEntries(); j++) {
+          nodes.add(file.readPage(getPageID(node.getEntry(j))));
+        }
+      }
+    }
+    Object[] snapshot = new Object[maxid + 1];
+    for (N node : nodes) {
+      snapshot[node.getPageID()] = node;
+    }
+    this.frozen = snapshot;
+    if (getLogger().isStatistics()) {
+      getLogger().statistics(new LongStatistic(this.getClass().getName() + ".frozen.nodes", nodes.size()));
+    }
+  }
+
+  /**
+   * Test whether the tree is frozen, i.e. read-only and safe for concurrent
+   * queries.
+   *
+   * @return {@code true} if the tree is frozen.
+   */
+  public boolean isFrozen() {
+    return frozen != null;
+  }
+
+  /**
+   * Ensure the tree is not frozen before modifying it.
+   *
+   * @throws UnsupportedOperationException when the tree is frozen
+   */
+  protected void checkNotFrozen() {
+    if (frozen != null) {
+      throw new UnsupportedOperationException("The index tree is frozen (read-only).");
+    }
+  }
+
   /**
    * Creates a header for this index structure which is an instance of
    * {@link TreeIndexHeader}. Subclasses may need to overwrite this method if
@@ -354,6 +354,21 @@ public class OnDiskArray implements AutoCloseable {
     }
   }
 
+  /**
+   * Get a read-only view of the complete data area, for direct access without
+   * copying. Record {@code i} starts at byte position {@code i * recordsize}.
+   * 
+   * The view has its own position and limit, so absolute reads are safe to use
+   * concurrently. It becomes invalid when the file is resized or closed.
+   * 
+   * @return Read-only buffer
+   */
+  public synchronized ByteBuffer getReadOnlyView() {
+    ByteBuffer view = map.asReadOnlyBuffer();
+    view.clear();
+    return view;
+  }
+
   /**
    * Return the size of the extra header. Accessor.
    * 
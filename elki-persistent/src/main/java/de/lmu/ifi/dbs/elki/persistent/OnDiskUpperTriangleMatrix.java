@@ -151,6 +151,18 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
     return array.getRecordBuffer(computeOffset(x, y));
   }
   
+  /**
+   * Get a read-only view of the matrix data, for direct access without copying.
+   * 
+   * Record (x, y) with {@code y <= x} is stored at record index
+   * {@code x * (x + 1) / 2 + y}.
+   * 
+   * @return Read-only buffer
+   */
+  public ByteBuffer getReadOnlyView() {
+    return array.getReadOnlyView();
+  }
+
   /**
    * Close the matrix file.
    * 
@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.benchmark;
 
+import java.util.List;
 import java.util.regex.Pattern;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
@@ -28,6 +29,7 @@ import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.DatabaseUtil;
 import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -142,11 +144,12 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
     }
     // Exact query:
     KNNQuery<O> truekNNQuery;
+    // The reference queries are answered in bulk, using multiple threads.
     if(forcelinear) {
-      truekNNQuery = QueryUtil.getLinearScanKNNQuery(distQuery);
+      truekNNQuery = QueryUtil.getLinearScanKNNQuery(distQuery, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_PARALLEL);
     }
     else {
-      truekNNQuery = database.getKNNQuery(distQuery, k, DatabaseQuery.HINT_EXACT);
+      truekNNQuery = database.getKNNQuery(distQuery, k, DatabaseQuery.HINT_EXACT, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_PARALLEL);
     }
     if(knnQuery.getClass().equals(truekNNQuery.getClass())) {
       LOG.warning("Query classes are the same. This experiment may be invalid!");
@@ -158,37 +161,43 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
       Relation<String> lrel = (pattern != null) ? DatabaseUtil.guessLabelRepresentation(database) : null;
 
       final DBIDs sample = DBIDUtil.randomSample(relation.getDBIDs(), sampling, random);
-      FiniteProgress prog = LOG.isVeryVerbose() ? new FiniteProgress("kNN queries", sample.size(), LOG) : null;
+      ArrayModifiableDBIDs matched = DBIDUtil.newArray(sample.size());
+      for(DBIDIter iditer = sample.iter(); iditer.valid(); iditer.advance()) {
+        if(pattern == null || pattern.matcher(lrel.get(iditer)).find()) {
+          matched.add(iditer);
+        }
+      }
+      // Query reference:
+      List<? extends KNNList> trueknnlists = truekNNQuery.getKNNForBulkDBIDs(matched, k);
+      FiniteProgress prog = LOG.isVeryVerbose() ? new FiniteProgress("kNN queries", matched.size(), LOG) : null;
       MeanVariance mv = new MeanVariance(), mvrec = new MeanVariance();
       MeanVariance mvdist = new MeanVariance(), mvdaerr = new MeanVariance(), mvdrerr = new MeanVariance();
       int misses = 0;
-      for(DBIDIter iditer = sample.iter(); iditer.valid(); iditer.advance()) {
-        if(pattern == null || pattern.matcher(lrel.get(iditer)).find()) {
-          // Query index:
-          KNNList knns = knnQuery.getKNNForDBID(iditer, k);
-          // Query reference:
-          KNNList trueknns = truekNNQuery.getKNNForDBID(iditer, k);
-
-          // Put adjusted knn size:
-          mv.put(knns.size() * k / (double) trueknns.size());
-
-          // Put recall:
-          mvrec.put(DBIDUtil.intersectionSize(knns, trueknns) / (double) trueknns.size());
-
-          if(knns.size() >= k) {
-            double kdist = knns.getKNNDistance();
-            final double tdist = trueknns.getKNNDistance();
-            if(tdist > 0.0) {
-              mvdist.put(kdist);
-              mvdaerr.put(kdist - tdist);
-              mvdrerr.put(kdist / tdist);
-            }
-          }
-          else {
-            // Less than k objects.
-            misses++;
+      int i = 0;
+      for(DBIDIter iditer = matched.iter(); iditer.valid(); iditer.advance(), i++) {
+        // Query index:
+        KNNList knns = knnQuery.getKNNForDBID(iditer, k);
+        KNNList trueknns = trueknnlists.get(i);
+
+        // Put adjusted knn size:
+        mv.put(knns.size() * k / (double) trueknns.size());
+
+        // Put recall:
+        mvrec.put(DBIDUtil.intersectionSize(knns, trueknns) / (double) trueknns.size());
+
+        if(knns.size() >= k) {
+          double kdist = knns.getKNNDistance();
+          final double tdist = trueknns.getKNNDistance();
+          if(tdist > 0.0) {
+            mvdist.put(kdist);
+            mvdaerr.put(kdist - tdist);
+            mvdrerr.put(kdist / tdist);
           }
         }
+        else {
+          // Less than k objects.
+          misses++;
+        }
         LOG.incrementProcessed(prog);
       }
       LOG.ensureCompleted(prog);
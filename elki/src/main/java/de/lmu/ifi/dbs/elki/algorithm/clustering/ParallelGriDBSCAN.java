@@ -0,0 +1,435 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.ProxyView;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.UnionFind;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.UnionFindUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Parallel version of {@link GriDBSCAN}.
+ *
+ * The overlapping grid cells are clustered concurrently, each with DBSCAN on
+ * its own partition of the data. The partial results are merged in a fixed
+ * cell order using a union-find structure over all objects: clusters are
+ * joined whenever they share a core point, or a core point is a border point
+ * of another partial cluster. The result therefore does not depend on the
+ * number of threads.
+ *
+ * Reference:
+ * <p>
+ * S. Mahran and K. Mahar: <br />
+ * Using grid for accelerating density-based clustering.<br />
+ * In 8th IEEE Int. Conf. on Computer and Information Technology, 2008.
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf Instance
+ * @apiviz.uses ParallelCore
+ * @apiviz.uses UnionFind
+ *
+ * @param <V> the type of vector the algorithm is applied to
+ */
+public class ParallelGriDBSCAN<V extends NumberVector> extends GriDBSCAN<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelGriDBSCAN.class);
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   * @param gridwidth Grid width
+   */
+  public ParallelGriDBSCAN(DistanceFunction<? super V> distanceFunction, double epsilon, int minpts, double gridwidth) {
+    super(distanceFunction, epsilon, minpts, gridwidth);
+  }
+
+  /**
+   * Performs the DBSCAN algorithm on the given database.
+   */
+  @Override
+  public Clustering<Model> run(Relation<V> relation) {
+    final DBIDs ids = relation.getDBIDs();
+
+    // Degenerate result:
+    if(ids.size() < minpts) {
+      Clustering<Model> result = new Clustering<>("DBSCAN Clustering", "dbscan-clustering");
+      result.addToplevelCluster(new Cluster<Model>(ids, true, ClusterModel.CLUSTER));
+      return result;
+    }
+
+    double gridwidth = this.gridwidth; // local copy.
+    if(gridwidth < 2. * epsilon) {
+      LOG.warning("Invalid grid width (less than 2*epsilon, recommended 10*epsilon). Increasing grid width automatically.");
+      gridwidth = 2. * epsilon;
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      return new Instance<V>(getDistanceFunction(), epsilon, minpts, gridwidth, core).run(relation);
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Instance, for a single run.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  protected static class Instance<V extends NumberVector> extends GriDBSCAN.Instance<V> {
+    /**
+     * Object is a border point (state other than {@link #NOISE}).
+     */
+    private static final int BORDER = NOISE + 1;
+
+    /**
+     * Object is a core point.
+     */
+    private static final int CORE = NOISE + 2;
+
+    /**
+     * Parallel core.
+     */
+    private ParallelCore core;
+
+    /**
+     * Union-find of the core points.
+     */
+    private UnionFind uf;
+
+    /**
+     * Object state: noise, border or core point.
+     */
+    private WritableIntegerDataStore state;
+
+    /**
+     * Border points, and the cluster representatives they were assigned to.
+     */
+    private ArrayModifiableDBIDs borderIds, borderReps;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param epsilon Epsilon
+     * @param minpts MinPts
+     * @param gridwidth Grid width
+     * @param core Parallel core
+     */
+    public Instance(DistanceFunction<? super V> distanceFunction, double epsilon, int minpts, double gridwidth, ParallelCore core) {
+      super(distanceFunction, epsilon, minpts, gridwidth);
+      this.core = core;
+    }
+
+    @Override
+    public Clustering<Model> run(Relation<V> relation) {
+      final DBIDs ids = relation.getDBIDs();
+
+      // Build the data grid.
+      int mincells = initializeGrid(relation);
+      List<ModifiableDBIDs> todo = new ArrayList<>(mincells);
+      for(TLongObjectIterator<ModifiableDBIDs> it = grid.iterator(); it.hasNext();) {
+        it.advance();
+        if(it.value().size() >= minpts) {
+          todo.add(it.value());
+        }
+      }
+      grid = null; // Release memory.
+
+      uf = UnionFindUtil.make(DBIDUtil.makeUnmodifiable(ids));
+      state = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP, NOISE);
+      borderIds = DBIDUtil.newArray();
+      borderReps = DBIDUtil.newArray();
+
+      // Run DBSCAN on each cell that has enough objects.
+      FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Processing grid cells", mincells, LOG) : null;
+      // Bound the number of pending cells, to bound memory usage.
+      final int window = Math.max(2, core.getParallelism() << 1), ncells = todo.size();
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      Future<CellResult>[] pending = new Future[window];
+      int submitted = 0;
+      try {
+        for(; submitted < ncells && submitted < window; submitted++) {
+          pending[submitted % window] = core.submit(new CellTask(relation, todo.get(submitted)));
+        }
+        for(int c = 0; c < ncells; c++) {
+          CellResult res = pending[c % window].get();
+          pending[c % window] = null;
+          todo.set(c, null);
+          if(submitted < ncells) {
+            pending[submitted % window] = core.submit(new CellTask(relation, todo.get(submitted)));
+            submitted++;
+          }
+          // Merge in cell order, for reproducible results.
+          mergeCell(res);
+          LOG.incrementProcessed(cprog);
+        }
+      }
+      catch(ExecutionException e) {
+        throw new AbortException("Parallel GriDBSCAN failed.", e);
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("Parallel GriDBSCAN interrupted.", e);
+      }
+      LOG.ensureCompleted(cprog);
+
+      // Connect core points to the clusters they were border points of, and
+      // assign each remaining border point to its first cluster.
+      WritableDBIDDataStore borderOf = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_TEMP);
+      for(DBIDArrayIter bi = borderIds.iter(), br = borderReps.iter(); bi.valid(); bi.advance(), br.advance()) {
+        final int s = state.intValue(bi);
+        if(s == CORE) {
+          uf.union(bi, br);
+        }
+        else if(s == NOISE) {
+          state.putInt(bi, BORDER);
+          borderOf.put(bi, br);
+        }
+      }
+      borderIds = borderReps = null;
+
+      return buildResult(ids, borderOf);
+    }
+
+    /**
+     * Merge the result of a single cell.
+     *
+     * @param res Cell result
+     */
+    private void mergeCell(CellResult res) {
+      DBIDVar rep = DBIDUtil.newVar();
+      for(DBIDIter id = res.cellids.iter(); id.valid(); id.advance()) {
+        final int c = res.assignment.intValue(id);
+        if(c > NOISE) { // Core point
+          res.reps.assignVar(c - NOISE - 1, rep);
+          uf.union(id, rep);
+          state.putInt(id, CORE);
+        }
+        else if(c < 0) { // Border point
+          borderIds.add(id);
+          borderReps.add(res.reps.assignVar(-c - NOISE - 1, rep));
+        }
+      }
+      res.assignment.destroy();
+    }
+
+    /**
+     * Build the final clustering.
+     *
+     * @param ids Object ids
+     * @param borderOf Cluster representatives of border points
+     * @return Clustering
+     */
+    private Clustering<Model> buildResult(DBIDs ids, WritableDBIDDataStore borderOf) {
+      FiniteProgress pprog = LOG.isVerbose() ? new FiniteProgress("Building final result", ids.size(), LOG) : null;
+      TIntObjectHashMap<ModifiableDBIDs> map = new TIntObjectHashMap<>();
+      List<ModifiableDBIDs> clusters = new ArrayList<>();
+      ModifiableDBIDs noise = DBIDUtil.newArray();
+      DBIDVar rep = DBIDUtil.newVar();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        final int s = state.intValue(it);
+        if(s == NOISE) {
+          noise.add(it);
+        }
+        else {
+          final int root = uf.find(s == CORE ? it : borderOf.assignVar(it, rep));
+          ModifiableDBIDs clu = map.get(root);
+          if(clu == null) {
+            map.put(root, clu = DBIDUtil.newArray());
+            clusters.add(clu);
+          }
+          clu.add(it);
+        }
+        LOG.incrementProcessed(pprog);
+      }
+      LOG.ensureCompleted(pprog);
+      state.destroy();
+      borderOf.destroy();
+
+      Clustering<Model> result = new Clustering<>("DBSCAN Clustering", "dbscan-clustering");
+      for(ModifiableDBIDs clu : clusters) {
+        result.addToplevelCluster(new Cluster<Model>(clu, ClusterModel.CLUSTER));
+      }
+      if(noise.size() > 0) {
+        result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+      }
+      return result;
+    }
+
+    /**
+     * Result of clustering a single cell.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private static class CellResult {
+      /**
+       * Objects in the cell.
+       */
+      DBIDs cellids;
+
+      /**
+       * Local cluster assignment, as in {@link GriDBSCAN}.
+       */
+      WritableIntegerDataStore assignment;
+
+      /**
+       * One core point of each local cluster.
+       */
+      ArrayModifiableDBIDs reps;
+
+      /**
+       * Constructor.
+       *
+       * @param cellids Objects in the cell
+       * @param assignment Local cluster assignment
+       * @param reps Cluster representatives
+       */
+      CellResult(DBIDs cellids, WritableIntegerDataStore assignment, ArrayModifiableDBIDs reps) {
+        this.cellids = cellids;
+        this.assignment = assignment;
+        this.reps = reps;
+      }
+    }
+
+    /**
+     * Run DBSCAN on a single cell.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class CellTask implements Callable<CellResult> {
+      /**
+       * Data relation.
+       */
+      private Relation<V> relation;
+
+      /**
+       * Objects in the cell.
+       */
+      private ModifiableDBIDs cellids;
+
+      /**
+       * Constructor.
+       *
+       * @param relation Data relation
+       * @param cellids Objects in the cell
+       */
+      CellTask(Relation<V> relation, ModifiableDBIDs cellids) {
+        this.relation = relation;
+        this.cellids = cellids;
+      }
+
+      @Override
+      public CellResult call() {
+        WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(cellids, DataStoreFactory.HINT_TEMP, UNPROCESSED);
+        ArrayModifiableDBIDs reps = DBIDUtil.newArray();
+        final ArrayModifiableDBIDs activeSet = DBIDUtil.newArray();
+        ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList(minpts << 1);
+        ProxyView<V> rel = new ProxyView<>(cellids, relation);
+        RangeQuery<V> rq = rel.getRangeQuery(distanceFunction, epsilon);
+        int clusterid = NOISE + 1;
+        for(DBIDIter id = cellids.iter(); id.valid(); id.advance()) {
+          // Skip already processed ids.
+          if(assignment.intValue(id) != UNPROCESSED) {
+            continue;
+          }
+          neighbors.clear();
+          rq.getRangeForDBID(id, epsilon, neighbors);
+          if(neighbors.size() >= minpts) {
+            expandCluster(id, clusterid, assignment, neighbors, activeSet, rq, null);
+            reps.add(id);
+            ++clusterid;
+          }
+          else {
+            assignment.putInt(id, NOISE);
+          }
+        }
+        return new CellResult(cellids, assignment, reps);
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Vector type to use
+   */
+  public static class Parameterizer<O extends NumberVector> extends GriDBSCAN.Parameterizer<O> {
+    @Override
+    protected ParallelGriDBSCAN<O> makeInstance() {
+      return new ParallelGriDBSCAN<>(distanceFunction, epsilon, minpts, gridwidth);
+    }
+  }
+}
@@ -0,0 +1,561 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.affinitypropagation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.MutableProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Sparse affinity propagation, restricted to the k nearest neighbors.
+ *
+ * Instead of the dense similarity, responsibility and availability matrices
+ * of {@link AffinityPropagationClusteringAlgorithm}, messages are only passed
+ * along the edges of the kNN graph (plus the self-similarity), which are
+ * stored in compressed sparse row arrays. Each iteration thus takes O(n k)
+ * time and memory. The kNN graph is obtained from the {@link KNNQuery} of the
+ * relation, so an index such as the NN-descent preprocessor can be used to
+ * avoid the quadratic cost of building it.
+ *
+ * The similarity of two objects is their negative distance, the
+ * self-similarity (preference) is a quantile of the kNN similarities. Because
+ * these are biased towards large similarities, the minimum is used by default.
+ * As every object can only choose an exemplar from its neighbors, k needs to be
+ * chosen large enough for the expected cluster sizes. The message updates are
+ * parallelized over rows (respectively columns), each row is processed in a
+ * fixed order, so the result does not depend on the number of threads.
+ *
+ * Reference:
+ * <p>
+ * Clustering by Passing Messages Between Data Points<br />
+ * B. J. Frey and D. Dueck<br />
+ * Science Vol 315
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses KNNQuery
+ * @apiviz.uses ParallelCore
+ *
+ * @param <O> object type
+ */
+@Reference(title = "Clustering by Passing Messages Between Data Points", authors = "B. J. Frey and D. Dueck", booktitle = "Science Vol 315", url = "http://dx.doi.org/10.1126/science.1136800")
+public class SparseAffinityPropagation<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<MedoidModel>> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(SparseAffinityPropagation.class);
+
+  /**
+   * Minimum number of rows per parallel task.
+   */
+  private static final int BLOCKSIZE = 256;
+
+  /**
+   * Number of neighbors.
+   */
+  int k;
+
+  /**
+   * Quantile for the preference.
+   */
+  double quantile;
+
+  /**
+   * Damping factor lambda.
+   */
+  double lambda = 0.5;
+
+  /**
+   * Terminate after 10 iterations with no changes.
+   */
+  int convergence = 10;
+
+  /**
+   * Maximum number of iterations.
+   */
+  int maxiter = 1000;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param k Number of neighbors
+   * @param quantile Quantile of the similarities used as preference
+   * @param lambda Damping factor
+   * @param convergence Termination threshold (Number of stable iterations)
+   * @param maxiter Maximum number of iterations
+   */
+  public SparseAffinityPropagation(DistanceFunction<? super O> distanceFunction, int k, double quantile, double lambda, int convergence, int maxiter) {
+    super(distanceFunction);
+    this.k = k;
+    this.quantile = quantile;
+    this.lambda = lambda;
+    this.convergence = convergence;
+    this.maxiter = maxiter;
+  }
+
+  /**
+   * Perform affinity propagation clustering.
+   *
+   * @param relation Relation
+   * @return Clustering result
+   */
+  public Clustering<MedoidModel> run(Relation<O> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final int k = Math.min(this.k, size - 1);
+    final KNNQuery<O> knnq = QueryUtil.getKNNQuery(relation, getDistanceFunction(), k + 1);
+
+    int[] assignment = new int[size];
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      // Sparse similarity graph, in compressed sparse row format.
+      final int[][] rows = new int[size][];
+      final double[][] dists = new double[size][];
+      knnGraph(core, ids, knnq, k, rows, dists);
+      final int[] rowptr = new int[size + 1];
+      for(int i = 0; i < size; i++) {
+        rowptr[i + 1] = rowptr[i] + rows[i].length;
+      }
+      final int nnz = rowptr[size];
+      final int[] col = new int[nnz];
+      final double[] s = new double[nnz];
+      double[] flat = new double[nnz - size];
+      for(int i = 0, j = 0; i < size; i++) {
+        final int[] row = rows[i];
+        final double[] dist = dists[i];
+        for(int p = 0, e = rowptr[i]; p < row.length; p++, e++) {
+          col[e] = row[p];
+          s[e] = -dist[p];
+          if(p > 0) {
+            flat[j++] = s[e];
+          }
+        }
+        rows[i] = null;
+        dists[i] = null;
+      }
+      // On the diagonal, we place the quantile of the similarities.
+      final double preference = flat.length > 0 ? QuickSelect.quantile(flat, quantile) : 0.;
+      for(int i = 0; i < size; i++) {
+        s[rowptr[i]] = preference;
+      }
+      // Column-wise access: edge numbers, sorted by column.
+      final int[] colptr = new int[size + 1];
+      final int[] edges = transpose(rowptr, col, colptr);
+      final double[] r = new double[nnz], a = new double[nnz];
+
+      IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Affinity Propagation Iteration", LOG) : null;
+      MutableProgress aprog = LOG.isVerbose() ? new MutableProgress("Stable assignments", size + 1, LOG) : null;
+
+      final double lambda = this.lambda, omlambda = 1. - lambda;
+      Step updateR = new Step() {
+        @Override
+        public int process(int start, int end) {
+          for(int i = start; i < end; i++) {
+            final int rstart = rowptr[i], rend = rowptr[i + 1];
+            // Find the two largest values.
+            double max1 = Double.NEGATIVE_INFINITY, max2 = Double.NEGATIVE_INFINITY;
+            int maxe = -1;
+            for(int e = rstart; e < rend; e++) {
+              double val = a[e] + s[e];
+              if(val > max1) {
+                max2 = max1;
+                max1 = val;
+                maxe = e;
+              }
+              else if(val > max2) {
+                max2 = val;
+              }
+            }
+            // With the maximum value known, update r:
+            for(int e = rstart; e < rend; e++) {
+              double val = s[e] - ((e != maxe) ? max1 : max2);
+              r[e] = r[e] * lambda + val * omlambda;
+            }
+          }
+          return 0;
+        }
+      };
+      Step updateA = new Step() {
+        @Override
+        public int process(int start, int end) {
+          for(int c = start; c < end; c++) {
+            final int cstart = colptr[c], cend = colptr[c + 1], self = rowptr[c];
+            // Compute sum of max(0, r_ik) for all i.
+            // For r_kk, don't apply the max.
+            double colposum = 0.;
+            for(int j = cstart; j < cend; j++) {
+              final int e = edges[j];
+              if(e == self || r[e] > 0.) {
+                colposum += r[e];
+              }
+            }
+            for(int j = cstart; j < cend; j++) {
+              final int e = edges[j];
+              double val = colposum;
+              // Adjust column sum by the one extra term.
+              if(e == self || r[e] > 0.) {
+                val -= r[e];
+              }
+              if(e != self && val > 0.) { // min
+                val = 0.;
+              }
+              a[e] = a[e] * lambda + val * omlambda;
+            }
+          }
+          return 0;
+        }
+      };
+      final int[] assign = assignment;
+      Step updateAssignment = new Step() {
+        @Override
+        public int process(int start, int end) {
+          int changed = 0;
+          for(int i = start; i < end; i++) {
+            // The first entry of each row is the self-similarity, which wins
+            // ties as in the dense version.
+            int maxe = rowptr[i];
+            double max = a[maxe] + r[maxe];
+            for(int e = maxe + 1, rend = rowptr[i + 1]; e < rend; e++) {
+              double v = a[e] + r[e];
+              if(v > max) {
+                max = v;
+                maxe = e;
+              }
+            }
+            if(assign[i] != col[maxe]) {
+              changed += 1;
+              assign[i] = col[maxe];
+            }
+          }
+          return changed;
+        }
+      };
+
+      int inactive = 0;
+      for(int iteration = 0; iteration < maxiter && inactive < convergence; iteration++) {
+        parallel(core, size, updateR);
+        parallel(core, size, updateA);
+        int changed = parallel(core, size, updateAssignment);
+        inactive = (changed > 0) ? 0 : (inactive + 1);
+        LOG.incrementProcessed(prog);
+        if(aprog != null) {
+          aprog.setProcessed(size - changed, LOG);
+        }
+      }
+      if(aprog != null) {
+        aprog.setProcessed(aprog.getTotal(), LOG);
+      }
+      LOG.setCompleted(prog);
+    }
+    finally {
+      core.disconnect();
+    }
+
+    // Cluster map, by lead object
+    TIntObjectHashMap<ModifiableDBIDs> map = new TIntObjectHashMap<>();
+    DBIDArrayIter i1 = ids.iter();
+    for(int i = 0; i1.valid(); i1.advance(), i++) {
+      int c = assignment[i];
+      // Add to cluster members:
+      ModifiableDBIDs cids = map.get(c);
+      if(cids == null) {
+        cids = DBIDUtil.newArray();
+        map.put(c, cids);
+      }
+      cids.add(i1);
+    }
+
+    Clustering<MedoidModel> clustering = new Clustering<>("Affinity Propagation Clustering", "ap-clustering");
+    ModifiableDBIDs noise = DBIDUtil.newArray();
+    for(TIntObjectIterator<ModifiableDBIDs> iter = map.iterator(); iter.hasNext();) {
+      iter.advance(); // Trove iterator; advance first!
+      i1.seek(iter.key());
+      if(iter.value().size() > 1) {
+        MedoidModel mod = new MedoidModel(DBIDUtil.deref(i1));
+        clustering.addToplevelCluster(new Cluster<>(iter.value(), mod));
+      }
+      else {
+        noise.add(i1);
+      }
+    }
+    if(noise.size() > 0) {
+      MedoidModel mod = new MedoidModel(DBIDUtil.deref(noise.iter()));
+      clustering.addToplevelCluster(new Cluster<>(noise, true, mod));
+    }
+    return clustering;
+  }
+
+  /**
+   * Compute the kNN graph. Each row begins with the object itself, followed
+   * by its (up to k) nearest neighbors.
+   *
+   * @param core Parallel core
+   * @param ids Object ids
+   * @param knnq kNN query
+   * @param k Number of neighbors
+   * @param rows Output neighbor indexes
+   * @param dists Output neighbor distances
+   */
+  private static <O> void knnGraph(ParallelCore core, final ArrayDBIDs ids, final KNNQuery<O> knnq, final int k, final int[][] rows, final double[][] dists) {
+    final WritableIntegerDataStore index = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      index.putInt(it, it.getOffset());
+    }
+    parallel(core, ids.size(), new Step() {
+      @Override
+      public int process(int start, int end) {
+        DBIDArrayIter it = ids.iter();
+        int[] ibuf = new int[k + 1];
+        double[] dbuf = new double[k + 1];
+        for(int i = start; i < end; i++) {
+          it.seek(i);
+          ibuf[0] = i;
+          int p = 1;
+          KNNList list = knnq.getKNNForDBID(it, k + 1);
+          for(DoubleDBIDListIter n = list.iter(); n.valid() && p <= k; n.advance()) {
+            if(!DBIDUtil.equal(n, it)) {
+              ibuf[p] = index.intValue(n);
+              dbuf[p++] = n.doubleValue();
+            }
+          }
+          rows[i] = Arrays.copyOf(ibuf, p);
+          dists[i] = Arrays.copyOf(dbuf, p);
+        }
+        return 0;
+      }
+    });
+    index.destroy();
+  }
+
+  /**
+   * Build the column-wise access structure.
+   *
+   * @param rowptr Row pointers
+   * @param col Column indexes
+   * @param colptr Output column pointers
+   * @return Edge numbers, ordered by column, then row.
+   */
+  private static int[] transpose(int[] rowptr, int[] col, int[] colptr) {
+    final int size = colptr.length - 1;
+    for(int c : col) {
+      colptr[c + 1]++;
+    }
+    for(int c = 0; c < size; c++) {
+      colptr[c + 1] += colptr[c];
+    }
+    int[] pos = Arrays.copyOf(colptr, size);
+    int[] edges = new int[col.length];
+    for(int e = 0; e < col.length; e++) {
+      edges[pos[col[e]]++] = e;
+    }
+    return edges;
+  }
+
+  /**
+   * Process all rows (or columns) in parallel blocks.
+   *
+   * @param core Parallel core
+   * @param size Number of rows
+   * @param step Step to execute
+   * @return Sum of the block results
+   */
+  private static int parallel(ParallelCore core, int size, final Step step) {
+    final int rows = Math.max(BLOCKSIZE, (size + (core.getParallelism() << 2) - 1) / (core.getParallelism() << 2));
+    if(rows >= size) {
+      return step.process(0, size);
+    }
+    List<Future<Integer>> futures = new ArrayList<>();
+    for(int start = rows; start < size; start += rows) {
+      final int s = start, e = Math.min(size, start + rows);
+      futures.add(core.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          return step.process(s, e);
+        }
+      }));
+    }
+    // Process the first block in this thread.
+    int sum = step.process(0, rows);
+    try {
+      for(Future<Integer> f : futures) {
+        sum += f.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel affinity propagation failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parallel affinity propagation interrupted.", e);
+    }
+    return sum;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * A step of the algorithm, processing a block of rows or columns.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private interface Step {
+    /**
+     * Process a block.
+     *
+     * @param start First row
+     * @param end End row (exclusive)
+     * @return Number of changes
+     */
+    int process(int start, int end);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> object type
+   */
+  public static class Parameterizer<O> extends AbstractDistanceBasedAlgorithm.Parameterizer<O> {
+    /**
+     * Parameter for the number of nearest neighbors.
+     */
+    public static final OptionID K_ID = new OptionID("ap.knn", "Number of nearest neighbors to use as candidate exemplars.");
+
+    /**
+     * Number of neighbors.
+     */
+    int k;
+
+    /**
+     * Quantile to use.
+     */
+    double quantile;
+
+    /**
+     * Dampening parameter.
+     */
+    double lambda = .5;
+
+    /**
+     * Number of stable iterations for convergence.
+     */
+    int convergence;
+
+    /**
+     * Maximum number of iterations.
+     */
+    int maxiter;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      // We don't call super, because we want a different default distance.
+      ObjectParameter<DistanceFunction<? super O>> distanceFunctionP = makeParameterDistanceFunction(SquaredEuclideanDistanceFunction.class, DistanceFunction.class);
+      if(config.grab(distanceFunctionP)) {
+        distanceFunction = distanceFunctionP.instantiateClass(config);
+      }
+      IntParameter kP = new IntParameter(K_ID);
+      kP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(kP)) {
+        k = kP.intValue();
+      }
+      DoubleParameter quantileP = new DoubleParameter(AffinityPropagationInitialization.QUANTILE_ID, 0.);
+      if(config.grab(quantileP)) {
+        quantile = quantileP.doubleValue();
+      }
+      final DoubleParameter lambdaP = new DoubleParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.LAMBDA_ID, .5);
+      lambdaP.addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      lambdaP.addConstraint(CommonConstraints.LESS_THAN_ONE_DOUBLE);
+      if(config.grab(lambdaP)) {
+        lambda = lambdaP.doubleValue();
+      }
+      final IntParameter convergenceP = new IntParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.CONVERGENCE_ID, 15);
+      convergenceP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(convergenceP)) {
+        convergence = convergenceP.intValue();
+      }
+      final IntParameter maxiterP = new IntParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.MAXITER_ID, 1000);
+      if(config.grab(maxiterP)) {
+        maxiter = maxiterP.intValue();
+      }
+    }
+
+    @Override
+    protected SparseAffinityPropagation<O> makeInstance() {
+      return new SparseAffinityPropagation<>(distanceFunction, k, quantile, lambda, convergence, maxiter);
+    }
+  }
+}
@@ -116,6 +116,19 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for partial models.
+   *
+   * @param dim Dimensionality
+   * @param norm Normalization factor.
+   */
+  private DiagonalGaussianModel(int dim, double norm) {
+    this.mean = new double[dim];
+    this.norm = norm;
+    this.nmea = new double[dim];
+    this.variances = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -164,6 +177,37 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     }
   }
 
+  @Override
+  public EMClusterModel<EMModel> newPartial() {
+    return new DiagonalGaussianModel(mean.length, norm);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    final DiagonalGaussianModel o = (DiagonalGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    if(!(wsum > 0.)) {
+      wsum = o.wsum;
+      System.arraycopy(o.mean, 0, mean, 0, mean.length);
+      System.arraycopy(o.variances, 0, variances, 0, mean.length);
+      return;
+    }
+    // Pairwise combination of weighted means and co-moments.
+    final double nwsum = wsum + o.wsum, f = wsum * o.wsum / nwsum, s = o.wsum / nwsum;
+    for(int i = 0; i < mean.length; i++) {
+      nmea[i] = o.mean[i] - mean[i];
+    }
+    for(int i = 0; i < mean.length; i++) {
+      variances[i] += o.variances[i] + nmea[i] * nmea[i] * f;
+    }
+    for(int i = 0; i < mean.length; i++) {
+      mean[i] += nmea[i] * s;
+    }
+    wsum = nwsum;
+  }
+
   /**
    * Compute the Mahalanobis distance from the centroid for a given vector.
    * 
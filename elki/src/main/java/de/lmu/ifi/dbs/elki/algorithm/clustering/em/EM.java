@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
@@ -93,22 +94,22 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
   /**
    * Number of clusters
    */
-  private int k;
+  protected int k;
 
   /**
    * Delta parameter
    */
-  private double delta;
+  protected double delta;
 
   /**
    * Factory for producing the initial cluster model.
    */
-  private EMClusterModelFactory<V, M> mfactory;
+  protected EMClusterModelFactory<V, M> mfactory;
 
   /**
    * Maximum number of iterations to allow
    */
-  private int maxiter;
+  protected int maxiter;
 
   /**
    * Retain soft assignments.
@@ -186,8 +187,20 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
       }
     }
 
-    if(LOG.isVerbose()) {
-      LOG.verbose("assigning clusters");
+    return makeClustering(relation, models, probClusterIGivenX);
+  }
+
+  /**
+   * Build the final hard clustering, from the cluster probabilities.
+   *
+   * @param relation Relation
+   * @param models Cluster models
+   * @param probClusterIGivenX Object probabilities
+   * @return Clustering result
+   */
+  protected Clustering<M> makeClustering(Relation<V> relation, List<? extends EMClusterModel<M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    if(getLogger().isVerbose()) {
+      getLogger().verbose("assigning clusters");
     }
 
     // fill result with clusters and models
@@ -277,35 +290,48 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     double emSum = 0.;
 
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      NumberVector vec = relation.get(iditer);
-      double[] probabilities = new double[k];
-      {
-        int i = 0;
-        for(EMClusterModel<?> m : models) {
-          probabilities[i] = m.estimateDensity(vec);
-          ++i;
-        }
-      }
-      double priorProbability = 0.;
-      for(int i = 0; i < k; i++) {
-        priorProbability += probabilities[i];
-      }
-      double logP = Math.max(FastMath.log(priorProbability), MIN_LOGLIKELIHOOD);
-      emSum += (logP == logP) ? logP : 0.; /* avoid NaN */
-
       double[] clusterProbabilities = new double[k];
-      if(priorProbability > 0.) {
-        for(int i = 0; i < k; i++) {
-          // do not divide by zero!
-          clusterProbabilities[i] = probabilities[i] / priorProbability;
-        }
-      }
+      emSum += computeProbabilities(relation.get(iditer), models, clusterProbabilities);
       probClusterIGivenX.put(iditer, clusterProbabilities);
     }
 
     return emSum / relation.size();
   }
 
+  /**
+   * Compute the cluster probabilities of a single instance.
+   *
+   * @param vec Instance
+   * @param models Cluster models
+   * @param clusterProbabilities Output array for the cluster probabilities
+   * @return Log likelihood of the instance (bounded from below)
+   */
+  public static double computeProbabilities(NumberVector vec, List<? extends EMClusterModel<?>> models, double[] clusterProbabilities) {
+    final int k = models.size();
+    {
+      int i = 0;
+      for(EMClusterModel<?> m : models) {
+        clusterProbabilities[i] = m.estimateDensity(vec);
+        ++i;
+      }
+    }
+    double priorProbability = 0.;
+    for(int i = 0; i < k; i++) {
+      priorProbability += clusterProbabilities[i];
+    }
+    double logP = Math.max(FastMath.log(priorProbability), MIN_LOGLIKELIHOOD);
+    if(priorProbability > 0.) {
+      for(int i = 0; i < k; i++) {
+        // do not divide by zero!
+        clusterProbabilities[i] /= priorProbability;
+      }
+    }
+    else {
+      Arrays.fill(clusterProbabilities, 0.);
+    }
+    return (logP == logP) ? logP : 0.; /* avoid NaN */
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
@@ -48,6 +48,24 @@ public interface EMClusterModel<M extends MeanModel> {
    */
   void finalizeEStep();
 
+  /**
+   * Create an empty model of the same type and dimensionality, to collect the
+   * statistics of a subset of the data, e.g., in a parallel E step. Only
+   * {@link #updateE} is used on the partial model, before it is merged into a
+   * model using {@link #mergeE}.
+   *
+   * @return Empty partial model
+   */
+  EMClusterModel<M> newPartial();
+
+  /**
+   * Merge the statistics of a partial model (see {@link #newPartial}). Call
+   * after {@link #beginEStep} and before {@link #finalizeEStep}.
+   *
+   * @param other Partial model to merge
+   */
+  void mergeE(EMClusterModel<M> other);
+
   /**
    * Estimate the likelihood of a vector.
    * 
@@ -120,6 +120,19 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for partial models.
+   *
+   * @param dim Dimensionality
+   * @param norm Normalization factor.
+   */
+  private MultivariateGaussianModel(int dim, double norm) {
+    this.mean = new double[dim];
+    this.norm = norm;
+    this.nmea = new double[dim];
+    this.covariance = new double[dim][dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -164,6 +177,43 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     robustInvert();
   }
 
+  @Override
+  public EMClusterModel<EMModel> newPartial() {
+    return new MultivariateGaussianModel(mean.length, norm);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    final MultivariateGaussianModel o = (MultivariateGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    if(!(wsum > 0.)) {
+      wsum = o.wsum;
+      System.arraycopy(o.mean, 0, mean, 0, mean.length);
+      for(int i = 0; i < mean.length; i++) {
+        System.arraycopy(o.covariance[i], 0, covariance[i], 0, mean.length);
+      }
+      return;
+    }
+    // Pairwise combination of weighted means and co-moments.
+    final double nwsum = wsum + o.wsum, f = wsum * o.wsum / nwsum, s = o.wsum / nwsum;
+    for(int i = 0; i < mean.length; i++) {
+      nmea[i] = o.mean[i] - mean[i];
+    }
+    for(int i = 0; i < mean.length; i++) {
+      final double[] ci = covariance[i], oi = o.covariance[i];
+      final double di = nmea[i] * f;
+      for(int j = 0; j < mean.length; j++) {
+        ci[j] += oi[j] + di * nmea[j];
+      }
+    }
+    for(int i = 0; i < mean.length; i++) {
+      mean[i] += nmea[i] * s;
+    }
+    wsum = nwsum;
+  }
+
   /**
    * Robust computation of the inverse covariance matrix.
    */
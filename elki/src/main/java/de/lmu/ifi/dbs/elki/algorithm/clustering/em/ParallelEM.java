@@ -0,0 +1,336 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Parallel version of the EM clustering algorithm.
+ *
+ * Cluster probabilities and the statistics for the next models are computed
+ * in a single pass over the data. The data is split into blocks of a fixed
+ * size, each of which is processed sequentially with its own partial models.
+ * The partial results are then merged in block order, so the results do not
+ * depend on the number of threads used.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses ParallelCore
+ *
+ * @param <V> vector type to analyze
+ * @param <M> model type to produce
+ */
+public class ParallelEM<V extends NumberVector, M extends MeanModel> extends EM<V, M> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelEM.class);
+
+  /**
+   * Number of objects per block. This must not depend on the number of
+   * threads, to obtain reproducible results.
+   */
+  private static final int BLOCKSIZE = 256;
+
+  /**
+   * Number of objects per block.
+   */
+  private final int blocksize;
+
+  /**
+   * Constructor.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param maxiter Maximum number of iterations
+   * @param soft Include soft assignments
+   */
+  public ParallelEM(int k, double delta, EMClusterModelFactory<V, M> mfactory, int maxiter, boolean soft) {
+    this(k, delta, mfactory, maxiter, soft, BLOCKSIZE);
+  }
+
+  /**
+   * Constructor with a custom block size, for testing.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param maxiter Maximum number of iterations
+   * @param soft Include soft assignments
+   * @param blocksize Number of objects per block
+   */
+  ParallelEM(int k, double delta, EMClusterModelFactory<V, M> mfactory, int maxiter, boolean soft, int blocksize) {
+    super(k, delta, mfactory, maxiter, soft);
+    this.blocksize = blocksize;
+  }
+
+  @Override
+  public Clustering<M> run(Database database, Relation<V> relation) {
+    if(relation.size() == 0) {
+      throw new IllegalArgumentException("database empty: must contain elements");
+    }
+    // initial models
+    if(LOG.isVerbose()) {
+      LOG.verbose("initializing " + k + " models");
+    }
+    List<? extends EMClusterModel<M>> models = mfactory.buildInitialModels(database, relation, k, SquaredEuclideanDistanceFunction.STATIC);
+    WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    // Partial models, receiving the statistics of the next iteration.
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    EMClusterModel<M>[] next = new EMClusterModel[k];
+    double[] wsum = new double[k];
+
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      double emNew = iterate(core, relation, ids, models, probClusterIGivenX, next, wsum);
+
+      // iteration unless no change
+      if(LOG.isVerbose()) {
+        LOG.verbose("iterating EM");
+        LOG.verbose("iteration " + 0 + " - expectation value: " + emNew);
+      }
+
+      for(int it = 1; it <= maxiter || maxiter < 0; it++) {
+        final double emOld = emNew;
+        for(int i = 0; i < k; i++) {
+          EMClusterModel<M> m = models.get(i);
+          m.beginEStep();
+          m.mergeE(next[i]);
+          m.finalizeEStep();
+          m.setWeight(wsum[i] / relation.size());
+        }
+        // reassign probabilities
+        emNew = iterate(core, relation, ids, models, probClusterIGivenX, next, wsum);
+
+        if(LOG.isVerbose()) {
+          LOG.verbose("iteration " + it + " - expectation value: " + emNew);
+        }
+        if(Math.abs(emOld - emNew) <= delta || emOld > emNew) {
+          break;
+        }
+      }
+    }
+    finally {
+      core.disconnect();
+    }
+    return makeClustering(relation, models, probClusterIGivenX);
+  }
+
+  /**
+   * Assign the cluster probabilities, and collect the statistics of the next
+   * models in the same pass.
+   *
+   * @param core Parallel core
+   * @param relation Relation
+   * @param ids Object ids
+   * @param models Current models (not modified)
+   * @param probClusterIGivenX Output storage for cluster probabilities
+   * @param next Output array for the merged partial models
+   * @param wsum Output array for the cluster weight sums
+   * @return Expectation value of the current mixture of distributions
+   */
+  protected double iterate(ParallelCore core, Relation<V> relation, ArrayDBIDs ids, List<? extends EMClusterModel<M>> models, WritableDataStore<double[]> probClusterIGivenX, EMClusterModel<M>[] next, double[] wsum) {
+    final int size = ids.size(), nblocks = (size + blocksize - 1) / blocksize;
+    for(int i = 0; i < k; i++) {
+      next[i] = models.get(i).newPartial();
+    }
+    Arrays.fill(wsum, 0.);
+    double emSum = 0.;
+    // Bound the number of pending blocks, to bound memory usage.
+    final int window = Math.max(2, core.getParallelism() << 1);
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Future<Block<M>>[] pending = new Future[window];
+    int submitted = 0;
+    try {
+      for(; submitted < nblocks && submitted < window; submitted++) {
+        pending[submitted % window] = core.submit(new Block<>(relation, ids, submitted * blocksize, Math.min(size, (submitted + 1) * blocksize), models, probClusterIGivenX));
+      }
+      for(int b = 0; b < nblocks; b++) {
+        Block<M> block = pending[b % window].get();
+        pending[b % window] = null;
+        if(submitted < nblocks) {
+          pending[submitted % window] = core.submit(new Block<>(relation, ids, submitted * blocksize, Math.min(size, (submitted + 1) * blocksize), models, probClusterIGivenX));
+          submitted++;
+        }
+        // Merge in block order, for reproducible results.
+        emSum += block.emSum;
+        for(int i = 0; i < k; i++) {
+          next[i].mergeE(block.partials[i]);
+          wsum[i] += block.wsum[i];
+        }
+      }
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel EM failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parallel EM interrupted.", e);
+    }
+    return emSum / size;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Process a single block of objects.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <M> model type
+   */
+  private static class Block<M extends MeanModel> implements Callable<Block<M>> {
+    /**
+     * Data relation.
+     */
+    private Relation<? extends NumberVector> relation;
+
+    /**
+     * Object ids.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Block range.
+     */
+    private int start, end;
+
+    /**
+     * Current models.
+     */
+    private List<? extends EMClusterModel<M>> models;
+
+    /**
+     * Output storage for cluster probabilities.
+     */
+    private WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Partial models for the next iteration.
+     */
+    EMClusterModel<M>[] partials;
+
+    /**
+     * Cluster weight sums.
+     */
+    double[] wsum;
+
+    /**
+     * Log likelihood sum.
+     */
+    double emSum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object ids
+     * @param start Start offset
+     * @param end End offset (exclusive)
+     * @param models Current models
+     * @param probClusterIGivenX Output storage for cluster probabilities
+     */
+    Block(Relation<? extends NumberVector> relation, ArrayDBIDs ids, int start, int end, List<? extends EMClusterModel<M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+      this.relation = relation;
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.models = models;
+      this.probClusterIGivenX = probClusterIGivenX;
+    }
+
+    @Override
+    public Block<M> call() {
+      final int k = models.size();
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      EMClusterModel<M>[] partials = new EMClusterModel[k];
+      for(int i = 0; i < k; i++) {
+        partials[i] = models.get(i).newPartial();
+      }
+      double[] wsum = new double[k];
+      double emSum = 0.;
+      DBIDArrayIter iter = ids.iter().seek(start);
+      for(int c = end - start; iter.valid() && c > 0; iter.advance(), c--) {
+        final NumberVector vec = relation.get(iter);
+        double[] clusterProbabilities = new double[k];
+        emSum += computeProbabilities(vec, models, clusterProbabilities);
+        probClusterIGivenX.put(iter, clusterProbabilities);
+        for(int i = 0; i < k; i++) {
+          final double prior = clusterProbabilities[i];
+          if(prior > 0.) {
+            partials[i].updateE(vec, prior);
+          }
+          wsum[i] += prior;
+        }
+      }
+      this.partials = partials;
+      this.wsum = wsum;
+      this.emSum = emSum;
+      // Release references early.
+      this.relation = null;
+      this.models = null;
+      this.probClusterIGivenX = null;
+      return this;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector, M extends MeanModel> extends EM.Parameterizer<V, M> {
+    @Override
+    protected ParallelEM<V, M> makeInstance() {
+      return new ParallelEM<>(k, delta, initializer, maxiter, false);
+    }
+  }
+}
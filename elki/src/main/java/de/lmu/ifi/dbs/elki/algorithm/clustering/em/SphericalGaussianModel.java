@@ -104,6 +104,18 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for partial models.
+   *
+   * @param dim Dimensionality
+   * @param norm Normalization factor.
+   */
+  private SphericalGaussianModel(int dim, double norm) {
+    this.mean = new double[dim];
+    this.norm = norm;
+    this.nmea = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -144,6 +156,39 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     }
   }
 
+  @Override
+  public EMClusterModel<EMModel> newPartial() {
+    return new SphericalGaussianModel(mean.length, norm);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    final SphericalGaussianModel o = (SphericalGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    if(!(wsum > 0.)) {
+      wsum = o.wsum;
+      System.arraycopy(o.mean, 0, mean, 0, mean.length);
+      variance = o.variance;
+      return;
+    }
+    // Pairwise combination of weighted means and co-moments.
+    final double nwsum = wsum + o.wsum, f = wsum * o.wsum / nwsum, s = o.wsum / nwsum;
+    for(int i = 0; i < mean.length; i++) {
+      nmea[i] = o.mean[i] - mean[i];
+    }
+    double agg = 0.;
+    for(int i = 0; i < mean.length; i++) {
+      agg += nmea[i] * nmea[i];
+    }
+    variance += o.variance + agg * f;
+    for(int i = 0; i < mean.length; i++) {
+      mean[i] += nmea[i] * s;
+    }
+    wsum = nwsum;
+  }
+
   /**
    * Compute the Mahalanobis distance from the centroid for a given vector.
    * 
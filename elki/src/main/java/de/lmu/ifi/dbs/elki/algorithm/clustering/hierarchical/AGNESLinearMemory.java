@@ -0,0 +1,580 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.WrongParameterValueException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Agglomerative hierarchical clustering of vector data in linear memory.
+ *
+ * Instead of a distance matrix, this variant keeps one representative (the
+ * cluster center, size, and for group average also the sum of squares) per
+ * cluster, and computes the linkage between two clusters on demand. This
+ * works for the linkages that can be expressed with cluster centers in
+ * squared Euclidean space: Ward, centroid, median and group average linkage.
+ * The dissimilarities are the same as those of {@link AGNES} with squared
+ * Euclidean distance.
+ *
+ * The merges are found with the generic algorithm of Müllner, which caches
+ * a lower bound of the nearest neighbor of each cluster in a priority queue,
+ * and thus also supports the non-reducible centroid and median linkages. The
+ * distance computations for the new cluster are run in parallel.
+ *
+ * Memory usage is O(n) plus the data, while run time remains O(n²) distance
+ * computations, so data sets much larger than the 65536 objects supported by
+ * {@link AGNES} can be processed.
+ *
+ * Reference:
+ * <p>
+ * D. Müllner<br />
+ * Modern hierarchical, agglomerative clustering algorithms<br />
+ * arXiv preprint arXiv:1109.2378
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf LinkageMethod
+ * @apiviz.uses ParallelCore
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "D. Müllner", //
+    title = "Modern hierarchical, agglomerative clustering algorithms", //
+    booktitle = "arXiv preprint arXiv:1109.2378", //
+    url = "https://arxiv.org/abs/1109.2378")
+public class AGNESLinearMemory<V extends NumberVector> extends AbstractAlgorithm<PointerHierarchyRepresentationResult> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(AGNESLinearMemory.class);
+
+  /**
+   * Minimum number of objects processed by a single task.
+   */
+  private static final int BLOCKSIZE = 4096;
+
+  /**
+   * Minimum number of objects processed by a single task.
+   */
+  private final int blocksize;
+
+  /**
+   * Current linkage method in use.
+   */
+  protected LinkageMethod linkage;
+
+  /**
+   * Linkage, as used internally.
+   */
+  private Mode mode;
+
+  /**
+   * Cluster centers, null for clusters that were merged into another.
+   */
+  private double[][] centers;
+
+  /**
+   * Cluster sizes, 0 for clusters that were merged into another.
+   */
+  private int[] sizes;
+
+  /**
+   * Sum of squared deviations from the center, only for group average.
+   */
+  private double[] sse;
+
+  /**
+   * Constructor.
+   *
+   * @param linkage Linkage method, must be supported
+   */
+  public AGNESLinearMemory(LinkageMethod linkage) {
+    this(linkage, BLOCKSIZE);
+  }
+
+  /**
+   * Constructor with a custom block size, for testing.
+   *
+   * @param linkage Linkage method, must be supported
+   * @param blocksize Minimum number of objects processed by a single task
+   */
+  AGNESLinearMemory(LinkageMethod linkage, int blocksize) {
+    super();
+    this.blocksize = blocksize;
+    this.linkage = linkage;
+    this.mode = getMode(linkage);
+    if(mode == null) {
+      throw new AbortException("Linkage " + linkage.getClass().getSimpleName() + " cannot be computed from cluster centers. Use AGNES, SLINK or CLINK instead.");
+    }
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerHierarchyRepresentationResult run(Database db, Relation<V> relation) {
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+
+    centers = new double[size][];
+    sizes = new int[size];
+    sse = mode == Mode.GROUP_AVERAGE ? new double[size] : null;
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    for(int i = 0; ix.valid(); ix.advance(), i++) {
+      centers[i] = relation.get(ix).toArray();
+      sizes[i] = 1;
+    }
+
+    // Nearest neighbor candidates of each cluster, among the later clusters.
+    // The distances are lower bounds of the true nearest neighbor distance.
+    int[] nn = new int[size];
+    double[] mindist = new double[size];
+    double[] buf = new double[size];
+
+    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      initializeNearestNeighbors(core, size, nn, mindist);
+      MinTree queue = new MinTree(mindist);
+
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+      for(int i = 1; i < size; i++) {
+        // Find the closest pair, repairing invalid candidates.
+        int x = queue.argmin(), y = nn[x];
+        while(sizes[y] == 0 || distance(x, y) != mindist[x]) {
+          nearestNeighbor(core, x, size, buf, nn, mindist);
+          queue.update(x);
+          x = queue.argmin();
+          y = nn[x];
+        }
+        final double dist = mindist[x];
+        assert (x < y);
+        if(LOG.isDebuggingFine()) {
+          LOG.debugFine("Merging: " + DBIDUtil.toString(iy.seek(y)) + " -> " + DBIDUtil.toString(ix.seek(x)) + " " + dist);
+        }
+        // Since x < y, prefer keeping x, dropping y.
+        builder.add(iy.seek(y), dist, ix.seek(x));
+        mergeClusters(x, y);
+        mindist[y] = Double.POSITIVE_INFINITY;
+        queue.update(y);
+
+        // Update the candidates with the distances to the new cluster.
+        computeDistances(core, x, 0, size, buf);
+        for(int j = 0; j < x; j++) {
+          if(sizes[j] > 0 && buf[j] < mindist[j]) {
+            mindist[j] = buf[j];
+            nn[j] = x;
+            queue.update(j);
+          }
+        }
+        argmin(x, buf, nn, mindist);
+        queue.update(x);
+        LOG.incrementProcessed(prog);
+      }
+      LOG.ensureCompleted(prog);
+    }
+    finally {
+      core.disconnect();
+      centers = null;
+      sizes = null;
+      sse = null;
+    }
+    return builder.complete();
+  }
+
+  /**
+   * Initialize the nearest neighbor candidates of all clusters.
+   *
+   * @param core Parallel core
+   * @param size Data set size
+   * @param nn Output nearest neighbors
+   * @param mindist Output nearest neighbor distances
+   */
+  private void initializeNearestNeighbors(ParallelCore core, int size, int[] nn, double[] mindist) {
+    // The first rows are the most expensive; use small blocks of rows.
+    final int rows = Math.max(1, Math.min(blocksize, (size >>> 4) / core.getParallelism()));
+    List<Future<Void>> futures = new ArrayList<>();
+    for(int start = 0; start < size; start += rows) {
+      final int s = start, e = Math.min(size, start + rows);
+      futures.add(core.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for(int x = s; x < e; x++) {
+            int best = -1;
+            double min = Double.POSITIVE_INFINITY;
+            for(int y = x + 1; y < size; y++) {
+              final double d = distance(x, y);
+              if(d < min || best < 0) {
+                min = d;
+                best = y;
+              }
+            }
+            nn[x] = best < 0 ? x : best;
+            mindist[x] = min;
+          }
+          return null;
+        }
+      }));
+    }
+    waitFor(futures);
+  }
+
+  /**
+   * Recompute the nearest neighbor candidate of a cluster.
+   *
+   * @param core Parallel core
+   * @param x Cluster
+   * @param size Data set size
+   * @param buf Distance buffer
+   * @param nn Nearest neighbors
+   * @param mindist Nearest neighbor distances
+   */
+  private void nearestNeighbor(ParallelCore core, int x, int size, double[] buf, int[] nn, double[] mindist) {
+    computeDistances(core, x, x + 1, size, buf);
+    argmin(x, buf, nn, mindist);
+  }
+
+  /**
+   * Find the nearest later cluster, given the distances.
+   *
+   * @param x Cluster
+   * @param buf Distances to all clusters
+   * @param nn Nearest neighbors
+   * @param mindist Nearest neighbor distances
+   */
+  private void argmin(int x, double[] buf, int[] nn, double[] mindist) {
+    int best = -1;
+    double min = Double.POSITIVE_INFINITY;
+    for(int y = x + 1; y < buf.length; y++) {
+      if(sizes[y] > 0 && (buf[y] < min || best < 0)) {
+        min = buf[y];
+        best = y;
+      }
+    }
+    nn[x] = best < 0 ? x : best;
+    mindist[x] = min;
+  }
+
+  /**
+   * Compute the distances of one cluster to a range of clusters. The values
+   * for inactive clusters are undefined.
+   *
+   * @param core Parallel core
+   * @param x Cluster
+   * @param start First cluster
+   * @param end End (exclusive)
+   * @param buf Output buffer
+   */
+  private void computeDistances(ParallelCore core, final int x, int start, int end, final double[] buf) {
+    final int blocks = Math.min(core.getParallelism(), (end - start) / blocksize);
+    if(blocks <= 1) {
+      computeDistances(x, start, end, buf);
+      return;
+    }
+    final int step = (end - start + blocks - 1) / blocks;
+    List<Future<Void>> futures = new ArrayList<>(blocks - 1);
+    for(int s = start + step; s < end; s += step) {
+      final int s2 = s, e2 = Math.min(end, s + step);
+      futures.add(core.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          computeDistances(x, s2, e2, buf);
+          return null;
+        }
+      }));
+    }
+    // Process the first block in this thread.
+    computeDistances(x, start, start + step, buf);
+    waitFor(futures);
+  }
+
+  /**
+   * Compute the distances of one cluster to a range of clusters.
+   *
+   * @param x Cluster
+   * @param start First cluster
+   * @param end End (exclusive)
+   * @param buf Output buffer
+   */
+  private void computeDistances(int x, int start, int end, double[] buf) {
+    for(int j = start; j < end; j++) {
+      buf[j] = (j != x && sizes[j] > 0) ? distance(x, j) : Double.POSITIVE_INFINITY;
+    }
+  }
+
+  /**
+   * Wait for the completion of parallel tasks.
+   *
+   * @param futures Tasks
+   */
+  private static void waitFor(List<Future<Void>> futures) {
+    try {
+      for(Future<Void> f : futures) {
+        f.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel distance computation failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parallel distance computation interrupted.", e);
+    }
+  }
+
+  /**
+   * Linkage of two (active) clusters.
+   *
+   * @param x First cluster
+   * @param y Second cluster
+   * @return Linkage, as computed by AGNES on squared Euclidean distances
+   */
+  private double distance(int x, int y) {
+    final double[] cx = centers[x], cy = centers[y];
+    double sqdist = 0.;
+    for(int d = 0; d < cx.length; d++) {
+      final double v = cx[d] - cy[d];
+      sqdist += v * v;
+    }
+    switch(mode){
+    case WARD: {
+      final double sx = sizes[x], sy = sizes[y];
+      return 2. * sx * sy / (sx + sy) * sqdist;
+    }
+    case GROUP_AVERAGE:
+      return sqdist + sse[x] / sizes[x] + sse[y] / sizes[y];
+    default:
+      return sqdist;
+    }
+  }
+
+  /**
+   * Merge cluster y into cluster x.
+   *
+   * @param x Cluster to keep
+   * @param y Cluster to remove
+   */
+  private void mergeClusters(int x, int y) {
+    final double[] cx = centers[x], cy = centers[y];
+    final double sx = sizes[x], sy = sizes[y];
+    if(mode == Mode.MEDIAN) {
+      for(int d = 0; d < cx.length; d++) {
+        cx[d] = .5 * (cx[d] + cy[d]);
+      }
+    }
+    else {
+      final double wy = sy / (sx + sy);
+      double sqdist = 0.;
+      for(int d = 0; d < cx.length; d++) {
+        final double v = cy[d] - cx[d];
+        sqdist += v * v;
+        cx[d] += v * wy;
+      }
+      if(sse != null) {
+        sse[x] += sse[y] + sx * wy * sqdist;
+      }
+    }
+    sizes[x] += sizes[y];
+    sizes[y] = 0;
+    centers[y] = null;
+  }
+
+  /**
+   * Get the internal mode for a linkage method.
+   *
+   * @param linkage Linkage method
+   * @return Mode, or null if not supported
+   */
+  protected static Mode getMode(LinkageMethod linkage) {
+    return linkage instanceof WardLinkageMethod ? Mode.WARD : //
+        linkage instanceof CentroidLinkageMethod ? Mode.CENTROID : //
+            linkage instanceof MedianLinkageMethod ? Mode.MEDIAN : //
+                linkage instanceof GroupAverageLinkageMethod ? Mode.GROUP_AVERAGE : //
+                    null;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Linkages supported by this implementation.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  protected enum Mode {
+    /** Ward linkage */
+    WARD,
+    /** Centroid linkage */
+    CENTROID,
+    /** Median linkage */
+    MEDIAN,
+    /** Group average linkage */
+    GROUP_AVERAGE
+  }
+
+  /**
+   * Priority queue of the cluster with the smallest nearest neighbor distance,
+   * as tournament tree with O(log n) updates. Ties are resolved by preferring
+   * the smaller index.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class MinTree {
+    /**
+     * Keys of the objects.
+     */
+    private final double[] keys;
+
+    /**
+     * Number of leaves (a power of two).
+     */
+    private final int leaves;
+
+    /**
+     * Tree storage, the leaves are at the end. -1 for padding.
+     */
+    private final int[] tree;
+
+    /**
+     * Constructor.
+     *
+     * @param keys Keys, referenced, not copied
+     */
+    MinTree(double[] keys) {
+      this.keys = keys;
+      int l = 1;
+      while(l < keys.length) {
+        l <<= 1;
+      }
+      this.leaves = l;
+      this.tree = new int[l << 1];
+      for(int i = 0; i < l; i++) {
+        tree[l + i] = i < keys.length ? i : -1;
+      }
+      for(int i = l - 1; i > 0; i--) {
+        tree[i] = better(tree[i << 1], tree[(i << 1) + 1]);
+      }
+    }
+
+    /**
+     * Choose the better of two objects.
+     *
+     * @param a First object, smaller index
+     * @param b Second object, larger index
+     * @return Better object
+     */
+    private int better(int a, int b) {
+      return a < 0 ? b : b < 0 ? a : keys[b] < keys[a] ? b : a;
+    }
+
+    /**
+     * Update after the key of an object has changed.
+     *
+     * @param i Object
+     */
+    void update(int i) {
+      for(int p = (i + leaves) >>> 1; p > 0; p >>>= 1) {
+        tree[p] = better(tree[p << 1], tree[(p << 1) + 1]);
+      }
+    }
+
+    /**
+     * Get the object with the smallest key.
+     *
+     * @return Object
+     */
+    int argmin() {
+      return tree[1];
+    }
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <V> Vector type
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Current linkage in use.
+     */
+    protected LinkageMethod linkage;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<LinkageMethod> linkageP = new ObjectParameter<>(AGNES.Parameterizer.LINKAGE_ID, LinkageMethod.class);
+      linkageP.setDefaultValue(WardLinkageMethod.class);
+      if(config.grab(linkageP)) {
+        linkage = linkageP.instantiateClass(config);
+        if(linkage != null && getMode(linkage) == null) {
+          config.reportError(new WrongParameterValueException(linkageP, linkageP.getValueAsString(), "Only Ward, centroid, median and group average linkage are supported."));
+        }
+      }
+    }
+
+    @Override
+    protected AGNESLinearMemory<V> makeInstance() {
+      return new AGNESLinearMemory<>(linkage);
+    }
+  }
+}
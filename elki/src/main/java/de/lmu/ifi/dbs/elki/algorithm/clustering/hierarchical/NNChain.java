@@ -97,7 +97,8 @@ public class NNChain<O> extends AGNES<O> {
     if(size > 0x10000) {
       throw new AbortException("This implementation does not scale to data sets larger than " + //
           0x10000 // = 65535
-          + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
+          + " instances (~16 GB RAM), at which point the Java maximum array size is reached." //
+          + " For vector data, use AGNESLinearMemory.");
     }
     if(SingleLinkageMethod.class.isInstance(linkage)) {
       LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
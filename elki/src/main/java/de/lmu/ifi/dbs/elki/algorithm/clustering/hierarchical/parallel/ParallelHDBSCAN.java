@@ -0,0 +1,350 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.parallel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.AbstractHDBSCAN;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.HDBSCANLinearMemory;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.HierarchicalClusteringAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.PointerDensityHierarchyRepresentationResult;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.KDistanceProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedDouble;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedObject;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Parallel implementation of HDBSCAN clustering in linear memory.
+ *
+ * The core distances are computed with a bulk kNN pass using the
+ * {@link ParallelExecutor}. The minimum spanning tree of the mutual
+ * reachability graph is then built with Borůvka's algorithm: in every round,
+ * each point searches its nearest point in another component in parallel,
+ * and each component adds its shortest outgoing edge. The nearest neighbor of
+ * a point remains valid until it joins the same component, so only the
+ * remaining points need to be scanned again in later rounds.
+ *
+ * The result is the same as {@link HDBSCANLinearMemory}, and independent of
+ * the number of threads used.
+ *
+ * Reference:
+ * <p>
+ * R. J. G. B. Campello, D. Moulavi, and J. Sander<br />
+ * Density-Based Clustering Based on Hierarchical Density Estimates<br />
+ * Pacific-Asia Conference on Advances in Knowledge Discovery and Data Mining,
+ * PAKDD
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf KNNProcessor
+ * @apiviz.composedOf KDistanceProcessor
+ * @apiviz.uses ParallelCore
+ * @apiviz.has PointerDensityHierarchyRepresentationResult
+ *
+ * @param <O> Object type
+ */
+@Title("HDBSCAN: Hierarchical Density-Based Spatial Clustering of Applications with Noise")
+@Description("Density-Based Clustering Based on Hierarchical Density Estimates")
+@Reference(authors = "R. J. G. B. Campello, D. Moulavi, and J. Sander", //
+    title = "Density-Based Clustering Based on Hierarchical Density Estimates", //
+    booktitle = "Pacific-Asia Conference on Advances in Knowledge Discovery and Data Mining, PAKDD", //
+    url = "http://dx.doi.org/10.1007/978-3-642-37456-2_14")
+public class ParallelHDBSCAN<O> extends AbstractHDBSCAN<O, PointerDensityHierarchyRepresentationResult> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelHDBSCAN.class);
+
+  /**
+   * Number of points claimed at once by a worker.
+   */
+  private static final int CHUNKSIZE = 64;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param minPts Minimum number of points for density
+   */
+  public ParallelHDBSCAN(DistanceFunction<? super O> distanceFunction, int minPts) {
+    super(distanceFunction, minPts);
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerDensityHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    final DistanceQuery<O> distQ = db.getDistanceQuery(relation, getDistanceFunction());
+    final KNNQuery<O> knnQ = db.getKNNQuery(distQ, minPts);
+    // We need array addressing later.
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+
+    // 1. Compute the core distances in parallel
+    final WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    KNNProcessor<O> knnm = new KNNProcessor<>(minPts, knnQ);
+    SharedObject<KNNList> knnv = new SharedObject<>();
+    knnm.connectKNNOutput(knnv);
+    KDistanceProcessor kdistm = new KDistanceProcessor(minPts);
+    SharedDouble kdistv = new SharedDouble();
+    kdistm.connectKNNInput(knnv);
+    kdistm.connectOutput(kdistv);
+    WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(coredists);
+    storem.connectInput(kdistv);
+    ParallelExecutor.run(ids, knnm, kdistm, storem);
+
+    // 2. Build spanning tree.
+    final int numedges = ids.size() - 1;
+    DoubleLongHeap heap = new DoubleLongMinHeap(numedges);
+    FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", numedges, LOG) : null;
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      boruvka(core, ids, distQ, coredists, heap, mprog);
+    }
+    finally {
+      core.disconnect();
+    }
+    LOG.ensureCompleted(mprog);
+
+    // Storage for pointer representation:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    convertToPointerRepresentation(ids, heap, pi, lambda);
+
+    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, coredists);
+  }
+
+  /**
+   * Compute the minimum spanning tree with Borůvka's algorithm.
+   *
+   * @param core Parallel core
+   * @param ids Object ids
+   * @param distQ Distance query
+   * @param coredists Core distances
+   * @param heap Output heap of edges
+   * @param mprog Progress
+   */
+  protected void boruvka(ParallelCore core, ArrayDBIDs ids, DistanceQuery<O> distQ, WritableDoubleDataStore coredists, DoubleLongHeap heap, FiniteProgress mprog) {
+    final int size = ids.size();
+    final double[] cdist = new double[size];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      cdist[it.getOffset()] = coredists.doubleValue(it);
+    }
+    // Union-find forest, and component labels of the current round.
+    final int[] parent = new int[size], label = new int[size];
+    for(int i = 0; i < size; i++) {
+      parent[i] = i;
+    }
+    // Nearest point in another component, and mutual reachability distance.
+    final int[] cand = new int[size];
+    final double[] candDist = new double[size];
+    Arrays.fill(cand, -1);
+    // Shortest outgoing edge per component.
+    final int[] best = new int[size];
+
+    int components = size, round = 0;
+    while(components > 1) {
+      for(int i = 0; i < size; i++) {
+        label[i] = find(parent, i);
+      }
+      nearestOtherComponent(core, ids, distQ, cdist, label, cand, candDist);
+
+      Arrays.fill(best, -1);
+      for(int i = 0; i < size; i++) {
+        final int c = label[i], b = best[c];
+        if(cand[i] >= 0 && (b < 0 || candDist[i] < candDist[b])) {
+          best[c] = i;
+        }
+      }
+      for(int c = 0; c < size; c++) {
+        final int i = best[c];
+        if(i < 0) {
+          continue;
+        }
+        final int j = cand[i], ri = find(parent, i), rj = find(parent, j);
+        if(ri == rj) {
+          continue; // Same edge, chosen by both components.
+        }
+        // Link the larger root to the smaller root.
+        if(ri < rj) {
+          parent[rj] = ri;
+        }
+        else {
+          parent[ri] = rj;
+        }
+        heap.add(candDist[i], (((long) Math.min(i, j)) << 31) | Math.max(i, j));
+        --components;
+        LOG.incrementProcessed(mprog);
+      }
+      ++round;
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".boruvka-rounds", round));
+    }
+  }
+
+  /**
+   * Find the root of an element, with path halving.
+   *
+   * @param parent Union-find forest
+   * @param i Element
+   * @return Root
+   */
+  private static int find(int[] parent, int i) {
+    while(parent[i] != i) {
+      i = parent[i] = parent[parent[i]];
+    }
+    return i;
+  }
+
+  /**
+   * Find, for every point, the nearest point (by mutual reachability) in a
+   * different component. Ties are resolved to the smallest index.
+   *
+   * @param core Parallel core
+   * @param ids Object ids
+   * @param distQ Distance query
+   * @param cdist Core distances
+   * @param label Component labels
+   * @param cand Nearest neighbor candidates, updated
+   * @param candDist Nearest neighbor distances, updated
+   */
+  private void nearestOtherComponent(ParallelCore core, final ArrayDBIDs ids, final DistanceQuery<O> distQ, final double[] cdist, final int[] label, final int[] cand, final double[] candDist) {
+    final int size = ids.size();
+    final AtomicInteger next = new AtomicInteger(0);
+    final int numthreads = Math.max(1, Math.min(core.getParallelism(), (size + CHUNKSIZE - 1) / CHUNKSIZE));
+    List<Future<Void>> futures = new ArrayList<>(numthreads);
+    for(int t = 0; t < numthreads; t++) {
+      futures.add(core.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          DBIDArrayIter ii = ids.iter(), ij = ids.iter();
+          for(int start = next.getAndAdd(CHUNKSIZE); start < size; start = next.getAndAdd(CHUNKSIZE)) {
+            for(int i = start, end = Math.min(size, start + CHUNKSIZE); i < end; i++) {
+              final int c = cand[i], li = label[i];
+              // Still in a different component, so still the nearest:
+              if(c >= 0 && label[c] != li) {
+                continue;
+              }
+              final double ci = cdist[i];
+              double min = Double.POSITIVE_INFINITY;
+              int argmin = -1;
+              ii.seek(i);
+              for(int j = 0; j < size; j++) {
+                // Mutual reachability cannot be smaller than the core distance
+                if(label[j] == li || cdist[j] >= min) {
+                  continue;
+                }
+                final double d = Math.max(Math.max(ci, cdist[j]), distQ.distance(ii, ij.seek(j)));
+                if(d < min) {
+                  min = d;
+                  argmin = j;
+                  if(d <= ci) {
+                    break; // Cannot be improved.
+                  }
+                }
+              }
+              cand[i] = argmin;
+              candDist[i] = min;
+            }
+          }
+          return null;
+        }
+      }));
+    }
+    try {
+      for(Future<Void> f : futures) {
+        f.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel HDBSCAN failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parallel HDBSCAN interrupted.", e);
+    }
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AbstractHDBSCAN.Parameterizer<O> {
+    @Override
+    protected ParallelHDBSCAN<O> makeInstance() {
+      return new ParallelHDBSCAN<>(distanceFunction, minPts);
+    }
+  }
+}
@@ -0,0 +1,492 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Mini-batch k-means, which updates the means from small batches of objects
+ * using a per-center learning rate.
+ *
+ * Every center has its own learning rate, the inverse of the (possibly
+ * decayed) number of objects assigned to it so far. With a decay factor
+ * greater than zero, old objects are forgotten gradually, so that the means
+ * can follow a drifting data stream.
+ *
+ * Besides the usual database mode, this class can process a
+ * {@link BundleStreamSource} (such as a
+ * {@link de.lmu.ifi.dbs.elki.datasource.parser.StreamingParser}) directly,
+ * without materializing the data: {@link #train} only needs O(k*d + b*d)
+ * memory for the means and the current batch, {@link #cluster} additionally
+ * stores the object ids of each cluster, and {@link #assign} only assigns the
+ * objects to given means, without updating them. On streams, the first k
+ * objects are used as initial means.
+ *
+ * In database mode, the batches are sampled at random, and the maximum number
+ * of iterations is the number of batches; the default (0) processes as many
+ * batches as needed to visit as many objects as the data set contains.
+ *
+ * <p>
+ * Reference:<br />
+ * D. Sculley<br />
+ * Web-scale k-means clustering<br />
+ * Proc. 19th International Conference on World Wide Web, WWW 2010
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KMeansModel
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "D. Sculley", //
+    title = "Web-scale k-means clustering", //
+    booktitle = "Proc. 19th International Conference on World Wide Web, WWW 2010", //
+    url = "http://dx.doi.org/10.1145/1772690.1772862")
+public class KMeansMiniBatch<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansMiniBatch.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = KMeansMiniBatch.class.getName();
+
+  /**
+   * Batch size.
+   */
+  private int batchsize;
+
+  /**
+   * Decay of the per-center counts after each batch.
+   */
+  private double decay;
+
+  /**
+   * Random generator for sampling batches.
+   */
+  private RandomFactory random;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Number of batches, 0 for one pass over the data
+   * @param initializer Initialization method
+   * @param batchsize Batch size
+   * @param decay Decay of the per-center counts
+   * @param random Random generator for sampling batches
+   */
+  public KMeansMiniBatch(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, int batchsize, double decay, RandomFactory random) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.batchsize = batchsize;
+    this.decay = decay;
+    this.random = random;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    double[][] means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+    double[] counts = new double[k];
+
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    DBIDArrayIter iter = ids.iter();
+    Random rnd = random.getSingleThreadedRandom();
+    final int bsize = Math.min(batchsize, ids.size());
+    final int batches = maxiter > 0 ? maxiter : (ids.size() + bsize - 1) / bsize;
+    List<NumberVector> batch = new ArrayList<>(bsize);
+    int[] assignment = new int[bsize];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Mini-batch k-means", batches, LOG) : null;
+    for(int b = 0; b < batches; b++) {
+      batch.clear();
+      for(int i = 0; i < bsize; i++) {
+        batch.add(relation.get(iter.seek(rnd.nextInt(ids.size()))));
+      }
+      for(int i = 0; i < bsize; i++) {
+        assignment[i] = nearest(batch.get(i), means, null);
+      }
+      update(means, counts, batch, assignment);
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".batches", batches));
+    }
+
+    // Final assignment
+    ModifiableDBIDs[] clusters = new ModifiableDBIDs[k];
+    for(int i = 0; i < k; i++) {
+      clusters[i] = DBIDUtil.newArray((int) (relation.size() * 2. / k));
+    }
+    double[] varsum = new double[k], dist = new double[1];
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      int c = nearest(relation.get(it), means, dist);
+      clusters[c].add(it);
+      varsum[c] += dist[0];
+    }
+    return wrapResult(means, clusters, varsum);
+  }
+
+  /**
+   * Train the means on a data stream, without storing the data.
+   *
+   * @param source Data stream
+   * @return Means
+   */
+  public double[][] train(BundleStreamSource source) {
+    return processStream(source, null, null, null);
+  }
+
+  /**
+   * Cluster a data stream: the means are trained on the stream, and each
+   * object is assigned to the nearest mean at the time its batch is
+   * processed. Only the object ids are kept. If the stream does not have
+   * object ids, new ids are generated.
+   *
+   * @param source Data stream
+   * @return Clustering
+   */
+  public Clustering<KMeansModel> cluster(BundleStreamSource source) {
+    ArrayModifiableDBIDs[] clusters = new ArrayModifiableDBIDs[k];
+    for(int i = 0; i < k; i++) {
+      clusters[i] = DBIDUtil.newArray();
+    }
+    double[] varsum = new double[k];
+    double[][] means = processStream(source, null, clusters, varsum);
+    return wrapResult(means, clusters, varsum);
+  }
+
+  /**
+   * Assign-only mode: assign each object of a data stream to the nearest of
+   * the given means, without updating the means.
+   *
+   * @param source Data stream
+   * @param means Means to assign to
+   * @return Clustering
+   */
+  public Clustering<KMeansModel> assign(BundleStreamSource source, double[][] means) {
+    ArrayModifiableDBIDs[] clusters = new ArrayModifiableDBIDs[means.length];
+    for(int i = 0; i < means.length; i++) {
+      clusters[i] = DBIDUtil.newArray();
+    }
+    double[] varsum = new double[means.length];
+    processStream(source, means, clusters, varsum);
+    return wrapResult(means, clusters, varsum);
+  }
+
+  /**
+   * Process a data stream in batches.
+   *
+   * @param source Data stream
+   * @param fixed Fixed means (assign-only mode), or {@code null}
+   * @param clusters Output cluster members, may be {@code null}
+   * @param varsum Output variance sums, may be {@code null}
+   * @return Means
+   */
+  private double[][] processStream(BundleStreamSource source, double[][] fixed, ModifiableDBIDs[] clusters, double[] varsum) {
+    final boolean update = fixed == null;
+    double[][] means = update ? new double[k][] : fixed;
+    double[] counts = new double[means.length], dist = new double[1];
+    int initialized = update ? 0 : means.length;
+    // Until all means are initialized, the batch may grow up to k.
+    final int maxbatch = update ? Math.max(batchsize, k) : batchsize;
+    List<NumberVector> batch = new ArrayList<>(maxbatch);
+    ArrayModifiableDBIDs bids = clusters != null ? DBIDUtil.newArray(maxbatch) : null;
+    int[] assignment = new int[maxbatch];
+    DBIDVar var = DBIDUtil.newVar();
+    int col = -1, batches = 0;
+    loop: while(true) {
+      BundleStreamSource.Event ev = source.nextEvent();
+      switch(ev){
+      case META_CHANGED:
+        col = findVectorColumn(source.getMeta());
+        break; // switch
+      case NEXT_OBJECT: {
+        if(col < 0) {
+          throw new AbortException("The data stream does not contain number vectors.");
+        }
+        NumberVector vec = (NumberVector) source.data(col);
+        if(initialized < k) {
+          means[initialized++] = vec.toArray();
+        }
+        batch.add(vec);
+        if(bids != null) {
+          if(!source.hasDBIDs() || !source.assignDBID(var)) {
+            var.set(DBIDUtil.generateSingleDBID());
+          }
+          bids.add(var);
+        }
+        if(batch.size() >= batchsize && initialized == means.length) {
+          processBatch(means, counts, batch, bids, assignment, dist, update, clusters, varsum);
+          ++batches;
+        }
+        break; // switch
+      }
+      case END_OF_STREAM:
+        break loop;
+      default:
+        LOG.warning("Unknown bundle stream event. API inconsistent? " + ev);
+        break; // switch
+      }
+    }
+    if(initialized < k) {
+      throw new AbortException("The data stream contained fewer than k=" + k + " objects.");
+    }
+    if(!batch.isEmpty()) {
+      processBatch(means, counts, batch, bids, assignment, dist, update, clusters, varsum);
+      ++batches;
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".batches", batches));
+    }
+    return means;
+  }
+
+  /**
+   * Process a single batch, and clear it afterwards.
+   *
+   * @param means Means
+   * @param counts Per-center counts
+   * @param batch Batch
+   * @param bids Object ids of the batch, may be {@code null}
+   * @param assignment Buffer for the assignment
+   * @param dist Buffer for distances
+   * @param update Update the means
+   * @param clusters Output cluster members, may be {@code null}
+   * @param varsum Output variance sums, may be {@code null}
+   */
+  private void processBatch(double[][] means, double[] counts, List<NumberVector> batch, ArrayModifiableDBIDs bids, int[] assignment, double[] dist, boolean update, ModifiableDBIDs[] clusters, double[] varsum) {
+    DBIDArrayIter it = bids != null ? bids.iter() : null;
+    for(int i = 0; i < batch.size(); i++) {
+      final int c = assignment[i] = nearest(batch.get(i), means, dist);
+      if(clusters != null) {
+        clusters[c].add(it.seek(i));
+        varsum[c] += dist[0];
+      }
+    }
+    if(update) {
+      update(means, counts, batch, assignment);
+    }
+    batch.clear();
+    if(bids != null) {
+      bids.clear();
+    }
+  }
+
+  /**
+   * Find the nearest mean.
+   *
+   * @param vec Object
+   * @param means Means
+   * @param dist Output buffer for the distance, may be {@code null}
+   * @return Index of the nearest mean
+   */
+  private int nearest(NumberVector vec, double[][] means, double[] dist) {
+    double mindist = Double.POSITIVE_INFINITY;
+    int minIndex = 0;
+    for(int i = 0; i < means.length; i++) {
+      final double d = distanceFunction.distance(vec, DoubleVector.wrap(means[i]));
+      if(d < mindist) {
+        minIndex = i;
+        mindist = d;
+      }
+    }
+    if(dist != null) {
+      dist[0] = mindist;
+    }
+    return minIndex;
+  }
+
+  /**
+   * Update the means with a batch of objects.
+   *
+   * @param means Means
+   * @param counts Per-center counts
+   * @param batch Objects of the batch
+   * @param assignment Assignment of the batch objects
+   */
+  private void update(double[][] means, double[] counts, List<? extends NumberVector> batch, int[] assignment) {
+    if(decay > 0.) {
+      for(int i = 0; i < counts.length; i++) {
+        counts[i] *= 1. - decay;
+      }
+    }
+    for(int i = 0; i < batch.size(); i++) {
+      final NumberVector vec = batch.get(i);
+      final int c = assignment[i];
+      // Per-center learning rate:
+      final double eta = 1. / (counts[c] += 1.);
+      final double[] mean = means[c];
+      for(int d = 0; d < mean.length; d++) {
+        mean[d] += eta * (vec.doubleValue(d) - mean[d]);
+      }
+    }
+  }
+
+  /**
+   * Find the first number vector column of a stream.
+   *
+   * @param meta Stream metadata
+   * @return Column number, or -1
+   */
+  private static int findVectorColumn(BundleMeta meta) {
+    for(int i = 0; i < meta.size(); i++) {
+      if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta.get(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Wrap the result.
+   *
+   * @param means Means
+   * @param clusters Cluster members
+   * @param varsum Variance sums
+   * @return Clustering
+   */
+  private Clustering<KMeansModel> wrapResult(double[][] means, ModifiableDBIDs[] clusters, double[] varsum) {
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < clusters.length; i++) {
+      if(clusters[i].size() == 0) {
+        continue;
+      }
+      result.addToplevelCluster(new Cluster<>(clusters[i], new KMeansModel(means[i], varsum[i])));
+    }
+    return result;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    /**
+     * Parameter for the batch size.
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("kmeans.minibatch.size", "Number of objects in each mini-batch.");
+
+    /**
+     * Parameter for the decay of the per-center learning rates.
+     */
+    public static final OptionID DECAY_ID = new OptionID("kmeans.minibatch.decay", "Decay of the per-center object counts after each batch, to forget old data. 0 means no decay.");
+
+    /**
+     * Random source for sampling batches.
+     */
+    public static final OptionID RANDOM_ID = new OptionID("kmeans.minibatch.random", "Random source for sampling the mini-batches.");
+
+    /**
+     * Batch size.
+     */
+    int batchsize;
+
+    /**
+     * Decay.
+     */
+    double decay;
+
+    /**
+     * Random used for sampling.
+     */
+    RandomFactory random;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter batchsizeP = new IntParameter(BATCHSIZE_ID, 1000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(batchsizeP)) {
+        batchsize = batchsizeP.intValue();
+      }
+      DoubleParameter decayP = new DoubleParameter(DECAY_ID, 0.) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE) //
+          .addConstraint(CommonConstraints.LESS_THAN_ONE_DOUBLE);
+      if(config.grab(decayP)) {
+        decay = decayP.doubleValue();
+      }
+      RandomParameter randomP = new RandomParameter(RANDOM_ID);
+      if(config.grab(randomP)) {
+        random = randomP.getValue();
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansMiniBatch<V> makeInstance() {
+      return new KMeansMiniBatch<>(distanceFunction, k, maxiter, initializer, batchsize, decay, random);
+    }
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import net.jafama.FastMath;
+
+/**
+ * Common base for parallel k-means variants that maintain distance bounds for
+ * each object, such as Hamerly's and Elkan's algorithm.
+ *
+ * The bounds are kept in data stores. Every object is processed by exactly one
+ * worker in each iteration, so the workers only write disjoint parts of these
+ * stores. The cluster sums are updated incrementally: each worker collects the
+ * changes caused by its reassignments, and these are merged on cleanup.
+ *
+ * The bound updates caused by moving the centers are deferred to the next
+ * iteration, when each worker processes its objects anyway. This saves one
+ * pass over the data per iteration.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <V> Vector type
+ */
+public abstract class AbstractKMeansBoundsProcessor<V extends NumberVector> implements Processor {
+  /**
+   * Data relation.
+   */
+  protected Relation<V> relation;
+
+  /**
+   * Distance function.
+   */
+  protected NumberVectorDistanceFunction<? super V> distance;
+
+  /**
+   * Use the square root of the distance (for squared Euclidean).
+   */
+  protected boolean issquared;
+
+  /**
+   * Assignment storage.
+   */
+  protected WritableIntegerDataStore assignment;
+
+  /**
+   * Upper bounds.
+   */
+  protected WritableDoubleDataStore upper;
+
+  /**
+   * Current mean vectors.
+   */
+  protected double[][] means;
+
+  /**
+   * Distance each mean moved in the last iteration, {@code null} in the first
+   * iteration.
+   */
+  protected double[] move;
+
+  /**
+   * Running sums of the new means.
+   */
+  protected double[][] sums;
+
+  /**
+   * Cluster sizes.
+   */
+  protected int[] sizes;
+
+  /**
+   * Number of reassigned objects in the current iteration.
+   */
+  protected int changed;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param k Number of clusters
+   */
+  public AbstractKMeansBoundsProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, int k) {
+    super();
+    this.relation = relation;
+    this.distance = distance;
+    this.issquared = distance instanceof SquaredEuclideanDistanceFunction;
+    this.assignment = assignment;
+    this.upper = upper;
+    this.sizes = new int[k];
+  }
+
+  /**
+   * Get the number of reassigned objects.
+   *
+   * @return Number of changes
+   */
+  public int changed() {
+    return changed;
+  }
+
+  /**
+   * Get the cluster sizes.
+   *
+   * @return Cluster sizes
+   */
+  public int[] getSizes() {
+    return sizes;
+  }
+
+  /**
+   * Prepare the next iteration.
+   *
+   * @param means Current means
+   * @param move Distance moved by each mean since the last iteration, or
+   *        {@code null} in the first iteration.
+   */
+  protected void nextIteration(double[][] means, double[] move) {
+    this.means = means;
+    this.move = move;
+    this.changed = 0;
+    if(sums == null) {
+      sums = new double[means.length][means[0].length];
+    }
+  }
+
+  /**
+   * Compute the new means, and the distance moved by each mean.
+   *
+   * @param move Output array for the distances moved
+   * @return New means
+   */
+  public double[][] getMeans(double[] move) {
+    double[][] newmeans = new double[means.length][];
+    for(int i = 0; i < means.length; i++) {
+      if(sizes[i] == 0) {
+        newmeans[i] = means[i]; // Keep old mean.
+        move[i] = 0.;
+        continue;
+      }
+      double[] sum = sums[i], mean = newmeans[i] = new double[sum.length];
+      final double f = 1. / sizes[i];
+      for(int d = 0; d < sum.length; d++) {
+        mean[d] = sum[d] * f;
+      }
+      move[i] = distance(means[i], mean);
+    }
+    return newmeans;
+  }
+
+  /**
+   * Compute the separation of the means: half the distance to the nearest
+   * other mean, and optionally half the distances of all pairs of means.
+   *
+   * @param means Means
+   * @param sep Output array of separation
+   * @param cdist Output matrix of center-to-center distances, may be
+   *        {@code null}
+   */
+  public void computeSeparation(double[][] means, double[] sep, double[][] cdist) {
+    final int k = means.length;
+    Arrays.fill(sep, Double.POSITIVE_INFINITY);
+    for(int i = 1; i < k; i++) {
+      for(int j = 0; j < i; j++) {
+        final double d = .5 * distance(means[i], means[j]);
+        if(cdist != null) {
+          cdist[i][j] = cdist[j][i] = d;
+        }
+        sep[i] = (d < sep[i]) ? d : sep[i];
+        sep[j] = (d < sep[j]) ? d : sep[j];
+      }
+    }
+  }
+
+  /**
+   * Compute a distance (as metric) between two means.
+   *
+   * @param a First mean
+   * @param b Second mean
+   * @return Distance
+   */
+  protected double distance(double[] a, double[] b) {
+    final double d = distance.distance(DoubleVector.wrap(a), DoubleVector.wrap(b));
+    return issquared ? FastMath.sqrt(d) : d;
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    @SuppressWarnings("unchecked")
+    Instance<V> instance = (Instance<V>) inst;
+    synchronized(this) {
+      changed += instance.changed;
+      for(int i = 0; i < sums.length; i++) {
+        if(!instance.touched[i]) {
+          continue;
+        }
+        sizes[i] += instance.sizes[i];
+        final double[] sum = sums[i], delta = instance.sums[i];
+        for(int d = 0; d < sum.length; d++) {
+          sum[d] += delta[d];
+        }
+      }
+    }
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public abstract static class Instance<V extends NumberVector> implements Processor.Instance {
+    /**
+     * Data relation.
+     */
+    protected Relation<V> relation;
+
+    /**
+     * Distance function.
+     */
+    protected NumberVectorDistanceFunction<? super V> distance;
+
+    /**
+     * Use the square root of the distance (for squared Euclidean).
+     */
+    protected boolean issquared;
+
+    /**
+     * Cluster assignment storage.
+     */
+    protected WritableIntegerDataStore assignment;
+
+    /**
+     * Upper bounds.
+     */
+    protected WritableDoubleDataStore upper;
+
+    /**
+     * Current mean vectors.
+     */
+    protected double[][] means;
+
+    /**
+     * Distance each mean moved, may be {@code null}.
+     */
+    protected double[] move;
+
+    /**
+     * Changes to the cluster sums.
+     */
+    protected double[][] sums;
+
+    /**
+     * Changes to the cluster sizes.
+     */
+    protected int[] sizes;
+
+    /**
+     * Clusters whose sums were changed.
+     */
+    protected boolean[] touched;
+
+    /**
+     * Number of reassigned objects.
+     */
+    protected int changed = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    public Instance(AbstractKMeansBoundsProcessor<V> parent) {
+      super();
+      this.relation = parent.relation;
+      this.distance = parent.distance;
+      this.issquared = parent.issquared;
+      this.assignment = parent.assignment;
+      this.upper = parent.upper;
+      this.means = parent.means;
+      this.move = parent.move;
+      final int k = means.length;
+      this.sums = new double[k][means[0].length];
+      this.sizes = new int[k];
+      this.touched = new boolean[k];
+    }
+
+    /**
+     * Compute the distance of an object to a mean, as a metric.
+     *
+     * @param fv Object
+     * @param j Mean number
+     * @return Distance
+     */
+    protected double distance(V fv, int j) {
+      final double d = distance.distance(fv, DoubleVector.wrap(means[j]));
+      return issquared ? FastMath.sqrt(d) : d;
+    }
+
+    /**
+     * Record the (re-) assignment of an object.
+     *
+     * @param fv Object
+     * @param from Previous cluster, or -1
+     * @param to New cluster
+     */
+    protected void reassign(V fv, int from, int to) {
+      final double[] newsum = sums[to];
+      touched[to] = true;
+      ++sizes[to];
+      if(from >= 0) {
+        final double[] oldsum = sums[from];
+        touched[from] = true;
+        --sizes[from];
+        for(int d = 0; d < fv.getDimensionality(); d++) {
+          final double v = fv.doubleValue(d);
+          newsum[d] += v;
+          oldsum[d] -= v;
+        }
+      }
+      else {
+        for(int d = 0; d < fv.getDimensionality(); d++) {
+          newsum[d] += fv.doubleValue(d);
+        }
+      }
+      ++changed;
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+
+/**
+ * Parallel processor for Elkan's k-means.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public class KMeansElkanProcessor<V extends NumberVector> extends AbstractKMeansBoundsProcessor<V> {
+  /**
+   * Lower bounds, one per cluster.
+   */
+  WritableDataStore<double[]> lower;
+
+  /**
+   * Separation of means.
+   */
+  double[] sep;
+
+  /**
+   * Half the center-to-center distances.
+   */
+  double[][] cdist;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @param k Number of clusters
+   */
+  public KMeansElkanProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower, int k) {
+    super(relation, distance, assignment, upper, k);
+    this.lower = lower;
+  }
+
+  /**
+   * Initialize for a new iteration.
+   *
+   * @param means Current means
+   * @param move Distance moved by each mean, {@code null} in the first
+   *        iteration
+   * @param sep Half the distance of each mean to the nearest other mean
+   * @param cdist Half the center-to-center distances
+   */
+  public void nextIteration(double[][] means, double[] move, double[] sep, double[][] cdist) {
+    super.nextIteration(means, move);
+    this.sep = sep;
+    this.cdist = cdist;
+  }
+
+  @Override
+  public Instance<V> instantiate(Executor executor) {
+    return new Instance<>(this);
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class Instance<V extends NumberVector> extends AbstractKMeansBoundsProcessor.Instance<V> {
+    /**
+     * Lower bounds.
+     */
+    private WritableDataStore<double[]> lower;
+
+    /**
+     * Separation of means.
+     */
+    private double[] sep;
+
+    /**
+     * Half the center-to-center distances.
+     */
+    private double[][] cdist;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    public Instance(KMeansElkanProcessor<V> parent) {
+      super(parent);
+      this.lower = parent.lower;
+      this.sep = parent.sep;
+      this.cdist = parent.cdist;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final int k = means.length;
+      if(move == null) {
+        V fv = relation.get(id);
+        double[] l = new double[k];
+        // Check all means:
+        double best = Double.POSITIVE_INFINITY;
+        int cur = -1;
+        for(int j = 0; j < k; j++) {
+          double dist = distance(fv, j);
+          l[j] = dist;
+          if(dist < best) {
+            cur = j;
+            best = dist;
+          }
+        }
+        lower.put(id, l);
+        assignment.putInt(id, cur);
+        upper.putDouble(id, best);
+        reassign(fv, -1, cur);
+        return;
+      }
+      final int orig = assignment.intValue(id);
+      // Apply the center movement of the last iteration to the bounds:
+      double[] l = lower.get(id);
+      for(int j = 0; j < k; j++) {
+        l[j] -= move[j];
+      }
+      double u = upper.doubleValue(id) + move[orig];
+      // Upper bound check (#2):
+      if(u <= sep[orig]) {
+        upper.putDouble(id, u);
+        return;
+      }
+      boolean recompute_u = true; // Elkan's r(x)
+      V fv = relation.get(id);
+      // Check all (other) means:
+      int cur = orig;
+      for(int j = 0; j < k; j++) {
+        if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+          continue; // Condition #3 i-iii not satisfied
+        }
+        if(recompute_u) { // Need to update bound? #3a
+          u = distance(fv, cur);
+          recompute_u = false; // Once only
+          if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+            continue;
+          }
+        }
+        double dist = distance(fv, j);
+        l[j] = dist;
+        if(dist < u) {
+          cur = j;
+          u = dist;
+        }
+      }
+      upper.putDouble(id, u);
+      // Object is to be reassigned.
+      if(cur != orig) {
+        assignment.putInt(id, cur);
+        reassign(fv, orig, cur);
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+
+/**
+ * Parallel processor for Hamerly's k-means.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public class KMeansHamerlyProcessor<V extends NumberVector> extends AbstractKMeansBoundsProcessor<V> {
+  /**
+   * Lower bounds.
+   */
+  WritableDoubleDataStore lower;
+
+  /**
+   * Separation of means.
+   */
+  double[] sep;
+
+  /**
+   * Maximum distance moved by any mean.
+   */
+  double delta;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @param k Number of clusters
+   */
+  public KMeansHamerlyProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower, int k) {
+    super(relation, distance, assignment, upper, k);
+    this.lower = lower;
+  }
+
+  /**
+   * Initialize for a new iteration.
+   *
+   * @param means Current means
+   * @param move Distance moved by each mean, {@code null} in the first
+   *        iteration
+   * @param sep Half the distance of each mean to the nearest other mean
+   */
+  public void nextIteration(double[][] means, double[] move, double[] sep) {
+    super.nextIteration(means, move);
+    this.sep = sep;
+    double delta = 0.;
+    if(move != null) {
+      for(double m : move) {
+        delta = m > delta ? m : delta;
+      }
+    }
+    this.delta = delta;
+  }
+
+  @Override
+  public Instance<V> instantiate(Executor executor) {
+    return new Instance<>(this);
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class Instance<V extends NumberVector> extends AbstractKMeansBoundsProcessor.Instance<V> {
+    /**
+     * Lower bounds.
+     */
+    private WritableDoubleDataStore lower;
+
+    /**
+     * Separation of means.
+     */
+    private double[] sep;
+
+    /**
+     * Maximum distance moved by any mean.
+     */
+    private double delta;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    public Instance(KMeansHamerlyProcessor<V> parent) {
+      super(parent);
+      this.lower = parent.lower;
+      this.sep = parent.sep;
+      this.delta = parent.delta;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      int cur = -1;
+      if(move != null) {
+        cur = assignment.intValue(id);
+        // Apply the center movement of the last iteration to the bounds:
+        final double z = lower.doubleValue(id) - delta;
+        double u = upper.doubleValue(id) + move[cur];
+        final double sa = sep[cur];
+        if(u <= z || u <= sa) {
+          upper.putDouble(id, u);
+          lower.putDouble(id, z);
+          return;
+        }
+        // Update the upper bound
+        u = distance(relation.get(id), cur);
+        if(u <= z || u <= sa) {
+          upper.putDouble(id, u);
+          lower.putDouble(id, z);
+          return;
+        }
+      }
+      // Find closest center, and distance to two closest centers
+      V fv = relation.get(id);
+      double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = -1;
+      for(int i = 0; i < means.length; i++) {
+        double dist = distance(fv, i);
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      if(minIndex != cur) {
+        assignment.putInt(id, minIndex);
+        reassign(fv, cur, minIndex);
+      }
+      upper.putDouble(id, min1);
+      lower.putDouble(id, min2);
+    }
+  }
+}
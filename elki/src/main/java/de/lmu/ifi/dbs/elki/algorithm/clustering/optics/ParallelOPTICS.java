@@ -0,0 +1,356 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.Heap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.UpdatableHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * OPTICS with parallel, speculative prefetching of the range queries.
+ *
+ * The cluster order is built sequentially exactly as in {@link OPTICSHeap}.
+ * Whenever the candidate heap changes, the epsilon-neighborhoods of the top
+ * candidates (and, when the heap runs empty, of the next seed objects) are
+ * queried in background threads, up to a bounded number of pending queries.
+ * Because every object is expanded exactly once, no prefetched query is
+ * wasted; the prediction only affects how much of the query work overlaps.
+ *
+ * The cluster order is identical to {@link OPTICSHeap}, independent of the
+ * number of threads.
+ *
+ * Reference:
+ * <p>
+ * M. Ankerst, M. Breunig, H.-P. Kriegel, and J. Sander:<br />
+ * OPTICS: Ordering Points to Identify the Clustering Structure. <br/>
+ * In: Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99).
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf Instance
+ * @apiviz.uses ParallelCore
+ *
+ * @param <O> the type of DatabaseObjects handled by the algorithm
+ */
+@Title("OPTICS: Density-Based Hierarchical Clustering")
+@Description("Algorithm to find density-connected sets in a database based on the parameters 'minPts' and 'epsilon' (specifying a volume). These two parameters determine a density threshold for clustering.")
+@Reference(authors = "M. Ankerst, M. Breunig, H.-P. Kriegel, and J. Sander", //
+    title = "OPTICS: Ordering Points to Identify the Clustering Structure", //
+    booktitle = "Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99)", //
+    url = "http://dx.doi.org/10.1145/304181.304187")
+public class ParallelOPTICS<O> extends AbstractOPTICS<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelOPTICS.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   */
+  public ParallelOPTICS(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts) {
+    super(distanceFunction, epsilon, minpts);
+  }
+
+  @Override
+  public ClusterOrder run(Database db, Relation<O> relation) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      return new Instance(db, relation, core).run();
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Instance for processing a single data set.
+   *
+   * @author Erich Schubert
+   */
+  private class Instance {
+    /**
+     * Holds a set of processed ids.
+     */
+    private ModifiableDBIDs processedIDs;
+
+    /**
+     * Heap of candidates.
+     */
+    UpdatableHeap<OPTICSHeapEntry> heap;
+
+    /**
+     * Output cluster order.
+     */
+    ClusterOrder clusterOrder;
+
+    /**
+     * IDs to process.
+     */
+    private DBIDs ids;
+
+    /**
+     * Progress for logging.
+     */
+    FiniteProgress progress;
+
+    /**
+     * Range query.
+     */
+    RangeQuery<O> rangeQuery;
+
+    /**
+     * Parallel core.
+     */
+    ParallelCore core;
+
+    /**
+     * Pending (or completed, but not yet consumed) range queries.
+     */
+    WritableDataStore<Future<DoubleDBIDList>> prefetched;
+
+    /**
+     * Number of pending queries, and the maximum number allowed.
+     */
+    int pending, window;
+
+    /**
+     * Iterator for prefetching the next seeds.
+     */
+    DBIDIter seeds;
+
+    /**
+     * Number of queries that had to be run synchronously.
+     */
+    long misses;
+
+    /**
+     * Constructor for a single data set.
+     *
+     * @param db Database
+     * @param relation Data relation
+     * @param core Parallel core
+     */
+    public Instance(Database db, Relation<O> relation, ParallelCore core) {
+      ids = relation.getDBIDs();
+      processedIDs = DBIDUtil.newHashSet(ids.size());
+      clusterOrder = new ClusterOrder(ids, "OPTICS Clusterorder", "optics-clusterorder");
+      progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
+      DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+      rangeQuery = db.getRangeQuery(dq, epsilon);
+      heap = new UpdatableHeap<>();
+      this.core = core;
+      prefetched = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, Future.class);
+      window = Math.max(4, core.getParallelism() << 2);
+    }
+
+    /**
+     * Process the data set.
+     *
+     * @return Cluster order result.
+     */
+    public ClusterOrder run() {
+      seeds = ids.iter();
+      for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+        if(!processedIDs.contains(iditer)) {
+          assert (heap.isEmpty());
+          expandClusterOrder(iditer);
+        }
+      }
+      LOG.ensureCompleted(progress);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(ParallelOPTICS.class.getName() + ".synchronous-queries", misses));
+      }
+      return clusterOrder;
+    }
+
+    /**
+     * OPTICS-function expandClusterOrder.
+     *
+     * @param objectID the currently processed object
+     */
+    protected void expandClusterOrder(DBIDRef objectID) {
+      heap.add(new OPTICSHeapEntry(DBIDUtil.deref(objectID), null, Double.POSITIVE_INFINITY));
+
+      while(!heap.isEmpty()) {
+        final OPTICSHeapEntry current = heap.poll();
+        clusterOrder.add(current.objectID, current.reachability, current.predecessorID);
+        processedIDs.add(current.objectID);
+
+        DoubleDBIDList neighbors = getNeighbors(current.objectID);
+        if(neighbors.size() >= minpts) {
+          DoubleDBIDListIter neighbor = neighbors.iter();
+          final double coreDistance = neighbor.seek(minpts - 1).doubleValue();
+
+          for(neighbor.seek(0); neighbor.valid(); neighbor.advance()) {
+            if(processedIDs.contains(neighbor)) {
+              continue;
+            }
+            double reachability = MathUtil.max(neighbor.doubleValue(), coreDistance);
+            heap.add(new OPTICSHeapEntry(DBIDUtil.deref(neighbor), current.objectID, reachability));
+          }
+        }
+        prefetch();
+        LOG.incrementProcessed(progress);
+      }
+    }
+
+    /**
+     * Get the sorted neighbors of an object, from the prefetched queries if
+     * possible.
+     *
+     * @param id Object
+     * @return Neighbors, sorted by distance
+     */
+    private DoubleDBIDList getNeighbors(DBIDRef id) {
+      Future<DoubleDBIDList> f = prefetched.get(id);
+      if(f == null) {
+        ++misses;
+        return new RangeTask(DBIDUtil.deref(id)).call();
+      }
+      prefetched.put(id, null);
+      --pending;
+      try {
+        return f.get();
+      }
+      catch(ExecutionException e) {
+        throw new AbortException("Parallel range query failed.", e);
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("Parallel range query interrupted.", e);
+      }
+    }
+
+    /**
+     * Submit range queries for the most likely next objects.
+     */
+    private void prefetch() {
+      // The first heap positions contain the best candidates.
+      Heap<OPTICSHeapEntry>.UnorderedIter it = heap.unorderedIter();
+      for(int i = window << 1; pending < window && i > 0 && it.valid(); it.advance(), i--) {
+        submit(it.get().objectID);
+      }
+      if(heap.isEmpty()) {
+        // Next seeds, if the current cluster is exhausted.
+        for(; pending < window && seeds.valid(); seeds.advance()) {
+          submit(seeds);
+        }
+      }
+    }
+
+    /**
+     * Submit a range query, unless already done.
+     *
+     * @param id Object
+     */
+    private void submit(DBIDRef id) {
+      if(prefetched.get(id) == null && !processedIDs.contains(id)) {
+        prefetched.put(id, core.submit(new RangeTask(DBIDUtil.deref(id))));
+        ++pending;
+      }
+    }
+
+    /**
+     * Range query task.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class RangeTask implements Callable<DoubleDBIDList> {
+      /**
+       * Query object.
+       */
+      private DBID id;
+
+      /**
+       * Constructor.
+       *
+       * @param id Query object
+       */
+      RangeTask(DBID id) {
+        this.id = id;
+      }
+
+      @Override
+      public DoubleDBIDList call() {
+        ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
+        rangeQuery.getRangeForDBID(id, epsilon, neighbors);
+        neighbors.sort();
+        return neighbors;
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractOPTICS.Parameterizer<O> {
+    @Override
+    protected ParallelOPTICS<O> makeInstance() {
+      return new ParallelOPTICS<>(distanceFunction, epsilon, minpts);
+    }
+  }
+}
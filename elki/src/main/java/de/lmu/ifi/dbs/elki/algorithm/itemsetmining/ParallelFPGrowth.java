@@ -0,0 +1,474 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.BitVector;
+import de.lmu.ifi.dbs.elki.data.SparseFeatureVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.EnsembleExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Parallel FP-Growth, using a compact array-based FP-tree.
+ *
+ * The FP-tree is stored in primitive arrays (parent, item, count, and the
+ * links of the header table) instead of one object per node, which reduces
+ * the memory use per node considerably. The links to child nodes are only
+ * needed during construction, and are released afterwards.
+ *
+ * The tree is not modified when mining. Therefore, the conditional pattern
+ * bases (projected databases) of the frequent items are independent, and
+ * are mined in parallel using the current {@link ParallelCore}. The result is
+ * the same as with {@link FPGrowth}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf ArrayFPTree
+ * @apiviz.uses ParallelCore
+ */
+public class ParallelFPGrowth extends FPGrowth {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelFPGrowth.class);
+
+  /**
+   * Prefix for statistics.
+   */
+  private static final String STAT = ParallelFPGrowth.class.getName() + ".";
+
+  /**
+   * Constructor.
+   *
+   * @param minsupp Minimum support (relative or absolute)
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   */
+  public ParallelFPGrowth(double minsupp, int minlength, int maxlength) {
+    super(minsupp, minlength, maxlength);
+  }
+
+  @Override
+  public FrequentItemsetsResult run(Database db, final Relation<BitVector> relation) {
+    final int dim = RelationUtil.dimensionality(relation);
+    final VectorFieldTypeInformation<BitVector> meta = RelationUtil.assumeVectorField(relation);
+    // Compute absolute minsupport
+    final int minsupp = getMinimumSupport(relation.size());
+
+    LOG.verbose("Finding item frequencies for ordering.");
+    final int[] counts = countItemSupport(relation, dim);
+    // Forward and backward indexes
+    int[] iidx = new int[dim];
+    final int[] idx = buildIndex(counts, iidx, minsupp);
+    final int items = idx.length;
+
+    LOG.statistics(new LongStatistic(STAT + "raw-items", dim));
+    LOG.statistics(new LongStatistic(STAT + "raw-transactions", relation.size()));
+    LOG.statistics(new DoubleStatistic(STAT + "minsupp-relative", minsupp / (double) relation.size()));
+    LOG.statistics(new LongStatistic(STAT + "minsupp-absolute", minsupp));
+
+    LOG.verbose("Building FP-Tree.");
+    Duration ctime = LOG.newDuration(STAT + "fp-tree.construction.time").begin();
+    final ArrayFPTree tree = buildFPTree(relation, iidx, items);
+    // Reduce memory usage:
+    tree.reduceMemory();
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(STAT + "items", items));
+      LOG.statistics(new LongStatistic(STAT + "nodes", tree.size));
+      LOG.statistics(new LongStatistic(STAT + "transactions", tree.count[0]));
+    }
+    LOG.statistics(ctime.end());
+
+    LOG.verbose("Extracting frequent patterns.");
+    Duration etime = LOG.newDuration(STAT + "fp-growth.extraction.time").begin();
+    final List<Itemset> solution = new ArrayList<>();
+    // Start extraction with the least frequent items
+    final int stop = (minlength > 1) ? minlength - 1 : 0;
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", items - stop, LOG) : null;
+    EnsembleExecutor.run(items - stop, new EnsembleExecutor.Member<List<Itemset>>() {
+      @Override
+      public List<Itemset> run(int i) {
+        final int item = items - 1 - i;
+        final List<Itemset> found = new ArrayList<>();
+        tree.extract(minsupp, minlength, maxlength, item, new int[item + 1], 0, new int[item], new int[item], new FPTree.Collector() {
+          @Override
+          public void collect(int support, int[] data, int start, int plen) {
+            // Always translate the indexes back to the original values via
+            // 'idx'!
+            if(plen - start == 1) {
+              found.add(new OneItemset(idx[data[start]], support));
+              return;
+            }
+            // Copy from buffer to a permanent storage
+            int[] indices = new int[plen - start];
+            for(int k = start, j = 0; k < plen; k++) {
+              indices[j++] = idx[data[k]]; // Translate to original items
+            }
+            Arrays.sort(indices);
+            found.add(new SparseItemset(indices, support));
+          }
+        });
+        return found;
+      }
+    }, new EnsembleExecutor.Consumer<List<Itemset>>() {
+      @Override
+      public void accept(int i, List<Itemset> result) {
+        solution.addAll(result);
+        LOG.incrementProcessed(prog);
+      }
+    });
+    LOG.ensureCompleted(prog);
+    Collections.sort(solution);
+    LOG.statistics(etime.end());
+    LOG.statistics(new LongStatistic(STAT + "frequent-itemsets", solution.size()));
+
+    return new FrequentItemsetsResult("FP-Growth", "fp-growth", solution, meta, relation.size());
+  }
+
+  /**
+   * Build the array-based FP-tree.
+   *
+   * @param relation Data
+   * @param iidx Inverse index (dimension to item rank)
+   * @param items Number of items
+   * @return FP-tree
+   */
+  private ArrayFPTree buildFPTree(final Relation<BitVector> relation, int[] iidx, final int items) {
+    ArrayFPTree tree = new ArrayFPTree(items, relation.size() + 1);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building FP-tree", relation.size(), LOG) : null;
+    int[] buf = new int[items];
+    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+      // Convert item to index representation:
+      int l = 0;
+      SparseFeatureVector<?> bv = relation.get(iditer);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        int i = iidx[bv.iterDim(it)];
+        if(i < 0) {
+          continue; // Skip non-frequent items
+        }
+        buf[l++] = i;
+      }
+      // Skip too short entries
+      if(l >= minlength) {
+        Arrays.sort(buf, 0, l); // Sort ascending
+        tree.insert(buf, 0, l, 1);
+      }
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+    return tree;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * FP-tree stored in primitive arrays.
+   *
+   * Node 0 is the root. For every node, we store the parent, the item, the
+   * count, and the next node with the same item (forming the linked lists of
+   * the header table). Child and sibling links are only used for
+   * construction.
+   *
+   * Mining does not modify the tree, so different items can be mined
+   * concurrently.
+   *
+   * @author Erich Schubert
+   */
+  public static class ArrayFPTree {
+    /**
+     * Parent node, item, count, and next node with the same item.
+     */
+    int[] parent, key, count, next;
+
+    /**
+     * First child and next sibling (construction only).
+     */
+    int[] child, sibling;
+
+    /**
+     * Children of the root, by item (construction only).
+     */
+    int[] rootchild;
+
+    /**
+     * Header table: first node of each item.
+     */
+    int[] header;
+
+    /**
+     * Total support of each item.
+     */
+    int[] support;
+
+    /**
+     * Number of nodes, including the root.
+     */
+    int size = 1;
+
+    /**
+     * Constructor.
+     *
+     * @param items Number of items in header table
+     * @param capacity Initial capacity
+     */
+    public ArrayFPTree(int items, int capacity) {
+      capacity = Math.max(capacity, 2);
+      parent = new int[capacity];
+      key = new int[capacity];
+      count = new int[capacity];
+      next = new int[capacity];
+      child = new int[capacity];
+      sibling = new int[capacity];
+      header = new int[items];
+      support = new int[items];
+      rootchild = new int[items];
+      Arrays.fill(header, -1);
+      Arrays.fill(rootchild, -1);
+      // Root node:
+      parent[0] = -1;
+      key[0] = -1;
+      next[0] = -1;
+      child[0] = -1;
+      sibling[0] = -1;
+    }
+
+    /**
+     * Insert an itemset into the tree.
+     *
+     * @param buf Buffer
+     * @param i Start position in buffer
+     * @param l End position in buffer
+     * @param weight Weight
+     */
+    public void insert(int[] buf, int i, int l, int weight) {
+      count[0] += weight;
+      for(int node = 0; i < l; i++) {
+        final int label = buf[i];
+        int c = node == 0 ? rootchild[label] : child[node];
+        if(node != 0) {
+          while(c >= 0 && key[c] != label) {
+            c = sibling[c];
+          }
+        }
+        if(c < 0) {
+          c = newNode(node, label);
+        }
+        count[c] += weight;
+        support[label] += weight;
+        node = c;
+      }
+    }
+
+    /**
+     * Create a new node of the FP-tree, linking it into the header table.
+     *
+     * @param p Parent node
+     * @param label Node label
+     * @return New node
+     */
+    private int newNode(int p, int label) {
+      if(size == parent.length) {
+        final int newsize = parent.length + (parent.length >>> 1);
+        if(newsize < 0) {
+          throw new AbortException("FP-tree exceeds the maximum array size.");
+        }
+        parent = Arrays.copyOf(parent, newsize);
+        key = Arrays.copyOf(key, newsize);
+        count = Arrays.copyOf(count, newsize);
+        next = Arrays.copyOf(next, newsize);
+        child = Arrays.copyOf(child, newsize);
+        sibling = Arrays.copyOf(sibling, newsize);
+      }
+      final int n = size++;
+      parent[n] = p;
+      key[n] = label;
+      count[n] = 0;
+      child[n] = -1;
+      // Prepend to linked lists.
+      next[n] = header[label];
+      header[label] = n;
+      if(p == 0) {
+        rootchild[label] = n;
+        sibling[n] = -1;
+      }
+      else {
+        sibling[n] = child[p];
+        child[p] = n;
+      }
+      return n;
+    }
+
+    /**
+     * Release the memory used for construction only, and trim the arrays.
+     */
+    public void reduceMemory() {
+      child = sibling = rootchild = null;
+      if(size < parent.length) {
+        parent = Arrays.copyOf(parent, size);
+        key = Arrays.copyOf(key, size);
+        count = Arrays.copyOf(count, size);
+        next = Arrays.copyOf(next, size);
+      }
+    }
+
+    /**
+     * Extract itemsets ending in the given item.
+     *
+     * @param minsupp Minimum support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     * @param item Current item
+     * @param postfix Items to append
+     * @param plen Postfix length
+     * @param buf2 Scratch buffer, at least of size item
+     * @param buf3 Scratch buffer, at least of size item
+     * @param col Itemset collector
+     */
+    public void extract(int minsupp, int minlength, int maxlength, int item, int[] postfix, int plen, int[] buf2, int[] buf3, FPTree.Collector col) {
+      final int first = header[item];
+      // Skip items that do not appear in the tree, or are not frequent.
+      if(first < 0 || support[item] < minsupp) {
+        return;
+      }
+      // Only a single node: the pattern base is a single path.
+      if(next[first] < 0) {
+        extractLinear(count[first], minlength, maxlength, first, postfix, plen, col);
+        return;
+      }
+      // Check which parent items to keep in the projection.
+      Arrays.fill(buf3, 0, item, 0);
+      for(int cur = first; cur >= 0; cur = next[cur]) {
+        for(int p = parent[cur]; p > 0; p = parent[p]) {
+          buf3[key[p]] += count[cur];
+        }
+      }
+      // For testing minimum length:
+      final int mminlength = minlength - (plen + 1);
+      if(mminlength > 0) {
+        int fparents = 0;
+        for(int i = 0; i < item; i++) {
+          if(buf3[i] >= minsupp) {
+            fparents += 1;
+          }
+        }
+        if(fparents < mminlength) {
+          return; // Not enough parents that are still frequent.
+        }
+      }
+      // Build projected tree:
+      ArrayFPTree proj = new ArrayFPTree(item, 16);
+      for(int cur = first; cur >= 0; cur = next[cur]) {
+        int j = item;
+        for(int p = parent[cur]; p > 0; p = parent[p]) {
+          if(buf3[key[p]] >= minsupp) {
+            buf2[--j] = key[p];
+          }
+        }
+        if(item - j >= mminlength) {
+          proj.insert(buf2, j, item, count[cur]);
+        }
+      }
+      // Release memory:
+      proj.reduceMemory();
+      postfix[plen++] = item;
+      if(plen >= minlength && plen <= maxlength) {
+        col.collect(support[item], postfix, 0, plen);
+      }
+      if(plen == maxlength) {
+        return; // Any more items will exceed the maximum length.
+      }
+      for(int j = item - 1; j >= 0; j--) {
+        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, col);
+      }
+    }
+
+    /**
+     * Extract itemsets from a single path.
+     *
+     * @param supp Current support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     * @param node Current node
+     * @param postfix Postfix for extracted itemsets
+     * @param plen Postfix length
+     * @param col Output collector
+     */
+    private void extractLinear(int supp, int minlength, int maxlength, int node, int[] postfix, int plen, FPTree.Collector col) {
+      final int item = key[node];
+      // For testing minimum length:
+      final int mminlength = minlength - plen;
+      // Unsatisfiable even with current item:
+      if(item + 1 < mminlength) {
+        return;
+      }
+      // Add current item:
+      postfix[plen++] = item;
+      if(plen >= minlength && plen <= maxlength) {
+        col.collect(supp, postfix, 0, plen);
+      }
+      // Any more parents will exceed the maximum length:
+      if(plen == maxlength) {
+        return;
+      }
+      // Look at parent nodes:
+      for(int p = parent[node]; p > 0; p = parent[p]) {
+        if(key[p] < mminlength) {
+          break; // Too short.
+        }
+        extractLinear(supp, minlength, maxlength, p, postfix, plen, col);
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends FPGrowth.Parameterizer {
+    @Override
+    protected ParallelFPGrowth makeInstance() {
+      return new ParallelFPGrowth(minsupp, minlength, maxlength);
+    }
+  }
+}
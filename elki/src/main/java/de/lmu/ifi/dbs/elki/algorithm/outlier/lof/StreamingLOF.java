@@ -0,0 +1,985 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.outlier.lof;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
+import de.lmu.ifi.dbs.elki.index.Index;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.result.outlier.QuotientOutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import net.jafama.FastMath;
+
+/**
+ * Incremental LOF over a sliding window of a data stream.
+ *
+ * Objects are inserted in micro-batches; when the window is full, the oldest
+ * objects expire. Objects can also be deleted explicitly. After each batch,
+ * only the kNN lists, reachability densities and LOF scores that can have
+ * changed are recomputed (in parallel), following the update rules of
+ * incremental LOF. The changed scores are reported to a {@link Listener}
+ * instead of producing a full outlier result per batch.
+ *
+ * The kNN and range queries are run against the window contents; for large
+ * windows a dynamic index (e.g. an M-tree) should be used, or every batch
+ * requires a linear scan of the window. When running with more than one
+ * thread, the index must support concurrent read access.
+ *
+ * The reverse neighbors of new objects are found with a range query whose
+ * radius is a high quantile of the k-distances in the window, not the
+ * maximum. The few objects with a larger k-distance (about the square root of
+ * the window size) are checked directly, so a single outlier does not widen
+ * every query. The quantile is re-estimated with a scan of the window when
+ * too many objects exceed it, or after as many k-distance changes as the
+ * window holds.
+ *
+ * When run as a regular algorithm, the relation is replayed as a stream, and
+ * each object is scored with the last LOF value it had before it left the
+ * window. If the window is at least as large as the data set, the scores are
+ * identical to those of {@link LOF}.
+ *
+ * Reference:
+ * <p>
+ * D. Pokrajac, A. Lazarevic, L. J. Latecki<br />
+ * Incremental Local Outlier Detection for Data Streams<br />
+ * Proc. IEEE Symposium on Computational Intelligence and Data Mining (CIDM
+ * 2007)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Window
+ * @apiviz.uses Listener
+ * @apiviz.uses BundleStreamSource
+ * @apiviz.uses ParallelCore
+ *
+ * @param <O> Object type
+ */
+@Title("Streaming LOF: incremental Local Outlier Factor over a sliding window")
+@Reference(authors = "D. Pokrajac, A. Lazarevic, L. J. Latecki", //
+    title = "Incremental Local Outlier Detection for Data Streams", //
+    booktitle = "Proc. IEEE Symposium on Computational Intelligence and Data Mining (CIDM 2007)", //
+    url = "http://dx.doi.org/10.1109/CIDM.2007.368917")
+public class StreamingLOF<O> extends AbstractDistanceBasedAlgorithm<O, OutlierResult> implements OutlierAlgorithm {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(StreamingLOF.class);
+
+  /**
+   * Minimum number of objects per parallel task.
+   */
+  private static final int BLOCKSIZE = 16;
+
+  /**
+   * The number of neighbors to query (including the query point!)
+   */
+  protected int k;
+
+  /**
+   * Maximum number of objects in the window.
+   */
+  protected int window;
+
+  /**
+   * Number of objects per batch.
+   */
+  protected int batchsize;
+
+  /**
+   * Index for the window contents, may be {@code null}.
+   */
+  protected IndexFactory<O, ?> indexFactory;
+
+  /**
+   * Constructor.
+   *
+   * @param k the number of neighbors to use for comparison (excluding the query
+   *        point)
+   * @param distanceFunction the neighborhood distance function
+   * @param window Maximum window size
+   * @param batchsize Number of objects per batch
+   * @param indexFactory Index for the window contents, may be {@code null}
+   */
+  public StreamingLOF(int k, DistanceFunction<? super O> distanceFunction, int window, int batchsize, IndexFactory<O, ?> indexFactory) {
+    super(distanceFunction);
+    this.k = k + 1; // + query point
+    this.window = window;
+    this.batchsize = batchsize;
+    this.indexFactory = indexFactory;
+  }
+
+  /**
+   * Replay a relation as data stream, and score each object with its last LOF
+   * score within the window.
+   *
+   * @param relation Data relation
+   * @return Outlier result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    final WritableDoubleDataStore lofs = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    Listener listener = new Listener() {
+      @Override
+      public void update(DBIDs removed, DoubleDBIDList changed) {
+        for(DoubleDBIDListIter it = changed.iter(); it.valid(); it.advance()) {
+          lofs.putDouble(it, it.doubleValue());
+        }
+      }
+    };
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Streaming LOF", relation.size(), LOG) : null;
+    Window w = new Window(relation.getDataTypeInformation());
+    ArrayModifiableDBIDs bids = DBIDUtil.newArray(batchsize);
+    List<O> batch = new ArrayList<>(batchsize);
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      bids.add(it);
+      batch.add(relation.get(it));
+      LOG.incrementProcessed(prog);
+      if(batch.size() >= batchsize) {
+        w.update(null, bids, batch, listener);
+        bids.clear();
+        batch.clear();
+      }
+    }
+    if(!batch.isEmpty()) {
+      w.update(null, bids, batch, listener);
+    }
+    LOG.ensureCompleted(prog);
+    w.logStatistics();
+
+    DoubleMinMax lofminmax = new DoubleMinMax();
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      lofminmax.put(lofs.doubleValue(it));
+    }
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Streaming Local Outlier Factor", "streaming-lof-outlier", lofs, relation.getDBIDs());
+    OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(lofminmax.getMin(), lofminmax.getMax(), 0.0, Double.POSITIVE_INFINITY, 1.0);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Process a (potentially unbounded) data stream, reporting score changes to
+   * the listener after every batch.
+   *
+   * Objects without a DBID in the stream are assigned new DBIDs.
+   *
+   * @param source Data stream
+   * @param listener Listener to receive score updates
+   * @return Final window state, or {@code null} if the stream was empty
+   */
+  public Window process(BundleStreamSource source, Listener listener) {
+    Window w = null;
+    ArrayModifiableDBIDs bids = DBIDUtil.newArray(batchsize);
+    List<O> batch = new ArrayList<>(batchsize);
+    DBIDVar var = DBIDUtil.newVar();
+    int col = -1;
+    loop: while(true) {
+      BundleStreamSource.Event ev = source.nextEvent();
+      switch(ev){
+      case META_CHANGED:
+        col = findColumn(source.getMeta());
+        break; // switch
+      case NEXT_OBJECT: {
+        if(col < 0) {
+          throw new AbortException("The data stream does not contain a suitable column for distance function " + getDistanceFunction());
+        }
+        if(w == null) {
+          @SuppressWarnings("unchecked")
+          SimpleTypeInformation<O> type = (SimpleTypeInformation<O>) source.getMeta().get(col);
+          w = new Window(type);
+        }
+        @SuppressWarnings("unchecked")
+        O obj = (O) source.data(col);
+        if(!source.hasDBIDs() || !source.assignDBID(var)) {
+          var.set(DBIDUtil.generateSingleDBID());
+        }
+        bids.add(var);
+        batch.add(obj);
+        if(batch.size() >= batchsize) {
+          w.update(null, bids, batch, listener);
+          bids.clear();
+          batch.clear();
+        }
+        break; // switch
+      }
+      case END_OF_STREAM:
+        break loop;
+      default:
+        LOG.warning("Unknown bundle stream event. API inconsistent? " + ev);
+        break; // switch
+      }
+    }
+    if(!batch.isEmpty()) {
+      w.update(null, bids, batch, listener);
+    }
+    if(w != null) {
+      w.logStatistics();
+    }
+    return w;
+  }
+
+  /**
+   * Find the first stream column suitable for the distance function.
+   *
+   * @param meta Stream metadata
+   * @return Column number, or -1
+   */
+  private int findColumn(BundleMeta meta) {
+    final TypeInformation restriction = getDistanceFunction().getInputTypeRestriction();
+    for(int i = 0; i < meta.size(); i++) {
+      if(restriction.isAssignableFromType(meta.get(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Create a new, empty window.
+   *
+   * @param type Data type
+   * @return Window
+   */
+  public Window newWindow(SimpleTypeInformation<O> type) {
+    return new Window(type);
+  }
+
+  /**
+   * The k-distance of a neighbor list, infinite if the list is incomplete.
+   *
+   * @param knn Neighbor list
+   * @return k-distance
+   */
+  private double kdist(KNNList knn) {
+    return knn.size() < k ? Double.POSITIVE_INFINITY : knn.getKNNDistance();
+  }
+
+  /**
+   * Process a range of indexes in parallel blocks.
+   *
+   * @param core Parallel core
+   * @param size Number of objects
+   * @param step Step to execute
+   */
+  private static void parallel(ParallelCore core, int size, final Step step) {
+    final int rows = Math.max(BLOCKSIZE, (size + (core.getParallelism() << 2) - 1) / (core.getParallelism() << 2));
+    if(rows >= size) {
+      step.process(0, size);
+      return;
+    }
+    List<Future<Void>> futures = new ArrayList<>();
+    for(int start = rows; start < size; start += rows) {
+      final int s = start, e = Math.min(size, start + rows);
+      futures.add(core.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          step.process(s, e);
+          return null;
+        }
+      }));
+    }
+    // Process the first block in this thread.
+    step.process(0, rows);
+    try {
+      for(Future<Void> f : futures) {
+        f.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel LOF update failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parallel LOF update interrupted.", e);
+    }
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Listener for score changes.
+   *
+   * @author Erich Schubert
+   */
+  public interface Listener {
+    /**
+     * Called after each batch.
+     *
+     * @param removed Objects that were removed from the window (expired or
+     *        deleted)
+     * @param changed New and changed LOF scores
+     */
+    void update(DBIDs removed, DoubleDBIDList changed);
+  }
+
+  /**
+   * A block of objects to process in parallel.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private interface Step {
+    /**
+     * Process a block.
+     *
+     * @param start First index
+     * @param end End index (exclusive)
+     */
+    void process(int start, int end);
+  }
+
+  /**
+   * Sliding window state: the current objects, their neighbors and reverse
+   * neighbors, densities and scores.
+   *
+   * @author Erich Schubert
+   */
+  public class Window {
+    /**
+     * Objects currently in the window.
+     */
+    private HashSetModifiableDBIDs ids = DBIDUtil.newHashSet();
+
+    /**
+     * Insertion order, for expiry. May contain already deleted objects, but at
+     * most twice as many entries as the window holds.
+     */
+    private ArrayDeque<DBID> fifo = new ArrayDeque<>();
+
+    /**
+     * Window contents.
+     */
+    private MaterializedRelation<O> relation;
+
+    /**
+     * Nearest neighbors (including the object itself).
+     */
+    private WritableDataStore<KNNList> knns;
+
+    /**
+     * Reverse nearest neighbors (including the object itself).
+     */
+    private WritableDataStore<ModifiableDBIDs> rknns;
+
+    /**
+     * Local reachability densities and outlier factors.
+     */
+    private WritableDoubleDataStore lrds, lofs;
+
+    /**
+     * Queries on the window.
+     */
+    private KNNQuery<O> knnq;
+
+    /**
+     * Range queries, to find the reverse neighbors of new objects.
+     */
+    private RangeQuery<O> rangeq;
+
+    /**
+     * Distance query, to check the objects with a large k-distance.
+     */
+    private DistanceQuery<O> distq;
+
+    /**
+     * Radius of the reverse neighbor range queries. All objects not in
+     * {@link #wide} have a k-distance of at most this value.
+     */
+    private double kdistbound = Double.POSITIVE_INFINITY;
+
+    /**
+     * Objects with a k-distance larger than {@link #kdistbound}.
+     */
+    private HashSetModifiableDBIDs wide = DBIDUtil.newHashSet();
+
+    /**
+     * Number of k-distance changes since the bound was estimated.
+     */
+    private int kdistchanges;
+
+    /**
+     * Statistics: number of batches, recomputed kNN, LRD and LOF values.
+     */
+    private long batches, knnupdates, lrdupdates, lofupdates;
+
+    /**
+     * Constructor.
+     *
+     * @param type Data type
+     */
+    protected Window(SimpleTypeInformation<O> type) {
+      relation = new MaterializedRelation<>(type, ids);
+      final int hints = DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP;
+      knns = DataStoreUtil.makeStorage(ids, hints, KNNList.class);
+      rknns = DataStoreUtil.makeStorage(ids, hints, ModifiableDBIDs.class);
+      // NaN defaults, so that the scores of new objects are always reported.
+      lrds = DataStoreUtil.makeDoubleStorage(ids, hints, Double.NaN);
+      lofs = DataStoreUtil.makeDoubleStorage(ids, hints, Double.NaN);
+      if(indexFactory != null) {
+        Index index = indexFactory.instantiate(relation);
+        if(!(index instanceof DynamicIndex)) {
+          throw new AbortException("Streaming LOF requires a dynamic index that supports insertions and deletions.");
+        }
+        index.initialize();
+        relation.getHierarchy().add(relation, index);
+      }
+      distq = relation.getDistanceQuery(getDistanceFunction());
+      knnq = relation.getKNNQuery(distq, k);
+      rangeq = relation.getRangeQuery(distq);
+    }
+
+    /**
+     * Process one micro-batch: remove objects, insert new objects, expire the
+     * oldest objects if the window is full, and update the affected scores.
+     *
+     * @param remove Objects to delete, may be {@code null}
+     * @param add New object ids
+     * @param objs New objects, in the same order as the ids
+     * @param listener Listener to notify of the changes, may be {@code null}
+     */
+    public void update(DBIDs remove, ArrayDBIDs add, List<? extends O> objs, Listener listener) {
+      assert (add.size() == objs.size());
+      ParallelCore core = ParallelCore.getCore();
+      core.connect();
+      try {
+        HashSetModifiableDBIDs removed = DBIDUtil.newHashSet();
+        if(remove != null) {
+          for(DBIDIter it = remove.iter(); it.valid(); it.advance()) {
+            if(ids.contains(it)) {
+              removed.add(it);
+            }
+          }
+        }
+        while(ids.size() - removed.size() + add.size() > window && !fifo.isEmpty()) {
+          DBID old = fifo.poll();
+          if(ids.contains(old)) {
+            removed.add(old);
+          }
+        }
+        // Objects with a removed neighbor need new kNN.
+        HashSetModifiableDBIDs affected = delete(removed);
+        compactFifo();
+        insert(add, objs);
+        findReverseNeighbors(core, add, affected);
+        ArrayModifiableDBIDs todo = DBIDUtil.newArray(affected);
+        todo.addDBIDs(add);
+        HashSetModifiableDBIDs lrdtodo = updateKNNs(core, todo);
+        HashSetModifiableDBIDs loftodo = updateLRDs(core, lrdtodo);
+        ModifiableDoubleDBIDList changed = updateLOFs(core, loftodo);
+        updateKDistBound();
+        ++batches;
+        if(listener != null) {
+          listener.update(removed, changed);
+        }
+      }
+      finally {
+        core.disconnect();
+      }
+    }
+
+    /**
+     * Delete objects from the window.
+     *
+     * @param removed Objects to remove
+     * @return Remaining objects that had a removed object as neighbor
+     */
+    private HashSetModifiableDBIDs delete(DBIDs removed) {
+      HashSetModifiableDBIDs affected = DBIDUtil.newHashSet();
+      for(DBIDIter it = removed.iter(); it.valid(); it.advance()) {
+        affected.addDBIDs(rknns.get(it));
+        for(DBIDIter n = knns.get(it).iter(); n.valid(); n.advance()) {
+          ModifiableDBIDs rknn = rknns.get(n);
+          if(rknn != null) {
+            rknn.remove(it);
+          }
+        }
+        ids.remove(it);
+        wide.remove(it);
+        relation.delete(it);
+        knns.delete(it);
+        rknns.delete(it);
+        lrds.delete(it);
+        lofs.delete(it);
+      }
+      affected.removeDBIDs(removed);
+      return affected;
+    }
+
+    /**
+     * Drop deleted objects from the expiry queue, so that it does not grow if
+     * objects are deleted explicitly as fast as they are inserted.
+     */
+    private void compactFifo() {
+      while(!fifo.isEmpty() && !ids.contains(fifo.peek())) {
+        fifo.poll();
+      }
+      if(fifo.size() > (ids.size() << 1)) {
+        ArrayDeque<DBID> live = new ArrayDeque<>(ids.size() + 1);
+        for(DBID id : fifo) {
+          if(ids.contains(id)) {
+            live.add(id);
+          }
+        }
+        fifo = live;
+      }
+    }
+
+    /**
+     * Insert new objects into the window.
+     *
+     * @param add Object ids
+     * @param objs Objects
+     */
+    private void insert(ArrayDBIDs add, List<? extends O> objs) {
+      for(DBIDArrayIter it = add.iter(); it.valid(); it.advance()) {
+        if(!ids.add(it)) {
+          throw new AbortException("Object " + DBIDUtil.toString(it) + " is already in the window.");
+        }
+        relation.insert(it, objs.get(it.getOffset()));
+        rknns.put(it, DBIDUtil.newHashSet());
+        fifo.add(DBIDUtil.deref(it));
+      }
+    }
+
+    /**
+     * Find the existing objects that have a new object within their
+     * k-distance.
+     *
+     * @param core Parallel core
+     * @param add New objects
+     * @param affected Output set of affected objects
+     */
+    private void findReverseNeighbors(ParallelCore core, final ArrayDBIDs add, HashSetModifiableDBIDs affected) {
+      if(add.size() == 0) {
+        return;
+      }
+      final HashSetModifiableDBIDs isnew = DBIDUtil.newHashSet(add);
+      if(kdistbound == Double.POSITIVE_INFINITY) {
+        // Some neighborhoods are incomplete, recompute everything.
+        for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+          if(!isnew.contains(it)) {
+            affected.add(it);
+          }
+        }
+        return;
+      }
+      final ArrayDBIDs widearr = DBIDUtil.ensureArray(wide);
+      final ModifiableDBIDs[] found = new ModifiableDBIDs[add.size()];
+      parallel(core, add.size(), new Step() {
+        @Override
+        public void process(int start, int end) {
+          DBIDArrayIter it = add.iter();
+          for(int i = start; i < end; i++) {
+            it.seek(i);
+            ModifiableDBIDs f = DBIDUtil.newArray();
+            for(DoubleDBIDListIter n = rangeq.getRangeForDBID(it, kdistbound).iter(); n.valid(); n.advance()) {
+              if(!isnew.contains(n) && !wide.contains(n) && n.doubleValue() <= kdist(knns.get(n))) {
+                f.add(n);
+              }
+            }
+            // Objects with a larger k-distance are checked directly.
+            for(DBIDIter n = widearr.iter(); n.valid(); n.advance()) {
+              if(distq.distance(it, n) <= kdist(knns.get(n))) {
+                f.add(n);
+              }
+            }
+            found[i] = f;
+          }
+        }
+      });
+      for(ModifiableDBIDs f : found) {
+        affected.addDBIDs(f);
+      }
+    }
+
+    /**
+     * Recompute the nearest neighbors of the given objects, and update the
+     * reverse neighbors.
+     *
+     * @param core Parallel core
+     * @param todo Objects to update
+     * @return Objects whose density needs to be recomputed
+     */
+    private HashSetModifiableDBIDs updateKNNs(ParallelCore core, final ArrayDBIDs todo) {
+      final KNNList[] newknns = new KNNList[todo.size()];
+      parallel(core, todo.size(), new Step() {
+        @Override
+        public void process(int start, int end) {
+          DBIDArrayIter it = todo.iter();
+          for(int i = start; i < end; i++) {
+            newknns[i] = knnq.getKNNForDBID(it.seek(i), k);
+          }
+        }
+      });
+      knnupdates += todo.size();
+      HashSetModifiableDBIDs lrdtodo = DBIDUtil.newHashSet(todo);
+      ModifiableDBIDs kdistchanged = DBIDUtil.newArray();
+      for(DBIDArrayIter it = todo.iter(); it.valid(); it.advance()) {
+        KNNList oldknn = knns.get(it), newknn = newknns[it.getOffset()];
+        if(oldknn != null) {
+          for(DBIDIter n = oldknn.iter(); n.valid(); n.advance()) {
+            ModifiableDBIDs rknn = rknns.get(n);
+            if(rknn != null) {
+              rknn.remove(it);
+            }
+          }
+        }
+        for(DBIDIter n = newknn.iter(); n.valid(); n.advance()) {
+          rknns.get(n).add(it);
+        }
+        knns.put(it, newknn);
+        final double kd = kdist(newknn);
+        if(oldknn == null || kdist(oldknn) != kd) {
+          kdistchanged.add(it);
+          if(kd > kdistbound) {
+            wide.add(it);
+          }
+          else {
+            wide.remove(it);
+          }
+        }
+      }
+      kdistchanges += kdistchanged.size();
+      // The reachability distances of the reverse neighbors changed.
+      for(DBIDIter it = kdistchanged.iter(); it.valid(); it.advance()) {
+        lrdtodo.addDBIDs(rknns.get(it));
+      }
+      return lrdtodo;
+    }
+
+    /**
+     * Recompute local reachability densities.
+     *
+     * @param core Parallel core
+     * @param lrdtodo Objects to update
+     * @return Objects whose LOF score needs to be recomputed
+     */
+    private HashSetModifiableDBIDs updateLRDs(ParallelCore core, HashSetModifiableDBIDs lrdtodo) {
+      final ArrayDBIDs todo = DBIDUtil.ensureArray(lrdtodo);
+      final double[] newlrds = new double[todo.size()];
+      parallel(core, todo.size(), new Step() {
+        @Override
+        public void process(int start, int end) {
+          DBIDArrayIter it = todo.iter();
+          for(int i = start; i < end; i++) {
+            newlrds[i] = computeLRD(it.seek(i));
+          }
+        }
+      });
+      lrdupdates += todo.size();
+      HashSetModifiableDBIDs loftodo = lrdtodo; // Reuse
+      for(DBIDArrayIter it = todo.iter(); it.valid(); it.advance()) {
+        final double lrd = newlrds[it.getOffset()];
+        if(lrds.putDouble(it, lrd) != lrd) {
+          loftodo.addDBIDs(rknns.get(it));
+        }
+      }
+      return loftodo;
+    }
+
+    /**
+     * Recompute LOF scores.
+     *
+     * @param core Parallel core
+     * @param loftodo Objects to update
+     * @return New and changed scores
+     */
+    private ModifiableDoubleDBIDList updateLOFs(ParallelCore core, HashSetModifiableDBIDs loftodo) {
+      final ArrayDBIDs todo = DBIDUtil.ensureArray(loftodo);
+      final double[] newlofs = new double[todo.size()];
+      parallel(core, todo.size(), new Step() {
+        @Override
+        public void process(int start, int end) {
+          DBIDArrayIter it = todo.iter();
+          for(int i = start; i < end; i++) {
+            newlofs[i] = computeLOF(it.seek(i));
+          }
+        }
+      });
+      lofupdates += todo.size();
+      ModifiableDoubleDBIDList changed = DBIDUtil.newDistanceDBIDList(todo.size());
+      for(DBIDArrayIter it = todo.iter(); it.valid(); it.advance()) {
+        final double lof = newlofs[it.getOffset()];
+        if(lofs.putDouble(it, lof) != lof) {
+          changed.add(lof, it);
+        }
+      }
+      return changed;
+    }
+
+    /**
+     * Re-estimate the radius used to find reverse neighbors, if too many
+     * objects exceed it, or if the k-distances changed too much since.
+     *
+     * The new radius is chosen such that about half the allowed number of
+     * objects have a larger k-distance.
+     */
+    private void updateKDistBound() {
+      final int size = ids.size();
+      final int maxwide = Math.max(BLOCKSIZE, (int) FastMath.sqrt(size));
+      if(wide.size() <= maxwide && kdistchanges < size) {
+        return;
+      }
+      kdistchanges = 0;
+      wide.clear();
+      if(size <= maxwide) {
+        kdistbound = Double.POSITIVE_INFINITY;
+        return;
+      }
+      double[] kdists = new double[size];
+      int i = 0;
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        kdists[i++] = kdist(knns.get(it));
+      }
+      kdistbound = QuickSelect.quickSelect(kdists, size - 1 - (maxwide >> 1));
+      if(kdistbound < Double.POSITIVE_INFINITY) {
+        for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+          if(kdist(knns.get(it)) > kdistbound) {
+            wide.add(it);
+          }
+        }
+      }
+    }
+
+    /**
+     * Compute the local reachability density of an object.
+     *
+     * @param cur Object
+     * @return Local reachability density
+     */
+    private double computeLRD(DBIDRef cur) {
+      double sum = 0.;
+      int count = 0;
+      for(DoubleDBIDListIter n = knns.get(cur).iter(); n.valid(); n.advance()) {
+        if(DBIDUtil.equal(cur, n)) {
+          continue;
+        }
+        sum += MathUtil.max(n.doubleValue(), knns.get(n).getKNNDistance());
+        count++;
+      }
+      // Avoid division by 0
+      return (sum > 0) ? (count / sum) : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Compute the LOF score of an object.
+     *
+     * @param cur Object
+     * @return LOF score
+     */
+    private double computeLOF(DBIDRef cur) {
+      final double lrdp = lrds.doubleValue(cur);
+      if(Double.isInfinite(lrdp)) {
+        return 1.0;
+      }
+      double sum = 0.;
+      int count = 0;
+      for(DBIDIter n = knns.get(cur).iter(); n.valid(); n.advance()) {
+        if(DBIDUtil.equal(cur, n)) {
+          continue;
+        }
+        sum += lrds.doubleValue(n);
+        ++count;
+      }
+      return sum / (lrdp * count);
+    }
+
+    /**
+     * Get the current LOF score of an object in the window.
+     *
+     * @param id Object
+     * @return LOF score
+     */
+    public double getLOF(DBIDRef id) {
+      return lofs.doubleValue(id);
+    }
+
+    /**
+     * Get the objects currently in the window.
+     *
+     * @return Window contents
+     */
+    public Relation<O> getRelation() {
+      return relation;
+    }
+
+    /**
+     * Number of objects in the window.
+     *
+     * @return Size
+     */
+    public int size() {
+      return ids.size();
+    }
+
+    /**
+     * Log the update statistics.
+     */
+    protected void logStatistics() {
+      if(LOG.isStatistics()) {
+        final String key = StreamingLOF.class.getName();
+        LOG.statistics(new LongStatistic(key + ".batches", batches));
+        LOG.statistics(new LongStatistic(key + ".knn-updates", knnupdates));
+        LOG.statistics(new LongStatistic(key + ".lrd-updates", lrdupdates));
+        LOG.statistics(new LongStatistic(key + ".lof-updates", lofupdates));
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AbstractDistanceBasedAlgorithm.Parameterizer<O> {
+    /**
+     * Maximum window size.
+     */
+    public static final OptionID WINDOW_ID = new OptionID("streaminglof.window", "Maximum number of objects in the sliding window.");
+
+    /**
+     * Batch size.
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("streaminglof.batchsize", "Number of objects inserted in each micro-batch.");
+
+    /**
+     * Index for the window.
+     */
+    public static final OptionID INDEX_ID = new OptionID("streaminglof.index", "Dynamic index to accelerate the queries on the window contents.");
+
+    /**
+     * The neighborhood size to use.
+     */
+    protected int k = 2;
+
+    /**
+     * Maximum window size.
+     */
+    protected int window;
+
+    /**
+     * Batch size.
+     */
+    protected int batchsize;
+
+    /**
+     * Index for the window.
+     */
+    protected IndexFactory<O, ?> indexFactory;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      final IntParameter pK = new IntParameter(LOF.Parameterizer.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(pK)) {
+        k = pK.intValue();
+      }
+      IntParameter windowP = new IntParameter(WINDOW_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+      if(config.grab(windowP)) {
+        window = windowP.intValue();
+      }
+      IntParameter batchsizeP = new IntParameter(BATCHSIZE_ID, 1000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(batchsizeP)) {
+        batchsize = batchsizeP.intValue();
+      }
+      ObjectParameter<IndexFactory<O, ?>> indexP = new ObjectParameter<>(INDEX_ID, IndexFactory.class);
+      indexP.setOptional(true);
+      if(config.grab(indexP)) {
+        indexFactory = indexP.instantiateClass(config);
+      }
+    }
+
+    @Override
+    protected StreamingLOF<O> makeInstance() {
+      return new StreamingLOF<>(k, distanceFunction, window, batchsize, indexFactory);
+    }
+  }
+}
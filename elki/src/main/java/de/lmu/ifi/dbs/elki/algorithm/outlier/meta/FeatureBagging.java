@@ -42,6 +42,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.subspace.SubspaceEuclideanD
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
+import de.lmu.ifi.dbs.elki.parallel.EnsembleExecutor;
 import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
@@ -74,9 +75,17 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  * discovery in data mining
  * </p>
  *
+ * <p>
+ * The LOF runs are independent, and are executed in parallel using the
+ * {@link EnsembleExecutor}. The random subspaces are chosen up front, so the
+ * result does not depend on the number of threads.
+ * </p>
+ *
  * @author Erich Schubert
  * @author Remigius Wojdanowski
  * @since 0.4.0
+ *
+ * @apiviz.uses EnsembleExecutor
  */
 @Title("Feature Bagging for Outlier Detection")
 @Reference(title = "Feature Bagging for Outlier Detection", authors = "A. Lazarevic, V. Kumar", booktitle = "Proc. of the 11th ACM SIGKDD international conference on Knowledge discovery in data mining", url = "http://dx.doi.org/10.1145/1081870.1081891")
@@ -129,31 +138,39 @@ public class FeatureBagging extends AbstractAlgorithm<OutlierResult> implements
    * @param relation Relation to use
    * @return Outlier detection result
    */
-  public OutlierResult run(Database database, Relation<NumberVector> relation) {
+  public OutlierResult run(final Database database, final Relation<NumberVector> relation) {
     final int dbdim = RelationUtil.dimensionality(relation);
     final int mindim = dbdim >> 1;
     final int maxdim = dbdim - 1;
     final Random rand = rnd.getSingleThreadedRandom();
 
-    ArrayList<OutlierResult> results = new ArrayList<>(num);
-    {
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("LOF iterations", num, LOG) : null;
-      for(int i = 0; i < num; i++) {
-        long[] dimset = randomSubspace(dbdim, mindim, maxdim, rand);
-        SubspaceEuclideanDistanceFunction df = new SubspaceEuclideanDistanceFunction(dimset);
-        LOF<NumberVector> lof = new LOF<>(k, df);
-
-        // run LOF and collect the result
-        OutlierResult result = lof.run(database, relation);
-        results.add(result);
-        LOG.incrementProcessed(prog);
-      }
-      LOG.ensureCompleted(prog);
+    // Choose all subspaces first, so the ensemble members are independent.
+    final long[][] dimsets = new long[num][];
+    for(int i = 0; i < num; i++) {
+      dimsets[i] = randomSubspace(dbdim, mindim, maxdim, rand);
     }
+    EnsembleExecutor.Member<OutlierResult> member = new EnsembleExecutor.Member<OutlierResult>() {
+      @Override
+      public OutlierResult run(int i) {
+        SubspaceEuclideanDistanceFunction df = new SubspaceEuclideanDistanceFunction(dimsets[i]);
+        return new LOF<NumberVector>(k, df).run(database, relation);
+      }
+    };
 
-    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("LOF iterations", num, LOG) : null;
+    final WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmax = new DoubleMinMax();
     if(breadth) {
+      final ArrayList<OutlierResult> results = new ArrayList<>(num);
+      EnsembleExecutor.run(num, member, new EnsembleExecutor.Consumer<OutlierResult>() {
+        @Override
+        public void accept(int i, OutlierResult result) {
+          results.add(result);
+          LOG.incrementProcessed(prog);
+        }
+      });
+      LOG.ensureCompleted(prog);
+
       FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Combining results", relation.size(), LOG) : null;
       @SuppressWarnings("unchecked")
       Pair<DBIDIter, DoubleRelation>[] IDVectorOntoScoreVector = (Pair<DBIDIter, DoubleRelation>[]) new Pair[results.size()];
@@ -193,20 +210,27 @@ public class FeatureBagging extends AbstractAlgorithm<OutlierResult> implements
       LOG.ensureCompleted(cprog);
     }
     else {
-      FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Combining results", relation.size(), LOG) : null;
+      // Sum up the scores as the results arrive, to not keep all results.
       for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-        double sum = 0.0;
-        for(OutlierResult r : results) {
-          final double s = r.getScores().doubleValue(iter);
-          if(!Double.isNaN(s)) {
-            sum += s;
+        scores.putDouble(iter, 0.);
+      }
+      EnsembleExecutor.run(num, member, new EnsembleExecutor.Consumer<OutlierResult>() {
+        @Override
+        public void accept(int i, OutlierResult result) {
+          DoubleRelation r = result.getScores();
+          for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+            final double s = r.doubleValue(iter);
+            if(!Double.isNaN(s)) {
+              scores.putDouble(iter, scores.doubleValue(iter) + s);
+            }
           }
+          LOG.incrementProcessed(prog);
         }
-        scores.putDouble(iter, sum);
-        minmax.put(sum);
-        LOG.incrementProcessed(cprog);
+      });
+      LOG.ensureCompleted(prog);
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        minmax.put(scores.doubleValue(iter));
       }
-      LOG.ensureCompleted(cprog);
     }
     OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax());
     DoubleRelation scoreres = new MaterializedDoubleRelation("Feature bagging", "fb-outlier", scores, relation.getDBIDs());
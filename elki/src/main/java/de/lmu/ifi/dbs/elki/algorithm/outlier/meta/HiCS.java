@@ -54,11 +54,13 @@ import de.lmu.ifi.dbs.elki.database.relation.ProjectedView;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.AbstractProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.GoodnessOfFitTest;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.KolmogorovSmirnovTest;
+import de.lmu.ifi.dbs.elki.parallel.EnsembleExecutor;
 import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
@@ -72,6 +74,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
@@ -90,12 +93,20 @@ import net.jafama.FastMath;
  * DC, USA
  * </p>
  * 
+ * The Monte-Carlo contrast estimation of the candidate subspaces is executed
+ * in parallel using the {@link EnsembleExecutor}. Each candidate uses its own
+ * seed, so the result does not depend on the number of threads. The outlier
+ * detection runs in the selected subspaces share one algorithm instance, and
+ * are only run in parallel if enabled, as the inner algorithm must then be
+ * safe to run concurrently.
+ * 
  * @author Jan Brusis
  * @author Erich Schubert
  * @since 0.5.0
  * 
  * @apiviz.composedOf GoodnessOfFitTest
  * @apiviz.composedOf OutlierAlgorithm
+ * @apiviz.uses EnsembleExecutor
  * 
  * @param <V> vector type
  */
@@ -146,6 +157,11 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
    */
   private RandomFactory rnd;
 
+  /**
+   * Run the outlier detection in the subspaces in parallel.
+   */
+  private boolean parallel;
+
   /**
    * Constructor.
    * 
@@ -157,6 +173,22 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
    * @param rnd Random generator
    */
   public HiCS(int m, double alpha, OutlierAlgorithm outlierAlgorithm, GoodnessOfFitTest statTest, int cutoff, RandomFactory rnd) {
+    this(m, alpha, outlierAlgorithm, statTest, cutoff, rnd, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param m value of m
+   * @param alpha value of alpha
+   * @param outlierAlgorithm Inner outlier detection algorithm
+   * @param statTest Test to use
+   * @param cutoff Candidate limit
+   * @param rnd Random generator
+   * @param parallel Run the outlier detection in the subspaces in parallel;
+   *        the inner algorithm must be safe to run concurrently
+   */
+  public HiCS(int m, double alpha, OutlierAlgorithm outlierAlgorithm, GoodnessOfFitTest statTest, int cutoff, RandomFactory rnd, boolean parallel) {
     super();
     this.m = m;
     this.alpha = alpha;
@@ -164,6 +196,7 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     this.statTest = statTest;
     this.cutoff = cutoff;
     this.rnd = rnd;
+    this.parallel = parallel;
   }
 
   /**
@@ -173,7 +206,7 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
    * @return The aggregated resulting scores that were assigned by the given
    *         outlier detection algorithm
    */
-  public OutlierResult run(Relation<V> relation) {
+  public OutlierResult run(final Relation<V> relation) {
     final DBIDs ids = relation.getDBIDs();
 
     ArrayList<ArrayDBIDs> subspaceIndex = buildOneDimIndexes(relation);
@@ -182,40 +215,52 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     if(LOG.isVerbose()) {
       LOG.verbose("Number of high-contrast subspaces: " + subspaces.size());
     }
-    List<DoubleRelation> results = new ArrayList<>();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Calculating Outlier scores for high Contrast subspaces", subspaces.size(), LOG) : null;
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Calculating Outlier scores for high Contrast subspaces", subspaces.size(), LOG) : null;
 
     // run outlier detection and collect the result
     // TODO extend so that any outlierAlgorithm can be used (use materialized
     // relation instead of SubspaceEuclideanDistanceFunction?)
-    for(HiCSSubspace dimset : subspaces) {
-      if(LOG.isVerbose()) {
-        LOG.verbose("Performing outlier detection in subspace " + dimset);
+    final List<HiCSSubspace> dimsets = new ArrayList<>(subspaces);
+    final WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC, 0.);
+    EnsembleExecutor.Member<DoubleRelation> member = new EnsembleExecutor.Member<DoubleRelation>() {
+      @Override
+      public DoubleRelation run(int i) {
+        HiCSSubspace dimset = dimsets.get(i);
+        if(LOG.isVerbose()) {
+          LOG.verbose("Performing outlier detection in subspace " + dimset);
+        }
+        // The projected view does not copy the data.
+        ProxyDatabase pdb = new ProxyDatabase(ids);
+        pdb.addRelation(new ProjectedView<>(relation, new NumericalFeatureSelection<V>(dimset)));
+        return outlierAlgorithm.run(pdb).getScores();
+      }
+    };
+    EnsembleExecutor.Consumer<DoubleRelation> consumer = new EnsembleExecutor.Consumer<DoubleRelation>() {
+      @Override
+      public void accept(int i, DoubleRelation r) {
+        // Sum up in subspace order, without keeping all results.
+        for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+          final double s = r.doubleValue(iditer);
+          if(!Double.isNaN(s)) {
+            scores.putDouble(iditer, scores.doubleValue(iditer) + s);
+          }
+        }
+        LOG.incrementProcessed(prog);
+      }
+    };
+    if(parallel) {
+      EnsembleExecutor.run(dimsets.size(), member, consumer);
+    }
+    else {
+      for(int i = 0; i < dimsets.size(); i++) {
+        consumer.accept(i, member.run(i));
       }
-
-      ProxyDatabase pdb = new ProxyDatabase(ids);
-      pdb.addRelation(new ProjectedView<>(relation, new NumericalFeatureSelection<V>(dimset)));
-
-      // run LOF and collect the result
-      OutlierResult result = outlierAlgorithm.run(pdb);
-      results.add(result.getScores());
-      LOG.incrementProcessed(prog);
     }
     LOG.ensureCompleted(prog);
 
-    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmax = new DoubleMinMax();
-
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      double sum = 0.0;
-      for(DoubleRelation r : results) {
-        final double s = r.doubleValue(iditer);
-        if(!Double.isNaN(s)) {
-          sum += s;
-        }
-      }
-      scores.putDouble(iditer, sum);
-      minmax.put(sum);
+      minmax.put(scores.doubleValue(iditer));
     }
     OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax());
     DoubleRelation scoreres = new MaterializedDoubleRelation("HiCS", "HiCS-outlier", scores, relation.getDBIDs());
@@ -265,16 +310,19 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     TopBoundedHeap<HiCSSubspace> dDimensionalList = new TopBoundedHeap<>(cutoff, HiCSSubspace.SORT_BY_CONTRAST_ASC);
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Generating two-element subsets", (dbdim * (dbdim - 1)) >> 1, LOG) : null;
     // compute two-element sets of subspaces
+    ArrayList<HiCSSubspace> candidates = new ArrayList<>();
     for(int i = 0; i < dbdim; i++) {
       for(int j = i + 1; j < dbdim; j++) {
         HiCSSubspace ts = new HiCSSubspace();
         ts.set(i);
         ts.set(j);
-        calculateContrast(relation, ts, subspaceIndex, random);
-        dDimensionalList.add(ts);
-        LOG.incrementProcessed(prog);
+        candidates.add(ts);
       }
     }
+    calculateContrasts(relation, candidates, subspaceIndex, random, prog);
+    for(HiCSSubspace ts : candidates) {
+      dDimensionalList.add(ts);
+    }
     LOG.ensureCompleted(prog);
 
     IndefiniteProgress qprog = LOG.isVerbose() ? new IndefiniteProgress("Testing subspace candidates", LOG) : null;
@@ -294,6 +342,7 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
       Collections.sort(candidateList, HiCSSubspace.SORT_BY_SUBSPACE);
 
       // TODO: optimize APRIORI style, by not even computing the bit set or?
+      candidates.clear();
       for(int i = 0; i < candidateList.size() - 1; i++) {
         for(int j = i + 1; j < candidateList.size(); j++) {
           HiCSSubspace set1 = candidateList.get(i);
@@ -305,12 +354,13 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
           if(joinedSet.cardinality() != d) {
             continue;
           }
-
-          calculateContrast(relation, joinedSet, subspaceIndex, random);
-          dDimensionalList.add(joinedSet);
-          LOG.incrementProcessed(qprog);
+          candidates.add(joinedSet);
         }
       }
+      calculateContrasts(relation, candidates, subspaceIndex, random, qprog);
+      for(HiCSSubspace joinedSet : candidates) {
+        dDimensionalList.add(joinedSet);
+      }
       // Prune
       for(HiCSSubspace cand : candidateList) {
         for(Heap<HiCSSubspace>.UnorderedIter it = dDimensionalList.unorderedIter(); it.valid(); it.advance()) {
@@ -329,12 +379,46 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     return subspaceList;
   }
 
+  /**
+   * Calculate the contrast of all candidate subspaces in parallel.
+   *
+   * Every candidate uses its own random generator, seeded from the main
+   * generator in candidate order, so the results do not depend on the number
+   * of threads.
+   *
+   * @param relation Relation to process
+   * @param candidates Candidate subspaces
+   * @param subspaceIndex Subspace indexes
+   * @param random Random generator for the seeds
+   * @param prog Progress, may be {@code null}
+   */
+  private void calculateContrasts(final Relation<? extends NumberVector> relation, final List<HiCSSubspace> candidates, final ArrayList<ArrayDBIDs> subspaceIndex, Random random, final AbstractProgress prog) {
+    final long[] seeds = new long[candidates.size()];
+    for(int i = 0; i < seeds.length; i++) {
+      seeds[i] = random.nextLong();
+    }
+    EnsembleExecutor.run(candidates.size(), new EnsembleExecutor.Member<HiCSSubspace>() {
+      @Override
+      public HiCSSubspace run(int i) {
+        HiCSSubspace subspace = candidates.get(i);
+        calculateContrast(relation, subspace, subspaceIndex, new Random(seeds[i]));
+        return subspace;
+      }
+    }, new EnsembleExecutor.Consumer<HiCSSubspace>() {
+      @Override
+      public void accept(int i, HiCSSubspace subspace) {
+        LOG.incrementProcessed(prog);
+      }
+    });
+  }
+
   /**
    * Calculates the actual contrast of a given subspace.
    * 
    * @param relation Relation to process
    * @param subspace Subspace
    * @param subspaceIndex Subspace indexes
+   * @param random Random generator
    */
   private void calculateContrast(Relation<? extends NumberVector> relation, HiCSSubspace subspace, ArrayList<ArrayDBIDs> subspaceIndex, Random random) {
     final int card = subspace.cardinality();
@@ -552,6 +636,11 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
      */
     public static final OptionID SEED_ID = new OptionID("hics.seed", "The random seed.");
 
+    /**
+     * Flag to run the outlier detection in the subspaces in parallel.
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("hics.parallel", "Run the outlier detection in the subspaces in parallel. The outlier detection algorithm must be safe to run concurrently.");
+
     /**
      * Holds the value of {@link #M_ID}.
      */
@@ -582,6 +671,11 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
      */
     private RandomFactory rnd;
 
+    /**
+     * Holds the value of {@link #PARALLEL_ID}.
+     */
+    private boolean parallel;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -617,11 +711,16 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
       if(config.grab(rndP)) {
         rnd = rndP.getValue();
       }
+
+      final Flag parallelF = new Flag(PARALLEL_ID);
+      if(config.grab(parallelF)) {
+        parallel = parallelF.isTrue();
+      }
     }
 
     @Override
     protected HiCS<V> makeInstance() {
-      return new HiCS<>(m, alpha, outlierAlgorithm, statTest, cutoff, rnd);
+      return new HiCS<>(m, alpha, outlierAlgorithm, statTest, cutoff, rnd, parallel);
     }
   }
 }
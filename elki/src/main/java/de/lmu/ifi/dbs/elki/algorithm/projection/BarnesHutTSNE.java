@@ -22,6 +22,10 @@ package de.lmu.ifi.dbs.elki.algorithm.projection;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
@@ -38,9 +42,9 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
-import de.lmu.ifi.dbs.elki.utilities.io.FormatUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
@@ -52,6 +56,9 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  * 
  * For larger data sets, use an index to make finding the nearest neighbors
  * faster, e.g. cover tree or k-d-tree.
+ *
+ * The repulsive and attractive forces are computed in parallel, using the
+ * current {@link ParallelCore}.
  * 
  * Reference:
  * <p>
@@ -62,6 +69,9 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  *
  * @author Erich Schubert
  *
+ * @apiviz.composedOf QuadTree
+ * @apiviz.uses ParallelCore
+ *
  * @param <O> Object type
  */
 @Reference(authors = "L. van der Maaten", //
@@ -93,6 +103,11 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
    */
   private static final double QUADTREE_MIN_RESOLUION = 1e-10;
 
+  /**
+   * Number of points per parallel task.
+   */
+  private static final int BLOCKSIZE = 256;
+
   /**
    * (Squared) approximation quality threshold.
    */
@@ -153,11 +168,13 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     for(int off = 2 * dim; off < meta.length; off += dim3) {
       Arrays.fill(meta, off, off + dim, 1.); // Initial learning rate
     }
+    // Flat quad tree, reused in every iteration.
+    QuadTree tree = new QuadTree(dim, size);
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Iterative Optimization", iterations, LOG) : null;
     Duration timer = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".runtime.optimization").begin() : null;
     // Optimize
     for(int i = 0; i < iterations; i++) {
-      computeGradient(pij, sol, meta);
+      computeGradient(pij, sol, meta, tree);
       updateSolution(sol, meta, i);
       // Undo early exaggeration
       if(i == EARLY_EXAGGERATION_ITERATIONS) {
@@ -171,90 +188,158 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     }
   }
 
-  private void computeGradient(AffinityMatrix pij, double[][] solution, double[] grad) {
-    final int dim3 = 3 * dim;
+  /**
+   * Compute the gradient, repulsive and attractive forces in parallel.
+   *
+   * @param pij Affinity matrix
+   * @param solution Current solution
+   * @param grad Gradient output (meta data array)
+   * @param tree Quad tree (reused)
+   */
+  private void computeGradient(final AffinityMatrix pij, final double[][] solution, final double[] grad, final QuadTree tree) {
+    final int dim3 = 3 * dim, size = solution.length;
     // Reset gradient / forces
     for(int off = 0; off < grad.length; off += dim3) {
       Arrays.fill(grad, off, off + dim, 0.);
     }
+    tree.build(solution);
+    // Per-block results; combined in block order to be deterministic.
+    final int nblocks = (size + BLOCKSIZE - 1) / BLOCKSIZE;
+    final double[] zs = new double[nblocks];
+    final long[] dists = new long[nblocks];
+    final ParallelCore core = ParallelCore.getCore();
     // Compute repulsive forces first:
-    QuadTree tree = QuadTree.build(dim, solution);
+    parallel(core, size, new Step() {
+      @Override
+      public void process(int block, int start, int end) {
+        zs[block] = computeRepulsiveForces(grad, solution, tree, start, end, dists, block);
+      }
+    });
     double z = 0.;
-    for(int i = 0, off = 0; i < solution.length; i++, off += dim3) {
-      z -= computeRepulsiveForces(grad, off, solution[i], tree);
+    for(int b = 0; b < nblocks; b++) {
+      z -= zs[b];
     }
-    // Normalize repulsive forces:
-    double s = 1 / z; // Scaling factor
-    for(int off = 0; off < grad.length; off += dim3) {
-      for(int j = 0; j < dim; j++) {
-        grad[off + j] *= s;
+    // Normalize repulsive forces, compute attractive forces second:
+    final double s = 1 / z; // Scaling factor
+    parallel(core, size, new Step() {
+      @Override
+      public void process(int block, int start, int end) {
+        for(int off = start * dim3, stop = end * dim3; off < stop; off += dim3) {
+          for(int j = 0; j < dim; j++) {
+            grad[off + j] *= s;
+          }
+        }
+        dists[block] += computeAttractiveForces(grad, pij, solution, start, end);
       }
+    });
+    long c = 0;
+    for(int b = 0; b < nblocks; b++) {
+      c += dists[b];
     }
-    // Compute attractive forces second
-    computeAttractiveForces(grad, pij, solution);
+    projectedDistances.increment(c);
   }
 
-  private void computeAttractiveForces(double[] attr, AffinityMatrix pij, double[][] sol) {
+  /**
+   * Compute the attractive forces for a block of points.
+   *
+   * @param attr Attractive forces output array
+   * @param pij Affinity matrix
+   * @param sol Current solution
+   * @param start First point
+   * @param end End point (exclusive)
+   * @return Number of distance computations
+   */
+  private long computeAttractiveForces(double[] attr, AffinityMatrix pij, double[][] sol, int start, int end) {
     final int dim3 = 3 * dim;
-    for(int i = 0, off = 0; off < attr.length; i++, off += dim3) {
+    long c = 0;
+    for(int i = start, off = start * dim3; i < end; i++, off += dim3) {
       final double[] sol_i = sol[i];
       for(int offj = pij.iter(i); pij.iterValid(i, offj); offj = pij.iterAdvance(i, offj)) {
         final double[] sol_j = sol[pij.iterDim(i, offj)];
         final double pij_ij = pij.iterValue(i, offj);
-        final double a = pij_ij / (1. + sqDist(sol_i, sol_j));
+        final double a = pij_ij / (1. + sqDist(sol_i, sol_j, 0));
         for(int k = 0; k < dim; k++) {
           attr[off + k] += a * (sol_i[k] - sol_j[k]);
         }
+        ++c;
       }
     }
+    return c;
   }
 
   /**
-   * Compute the repulsive forces for a single point
-   * 
-   * @param rep_i Repulsive forces array
-   * @param off Point offset
-   * @param sol_i Solution vector
-   * @param node Quad tree
+   * Compute the repulsive forces for a block of points, by an iterative
+   * traversal of the flat quad tree.
+   *
+   * @param rep Repulsive forces output array
+   * @param sol Current solution
+   * @param tree Quad tree
+   * @param start First point
+   * @param stop End point (exclusive)
+   * @param dists Output array for the number of distance computations
+   * @param block Block number
    * @return force strength
    */
-  private double computeRepulsiveForces(double[] rep_i, int off, double[] sol_i, QuadTree node) {
-    final double[] center = node.center;
-    double dist = sqDist(sol_i, center);
-    // Barnes-Hut approximation:
-    if(node.weight == 1 || node.squareSize / dist < sqtheta) {
-      double u = 1. / (1. + dist);
-      double z = node.weight * u;
-      double a = z * u;
-      for(int k = 0; k < dim; k++) {
-        // TODO: van der Maaten avoids computing this difference twice (also
-        // done in sqDist) - we should also use this optimization.
-        rep_i[off + k] += a * (sol_i[k] - center[k]);
-      }
-      return z;
-    }
+  private double computeRepulsiveForces(double[] rep, double[][] sol, QuadTree tree, int start, int stop, long[] dists, int block) {
+    final double[] centers = tree.centers, sqsize = tree.sqsize;
+    final int[] begin = tree.begin, end = tree.end, skip = tree.skip, perm = tree.perm;
+    final int dim3 = 3 * dim, numnodes = tree.numnodes;
     double z = 0.;
-    // Aggregate points in this node:
-    if(node.points != null) {
-      for(double[] point : node.points) {
-        double pdist = sqDist(sol_i, point);
-        double pz = 1. / (1. + pdist);
-        double a = pz * pz;
-        for(int k = 0; k < dim; k++) {
-          rep_i[off + k] += a * (sol_i[k] - point[k]);
+    long c = 0;
+    for(int i = start, off = start * dim3; i < stop; i++, off += dim3) {
+      final double[] sol_i = sol[i];
+      for(int node = 0; node < numnodes;) {
+        final int coff = node * dim, weight = end[node] - begin[node];
+        final double dist = sqDist(sol_i, centers, coff);
+        ++c;
+        // Barnes-Hut approximation:
+        if(weight == 1 || sqsize[node] / dist < sqtheta) {
+          final double u = 1. / (1. + dist);
+          final double nz = weight * u, a = nz * u;
+          for(int k = 0; k < dim; k++) {
+            rep[off + k] += a * (sol_i[k] - centers[coff + k]);
+          }
+          z += nz;
+          node = skip[node];
+          continue;
         }
-        z += pz;
-      }
-    }
-    // Recurse into subtrees:
-    if(node.children != null) {
-      for(QuadTree child : node.children) {
-        z += computeRepulsiveForces(rep_i, off, sol_i, child);
+        // Leaf below the minimum resolution: aggregate points in this node.
+        if(skip[node] == node + 1) {
+          for(int p = begin[node]; p < end[node]; p++) {
+            final double[] point = sol[perm[p]];
+            final double pz = 1. / (1. + sqDist(sol_i, point, 0));
+            final double a = pz * pz;
+            for(int k = 0; k < dim; k++) {
+              rep[off + k] += a * (sol_i[k] - point[k]);
+            }
+            z += pz;
+            ++c;
+          }
+        }
+        ++node; // Descend, or continue with the next sibling.
       }
     }
+    dists[block] = c;
     return z;
   }
 
+  /**
+   * Squared distance, in projection space, without counting.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, or flat array
+   * @param off2 Offset in second vector
+   * @return Squared distance
+   */
+  private double sqDist(double[] v1, double[] v2, int off2) {
+    double sum = 0;
+    for(int i = 0; i < dim; i++) {
+      final double diff = v1[i] - v2[off2 + i];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(affinity.getInputTypeRestriction());
@@ -265,114 +350,209 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     return LOG;
   }
 
+  /**
+   * Process all points in parallel blocks of fixed size.
+   *
+   * The block layout does not depend on the number of threads, so results
+   * that are aggregated by block are reproducible.
+   *
+   * @param core Parallel core
+   * @param size Number of points
+   * @param step Step to execute
+   */
+  private static void parallel(ParallelCore core, int size, final Step step) {
+    if(size <= BLOCKSIZE || core.getParallelism() <= 1) {
+      for(int b = 0, start = 0; start < size; b++, start += BLOCKSIZE) {
+        step.process(b, start, Math.min(size, start + BLOCKSIZE));
+      }
+      return;
+    }
+    List<Future<?>> futures = new ArrayList<>();
+    core.connect();
+    try {
+      for(int b = 1, start = BLOCKSIZE; start < size; b++, start += BLOCKSIZE) {
+        final int blk = b, s = start, e = Math.min(size, start + BLOCKSIZE);
+        futures.add(core.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            step.process(blk, s, e);
+            return null;
+          }
+        }));
+      }
+      // Process the first block in this thread.
+      step.process(0, 0, BLOCKSIZE);
+      for(Future<?> f : futures) {
+        f.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel tSNE optimization failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parallel tSNE optimization interrupted.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * A step of the optimization, processing a block of points.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private interface Step {
+    /**
+     * Process a block.
+     *
+     * @param block Block number
+     * @param start First point
+     * @param end End point (exclusive)
+     */
+    void process(int block, int start, int end);
+  }
+
   /**
    * Quad Tree for use in a Barnes-Hut approximation.
-   * 
+   *
    * This tree stores in every node the number of points contained, the center
    * of mass, and the diagonal of the cell.
-   * 
+   *
+   * For performance, the tree is stored in flat primitive arrays in preorder,
+   * which are allocated once and reused in every iteration. The points of a
+   * node are the range {@code begin..end} of the permutation array, and
+   * {@code skip} is the first node after the subtree. Single points are leaves
+   * of weight 1.
+   *
    * @author Erich Schubert
    */
   protected static class QuadTree {
     /**
-     * Center of mass (NOT center of bounding box)
+     * Dimensionality.
+     */
+    final int dim;
+
+    /**
+     * Permutation of the point indexes, contiguous for each node.
      */
-    public double[] center;
+    int[] perm;
 
     /**
-     * Points stored in this node.
+     * Range of the node in the permutation array.
      */
-    public double[][] points;
+    int[] begin, end;
 
     /**
-     * Square size of this node, for Barnes-Hut approximation.
+     * Next node after the subtree of each node.
      */
-    public double squareSize;
+    int[] skip;
 
     /**
-     * Total weight of this node.
+     * Centers of mass (NOT center of bounding box), dim values per node.
      */
-    public int weight;
+    double[] centers;
 
     /**
-     * Child nodes.
+     * Square size of each node, for Barnes-Hut approximation.
      */
-    public QuadTree[] children;
+    double[] sqsize;
+
+    /**
+     * Number of nodes in use.
+     */
+    int numnodes;
+
+    /**
+     * Current data.
+     */
+    double[][] data;
+
+    /**
+     * Scratch bounding boxes, by depth.
+     */
+    private ArrayList<double[]> minmax = new ArrayList<>();
 
     /**
      * Constructor.
      *
-     * @param data Data points
-     * @param children Child nodes
-     * @param mid Center of mass
-     * @param weight Node weight
-     * @param squareSize Square size of the node
+     * @param dim Dimensionality
+     * @param size Number of points
      */
-    private QuadTree(double[][] data, QuadTree[] children, double[] mid, int weight, double squareSize) {
-      this.center = mid;
-      this.points = data;
-      this.weight = weight;
-      this.squareSize = squareSize;
-      this.children = children;
+    public QuadTree(int dim, int size) {
+      this.dim = dim;
+      this.perm = new int[size];
+      // Every inner node has at least two children:
+      final int cap = Math.max(1, (size << 1) - 1);
+      this.begin = new int[cap];
+      this.end = new int[cap];
+      this.skip = new int[cap];
+      this.sqsize = new double[cap];
+      this.centers = new double[cap * dim];
     }
 
     /**
-     * Construct the quad tree approximation.
-     * 
-     * @param dim Dimensionality
-     * @param data Data set (will be modified!)
-     * @return Quad tree
+     * (Re-)build the quad tree for the current data.
+     *
+     * @param data Data set
      */
-    public static QuadTree build(int dim, double[][] data) {
-      return build(dim, data.clone(), 0, data.length);
+    public void build(double[][] data) {
+      assert (data.length == perm.length);
+      this.data = data;
+      for(int i = 0; i < perm.length; i++) {
+        perm[i] = i;
+      }
+      numnodes = 0;
+      if(perm.length > 0) {
+        build(0, perm.length, 0);
+      }
     }
 
     /**
      * Recursive build function.
-     * 
-     * @param dim Dimensionality
-     * @param data Input data (WILL BE MODIFIED)
+     *
      * @param begin Subset begin
      * @param end Subset end
-     * @return Subtree
+     * @param depth Recursion depth
      */
-    private static QuadTree build(int dim, double[][] data, int begin, int end) {
-      double[] minmax = computeExtend(dim, data, begin, end);
-      double squareSize = computeSquareSize(minmax);
-      double[] mid = computeCenterofMass(dim, data, begin, end);
+    private void build(int begin, int end, int depth) {
+      final int node = numnodes++;
+      this.begin[node] = begin;
+      this.end[node] = end;
+      computeCenterofMass(node, begin, end);
+      if(end - begin == 1) {
+        sqsize[node] = 0.;
+        skip[node] = numnodes;
+        return;
+      }
+      while(minmax.size() <= depth) {
+        minmax.add(new double[dim << 1]);
+      }
+      double[] mm = computeExtend(minmax.get(depth), begin, end);
+      final double squareSize = sqsize[node] = computeSquareSize(mm);
       // Leaf:
-      final int size = end - begin;
-      if(squareSize <= QUADTREE_MIN_RESOLUION) {
-        data = Arrays.copyOfRange(data, begin, end);
-        return new QuadTree(data, null, mid, size, squareSize);
+      if(squareSize > QUADTREE_MIN_RESOLUION) {
+        splitRecursively(begin, end, 0, mm, depth);
       }
-
-      ArrayList<double[]> singletons = new ArrayList<>();
-      ArrayList<QuadTree> children = new ArrayList<>();
-      splitRecursively(data, begin, end, 0, dim, minmax, singletons, children);
-
-      double[][] sing = singletons.size() > 0 ? singletons.toArray(new double[singletons.size()][]) : null;
-      QuadTree[] chil = children.size() > 0 ? children.toArray(new QuadTree[children.size()]) : null;
-      return new QuadTree(sing, chil, mid, size, squareSize);
+      skip[node] = numnodes;
     }
 
     /**
      * Build the quadtree by recursive splitting.
-     * 
-     * @param data Input data
+     *
      * @param begin Subset begin
      * @param end Subset end
-     * @param cur Current dimension
-     * @param dims Data dimensionality
+     * @param initdim Current dimension
      * @param minmax Bounding box
-     * @param singletons Output for singletons
-     * @param children Output for child nodes
+     * @param depth Recursion depth
      */
-    private static void splitRecursively(double[][] data, int begin, int end, int initdim, int dims, double[] minmax, ArrayList<double[]> singletons, ArrayList<QuadTree> children) {
+    private void splitRecursively(int begin, int end, int initdim, double[] minmax, int depth) {
       final int len = end - begin;
       if(len <= 1) {
         if(len == 1) {
-          singletons.add(data[begin]);
+          build(begin, end, depth + 1);
         }
         return;
       }
@@ -387,103 +567,96 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
           break; // Non-constant dimension found.
         }
         ++cur; // Try next dimension
-        // All remaining dimensions were constant?
-        if(cur == dims) {
-          LOG.warning("Should not be reached", new Throwable());
+        // All remaining dimensions were constant:
+        if(cur == dim) {
           assert (initdim != 0) : "All dimensions constant?";
-          LOG.warning("Unexpected all-constant split.");
-          double[] center = computeCenterofMass(dims, data, begin, end);
-          data = Arrays.copyOfRange(data, begin, end);
-          children.add(new QuadTree(data, null, center, len, 0.));
+          build(begin, end, depth + 1);
           return;
         }
       }
       // Pivotize
+      final double[][] data = this.data;
+      final int[] perm = this.perm;
       int l = begin, r = end - 1;
       while(l <= r) {
-        while(l <= r && data[l][cur] <= mid) {
+        while(l <= r && data[perm[l]][cur] <= mid) {
           ++l;
         }
-        while(l <= r && data[r][cur] >= mid) {
+        while(l <= r && data[perm[r]][cur] >= mid) {
           --r;
         }
         if(l < r) {
-          assert (data[l][cur] > mid);
-          assert (data[r][cur] < mid);
-          double[] tmp = data[r];
-          data[r] = data[l];
-          data[l] = tmp;
+          assert (data[perm[l]][cur] > mid);
+          assert (data[perm[r]][cur] < mid);
+          int tmp = perm[r];
+          perm[r] = perm[l];
+          perm[l] = tmp;
           ++l;
           --r;
         }
       }
-      assert (l == end || data[l][cur] >= mid);
-      assert (l == begin || data[l - 1][cur] <= mid);
+      assert (l == end || data[perm[l]][cur] >= mid);
+      assert (l == begin || data[perm[l - 1]][cur] <= mid);
       ++cur;
       // Recursion into next dimension:
-      if(cur < dims) {
+      if(cur < dim) {
         if(begin < l) {
-          splitRecursively(data, begin, l, cur, dims, minmax, singletons, children);
+          splitRecursively(begin, l, cur, minmax, depth);
         }
         if(l < end) {
-          splitRecursively(data, l, end, cur, dims, minmax, singletons, children);
+          splitRecursively(l, end, cur, minmax, depth);
         }
         return;
       }
       // Recurse into next depth:
       if(begin < l) {
-        children.add(build(dims, data, begin, l));
+        build(begin, l, depth + 1);
       }
       if(l < end) {
-        children.add(build(dims, data, l, end));
+        build(l, end, depth + 1);
       }
     }
 
     /**
      * Computer the center of mass.
-     * 
-     * @param dim Dimensionality
-     * @param data Data set
+     *
+     * @param node Node to store the center in
      * @param begin Begin of subset
      * @param end End of subset
-     * @return Center of mass
      */
-    private static double[] computeCenterofMass(int dim, double[][] data, int begin, int end) {
-      final int size = end - begin;
-      if(size == 1) {
-        return data[begin];
-      }
-      double[] center = new double[dim];
+    private void computeCenterofMass(int node, int begin, int end) {
+      final int off = node * dim;
+      Arrays.fill(centers, off, off + dim, 0.);
       for(int i = begin; i < end; i++) {
-        double[] row = data[i];
+        double[] row = data[perm[i]];
         for(int d = 0; d < dim; d++) {
-          center[d] += row[d];
+          centers[off + d] += row[d];
         }
       }
-      double norm = 1. / size;
-      for(int d = 0; d < dim; d++) {
-        center[d] *= norm;
+      final int size = end - begin;
+      if(size > 1) {
+        double norm = 1. / size;
+        for(int d = 0; d < dim; d++) {
+          centers[off + d] *= norm;
+        }
       }
-      return center;
     }
 
     /**
-     * Compute the bounding box of a data set.
-     * 
-     * @param dim Dimensionality
-     * @param data Data set
+     * Compute the bounding box of a data subset.
+     *
+     * @param minmax Output array
      * @param begin Begin of subset
      * @param end End of subset
      * @return Bounding box
      */
-    private static double[] computeExtend(int dim, double[][] data, int begin, int end) {
-      double[] minmax = new double[dim << 1];
+    private double[] computeExtend(double[] minmax, int begin, int end) {
       for(int d = 0; d < minmax.length;) {
         minmax[d++] = Double.POSITIVE_INFINITY;
         minmax[d++] = Double.NEGATIVE_INFINITY;
       }
       for(int i = begin; i < end; i++) {
-        double[] row = data[i];
+        double[] row = data[perm[i]];
         for(int d = 0, d2 = 0; d < dim; d++) {
           final double v = row[d];
           minmax[d2] = MathUtil.min(minmax[d2], v);
@@ -497,11 +670,11 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
 
     /**
      * Compute the square size of a bounding box.
-     * 
+     *
      * Note that van der Maaten writes "diagonal", while his source code uses
      * the maximum edge length. Barnes and Hut used the cell edge size of a
      * square quad tree.
-     * 
+     *
      * @param minmax Bounding box
      * @return squared cell size
      */
@@ -518,7 +691,7 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
 
     @Override
     public String toString() {
-      return "QuadTree[center=" + FormatUtil.format(center) + ", weight=" + weight + ", points=" + points.length + ", children=" + children.length + ", sqSize=" + squareSize + "]";
+      return "QuadTree[nodes=" + numnodes + ", points=" + perm.length + "]";
     }
   }
 
@@ -20,6 +20,14 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.projection;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
@@ -38,6 +46,7 @@ import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.DoubleArray;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.IntegerArray;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -57,8 +66,14 @@ import net.jafama.FastMath;
  * TODO: this implementation currently differs in one major point: we do not
  * symmetrize the sparse pij matrix.
  *
+ * The neighbors are retrieved with bulk queries, and the rows of the matrix
+ * are computed in parallel blocks. Each row is sorted by index, so that the
+ * symmetric entries can be found by binary search.
+ *
  * @author Erich Schubert
  *
+ * @apiviz.uses ParallelCore
+ *
  * @param <O> Object type
  */
 @Reference(authors = "L. van der Maaten", //
@@ -71,6 +86,16 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
    */
   private static final Logging LOG = Logging.getLogger(NearestNeighborAffinityMatrixBuilder.class);
 
+  /**
+   * Default number of objects per bulk query and parallel task.
+   */
+  private static final int BLOCKSIZE = 1024;
+
+  /**
+   * Number of objects per bulk query and parallel task.
+   */
+  private final int blocksize;
+
   /**
    * Number of neighbors to use.
    */
@@ -83,8 +108,7 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
    * @param perplexity Desired perplexity (will use 3*perplexity neighbors)
    */
   public NearestNeighborAffinityMatrixBuilder(DistanceFunction<? super O> distanceFunction, double perplexity) {
-    super(distanceFunction, perplexity);
-    this.numberOfNeighbours = (int) FastMath.ceil(3 * perplexity);
+    this(distanceFunction, perplexity, (int) FastMath.ceil(3 * perplexity));
   }
 
   /**
@@ -95,8 +119,21 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
    * @param neighbors Number of neighbors to use
    */
   public NearestNeighborAffinityMatrixBuilder(DistanceFunction<? super O> distanceFunction, double perplexity, int neighbors) {
+    this(distanceFunction, perplexity, neighbors, BLOCKSIZE);
+  }
+
+  /**
+   * Constructor with a custom block size, for testing.
+   *
+   * @param distanceFunction Distance function
+   * @param perplexity Desired perplexity
+   * @param neighbors Number of neighbors to use
+   * @param blocksize Number of objects per bulk query and parallel task
+   */
+  NearestNeighborAffinityMatrixBuilder(DistanceFunction<? super O> distanceFunction, double perplexity, int neighbors, int blocksize) {
     super(distanceFunction, perplexity);
     this.numberOfNeighbours = neighbors;
+    this.blocksize = blocksize;
   }
 
   @Override
@@ -132,27 +169,60 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
    * @param indices Output of indexes
    * @param initialScale Initial scaling factor
    */
-  protected void computePij(DBIDRange ids, KNNQuery<?> knnq, boolean square, int numberOfNeighbours, double[][] pij, int[][] indices, double initialScale) {
+  protected void computePij(final DBIDRange ids, final KNNQuery<?> knnq, final boolean square, final int numberOfNeighbours, final double[][] pij, final int[][] indices, double initialScale) {
     Duration timer = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".runtime.neighborspijmatrix").begin() : null;
     final double logPerp = FastMath.log(perplexity);
-    // Scratch arrays, resizable
-    DoubleArray dists = new DoubleArray(numberOfNeighbours + 10);
-    IntegerArray inds = new IntegerArray(numberOfNeighbours + 10);
     // Compute nearest-neighbor sparse affinity matrix
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding neighbors and optimizing perplexity", ids.size(), LOG) : null;
-    MeanVariance mv = LOG.isStatistics() ? new MeanVariance() : null;
-    for(DBIDArrayIter ix = ids.iter(); ix.valid(); ix.advance()) {
-      dists.clear();
-      inds.clear();
-      KNNList neighbours = knnq.getKNNForDBID(ix, numberOfNeighbours + 1);
-      convertNeighbors(ids, ix, square, neighbours, dists, inds);
-      double beta = computeSigma(ix.getOffset(), dists, perplexity, logPerp, //
-          pij[ix.getOffset()] = new double[dists.size()]);
-      if(mv != null) {
-        mv.put(beta > 0 ? FastMath.sqrt(.5 / beta) : 0.); // Sigma
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding neighbors and optimizing perplexity", ids.size(), LOG) : null;
+    final double[] betas = LOG.isStatistics() ? new double[ids.size()] : null;
+    final int size = ids.size(), nblocks = (size + blocksize - 1) / blocksize;
+    ParallelCore core = ParallelCore.getCore();
+    List<Future<Void>> futures = new ArrayList<>(nblocks);
+    core.connect();
+    try {
+      for(int b = 0; b < nblocks; b++) {
+        final int start = b * blocksize, end = Math.min(size, start + blocksize);
+        futures.add(core.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            // Scratch arrays, resizable
+            DoubleArray dists = new DoubleArray(numberOfNeighbours + 10);
+            IntegerArray inds = new IntegerArray(numberOfNeighbours + 10);
+            ArrayModifiableDBIDs block = DBIDUtil.newArray(end - start);
+            DBIDArrayIter ix = ids.iter();
+            for(ix.seek(start); ix.getOffset() < end; ix.advance()) {
+              block.add(ix);
+            }
+            List<? extends KNNList> knns = knnq.getKNNForBulkDBIDs(block, numberOfNeighbours + 1);
+            for(ix.seek(start); ix.getOffset() < end; ix.advance()) {
+              final int i = ix.getOffset();
+              dists.clear();
+              inds.clear();
+              convertNeighbors(ids, ix, square, knns.get(i - start), dists, inds);
+              double beta = computeSigma(i, dists, perplexity, logPerp, //
+                  pij[i] = new double[dists.size()]);
+              if(betas != null) {
+                betas[i] = beta;
+              }
+              indices[i] = sortByIndex(inds.toArray(), pij[i]);
+              LOG.incrementProcessed(prog);
+            }
+            return null;
+          }
+        }));
+      }
+      for(Future<Void> f : futures) {
+        f.get();
       }
-      indices[ix.getOffset()] = inds.toArray();
-      LOG.incrementProcessed(prog);
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Computing the affinity matrix failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Computing the affinity matrix was interrupted.", e);
+    }
+    finally {
+      core.disconnect();
     }
     LOG.ensureCompleted(prog);
     // Sum of the sparse affinity matrix:
@@ -169,7 +239,7 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
       for(int offi = 0; offi < pij_i.length; offi++) {
         int j = indices[i][offi];
         assert (i != j);
-        int offj = containsIndex(indices[j], i);
+        int offj = Arrays.binarySearch(indices[j], i);
         if(offj >= 0) { // Found
           assert (indices[j][offj] == i);
           // Exploit symmetry:
@@ -185,13 +255,39 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
         }
       }
     }
-    if(LOG.isStatistics()) { // timer != null, mv != null
+    if(LOG.isStatistics()) { // timer != null, betas != null
       LOG.statistics(timer.end());
+      MeanVariance mv = new MeanVariance();
+      for(double beta : betas) {
+        mv.put(beta > 0 ? FastMath.sqrt(.5 / beta) : 0.); // Sigma
+      }
       LOG.statistics(new DoubleStatistic(NearestNeighborAffinityMatrixBuilder.class.getName() + ".sigma.average", mv.getMean()));
       LOG.statistics(new DoubleStatistic(NearestNeighborAffinityMatrixBuilder.class.getName() + ".sigma.stddev", mv.getSampleStddev()));
     }
   }
 
+  /**
+   * Sort a row of the affinity matrix by index.
+   *
+   * @param ind Indexes (will be sorted)
+   * @param val Values (will be permuted accordingly)
+   * @return Sorted indexes
+   */
+  protected static int[] sortByIndex(int[] ind, double[] val) {
+    // Sort (index, position) pairs, packed into longs.
+    long[] order = new long[ind.length];
+    for(int j = 0; j < ind.length; j++) {
+      order[j] = (((long) ind[j]) << 32) | j;
+    }
+    Arrays.sort(order);
+    double[] tmp = val.clone();
+    for(int j = 0; j < order.length; j++) {
+      ind[j] = (int) (order[j] >>> 32);
+      val[j] = tmp[(int) order[j]];
+    }
+    return ind;
+  }
+
   /**
    * Load a neighbor query result into a double and and integer array, also
    * removing the query point. This is necessary, because we have to modify the
@@ -276,23 +372,6 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
     return FastMath.log(sumP) - mbeta * sum;
   }
 
-  /**
-   * Check if the index array contains {@code i}.
-   * 
-   * TODO: sort arrays, use binary search!
-   * 
-   * @param i Index to search
-   * @return Position of index i, or {@code -1} if not found.
-   */
-  protected static int containsIndex(int[] is, int i) {
-    for(int j = 0; j < is.length; j++) {
-      if(i == is[j]) {
-        return j;
-      }
-    }
-    return -1;
-  }
-
   /**
    * Parameterization class.
    *
@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.projection;
 
+import java.util.Arrays;
+
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.VMath;
@@ -38,7 +40,7 @@ public class SparseAffinityMatrix implements AffinityMatrix {
   double[][] pij;
 
   /**
-   * Non-zero indexes
+   * Non-zero indexes, sorted ascending in each row
    */
   int[][] indices;
 
@@ -47,6 +49,13 @@ public class SparseAffinityMatrix implements AffinityMatrix {
    */
   ArrayDBIDs ids;
 
+  /**
+   * Constructor.
+   *
+   * @param pij Non-zero entries
+   * @param indices Non-zero indexes, must be sorted in each row
+   * @param ids Indexed data points
+   */
   public SparseAffinityMatrix(double[][] pij, int[][] indices, ArrayDBIDs ids) {
     this.pij = pij;
     this.indices = indices;
@@ -55,14 +64,8 @@ public class SparseAffinityMatrix implements AffinityMatrix {
 
   @Override
   public double get(int i, int j) {
-    // FIXME: ensure these arrrays are sorted, then use binary search.
-    int[] ind = indices[i];
-    for(int y = 0; y < ind.length; y++) {
-      if(ind[y] == j) {
-        return pij[i][y];
-      }
-    }
-    return 0;
+    int y = Arrays.binarySearch(indices[i], j);
+    return y >= 0 ? pij[i][y] : 0;
   }
 
   @Override
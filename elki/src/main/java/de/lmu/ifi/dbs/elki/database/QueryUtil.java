@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.database;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
@@ -215,20 +216,31 @@ public final class QueryUtil {
   /**
    * Get a linear scan query for the given distance query.
    *
+   * Hints include:
+   * <ul>
+   * <li>{@link de.lmu.ifi.dbs.elki.database.query.DatabaseQuery#HINT_PARALLEL}
+   * bulk queries may use multiple threads</li>
+   * </ul>
+   *
    * @param <O> Object type
    * @param distanceQuery distance query
+   * @param hints Optimizer hints
    * @return KNN query
    */
   @SuppressWarnings("unchecked")
-  public static <O> KNNQuery<O> getLinearScanKNNQuery(DistanceQuery<O> distanceQuery) {
+  public static <O> KNNQuery<O> getLinearScanKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
     // Slight optimizations of linear scans
     if(distanceQuery instanceof PrimitiveDistanceQuery) {
+      boolean parallel = false;
+      for(Object hint : hints) {
+        parallel |= hint == DatabaseQuery.HINT_PARALLEL;
+      }
       final PrimitiveDistanceQuery<O> pdq = (PrimitiveDistanceQuery<O>) distanceQuery;
       if(EuclideanDistanceFunction.STATIC.equals(pdq.getDistanceFunction())) {
         final PrimitiveDistanceQuery<NumberVector> ndq = (PrimitiveDistanceQuery<NumberVector>) pdq;
-        return (KNNQuery<O>) new LinearScanEuclideanDistanceKNNQuery<>(ndq);
+        return (KNNQuery<O>) new LinearScanEuclideanDistanceKNNQuery<>(ndq, parallel);
       }
-      return new LinearScanPrimitiveDistanceKNNQuery<>(pdq);
+      return new LinearScanPrimitiveDistanceKNNQuery<>(pdq, parallel);
     }
     return new LinearScanDistanceKNNQuery<>(distanceQuery);
   }
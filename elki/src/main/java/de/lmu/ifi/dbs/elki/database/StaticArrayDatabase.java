@@ -22,15 +22,24 @@ package de.lmu.ifi.dbs.elki.database;
 
 import java.util.Collection;
 
+import de.lmu.ifi.dbs.elki.data.DoubleMatrixRowVector;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatMatrixRowVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleMatrixRelation;
+import de.lmu.ifi.dbs.elki.database.relation.FloatMatrixRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
@@ -41,7 +50,9 @@ import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -57,6 +68,8 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * @apiviz.landmark
  * @apiviz.composedOf ArrayStaticDBIDs
  * @apiviz.uses DatabaseConnection
+ * @apiviz.uses DoubleMatrixRelation
+ * @apiviz.uses FloatMatrixRelation
  */
 @Description("Database using an in-memory hashtable and at least providing linear scans.")
 public class StaticArrayDatabase extends AbstractDatabase {
@@ -65,6 +78,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   private static final Logging LOG = Logging.getLogger(StaticArrayDatabase.class);
 
+  /**
+   * Maximum size of a contiguous array supported by the JVM.
+   */
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 5;
+
   /**
    * IDs of this database
    */
@@ -80,6 +98,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Store fixed-dimensional double and float vectors in a single array.
+   */
+  protected boolean dense;
+
   /**
    * Constructor.
    *
@@ -87,8 +110,21 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories) {
+    this(databaseConnection, indexFactories, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param dense Store fixed-dimensional double and float vectors in a single
+   *        contiguous array
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, boolean dense) {
     super();
     this.databaseConnection = databaseConnection;
+    this.dense = dense;
     this.ids = null;
     this.idrep = null;
 
@@ -143,19 +179,23 @@ public class StaticArrayDatabase extends AbstractDatabase {
       int numrel = bundle.metaLength();
       for(int i = 0; i < numrel; i++) {
         SimpleTypeInformation<?> meta = bundle.meta(i);
-        @SuppressWarnings("unchecked")
-        SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-        for(it.seek(0); it.valid(); it.advance()) {
-          store.put(it, bundle.data(it.getOffset(), i));
+        Relation<?> relation = dense ? makeMatrixRelation(bundle, i) : null;
+        if(relation == null) {
+          @SuppressWarnings("unchecked")
+          SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
+          WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+          for(it.seek(0); it.valid(); it.advance()) {
+            store.put(it, bundle.data(it.getOffset(), i));
+          }
+          relation = new MaterializedRelation<>(ometa, ids, null, store);
         }
-        Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
+        final SimpleTypeInformation<?> rmeta = relation.getDataTypeInformation();
         relations.add(relation);
         getHierarchy().add(this, relation);
 
         // Try to add indexes where appropriate
         for(IndexFactory<?, ?> factory : indexFactories) {
-          if(factory.getInputTypeRestriction().isAssignableFromType(ometa)) {
+          if(factory.getInputTypeRestriction().isAssignableFromType(rmeta)) {
             @SuppressWarnings("unchecked")
             final IndexFactory<Object, ?> ofact = (IndexFactory<Object, ?>) factory;
             @SuppressWarnings("unchecked")
@@ -176,6 +216,63 @@ public class StaticArrayDatabase extends AbstractDatabase {
     }
   }
 
+  /**
+   * Store a column of fixed-dimensional double or float vectors in a single
+   * contiguous array.
+   *
+   * @param bundle Data bundle
+   * @param col Column number
+   * @return Relation, or {@code null} if the column is not supported, or does
+   *         not fit into a single array.
+   */
+  private Relation<?> makeMatrixRelation(MultipleObjectsBundle bundle, int col) {
+    SimpleTypeInformation<?> meta = bundle.meta(col);
+    final Class<?> cls = meta.getRestrictionClass();
+    if(!(ids instanceof DBIDRange) || !(meta instanceof VectorFieldTypeInformation) //
+        || (cls != DoubleVector.class && cls != FloatVector.class)) {
+      return null;
+    }
+    VectorFieldTypeInformation<?> vmeta = (VectorFieldTypeInformation<?>) meta;
+    if(vmeta.mindim() != vmeta.maxdim()) {
+      return null;
+    }
+    final int dim = vmeta.getDimensionality();
+    DBIDRange range = (DBIDRange) ids;
+    final long size = range.size() * (long) dim;
+    if(size > MAX_ARRAY_SIZE) {
+      LOG.verbose("Data set too large for a contiguous array, storing " + meta + " as objects.");
+      return null;
+    }
+    String[] labels = new String[dim];
+    boolean haslabels = false;
+    for(int d = 0; d < dim; d++) {
+      haslabels |= (labels[d] = vmeta.getLabel(d)) != null;
+    }
+    labels = haslabels ? labels : null;
+    if(LOG.isDebugging()) {
+      LOG.debugFine("Storing " + meta + " in a contiguous array.");
+    }
+    // Offsets below cannot overflow, as size fits into an int.
+    if(cls == FloatVector.class) {
+      float[] data = new float[(int) size];
+      for(DBIDArrayIter it = range.iter(); it.valid(); it.advance()) {
+        final NumberVector vec = (NumberVector) bundle.data(it.getOffset(), col);
+        for(int d = 0, off = range.getOffset(it) * dim; d < dim; d++, off++) {
+          data[off] = vec.floatValue(d);
+        }
+      }
+      return new FloatMatrixRelation(new VectorFieldTypeInformation<>(FloatMatrixRowVector.FACTORY, dim, labels), range, data, null);
+    }
+    double[] data = new double[(int) size];
+    for(DBIDArrayIter it = range.iter(); it.valid(); it.advance()) {
+      final NumberVector vec = (NumberVector) bundle.data(it.getOffset(), col);
+      for(int d = 0, off = range.getOffset(it) * dim; d < dim; d++, off++) {
+        data[off] = vec.doubleValue(d);
+      }
+    }
+    return new DoubleMatrixRelation(new VectorFieldTypeInformation<>(DoubleMatrixRowVector.FACTORY, dim, labels), range, data, null);
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -189,6 +286,12 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractDatabase.Parameterizer {
+    /**
+     * Flag to store fixed-dimensional double and float vectors in a single
+     * contiguous array, instead of one object per vector.
+     */
+    public static final OptionID DENSE_ID = new OptionID("db.dense", "Store fixed-dimensional double and float vectors in a single contiguous array, to reduce memory usage and improve memory locality.");
+
     /**
      * Holds the database connection to get the initial data from.
      */
@@ -199,6 +302,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<IndexFactory<?, ?>> indexFactories;
 
+    /**
+     * Store double and float vectors in a single array.
+     */
+    private boolean dense = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -212,11 +320,15 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      final Flag denseF = new Flag(DENSE_ID);
+      if(config.grab(denseF)) {
+        dense = denseF.isTrue();
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, dense);
     }
   }
 }
@@ -0,0 +1,151 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.distance;
+
+import de.lmu.ifi.dbs.elki.data.DoubleMatrixRowVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleMatrixRelation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Distance query on a {@link DoubleMatrixRelation}, computing distances
+ * directly on the row offsets of the underlying array.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses DoubleMatrixRelation
+ */
+public class DoubleMatrixDistanceQuery extends SpatialPrimitiveDistanceQuery<NumberVector> {
+  /**
+   * Distance kernel on array offsets.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  @FunctionalInterface
+  public interface Kernel {
+    /**
+     * Compute the distance of two rows.
+     *
+     * @param d1 Data array of the first vector
+     * @param o1 Offset of the first vector
+     * @param d2 Data array of the second vector
+     * @param o2 Offset of the second vector
+     * @param dim Dimensionality
+     * @return Distance
+     */
+    double distance(double[] d1, int o1, double[] d2, int o2, int dim);
+  }
+
+  /**
+   * Relation to query.
+   */
+  private final DoubleMatrixRelation matrix;
+
+  /**
+   * Data array.
+   */
+  private final double[] data;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Distance kernel.
+   */
+  private final Kernel kernel;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to query
+   * @param distanceFunction Distance function
+   * @param kernel Kernel, must be consistent with the distance function
+   */
+  public DoubleMatrixDistanceQuery(DoubleMatrixRelation relation, SpatialPrimitiveDistanceFunction<? super NumberVector> distanceFunction, Kernel kernel) {
+    super(relation, distanceFunction);
+    this.matrix = relation;
+    this.data = relation.getData();
+    this.dim = relation.getDimensionality();
+    this.kernel = kernel;
+  }
+
+  /**
+   * Make an optimized distance query, if the distance function is supported.
+   *
+   * @param relation Relation
+   * @param distanceFunction Distance function
+   * @return Distance query, or {@code null} if not supported.
+   */
+  public static DoubleMatrixDistanceQuery make(DoubleMatrixRelation relation, DistanceFunction<?> distanceFunction) {
+    final Class<?> cls = distanceFunction.getClass();
+    if(cls == SquaredEuclideanDistanceFunction.class) {
+      SquaredEuclideanDistanceFunction df = (SquaredEuclideanDistanceFunction) distanceFunction;
+      return new DoubleMatrixDistanceQuery(relation, df, df::distance);
+    }
+    if(cls == EuclideanDistanceFunction.class) {
+      EuclideanDistanceFunction df = (EuclideanDistanceFunction) distanceFunction;
+      return new DoubleMatrixDistanceQuery(relation, df, df::distance);
+    }
+    if(cls == ManhattanDistanceFunction.class) {
+      ManhattanDistanceFunction df = (ManhattanDistanceFunction) distanceFunction;
+      return new DoubleMatrixDistanceQuery(relation, df, df::distance);
+    }
+    if(cls == CosineDistanceFunction.class) {
+      CosineDistanceFunction df = (CosineDistanceFunction) distanceFunction;
+      return new DoubleMatrixDistanceQuery(relation, df, df::distance);
+    }
+    return null;
+  }
+
+  @Override
+  public double distance(DBIDRef id1, DBIDRef id2) {
+    return kernel.distance(data, matrix.getRowOffset(id1), data, matrix.getRowOffset(id2), dim);
+  }
+
+  @Override
+  public double distance(NumberVector o1, DBIDRef id2) {
+    if(!(o1 instanceof DoubleMatrixRowVector) || o1.getDimensionality() != dim) {
+      return super.distance(o1, id2);
+    }
+    final DoubleMatrixRowVector v1 = (DoubleMatrixRowVector) o1;
+    return kernel.distance(v1.getData(), v1.getOffset(), data, matrix.getRowOffset(id2), dim);
+  }
+
+  @Override
+  public double distance(DBIDRef id1, NumberVector o2) {
+    if(!(o2 instanceof DoubleMatrixRowVector) || o2.getDimensionality() != dim) {
+      return super.distance(id1, o2);
+    }
+    final DoubleMatrixRowVector v2 = (DoubleMatrixRowVector) o2;
+    return kernel.distance(data, matrix.getRowOffset(id1), v2.getData(), v2.getOffset(), dim);
+  }
+}
@@ -61,7 +61,17 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
    * @param distanceQuery Distance function to use
    */
   public LinearScanEuclideanDistanceKNNQuery(PrimitiveDistanceQuery<O> distanceQuery) {
-    super(distanceQuery);
+    this(distanceQuery, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceQuery Distance function to use
+   * @param parallel Process bulk queries in parallel
+   */
+  public LinearScanEuclideanDistanceKNNQuery(PrimitiveDistanceQuery<O> distanceQuery, boolean parallel) {
+    super(distanceQuery, parallel);
     assert (EuclideanDistanceFunction.STATIC.equals(distanceQuery.getDistanceFunction()));
   }
 
@@ -122,17 +132,6 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
    */
   @Override
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
-    final int size = objs.size();
-    // Linear scan style KNN.
-    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-      O candidate = relation.get(iter);
-      for(int index = 0; index < size; index++) {
-        final KNNHeap heap = heaps.get(index);
-        final double dist = SQUARED.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
-          heap.insert(dist, iter);
-        }
-      }
-    }
+    blockedBatchKNN(objs, heaps, SQUARED);
   }
-}
\ No newline at end of file
+}
@@ -22,8 +22,12 @@ package de.lmu.ifi.dbs.elki.database.query.knn;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -33,6 +37,7 @@ import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 
 /**
  * Instance of this query for a particular database.
@@ -40,6 +45,11 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
  * This is a subtle optimization: for primitive queries, it is clearly faster to
  * retrieve the query object from the relation only once!
  * 
+ * Bulk queries are processed in tiles: a block of query objects is compared to
+ * a block of data objects at a time, such that both stay cache resident, and
+ * the data set is only streamed from memory once per query block (instead of
+ * once per query). Query blocks can optionally be processed in parallel.
+ * 
  * @author Erich Schubert
  * @since 0.4.0
  * 
@@ -52,14 +62,40 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
    */
   private PrimitiveDistanceFunction<? super O> rawdist;
 
+  /**
+   * Number of query objects per tile.
+   */
+  protected static final int QUERY_BLOCK = 64;
+
+  /**
+   * Number of data objects per tile.
+   */
+  protected static final int DATA_BLOCK = 1024;
+
+  /**
+   * Process bulk queries in parallel.
+   */
+  protected boolean parallel;
+
   /**
    * Constructor.
    * 
    * @param distanceQuery Distance function to use
    */
   public LinearScanPrimitiveDistanceKNNQuery(PrimitiveDistanceQuery<O> distanceQuery) {
+    this(distanceQuery, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceQuery Distance function to use
+   * @param parallel Process bulk queries in parallel
+   */
+  public LinearScanPrimitiveDistanceKNNQuery(PrimitiveDistanceQuery<O> distanceQuery, boolean parallel) {
     super(distanceQuery);
-    rawdist = distanceQuery.getDistanceFunction();
+    this.rawdist = distanceQuery.getDistanceFunction();
+    this.parallel = parallel;
   }
 
   @Override
@@ -118,17 +154,90 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
    * @param heaps Heaps array
    */
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
+    blockedBatchKNN(objs, heaps, rawdist);
+  }
+
+  /**
+   * Tiled batch kNN, for the given distance function.
+   * 
+   * @param objs Objects list
+   * @param heaps Heaps array
+   * @param df Distance function to use
+   */
+  protected void blockedBatchKNN(List<O> objs, List<KNNHeap> heaps, PrimitiveDistanceFunction<? super O> df) {
+    final ArrayDBIDs data = DBIDUtil.ensureArray(relation.getDBIDs());
     final int size = objs.size();
-    // Linear scan style KNN.
-    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-      O candidate = relation.get(iter);
-      for(int index = 0; index < size; index++) {
-        final KNNHeap heap = heaps.get(index);
-        final double dist = rawdist.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
-          heap.insert(dist, iter);
+    final int numblocks = (size + QUERY_BLOCK - 1) / QUERY_BLOCK;
+    // Do not wait for other tasks when already running inside a worker.
+    ParallelCore core = parallel && numblocks > 1 && !ParallelCore.isWorkerThread() ? ParallelCore.getCore() : null;
+    if(core == null || core.getParallelism() <= 1) {
+      Object[] tile = new Object[Math.min(DATA_BLOCK, data.size())];
+      for(int qstart = 0; qstart < size; qstart += QUERY_BLOCK) {
+        processQueryBlock(objs, heaps, qstart, Math.min(qstart + QUERY_BLOCK, size), data, tile, df);
+      }
+      return;
+    }
+    core.connect();
+    try {
+      List<Future<?>> parts = new ArrayList<>(numblocks);
+      for(int qstart = 0; qstart < size; qstart += QUERY_BLOCK) {
+        final int qs = qstart, qe = Math.min(qstart + QUERY_BLOCK, size);
+        parts.add(core.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            processQueryBlock(objs, heaps, qs, qe, data, new Object[Math.min(DATA_BLOCK, data.size())], df);
+            return null;
+          }
+        }));
+      }
+      for(Future<?> fut : parts) {
+        fut.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Parallel kNN query failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Process one block of queries against all data tiles.
+   * 
+   * @param objs Query objects
+   * @param heaps Query heaps
+   * @param qstart First query
+   * @param qend Query end (exclusive)
+   * @param data Data objects
+   * @param tile Buffer for the current data tile
+   * @param df Distance function
+   */
+  private void processQueryBlock(List<O> objs, List<KNNHeap> heaps, int qstart, int qend, ArrayDBIDs data, Object[] tile, PrimitiveDistanceFunction<? super O> df) {
+    final int dsize = data.size();
+    DBIDArrayIter iter = data.iter();
+    for(int dstart = 0; dstart < dsize; dstart += tile.length) {
+      final int dlen = Math.min(tile.length, dsize - dstart);
+      // Fetch the data tile once for all queries in this block:
+      iter.seek(dstart);
+      for(int j = 0; j < dlen; j++, iter.advance()) {
+        tile[j] = relation.get(iter);
+      }
+      for(int q = qstart; q < qend; q++) {
+        final O obj = objs.get(q);
+        final KNNHeap heap = heaps.get(q);
+        double max = heap.getKNNDistance();
+        for(int j = 0; j < dlen; j++) {
+          @SuppressWarnings("unchecked")
+          final double dist = df.distance(obj, (O) tile[j]);
+          if(dist <= max) {
+            max = heap.insert(dist, iter.seek(dstart + j));
+          }
         }
       }
     }
   }
-}
\ No newline at end of file
+}
@@ -88,6 +88,19 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
         return null; // Linear scan is not desirable.
       }
     }
+    return instantiateDistanceQuery(distanceFunction);
+  }
+
+  /**
+   * Instantiate a linear scan distance query, if no index was found.
+   *
+   * Relations with a special storage layout may override this to provide
+   * optimized distance computations.
+   *
+   * @param distanceFunction Distance function
+   * @return Distance query
+   */
+  protected DistanceQuery<O> instantiateDistanceQuery(DistanceFunction<? super O> distanceFunction) {
     return distanceFunction.instantiate(this);
   }
 
@@ -159,7 +172,7 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
       }
       getLogger().debugFinest(buf.toString());
     }
-    return QueryUtil.getLinearScanKNNQuery(distanceQuery);
+    return QueryUtil.getLinearScanKNNQuery(distanceQuery, hints);
   }
 
   @Override
@@ -0,0 +1,178 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import de.lmu.ifi.dbs.elki.data.FloatMatrixRowVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.FloatMatrixDistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+
+/**
+ * Static relation of fixed-dimensional vectors, stored in a single contiguous
+ * row-major {@code float[]} array.
+ *
+ * Objects are returned as light-weight {@link FloatMatrixRowVector} views
+ * onto this array. Compared to storing one {@code FloatVector} per object,
+ * this saves the object and array headers of every vector, and consecutive
+ * objects are adjacent in memory. For common distance functions, the distance
+ * queries operate directly on the row offsets.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf FloatMatrixRowVector
+ * @apiviz.uses FloatMatrixDistanceQuery
+ */
+public class FloatMatrixRelation extends AbstractRelation<FloatMatrixRowVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(FloatMatrixRelation.class);
+
+  /**
+   * Data type.
+   */
+  private final VectorFieldTypeInformation<FloatMatrixRowVector> type;
+
+  /**
+   * The DBIDs this relation is defined for.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * Matrix data, in row-major order.
+   */
+  private final float[] data;
+
+  /**
+   * Dimensionality (row length).
+   */
+  private final int dim;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * Constructor.
+   *
+   * @param type Data type, must have a fixed dimensionality
+   * @param ids IDs
+   * @param data Data, in row-major order (not copied)
+   * @param name Relation name, may be {@code null}
+   */
+  public FloatMatrixRelation(VectorFieldTypeInformation<FloatMatrixRowVector> type, DBIDRange ids, float[] data, String name) {
+    super();
+    this.type = type;
+    this.ids = ids;
+    this.data = data;
+    this.dim = type.getDimensionality();
+    this.name = name;
+    assert (data.length == ids.size() * dim) : "Data array does not match the relation size.";
+  }
+
+  @Override
+  public FloatMatrixRowVector get(DBIDRef id) {
+    return new FloatMatrixRowVector(data, getRowOffset(id), dim);
+  }
+
+  /**
+   * Get the offset of an object in the data array.
+   *
+   * @param id Object id
+   * @return Offset of the first value
+   */
+  public int getRowOffset(DBIDRef id) {
+    return ids.getOffset(id) * dim;
+  }
+
+  /**
+   * Get the underlying data array. Do not modify.
+   *
+   * @return Data, in row-major order
+   */
+  public float[] getData() {
+    return data;
+  }
+
+  /**
+   * Get the dimensionality of the vectors.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public StaticDBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public VectorFieldTypeInformation<FloatMatrixRowVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  protected DistanceQuery<FloatMatrixRowVector> instantiateDistanceQuery(DistanceFunction<? super FloatMatrixRowVector> distanceFunction) {
+    FloatMatrixDistanceQuery q = FloatMatrixDistanceQuery.make(this, distanceFunction);
+    if(q == null) {
+      return super.instantiateDistanceQuery(distanceFunction);
+    }
+    // The query accepts any number vector, including our row views.
+    @SuppressWarnings("unchecked")
+    DistanceQuery<FloatMatrixRowVector> cq = (DistanceQuery<FloatMatrixRowVector>) (DistanceQuery<?>) q;
+    return cq;
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "relation";
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
@@ -0,0 +1,506 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.application.cache.CacheDoubleDistanceInOnDiskMatrix;
+import de.lmu.ifi.dbs.elki.application.cache.CacheFloatDistanceInOnDiskMatrix;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.external.DiskCacheBasedDoubleDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.external.DiskCacheBasedFloatDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.DistanceIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.persistent.OnDiskUpperTriangleMatrix;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Distance matrix index backed by a memory-mapped file, as written by
+ * {@link CacheDoubleDistanceInOnDiskMatrix} or
+ * {@link CacheFloatDistanceInOnDiskMatrix}.
+ *
+ * The matrix is not loaded into memory: distance, kNN and range queries by
+ * DBID read the values directly from the mapped file, so repeated experiments
+ * on the same data set do not need to recompute (or reload) the distances.
+ *
+ * The file must have been computed for the same data set (in the same order),
+ * and with the same distance function as given to this index; only the matrix
+ * size is validated against the relation. The file is mapped as a single
+ * buffer, so the matrix must not exceed 2 GB; call {@link #close()} to release
+ * the mapping when the index is no longer needed.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf OnDiskUpperTriangleMatrix
+ * @apiviz.has OnDiskDistanceQuery
+ * @apiviz.has OnDiskKNNQuery
+ * @apiviz.has OnDiskRangeQuery
+ *
+ * @param <O> Object type
+ */
+public class OnDiskDistanceMatrix<O> extends AbstractIndex<O> implements DistanceIndex<O>, RangeIndex<O>, KNNIndex<O>, AutoCloseable {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(OnDiskDistanceMatrix.class);
+
+  /**
+   * Nested distance function.
+   */
+  final protected DistanceFunction<? super O> distanceFunction;
+
+  /**
+   * Nested distance query, for object queries.
+   */
+  protected DistanceQuery<O> distanceQuery;
+
+  /**
+   * Matrix file.
+   */
+  private File matrixfile;
+
+  /**
+   * Matrix file uses float precision.
+   */
+  private boolean useFloat;
+
+  /**
+   * On-disk matrix.
+   */
+  private OnDiskUpperTriangleMatrix matrix;
+
+  /**
+   * Read-only view of the matrix data.
+   */
+  private ByteBuffer data;
+
+  /**
+   * DBID range.
+   */
+  private DBIDRange ids;
+
+  /**
+   * Size of DBID range.
+   */
+  private int size;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param matrixfile Matrix file
+   * @param useFloat Matrix file uses float precision
+   */
+  public OnDiskDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction, File matrixfile, boolean useFloat) {
+    super(relation);
+    this.distanceFunction = distanceFunction;
+    this.matrixfile = matrixfile;
+    this.useFloat = useFloat;
+  }
+
+  @Override
+  public void initialize() {
+    DBIDs rids = relation.getDBIDs();
+    if(!(rids instanceof DBIDRange)) {
+      throw new AbortException("Distance matrixes are currently only supported for DBID ranges (as used by static databases) for performance reasons (Patches welcome).");
+    }
+    ids = (DBIDRange) rids;
+    size = ids.size();
+    final int recordsize = useFloat ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE;
+    // The matrix is accessed via a single mapped buffer, with int offsets.
+    if(((((long) size) * (size + 1)) >>> 1) * recordsize > Integer.MAX_VALUE) {
+      throw new AbortException("Distance matrix of " + size + " objects is too large to be memory-mapped as a single buffer.");
+    }
+    distanceQuery = distanceFunction.instantiate(relation);
+    try {
+      if(useFloat) {
+        matrix = new OnDiskUpperTriangleMatrix(matrixfile, DiskCacheBasedFloatDistanceFunction.FLOAT_CACHE_MAGIC, 0, recordsize, false);
+      }
+      else {
+        matrix = new OnDiskUpperTriangleMatrix(matrixfile, DiskCacheBasedDoubleDistanceFunction.DOUBLE_CACHE_MAGIC, 0, recordsize, false);
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Cannot open distance matrix file " + matrixfile + ": " + e.getMessage(), e);
+    }
+    if(matrix.getMatrixSize() != size) {
+      final int msize = matrix.getMatrixSize();
+      close();
+      throw new AbortException("Distance matrix file has size " + msize + " but the relation has size " + size);
+    }
+    data = matrix.getReadOnlyView();
+  }
+
+  /**
+   * Close the matrix file, and release the mapping.
+   */
+  @Override
+  public void close() {
+    data = null;
+    if(matrix != null) {
+      try {
+        matrix.close();
+      }
+      catch(IOException e) {
+        LOG.exception("Cannot close distance matrix file " + matrixfile, e);
+      }
+      matrix = null;
+    }
+  }
+
+  /**
+   * Record index of the diagonal element of row x.
+   *
+   * @param x Row
+   * @return Record index of (x, 0)
+   */
+  private static int rowStart(int x) {
+    return (x * (x + 1)) >>> 1;
+  }
+
+  /**
+   * Read a value from the matrix.
+   *
+   * @param rec Record index
+   * @return Distance
+   */
+  private double get(int rec) {
+    return useFloat ? data.getFloat(rec * ByteArrayUtil.SIZE_FLOAT) : data.getDouble(rec * ByteArrayUtil.SIZE_DOUBLE);
+  }
+
+  @Override
+  public void logStatistics() {
+    if(matrix != null) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.getMatrixSize()));
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "On-disk Distance Matrix";
+  }
+
+  @Override
+  public String getShortName() {
+    return "ondisk-distance-matrix";
+  }
+
+  @Override
+  public DistanceQuery<O> getDistanceQuery(DistanceFunction<? super O> distanceFunction, Object... hints) {
+    if(this.distanceFunction.equals(distanceFunction)) {
+      return new OnDiskDistanceQuery();
+    }
+    return null;
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    if(this.distanceFunction.equals(distanceQuery.getDistanceFunction())) {
+      return new OnDiskKNNQuery();
+    }
+    return null;
+  }
+
+  @Override
+  public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    if(this.distanceFunction.equals(distanceQuery.getDistanceFunction())) {
+      return new OnDiskRangeQuery();
+    }
+    return null;
+  }
+
+  /**
+   * Distance query using the on-disk matrix.
+   *
+   * @author Erich Schubert
+   */
+  private class OnDiskDistanceQuery implements DistanceQuery<O> {
+    @Override
+    public double distance(DBIDRef id1, DBIDRef id2) {
+      final int x = ids.getOffset(id1), y = ids.getOffset(id2);
+      return (y <= x) ? get(rowStart(x) + y) : get(rowStart(y) + x);
+    }
+
+    @Override
+    public double distance(O o1, DBIDRef id2) {
+      return distanceQuery.distance(o1, id2);
+    }
+
+    @Override
+    public double distance(DBIDRef id1, O o2) {
+      return distanceQuery.distance(id1, o2);
+    }
+
+    @Override
+    public double distance(O o1, O o2) {
+      return distanceQuery.distance(o1, o2);
+    }
+
+    @Override
+    public DistanceFunction<? super O> getDistanceFunction() {
+      return distanceQuery.getDistanceFunction();
+    }
+
+    @Override
+    public Relation<? extends O> getRelation() {
+      return relation;
+    }
+  }
+
+  /**
+   * Range query using the on-disk matrix.
+   *
+   * @author Erich Schubert
+   */
+  private class OnDiskRangeQuery implements RangeQuery<O> {
+    @Override
+    public DoubleDBIDList getRangeForDBID(DBIDRef id, double range) {
+      ModifiableDoubleDBIDList ret = DBIDUtil.newDistanceDBIDList();
+      getRangeForDBID(id, range, ret);
+      ret.sort();
+      return ret;
+    }
+
+    @Override
+    public void getRangeForDBID(DBIDRef id, double range, ModifiableDoubleDBIDList result) {
+      DBIDArrayIter it = ids.iter();
+      final int x = ids.getOffset(id);
+      // Case y <= x: rowStart(x) + y
+      int pos = rowStart(x);
+      for(int y = 0; y <= x; y++) {
+        final double dist = get(pos);
+        if(dist <= range) {
+          result.add(dist, it.seek(y));
+        }
+        pos++;
+      }
+      // Case y > x: rowStart(y) + x
+      pos = rowStart(x + 1) + x;
+      for(int y = x + 1; y < size; y++) {
+        final double dist = get(pos);
+        if(dist <= range) {
+          result.add(dist, it.seek(y));
+        }
+        pos += y + 1;
+      }
+    }
+
+    @Override
+    public DoubleDBIDList getRangeForObject(O obj, double range) {
+      throw new AbortException("Distance matrix range query only supports ID queries.");
+    }
+
+    @Override
+    public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
+      throw new AbortException("Distance matrix range query only supports ID queries.");
+    }
+  }
+
+  /**
+   * kNN query using the on-disk matrix.
+   *
+   * @author Erich Schubert
+   */
+  private class OnDiskKNNQuery implements KNNQuery<O> {
+    @Override
+    public KNNList getKNNForDBID(DBIDRef id, int k) {
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      DBIDArrayIter it = ids.iter();
+      double max = Double.POSITIVE_INFINITY;
+      final int x = ids.getOffset(id);
+      // Case y <= x: rowStart(x) + y
+      int pos = rowStart(x);
+      for(int y = 0; y <= x; y++) {
+        final double dist = get(pos);
+        if(dist <= max) {
+          max = heap.insert(dist, it.seek(y));
+        }
+        pos++;
+      }
+      // Case y > x: rowStart(y) + x
+      pos = rowStart(x + 1) + x;
+      for(int y = x + 1; y < size; y++) {
+        final double dist = get(pos);
+        if(dist <= max) {
+          max = heap.insert(dist, it.seek(y));
+        }
+        pos += y + 1;
+      }
+      return heap.toKNNList();
+    }
+
+    @Override
+    public List<? extends KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+      List<KNNList> ret = new ArrayList<>(ids.size());
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        ret.add(getKNNForDBID(iter, k));
+      }
+      return ret;
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      throw new AbortException("Distance matrix kNN query only supports ID queries.");
+    }
+  }
+
+  /**
+   * Factory for the index.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has OnDiskDistanceMatrix
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O, OnDiskDistanceMatrix<O>> {
+    /**
+     * Nested distance function.
+     */
+    final protected DistanceFunction<? super O> distanceFunction;
+
+    /**
+     * Matrix file.
+     */
+    final protected File matrixfile;
+
+    /**
+     * Matrix file uses float precision.
+     */
+    final protected boolean useFloat;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param matrixfile Matrix file
+     * @param useFloat Matrix file uses float precision
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, File matrixfile, boolean useFloat) {
+      super();
+      this.distanceFunction = distanceFunction;
+      this.matrixfile = matrixfile;
+      this.useFloat = useFloat;
+    }
+
+    @Override
+    public OnDiskDistanceMatrix<O> instantiate(Relation<O> relation) {
+      return new OnDiskDistanceMatrix<>(relation, distanceFunction, matrixfile, useFloat);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distanceFunction.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterizer.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     *
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractParameterizer {
+      /**
+       * Option for the matrix file name.
+       */
+      public static final OptionID FILE_ID = new OptionID("matrix.file", "File containing the precomputed distance matrix.");
+
+      /**
+       * Option for the matrix precision.
+       */
+      public static final OptionID FLOAT_ID = new OptionID("matrix.float", "The distance matrix file uses single (float) precision.");
+
+      /**
+       * Nested distance function.
+       */
+      protected DistanceFunction<? super O> distanceFunction;
+
+      /**
+       * Matrix file.
+       */
+      protected File matrixfile;
+
+      /**
+       * Matrix file uses float precision.
+       */
+      protected boolean useFloat;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        ObjectParameter<DistanceFunction<? super O>> distanceP = new ObjectParameter<>(PrecomputedDistanceMatrix.Factory.Parameterizer.DISTANCE_ID, DistanceFunction.class);
+        if(config.grab(distanceP)) {
+          distanceFunction = distanceP.instantiateClass(config);
+        }
+        FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.INPUT_FILE);
+        if(config.grab(fileP)) {
+          matrixfile = fileP.getValue();
+        }
+        Flag floatF = new Flag(FLOAT_ID);
+        if(config.grab(floatF)) {
+          useFloat = floatF.isTrue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(distanceFunction, matrixfile, useFloat);
+      }
+    }
+  }
+}
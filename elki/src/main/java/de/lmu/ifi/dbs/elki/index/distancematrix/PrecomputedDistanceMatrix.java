@@ -48,21 +48,28 @@ import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
  * Distance matrix, for precomputing similarity for a small data set.
  *
  * This class uses a linear memory layout (not a ragged array), and assumes
- * symmetry as well as strictness. This way, it only stores the upper triangle
- * matrix with double precision. It has to store (n-1) * (n-2) distance values
- * in memory, requiring 8 * (n-1) * (n-2) bytes. Since Java has a size limit of
- * arrays of 31 bits (signed integer), we can store at most 2^16 objects
- * (precisely, 65536 objects) in a single array, which needs about 16 GB of RAM.
+ * strictness. For symmetric distances, it only stores the lower triangle
+ * matrix, i.e., n * (n-1) / 2 distance values; otherwise the full matrix
+ * (without the diagonal) is stored. Values are stored with double precision,
+ * or optionally with float precision to halve the memory requirements.
+ *
+ * Since Java has a size limit of arrays of 31 bits (signed integer), the
+ * matrix is addressed with long offsets, and split into chunks of 2^27
+ * values each. The matrix can optionally be computed in parallel.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -90,9 +97,44 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
   protected DistanceQuery<O> distanceQuery;
 
   /**
-   * Distance matrix.
+   * Default number of bits for the chunk size.
+   */
+  private static final int CHUNK_BITS = 27;
+
+  /**
+   * Number of bits for the chunk size.
+   */
+  private final int chunkbits;
+
+  /**
+   * Mask to get the offset within a chunk.
+   */
+  private final long chunkmask;
+
+  /**
+   * Distance matrix, double precision.
+   */
+  private double[][] matrix = null;
+
+  /**
+   * Distance matrix, float precision.
+   */
+  private float[][] fmatrix = null;
+
+  /**
+   * Use float precision.
    */
-  private double[] matrix = null;
+  private boolean useFloat;
+
+  /**
+   * Compute the matrix in parallel.
+   */
+  private boolean parallel;
+
+  /**
+   * Symmetric distance function.
+   */
+  private boolean symmetric;
 
   /**
    * DBID range.
@@ -111,12 +153,38 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param distanceFunction Distance function
    */
   public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction) {
+    this(relation, distanceFunction, false, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param useFloat Store distances with float precision
+   * @param parallel Compute the matrix in parallel
+   */
+  public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction, boolean useFloat, boolean parallel) {
+    this(relation, distanceFunction, useFloat, parallel, CHUNK_BITS);
+  }
+
+  /**
+   * Constructor with a custom chunk size, for testing.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param useFloat Store distances with float precision
+   * @param parallel Compute the matrix in parallel
+   * @param chunkbits Number of bits for the chunk size
+   */
+  PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction, boolean useFloat, boolean parallel, int chunkbits) {
     super(relation);
+    this.chunkbits = chunkbits;
+    this.chunkmask = (1L << chunkbits) - 1;
     this.distanceFunction = distanceFunction;
-
-    if(!distanceFunction.isSymmetric()) {
-      throw new AbortException("Distance matrixes currently only support symmetric distance functions (Patches welcome).");
-    }
+    this.symmetric = distanceFunction.isSymmetric();
+    this.useFloat = useFloat;
+    this.parallel = parallel;
   }
 
   @Override
@@ -127,26 +195,36 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     }
     ids = (DBIDRange) rids;
     size = ids.size();
-    if(size > 65536) {
-      throw new AbortException("Distance matrixes currently have a limit of 65536 objects (~16 GB). After this, the array size exceeds the Java integer range, and a different data structure needs to be used.");
-    }
 
     distanceQuery = distanceFunction.instantiate(relation);
 
-    final int msize = triangleSize(size);
-    matrix = new double[msize];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", msize, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      // y < x -- must match {@link #getOffset}!
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        matrix[pos] = distanceQuery.distance(ix, iy);
-        pos++;
+    final long msize = symmetric ? triangleSize(size) : size * (long) (size - 1);
+    final int nchunks = (int) ((msize + chunkmask) >>> chunkbits);
+    if(useFloat) {
+      fmatrix = new float[nchunks][];
+    }
+    else {
+      matrix = new double[nchunks][];
+    }
+    for(int i = 0; i < nchunks; i++) {
+      final int csize = (int) Math.min(chunkmask + 1, msize - (((long) i) << chunkbits));
+      if(useFloat) {
+        fmatrix[i] = new float[csize];
       }
-      if(prog != null) {
-        prog.setProcessed(prog.getProcessed() + ix.getOffset(), LOG);
+      else {
+        matrix[i] = new double[csize];
+      }
+    }
+
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", size, LOG) : null;
+    RowProcessor proc = new RowProcessor(prog);
+    if(parallel) {
+      ParallelExecutor.run(ids, proc);
+    }
+    else {
+      Processor.Instance inst = proc.instantiate(null);
+      for(DBIDIter ix = ids.iter(); ix.valid(); ix.advance()) {
+        inst.map(ix);
       }
     }
     LOG.ensureCompleted(prog);
@@ -158,8 +236,8 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param x Offset
    * @return Size of complete triangle
    */
-  protected static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  protected static long triangleSize(int x) {
+    return (x * (long) (x - 1)) >>> 1;
   }
 
   /**
@@ -169,14 +247,94 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param y Y parameter
    * @return Array offset
    */
-  private int getOffset(int x, int y) {
+  private long getOffset(int x, int y) {
+    if(!symmetric) {
+      // Row x, skipping the diagonal.
+      return x * (long) (size - 1) + (y < x ? y : y - 1);
+    }
     return (y < x) ? (triangleSize(x) + y) : (triangleSize(y) + x);
   }
 
+  /**
+   * Get a value from the matrix.
+   *
+   * @param off Offset
+   * @return Value
+   */
+  private double get(long off) {
+    final int c = (int) (off >>> chunkbits), p = (int) (off & chunkmask);
+    return matrix != null ? matrix[c][p] : fmatrix[c][p];
+  }
+
+  /**
+   * Store a value in the matrix.
+   *
+   * @param off Offset
+   * @param val Value
+   */
+  private void set(long off, double val) {
+    final int c = (int) (off >>> chunkbits), p = (int) (off & chunkmask);
+    if(matrix != null) {
+      matrix[c][p] = val;
+    }
+    else {
+      fmatrix[c][p] = (float) val;
+    }
+  }
+
+  /**
+   * Processor to compute the distances of one row.
+   *
+   * @author Erich Schubert
+   */
+  private class RowProcessor implements Processor, Processor.Instance {
+    /**
+     * Progress, may be {@code null}.
+     */
+    private FiniteProgress prog;
+
+    /**
+     * Constructor.
+     *
+     * @param prog Progress
+     */
+    public RowProcessor(FiniteProgress prog) {
+      super();
+      this.prog = prog;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return this; // Stateless
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      // Nothing to do.
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final int x = ids.getOffset(id);
+      DBIDArrayIter iy = ids.iter();
+      // y < x -- must match {@link #getOffset}!
+      for(int y = 0; y < x; y++) {
+        set(getOffset(x, y), distanceQuery.distance(id, iy.seek(y)));
+      }
+      if(!symmetric) {
+        for(int y = x + 1; y < size; y++) {
+          set(getOffset(x, y), distanceQuery.distance(id, iy.seek(y)));
+        }
+      }
+      LOG.incrementProcessed(prog);
+    }
+  }
+
   @Override
   public void logStatistics() {
-    if(matrix != null) {
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.length));
+    if(matrix != null || fmatrix != null) {
+      final long msize = symmetric ? triangleSize(size) : size * (long) (size - 1);
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", msize));
     }
   }
 
@@ -223,7 +381,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     @Override
     public double distance(DBIDRef id1, DBIDRef id2) {
       final int x = ids.getOffset(id1), y = ids.getOffset(id2);
-      return (x != y) ? matrix[getOffset(x, y)] : 0.;
+      return (x != y) ? get(getOffset(x, y)) : 0.;
     }
 
     @Override
@@ -272,10 +430,22 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       DBIDArrayIter it = ids.iter();
 
       final int x = ids.getOffset(id);
+      if(!symmetric) {
+        // Row-wise storage:
+        for(int y = 0; y < size; y++) {
+          if(y != x) {
+            final double dist = get(getOffset(x, y));
+            if(dist <= range) {
+              result.add(dist, it.seek(y));
+            }
+          }
+        }
+        return;
+      }
       // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
+      long pos = triangleSize(x);
       for(int y = 0; y < x; y++) {
-        final double dist = matrix[pos];
+        final double dist = get(pos);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
@@ -285,7 +455,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       // Case y > x: triangleSize(y) + x
       pos = triangleSize(x + 1) + x;
       for(int y = x + 1; y < size; y++) {
-        final double dist = matrix[pos];
+        final double dist = get(pos);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
@@ -317,10 +487,22 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       DBIDArrayIter it = ids.iter();
       double max = Double.POSITIVE_INFINITY;
       final int x = ids.getOffset(id);
+      if(!symmetric) {
+        // Row-wise storage:
+        for(int y = 0; y < size; y++) {
+          if(y != x) {
+            final double dist = get(getOffset(x, y));
+            if(dist <= max) {
+              max = heap.insert(dist, it.seek(y));
+            }
+          }
+        }
+        return heap.toKNNList();
+      }
       // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
+      long pos = triangleSize(x);
       for(int y = 0; y < x; y++) {
-        final double dist = matrix[pos];
+        final double dist = get(pos);
         if(dist <= max) {
           max = heap.insert(dist, it.seek(y));
         }
@@ -330,7 +512,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       // Case y > x: triangleSize(y) + x
       pos = triangleSize(x + 1) + x;
       for(int y = x + 1; y < size; y++) {
-        final double dist = matrix[pos];
+        final double dist = get(pos);
         if(dist <= max) {
           max = heap.insert(dist, it.seek(y));
         }
@@ -370,19 +552,42 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
      */
     final protected DistanceFunction<? super O> distanceFunction;
 
+    /**
+     * Use float precision.
+     */
+    final protected boolean useFloat;
+
+    /**
+     * Compute the matrix in parallel.
+     */
+    final protected boolean parallel;
+
     /**
      * Constructor.
      *
      * @param distanceFunction Distance function
      */
     public Factory(DistanceFunction<? super O> distanceFunction) {
+      this(distanceFunction, false, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param useFloat Store distances with float precision
+     * @param parallel Compute the matrix in parallel
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, boolean useFloat, boolean parallel) {
       super();
       this.distanceFunction = distanceFunction;
+      this.useFloat = useFloat;
+      this.parallel = parallel;
     }
 
     @Override
     public PrecomputedDistanceMatrix<O> instantiate(Relation<O> relation) {
-      return new PrecomputedDistanceMatrix<>(relation, distanceFunction);
+      return new PrecomputedDistanceMatrix<>(relation, distanceFunction, useFloat, parallel);
     }
 
     @Override
@@ -405,11 +610,31 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
        */
       public static final OptionID DISTANCE_ID = new OptionID("matrix.distance", "Distance function for the precomputed distance matrix.");
 
+      /**
+       * Flag to store distances with float precision.
+       */
+      public static final OptionID FLOAT_ID = new OptionID("matrix.float", "Store distances with single (float) precision, to halve the memory requirements.");
+
+      /**
+       * Flag to compute the matrix in parallel.
+       */
+      public static final OptionID PARALLEL_ID = new OptionID("matrix.parallel", "Compute the distance matrix using multiple threads.");
+
       /**
        * Nested distance function.
        */
       protected DistanceFunction<? super O> distanceFunction;
 
+      /**
+       * Use float precision.
+       */
+      protected boolean useFloat;
+
+      /**
+       * Compute the matrix in parallel.
+       */
+      protected boolean parallel;
+
       @Override
       protected void makeOptions(Parameterization config) {
         super.makeOptions(config);
@@ -417,11 +642,19 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
         if(config.grab(distanceP)) {
           distanceFunction = distanceP.instantiateClass(config);
         }
+        Flag floatF = new Flag(FLOAT_ID);
+        if(config.grab(floatF)) {
+          useFloat = floatF.isTrue();
+        }
+        Flag parallelF = new Flag(PARALLEL_ID);
+        if(config.grab(parallelF)) {
+          parallel = parallelF.isTrue();
+        }
       }
 
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(distanceFunction);
+        return new Factory<>(distanceFunction, useFloat, parallel);
       }
     }
   }
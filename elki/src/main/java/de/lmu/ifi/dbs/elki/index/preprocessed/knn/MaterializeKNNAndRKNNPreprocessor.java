@@ -53,6 +53,7 @@ import de.lmu.ifi.dbs.elki.index.RKNNIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
 
@@ -94,12 +95,55 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
     super(relation, distanceFunction, k);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to process
+   * @param distanceFunction the distance function to use
+   * @param k query k
+   * @param parallel Materialize the kNN in parallel
+   */
+  public MaterializeKNNAndRKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, boolean parallel) {
+    super(relation, distanceFunction, k, parallel);
+  }
+
   @Override
   protected void preprocess() {
     createStorage();
     materialized_RkNN = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT, TreeSet.class);
-    FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors and reverse k nearest neighbors (k=" + k + ")", relation.size(), getLogger()) : null;
-    materializeKNNAndRKNNs(DBIDUtil.ensureArray(relation.getDBIDs()), progress);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    if(parallel && ParallelCore.getCore().getParallelism() > 1) {
+      materializeKNNs(ids);
+      FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing reverse k nearest neighbors (k=" + k + ")", relation.size(), getLogger()) : null;
+      materializeRKNNs(ids, progress);
+    }
+    else {
+      FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors and reverse k nearest neighbors (k=" + k + ")", relation.size(), getLogger()) : null;
+      materializeKNNAndRKNNs(ids, progress);
+    }
+  }
+
+  /**
+   * Materializes the RkNNs of the specified object IDs, from the already
+   * materialized kNNs.
+   *
+   * @param ids the IDs of the objects
+   * @param progress Progress
+   */
+  private void materializeRKNNs(ArrayDBIDs ids, FiniteProgress progress) {
+    // add an empty list to each rknn
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      if(materialized_RkNN.get(iter) == null) {
+        materialized_RkNN.put(iter, new TreeSet<DoubleDBIDPair>());
+      }
+    }
+    for(DBIDIter id = ids.iter(); id.valid(); id.advance()) {
+      for(DoubleDBIDListIter iter = storage.get(id).iter(); iter.valid(); iter.advance()) {
+        materialized_RkNN.get(iter).add(makePair(iter, id));
+      }
+      getLogger().incrementProcessed(progress);
+    }
+    getLogger().ensureCompleted(progress);
   }
 
   /**
@@ -419,9 +463,20 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
       super(k, distanceFunction);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param k k
+     * @param distanceFunction distance function
+     * @param parallel Materialize the kNN in parallel
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, boolean parallel) {
+      super(k, distanceFunction, parallel);
+    }
+
     @Override
     public MaterializeKNNAndRKNNPreprocessor<O> instantiate(Relation<O> relation) {
-      MaterializeKNNAndRKNNPreprocessor<O> instance = new MaterializeKNNAndRKNNPreprocessor<>(relation, distanceFunction, k);
+      MaterializeKNNAndRKNNPreprocessor<O> instance = new MaterializeKNNAndRKNNPreprocessor<>(relation, distanceFunction, k, parallel);
       return instance;
     }
 
@@ -435,7 +490,7 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
     public static class Parameterizer<O> extends MaterializeKNNPreprocessor.Factory.Parameterizer<O> {
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(k, distanceFunction);
+        return new Factory<>(k, distanceFunction, parallel);
       }
     }
   }
@@ -36,6 +36,7 @@ import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.SetDBIDs;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.DynamicIndex;
@@ -44,15 +45,31 @@ import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.WriteDataStoreProcessor;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedObject;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * A preprocessor for annotation of the k nearest neighbors (and their
  * distances) to each database object.
  *
  * Used for example by {@link de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF}.
+ * When added to the database with the largest k needed, all algorithms of the
+ * LOF family share the same materialized neighborhoods, instead of each
+ * computing their own.
+ *
+ * Parallel materialization is opt-in: if enabled and the current
+ * {@link ParallelCore} has more than one thread, the kNN are materialized in
+ * parallel. Primitive linear scans then use the parallel blocked bulk scan,
+ * other queries are run in parallel per object.
  *
  * @author Erich Schubert
  * @since 0.2
@@ -75,9 +92,15 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
   /**
    * Flag to use bulk operations.
    *
-   * TODO: right now, bulk is not that good - so don't use
+   * Bulk is only beneficial for primitive linear scans, which use a blocked
+   * algorithm.
+   */
+  private final boolean usebulk;
+
+  /**
+   * Flag to materialize the kNN in parallel.
    */
-  private static final boolean usebulk = false;
+  protected final boolean parallel;
 
   /**
    * KNNQuery instance to use.
@@ -97,8 +120,24 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    * @param k query k
    */
   public MaterializeKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k) {
+    this(relation, distanceFunction, k, false);
+  }
+
+  /**
+   * Constructor with preprocessing step.
+   *
+   * @param relation Relation to preprocess
+   * @param distanceFunction the distance function to use
+   * @param k query k
+   * @param parallel Materialize the kNN in parallel
+   */
+  public MaterializeKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, boolean parallel) {
     super(relation, distanceFunction, k);
-    this.knnQuery = relation.getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE);
+    this.parallel = parallel;
+    this.knnQuery = parallel ? //
+        relation.getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE, DatabaseQuery.HINT_PARALLEL) : //
+        relation.getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE);
+    this.usebulk = knnQuery instanceof LinearScanPrimitiveDistanceKNNQuery;
   }
 
   /**
@@ -115,11 +154,23 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
       log.statistics(new LongStatistic(this.getClass().getName() + ".k", k));
     }
     Duration duration = log.isStatistics() ? log.newDuration(this.getClass().getName() + ".precomputation-time").begin() : null;
-    FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), getLogger()) : null;
+    materializeKNNs(ids);
+    if(duration != null) {
+      log.statistics(duration.end());
+    }
+  }
+
+  /**
+   * Materialize the kNN of all objects into the storage.
+   *
+   * @param ids Objects to process
+   */
+  protected void materializeKNNs(ArrayDBIDs ids) {
+    final Logging log = getLogger(); // Could be subclass
+    FiniteProgress progress = log.isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), log) : null;
     // Try bulk
-    List<? extends KNNList> kNNList = null;
     if(usebulk) {
-      kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
+      List<? extends KNNList> kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
       if(kNNList != null) {
         int i = 0;
         for(DBIDIter id = ids.iter(); id.valid(); id.advance(), i++) {
@@ -128,6 +179,10 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
         }
       }
     }
+    else if(parallel && ParallelCore.getCore().getParallelism() > 1) {
+      materializeParallel(ids);
+      return;
+    }
     else {
       final boolean ismetric = getDistanceQuery().getDistanceFunction().isMetric();
       for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
@@ -146,9 +201,24 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
       }
     }
     log.ensureCompleted(progress);
-    if(duration != null) {
-      log.statistics(duration.end());
+  }
+
+  /**
+   * Materialize the kNN of all objects, using all threads of the current
+   * {@link ParallelCore}. The kNN query must be thread safe.
+   *
+   * @param ids Objects to process
+   */
+  protected void materializeParallel(DBIDs ids) {
+    if(getLogger().isVerbose()) {
+      getLogger().verbose("Materializing k nearest neighbors (k=" + k + ") using " + ParallelCore.getCore().getParallelism() + " threads.");
     }
+    KNNProcessor<O> knnm = new KNNProcessor<>(k, knnQuery);
+    SharedObject<KNNList> knnv = new SharedObject<>();
+    WriteDataStoreProcessor<KNNList> storek = new WriteDataStoreProcessor<>(storage);
+    knnm.connectKNNOutput(knnv);
+    storek.connectInput(knnv);
+    ParallelExecutor.run(ids, knnm, storek);
   }
 
   @Override
@@ -393,6 +463,17 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    * @param <O> The object type
    */
   public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Flag to materialize the kNN in parallel, using the threads of the
+     * current {@link ParallelCore}.
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("materialize.parallel", "Materialize the nearest neighbors in parallel.");
+
+    /**
+     * Materialize the kNN in parallel.
+     */
+    protected boolean parallel;
+
     /**
      * Index factory.
      *
@@ -400,12 +481,24 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
      * @param distanceFunction distance function
      */
     public Factory(int k, DistanceFunction<? super O> distanceFunction) {
+      this(k, distanceFunction, false);
+    }
+
+    /**
+     * Index factory.
+     *
+     * @param k k parameter
+     * @param distanceFunction distance function
+     * @param parallel Materialize the kNN in parallel
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, boolean parallel) {
       super(k, distanceFunction);
+      this.parallel = parallel;
     }
 
     @Override
     public MaterializeKNNPreprocessor<O> instantiate(Relation<O> relation) {
-      MaterializeKNNPreprocessor<O> instance = new MaterializeKNNPreprocessor<>(relation, distanceFunction, k);
+      MaterializeKNNPreprocessor<O> instance = new MaterializeKNNPreprocessor<>(relation, distanceFunction, k, parallel);
       return instance;
     }
 
@@ -417,9 +510,23 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
      * @apiviz.exclude
      */
     public static class Parameterizer<O> extends AbstractMaterializeKNNPreprocessor.Factory.Parameterizer<O> {
+      /**
+       * Materialize the kNN in parallel.
+       */
+      protected boolean parallel;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        Flag parallelF = new Flag(PARALLEL_ID);
+        if(config.grab(parallelF)) {
+          parallel = parallelF.isTrue();
+        }
+      }
+
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(k, distanceFunction);
+        return new Factory<>(k, distanceFunction, parallel);
       }
     }
   }
@@ -0,0 +1,671 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+
+/**
+ * Materialize the k nearest neighbors into a memory-mapped file, which is
+ * reused by later runs on the same data set.
+ *
+ * The file uses fixed-size records: for every object (in DBID range order),
+ * the number of neighbors stored, followed by k pairs of the neighbor's offset
+ * in the DBID range and its distance (in float or double precision). When the
+ * file exists and is compatible (same precision, same data set size, at least
+ * k neighbors), it is mapped lazily on the first query, and the kNN lists are
+ * served directly from the mapped file, without deserializing them. Otherwise,
+ * the kNN lists are computed and the file is (re-)written.
+ *
+ * Since only k neighbors fit into a record, ties at the k-distance are not
+ * retained. The file must have been computed with the same distance function,
+ * on the same data set; only the data set size is validated.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has MappedKNNList
+ *
+ * @param <O> Object type
+ */
+@Title("Persistent kNN Neighborhood preprocessor")
+@Description("Materializes the k nearest neighbors of objects of a database into a memory-mapped file, for reuse across runs.")
+public class PersistentKNNPreprocessor<O> extends AbstractMaterializeKNNPreprocessor<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(PersistentKNNPreprocessor.class);
+
+  /**
+   * Magic number for files with double precision distances.
+   */
+  public static final int KNN_DOUBLE_MAGIC = 0xCAC4D0B1;
+
+  /**
+   * Magic number for files with float precision distances.
+   */
+  public static final int KNN_FLOAT_MAGIC = 0xCAC4F10A;
+
+  /**
+   * Header size: magic, number of objects, k.
+   */
+  private static final int HEADER_SIZE = 3 * ByteArrayUtil.SIZE_INT;
+
+  /**
+   * File to store the kNN lists.
+   */
+  private File filename;
+
+  /**
+   * Store distances in float precision.
+   */
+  private boolean useFloat;
+
+  /**
+   * KNNQuery instance to use when the file needs to be (re-)built.
+   */
+  private final KNNQuery<O> knnQuery;
+
+  /**
+   * DBID range of the relation.
+   */
+  private DBIDRange ids;
+
+  /**
+   * Mapped chunks of the file, published only once fully mapped.
+   */
+  private volatile ByteBuffer[] chunks;
+
+  /**
+   * Number of neighbors per record in the file (may exceed k).
+   */
+  private int filek;
+
+  /**
+   * Size of a single neighbor entry.
+   */
+  private int entrysize;
+
+  /**
+   * Size of a record.
+   */
+  private int recordsize;
+
+  /**
+   * Records per mapped chunk.
+   */
+  private int perchunk;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distanceFunction Distance function
+   * @param k K
+   * @param file File to store the kNN lists
+   * @param useFloat Store distances in float precision
+   */
+  public PersistentKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, File file, boolean useFloat) {
+    super(relation, distanceFunction, k);
+    this.filename = file;
+    this.useFloat = useFloat;
+    this.knnQuery = relation.getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE);
+  }
+
+  @Override
+  public void initialize() {
+    if(chunks != null) {
+      throw new UnsupportedOperationException("Preprocessor already ran.");
+    }
+    ids = DBIDUtil.assertRange(relation.getDBIDs());
+    // Only build the file now; an existing file is opened on first use.
+    if(ids.size() > 0 && !isCompatible()) {
+      preprocess();
+    }
+  }
+
+  @Override
+  protected synchronized void preprocess() {
+    if(ids == null) {
+      ids = DBIDUtil.assertRange(relation.getDBIDs());
+    }
+    try {
+      if(!isCompatible()) {
+        if(filename.exists()) {
+          LOG.verbose("kNN file " + filename + " is not compatible, recomputing.");
+        }
+        write();
+      }
+      open();
+    }
+    catch(IOException e) {
+      throw new AbortException("I/O error in kNN file " + filename + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Check whether the existing file can be used.
+   *
+   * @return {@code true} when the file exists and has a compatible header.
+   */
+  private boolean isCompatible() {
+    if(!filename.exists() || filename.length() < HEADER_SIZE) {
+      return false;
+    }
+    try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+      int magic = file.readInt(), size = file.readInt(), fk = file.readInt();
+      return magic == (useFloat ? KNN_FLOAT_MAGIC : KNN_DOUBLE_MAGIC) //
+          && size == ids.size() && fk >= k //
+          && file.length() == HEADER_SIZE + size * (long) recordSize(fk);
+    }
+    catch(IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Compute the size of a record.
+   *
+   * @param fk Number of neighbors per record
+   * @return Record size
+   */
+  private int recordSize(int fk) {
+    final long size = ByteArrayUtil.SIZE_INT + fk * (long) (ByteArrayUtil.SIZE_INT + (useFloat ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE));
+    if(size > Integer.MAX_VALUE) {
+      throw new AbortException("k is too large for a kNN file.");
+    }
+    return (int) size;
+  }
+
+  /**
+   * Map the chunks of the file.
+   *
+   * @param channel File channel
+   * @param mode Mapping mode
+   * @return Mapped chunks
+   * @throws IOException on I/O errors
+   */
+  private ByteBuffer[] mapChunks(FileChannel channel, MapMode mode) throws IOException {
+    final int size = ids.size();
+    entrysize = ByteArrayUtil.SIZE_INT + (useFloat ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE);
+    recordsize = recordSize(filek);
+    perchunk = Math.max(1, Integer.MAX_VALUE / recordsize);
+    ByteBuffer[] bufs = new ByteBuffer[(size + perchunk - 1) / perchunk];
+    for(int c = 0, start = 0; c < bufs.length; c++, start += perchunk) {
+      final int recs = Math.min(perchunk, size - start);
+      MappedByteBuffer buf = channel.map(mode, HEADER_SIZE + start * (long) recordsize, recs * (long) recordsize);
+      bufs[c] = mode == MapMode.READ_ONLY ? buf.asReadOnlyBuffer() : buf;
+    }
+    return bufs;
+  }
+
+  /**
+   * Open an existing, compatible file.
+   *
+   * @throws IOException on I/O errors
+   */
+  private void open() throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+        FileChannel channel = file.getChannel()) {
+      file.readInt(); // Magic, already validated
+      file.readInt(); // Size, already validated
+      filek = file.readInt();
+      chunks = mapChunks(channel, MapMode.READ_ONLY);
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".file-k", filek));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".file-size", filename.length()));
+    }
+  }
+
+  /**
+   * Compute the kNN lists, and write them to the file.
+   *
+   * @throws IOException on I/O errors
+   */
+  private void write() throws IOException {
+    final int size = ids.size();
+    filek = k;
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".k", k));
+    }
+    Duration duration = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".precomputation-time").begin() : null;
+    FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", size, LOG) : null;
+    try (RandomAccessFile file = new RandomAccessFile(filename, "rw");
+        FileChannel channel = file.getChannel()) {
+      file.setLength(0);
+      file.setLength(HEADER_SIZE + size * (long) recordSize(k));
+      file.writeInt(useFloat ? KNN_FLOAT_MAGIC : KNN_DOUBLE_MAGIC);
+      file.writeInt(size);
+      file.writeInt(k);
+      ByteBuffer[] bufs = mapChunks(channel, MapMode.READ_WRITE);
+      // Bulk is only beneficial for primitive linear scans.
+      if(knnQuery instanceof LinearScanPrimitiveDistanceKNNQuery) {
+        List<? extends KNNList> lists = knnQuery.getKNNForBulkDBIDs(ids, k);
+        for(int i = 0; i < size; i++) {
+          writeRecord(bufs, i, lists.get(i));
+          LOG.incrementProcessed(progress);
+        }
+      }
+      else {
+        for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+          writeRecord(bufs, iter.getOffset(), knnQuery.getKNNForDBID(iter, k));
+          LOG.incrementProcessed(progress);
+        }
+      }
+      for(ByteBuffer chunk : bufs) {
+        ((MappedByteBuffer) chunk).force();
+      }
+    }
+    LOG.ensureCompleted(progress);
+    if(duration != null) {
+      LOG.statistics(duration.end());
+    }
+  }
+
+  /**
+   * Write a single record.
+   *
+   * @param bufs Writable chunks
+   * @param off Object offset
+   * @param knn kNN list
+   */
+  private void writeRecord(ByteBuffer[] bufs, int off, KNNList knn) {
+    final ByteBuffer buf = bufs[off / perchunk];
+    int pos = (off % perchunk) * recordsize;
+    final int n = Math.min(knn.size(), filek);
+    buf.putInt(pos, n);
+    pos += ByteArrayUtil.SIZE_INT;
+    DoubleDBIDListIter it = knn.iter();
+    for(int i = 0; i < n; i++, it.advance()) {
+      buf.putInt(pos, ids.getOffset(it));
+      if(useFloat) {
+        buf.putFloat(pos + ByteArrayUtil.SIZE_INT, (float) it.doubleValue());
+      }
+      else {
+        buf.putDouble(pos + ByteArrayUtil.SIZE_INT, it.doubleValue());
+      }
+      pos += entrysize;
+    }
+  }
+
+  @Override
+  public KNNList get(DBIDRef id) {
+    ByteBuffer[] bufs = chunks;
+    if(bufs == null) {
+      // Open lazily, at most once.
+      synchronized(this) {
+        if((bufs = chunks) == null) {
+          if(LOG.isDebugging()) {
+            LOG.debug("Opening kNN file: " + filename);
+          }
+          preprocess();
+          bufs = chunks;
+        }
+      }
+    }
+    final int off = ids.getOffset(id);
+    return new MappedKNNList(bufs[off / perchunk], (off % perchunk) * recordsize);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public String getLongName() {
+    return "Persistent kNN preprocessor";
+  }
+
+  @Override
+  public String getShortName() {
+    return "persistent-knn";
+  }
+
+  @Override
+  public void logStatistics() {
+    final String prefix = this.getClass().getName();
+    LOG.statistics(new StringStatistic(prefix + ".file", filename.toString()));
+    LOG.statistics(new LongStatistic(prefix + ".k", k));
+    final ByteBuffer[] bufs = chunks;
+    LOG.statistics(new LongStatistic(prefix + ".chunks", bufs != null ? bufs.length : 0));
+  }
+
+  /**
+   * kNN list view of a record in the mapped file.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class MappedKNNList implements KNNList {
+    /**
+     * Buffer containing the record.
+     */
+    private final ByteBuffer buf;
+
+    /**
+     * Position of the first entry.
+     */
+    private final int start;
+
+    /**
+     * List size.
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param buf Buffer
+     * @param pos Record position
+     */
+    MappedKNNList(ByteBuffer buf, int pos) {
+      this.buf = buf;
+      this.start = pos + ByteArrayUtil.SIZE_INT;
+      final int n = buf.getInt(pos);
+      if(n <= k) {
+        this.size = n;
+        return;
+      }
+      // File has more neighbors than k: keep ties only.
+      final double kdist = distance(k - 1);
+      int i = k;
+      while(i < n && distance(i) <= kdist) {
+        i++;
+      }
+      this.size = i;
+    }
+
+    /**
+     * Get the distance of the i-th neighbor.
+     *
+     * @param i Index
+     * @return Distance
+     */
+    private double distance(int i) {
+      final int pos = start + i * entrysize + ByteArrayUtil.SIZE_INT;
+      return useFloat ? buf.getFloat(pos) : buf.getDouble(pos);
+    }
+
+    /**
+     * Get the DBID offset of the i-th neighbor.
+     *
+     * @param i Index
+     * @return Offset in the DBID range
+     */
+    private int offset(int i) {
+      return buf.getInt(start + i * entrysize);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return size == 0;
+    }
+
+    @Override
+    public int getK() {
+      return k;
+    }
+
+    @Override
+    public double getKNNDistance() {
+      return size >= k ? distance(k - 1) : Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public DoubleDBIDPair get(int index) {
+      return DBIDUtil.newPair(distance(index), ids.assignVar(offset(index), DBIDUtil.newVar()));
+    }
+
+    @Override
+    public DBIDVar assignVar(int index, DBIDVar var) {
+      return ids.assignVar(offset(index), var);
+    }
+
+    @Override
+    public boolean contains(DBIDRef o) {
+      final int off = ids.getOffset(o);
+      for(int i = 0; i < size; i++) {
+        if(offset(i) == off) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public DoubleDBIDListIter iter() {
+      return new Itr();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("kNNList[");
+      for(DoubleDBIDListIter iter = this.iter(); iter.valid();) {
+        sb.append(iter.doubleValue()).append(':').append(iter.internalGetIndex());
+        iter.advance();
+        if(iter.valid()) {
+          sb.append(',');
+        }
+      }
+      sb.append(']');
+      return sb.toString();
+    }
+
+    /**
+     * Iterator over the mapped list.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class Itr implements DoubleDBIDListIter {
+      /**
+       * Current position.
+       */
+      private int pos = 0;
+
+      /**
+       * Iterator over the DBID range, to resolve offsets.
+       */
+      private final DBIDArrayIter ref = ids.iter();
+
+      @Override
+      public boolean valid() {
+        return pos < size && pos >= 0;
+      }
+
+      @Override
+      public Itr advance() {
+        pos++;
+        return this;
+      }
+
+      @Override
+      public Itr advance(int count) {
+        pos += count;
+        return this;
+      }
+
+      @Override
+      public Itr retract() {
+        --pos;
+        return this;
+      }
+
+      @Override
+      public Itr seek(int off) {
+        pos = off;
+        return this;
+      }
+
+      @Override
+      public int getOffset() {
+        return pos;
+      }
+
+      @Override
+      public double doubleValue() {
+        return distance(pos);
+      }
+
+      @Override
+      public DoubleDBIDPair getPair() {
+        return get(pos);
+      }
+
+      @Override
+      public int internalGetIndex() {
+        return ref.seek(offset(pos)).internalGetIndex();
+      }
+    }
+  }
+
+  /**
+   * The parameterizable factory.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.landmark
+   * @apiviz.stereotype factory
+   * @apiviz.uses PersistentKNNPreprocessor oneway - - «create»
+   *
+   * @param <O> The object type
+   */
+  public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * File to store the kNN lists.
+     */
+    private File filename;
+
+    /**
+     * Store distances in float precision.
+     */
+    private boolean useFloat;
+
+    /**
+     * Index factory.
+     *
+     * @param k k parameter
+     * @param distanceFunction distance function
+     * @param filename kNN file
+     * @param useFloat Store distances in float precision
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, File filename, boolean useFloat) {
+      super(k, distanceFunction);
+      this.filename = filename;
+      this.useFloat = useFloat;
+    }
+
+    @Override
+    public PersistentKNNPreprocessor<O> instantiate(Relation<O> relation) {
+      return new PersistentKNNPreprocessor<>(relation, distanceFunction, k, filename, useFloat);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O> extends AbstractMaterializeKNNPreprocessor.Factory.Parameterizer<O> {
+      /**
+       * Option ID for the kNN file.
+       */
+      public static final OptionID FILE_ID = new OptionID("materialize.file", "File to store the k nearest neighbors in, reused if it exists and is compatible.");
+
+      /**
+       * Flag to store distances in float precision.
+       */
+      public static final OptionID FLOAT_ID = new OptionID("materialize.float", "Store distances in float precision.");
+
+      /**
+       * File to store the kNN lists.
+       */
+      private File filename;
+
+      /**
+       * Store distances in float precision.
+       */
+      private boolean useFloat;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        final FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE);
+        if(config.grab(fileP)) {
+          filename = fileP.getValue();
+        }
+        final Flag floatF = new Flag(FLOAT_ID);
+        if(config.grab(floatF)) {
+          useFloat = floatF.isTrue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(k, distanceFunction, filename, useFloat);
+      }
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Run the members of an ensemble (independent, coarse-grained jobs such as
+ * one outlier detection run per subspace) in parallel.
+ *
+ * Each member runs with the {@link ParallelCore#SEQUENTIAL} core bound, so
+ * parallel code inside a member does not wait for the busy workers of the
+ * outer core. The results are passed to the consumer in member order, in the
+ * calling thread, so aggregation is reproducible. At most twice the number of
+ * threads are pending at any time, which bounds the memory used by results
+ * that have not yet been consumed.
+ *
+ * Members must not share mutable state; randomized members should use their
+ * own random generator, seeded per member.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses ParallelCore
+ * @apiviz.has Member
+ * @apiviz.uses Consumer
+ */
+public final class EnsembleExecutor {
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private EnsembleExecutor() {
+    // Static methods only
+  }
+
+  /**
+   * Run all members, and pass the results to the consumer in member order.
+   *
+   * @param size Number of members
+   * @param member Member job
+   * @param consumer Consumer of the results
+   * @param <T> Result type
+   */
+  public static <T> void run(int size, Member<T> member, Consumer<? super T> consumer) {
+    ParallelCore core = ParallelCore.getCore();
+    if(core.getParallelism() <= 1 || size <= 1) {
+      for(int i = 0; i < size; i++) {
+        consumer.accept(i, member.run(i));
+      }
+      return;
+    }
+    core.connect();
+    final int window = core.getParallelism() << 1;
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Future<T>[] pending = new Future[window];
+    int submitted = 0;
+    try {
+      for(; submitted < size && submitted < window; submitted++) {
+        pending[submitted % window] = core.submit(new MemberTask<>(member, submitted));
+      }
+      for(int i = 0; i < size; i++) {
+        T result = pending[i % window].get();
+        pending[i % window] = null;
+        if(submitted < size) {
+          pending[submitted % window] = core.submit(new MemberTask<>(member, submitted));
+          submitted++;
+        }
+        consumer.accept(i, result);
+      }
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Ensemble member failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Ensemble execution interrupted.", e);
+    }
+    finally {
+      for(Future<T> f : pending) {
+        if(f != null) {
+          f.cancel(false);
+        }
+      }
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Run all members, and collect the results.
+   *
+   * @param size Number of members
+   * @param member Member job
+   * @param <T> Result type
+   * @return Results, in member order
+   */
+  public static <T> List<T> run(int size, Member<T> member) {
+    final List<T> results = new ArrayList<>(size);
+    run(size, member, new Consumer<T>() {
+      @Override
+      public void accept(int i, T result) {
+        results.add(result);
+      }
+    });
+    return results;
+  }
+
+  /**
+   * A member of the ensemble.
+   *
+   * @author Erich Schubert
+   *
+   * @param <T> Result type
+   */
+  public interface Member<T> {
+    /**
+     * Run a single member.
+     *
+     * @param i Member number
+     * @return Result
+     */
+    T run(int i);
+  }
+
+  /**
+   * Consumer of the member results.
+   *
+   * @author Erich Schubert
+   *
+   * @param <T> Result type
+   */
+  public interface Consumer<T> {
+    /**
+     * Process the result of a member.
+     *
+     * @param i Member number
+     * @param result Result
+     */
+    void accept(int i, T result);
+  }
+
+  /**
+   * Task to run a member with the sequential core bound.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <T> Result type
+   */
+  private static class MemberTask<T> implements Callable<T> {
+    /**
+     * Member to run.
+     */
+    private Member<T> member;
+
+    /**
+     * Member number.
+     */
+    private int i;
+
+    /**
+     * Constructor.
+     *
+     * @param member Member to run
+     * @param i Member number
+     */
+    MemberTask(Member<T> member, int i) {
+      this.member = member;
+      this.i = i;
+    }
+
+    @Override
+    public T call() {
+      final ParallelCore prev = ParallelCore.getCore();
+      ParallelCore.setCore(ParallelCore.SEQUENTIAL);
+      try {
+        return member.run(i);
+      }
+      finally {
+        ParallelCore.setCore(prev);
+      }
+    }
+  }
+}
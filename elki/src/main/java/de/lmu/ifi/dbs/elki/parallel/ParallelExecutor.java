@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
@@ -38,6 +39,13 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
 /**
  * Class to run processors in parallel, on all available cores.
  *
+ * Work is distributed using guided self-scheduling: every worker thread keeps
+ * its own processor and shared variable instances, but claims chunks of the
+ * input from a shared cursor. Chunks start large (to keep overhead low) and
+ * shrink as the remaining work decreases, so that threads that finish early
+ * take over the remaining objects, instead of idling while a single thread
+ * finishes an expensive block (e.g., kNN queries in dense regions).
+ *
  * TODO: add progress
  *
  * @author Erich Schubert
@@ -48,28 +56,37 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
  */
 public class ParallelExecutor {
   /**
-   * Run a task on all available CPUs.
+   * Minimum number of objects per chunk.
+   */
+  private static final int MIN_CHUNK = 16;
+
+  /**
+   * Run a task on all available CPUs (of the current core).
    *
    * @param ids IDs to process
    * @param procs Processors to run
    */
   public static final void run(DBIDs ids, Processor... procs) {
-    ParallelCore core = ParallelCore.getCore();
+    run(ParallelCore.getCore(), ids, procs);
+  }
+
+  /**
+   * Run a task on the given parallel core.
+   *
+   * @param core Parallel core to use
+   * @param ids IDs to process
+   * @param procs Processors to run
+   */
+  public static final void run(ParallelCore core, DBIDs ids, Processor... procs) {
     core.connect();
     try {
-      // TODO: try different strategies anyway!
       ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
       final int size = aids.size();
-      int numparts = core.getParallelism();
-      // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
-
-      final int blocksize = (size + (numparts - 1)) / numparts;
-      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
-        final int start = i * blocksize;
-        final int end = (start + blocksize < size) ? start + blocksize : size;
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
+      final int numthreads = Math.max(1, Math.min(core.getParallelism(), size));
+      final ChunkScheduler sched = new ChunkScheduler(size, numthreads, MIN_CHUNK);
+      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numthreads);
+      for(int i = 0; i < numthreads; i++) {
+        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, sched, procs);
         parts.add(core.submit(run));
       }
 
@@ -89,7 +106,70 @@ public class ParallelExecutor {
   }
 
   /**
-   * Run for an array part, without step size.
+   * Adaptive chunk scheduler, handing out shrinking chunks of an array range.
+   *
+   * @author Erich Schubert
+   */
+  protected static class ChunkScheduler {
+    /**
+     * Next position to hand out.
+     */
+    private final AtomicInteger next = new AtomicInteger(0);
+
+    /**
+     * Size of the array.
+     */
+    private final int size;
+
+    /**
+     * Divisor for the remaining size.
+     */
+    private final int divisor;
+
+    /**
+     * Minimum chunk size.
+     */
+    private final int minchunk;
+
+    /**
+     * Constructor.
+     *
+     * @param size Array size
+     * @param numthreads Number of threads
+     * @param minchunk Minimum chunk size
+     */
+    protected ChunkScheduler(int size, int numthreads, int minchunk) {
+      super();
+      this.size = size;
+      this.divisor = numthreads << 1;
+      // Do not use chunks larger than a fair share for small inputs.
+      this.minchunk = Math.max(1, Math.min(minchunk, size / divisor));
+    }
+
+    /**
+     * Claim the next chunk.
+     *
+     * @param end Output buffer for the end of the chunk (exclusive)
+     * @return Start of the chunk, or -1 when no work is left.
+     */
+    protected int claim(int[] end) {
+      while(true) {
+        final int start = next.get();
+        if(start >= size) {
+          return -1;
+        }
+        final int len = Math.max(minchunk, (size - start) / divisor);
+        final int stop = (len < size - start) ? start + len : size;
+        if(next.compareAndSet(start, stop)) {
+          end[0] = stop;
+          return start;
+        }
+      }
+    }
+  }
+
+  /**
+   * Worker processing chunks of an array, as claimed from a scheduler.
    *
    * @author Erich Schubert
    *
@@ -102,14 +182,9 @@ public class ParallelExecutor {
     private ArrayDBIDs ids;
 
     /**
-     * Start position
-     */
-    private int start;
-
-    /**
-     * End position
+     * Chunk scheduler
      */
-    private int end;
+    private ChunkScheduler sched;
 
     /**
      * The processor masters that own the instances.
@@ -125,15 +200,13 @@ public class ParallelExecutor {
      * Constructor.
      *
      * @param ids IDs to process
-     * @param start Starting position
-     * @param end End position
+     * @param sched Chunk scheduler
      * @param procs Processors to run
      */
-    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs) {
+    protected BlockArrayRunner(ArrayDBIDs ids, ChunkScheduler sched, Processor[] procs) {
       super();
       this.ids = ids;
-      this.start = start;
-      this.end = end;
+      this.sched = sched;
       this.procs = procs;
     }
 
@@ -145,10 +218,13 @@ public class ParallelExecutor {
       }
 
       DBIDArrayIter iter = ids.iter();
-      iter.seek(start);
-      for(int c = end - start; iter.valid() && c >= 0; iter.advance(), c--) {
-        for(int i = 0; i < instances.length; i++) {
-          instances[i].map(iter);
+      int[] end = new int[1];
+      for(int start = sched.claim(end); start >= 0; start = sched.claim(end)) {
+        iter.seek(start);
+        for(int c = end[0] - start; iter.valid() && c > 0; iter.advance(), c--) {
+          for(int i = 0; i < instances.length; i++) {
+            instances[i].map(iter);
+          }
         }
       }
       for(int i = 0; i < instances.length; i++) {
@@ -0,0 +1,325 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * A segmented LRU cache for concurrent access.
+ *
+ * Pages are distributed onto a number of segments (by page id), each of which
+ * is an independent LRU cache guarded by its own lock. Concurrent readers
+ * therefore only contend when they access the same segment, and cache hits
+ * never touch the backing file. Accesses to the backing file are serialized,
+ * as most page files are not thread safe.
+ *
+ * Because each segment evicts independently, this is only an approximation of
+ * a global LRU strategy.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses PageFile
+ *
+ * @param <P> Page type
+ */
+public class ConcurrentLRUCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ConcurrentLRUCache.class);
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * The maximum number of objects in this cache.
+   */
+  protected int cacheSize;
+
+  /**
+   * Number of lock stripes (segments) requested.
+   */
+  protected int stripes;
+
+  /**
+   * The cache segments.
+   */
+  private Segment[] segments;
+
+  /**
+   * The underlying file of this cache. If an object is dropped it is written to
+   * the file. All accesses synchronize on this object.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Cache statistics.
+   */
+  private Counter hits, misses, evictions;
+
+  /**
+   * Initializes this cache with the specified parameters.
+   *
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param stripes Number of lock stripes
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public ConcurrentLRUCache(int cacheSizeBytes, int stripes, PageFile<P> file) {
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.stripes = stripes;
+    final String prefix = this.getClass().getName();
+    this.hits = LOG.isStatistics() ? new AtomicLongCounter(prefix + ".hits") : null;
+    this.misses = LOG.isStatistics() ? new AtomicLongCounter(prefix + ".misses") : null;
+    this.evictions = LOG.isStatistics() ? new AtomicLongCounter(prefix + ".evictions") : null;
+  }
+
+  /**
+   * Get the segment responsible for a page.
+   *
+   * @param pageID Page id
+   * @return Segment
+   */
+  private Segment segment(int pageID) {
+    // Spread consecutive page ids across segments.
+    int h = pageID * 0x9E3779B9;
+    return segments[((h ^ (h >>> 16)) & 0x7FFFFFFF) % segments.length];
+  }
+
+  /**
+   * Retrieves a page from the cache. The retrieved page becomes the MRU (most
+   * recently used) page of its segment.
+   *
+   * @param pageID the id of the page to be returned
+   * @return the page associated to the id or null if no value with this key
+   *         exists in the cache
+   */
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    final Segment seg = segment(pageID);
+    synchronized(seg) {
+      P page = seg.get(pageID);
+      if(page != null) {
+        if(hits != null) {
+          hits.increment();
+        }
+        return page;
+      }
+      if(misses != null) {
+        misses.increment();
+      }
+      synchronized(file) {
+        page = file.readPage(pageID);
+      }
+      if(page != null) {
+        seg.put(pageID, page);
+      }
+      return page;
+    }
+  }
+
+  @Override
+  protected void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    final Segment seg = segment(pageID);
+    synchronized(seg) {
+      seg.put(pageID, page);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    countWrite();
+    final Segment seg = segment(pageID);
+    synchronized(seg) {
+      seg.remove(pageID);
+      synchronized(file) {
+        file.deletePage(pageID);
+      }
+    }
+  }
+
+  /**
+   * Write page through to disk. The caller must hold the segment lock.
+   *
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(page.isDirty()) {
+      synchronized(file) {
+        file.writePage(page);
+      }
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    synchronized(file) {
+      return file.setPageID(page);
+    }
+  }
+
+  @Override
+  public int getNextPageID() {
+    synchronized(file) {
+      return file.getNextPageID();
+    }
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    synchronized(file) {
+      file.setNextPageID(nextPageID);
+    }
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    // Compute the actual cache size.
+    this.cacheSize = cacheSizeBytes / header.getPageSize();
+    if(this.cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    final int nseg = Math.max(1, Math.min(stripes, cacheSize));
+    final int segsize = (cacheSize + nseg - 1) / nseg;
+    if(LOG.isDebugging()) {
+      LOG.debug("Concurrent LRU cache size is " + cacheSize + " pages in " + nseg + " segments.");
+    }
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Segment[] segs = (Segment[]) new ConcurrentLRUCache.Segment[nseg];
+    for(int i = 0; i < nseg; i++) {
+      segs[i] = new Segment(segsize);
+    }
+    this.segments = segs;
+    return created;
+  }
+
+  @Override
+  public void close() {
+    flush();
+    synchronized(file) {
+      file.close();
+    }
+  }
+
+  /**
+   * Flushes this caches by writing any entry to the underlying file.
+   */
+  public void flush() {
+    for(Segment seg : segments) {
+      synchronized(seg) {
+        for(P object : seg.values()) {
+          expirePage(object);
+        }
+        seg.clear();
+      }
+    }
+  }
+
+  /**
+   * Clears this cache.
+   */
+  @Override
+  public void clear() {
+    for(Segment seg : segments) {
+      synchronized(seg) {
+        seg.clear();
+      }
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(hits != null) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".segments", segments != null ? segments.length : 0));
+      LOG.statistics(hits);
+      LOG.statistics(misses);
+      LOG.statistics(evictions);
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * A single LRU segment of the cache.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class Segment extends LinkedHashMap<Integer, P> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Capacity of this segment.
+     */
+    private final int capacity;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Segment capacity, in pages
+     */
+    Segment(int capacity) {
+      super((int) Math.ceil(capacity / 0.75f) + 1, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, P> eldest) {
+      if(size() > capacity) {
+        if(evictions != null) {
+          evictions.increment();
+        }
+        expirePage(eldest.getValue());
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,706 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * A page file backed by a memory-mapped file.
+ *
+ * In contrast to {@link PersistentPageFile}, pages are not copied into
+ * temporary byte arrays and decoded with object streams; instead, the page
+ * contents are read from and written to the mapped buffer directly. The file
+ * is mapped in regions of (roughly) {@link #REGION_SIZE} bytes, so the page
+ * file may be much larger than the Java heap, and is paged by the operating
+ * system. Concurrent reads are supported.
+ *
+ * Nested objects (as used by some M-tree variants) are still serialized using
+ * Java serialization. The file format is not compatible with
+ * {@link PersistentPageFile}.
+ *
+ * Mapped regions cannot be unmapped explicitly, so the file is never
+ * truncated: the unused tail of the last region is kept, and the number of
+ * used pages is recorded in the header (or found by a scan for headers that
+ * do not store it).
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf PageHeader
+ * @apiviz.composedOf MappedByteBuffer
+ *
+ * @param <P> Page type
+ */
+public class MappedPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(MappedPageFile.class);
+
+  /**
+   * Indicates an empty page.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * Target size of a mapped region.
+   */
+  public static final int REGION_SIZE = 1 << 26;
+
+  /**
+   * The file storing the pages.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * The type of pages we use.
+   */
+  protected final Class<P> pageclass;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private boolean existed;
+
+  /**
+   * Number of pages per mapped region.
+   */
+  private int regionPages;
+
+  /**
+   * Mapped regions; replaced (never modified) when growing.
+   */
+  private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+  /**
+   * Constructor.
+   *
+   * @param pageSize the page size
+   * @param fileName File name
+   * @param pageclass the class of pages to be used
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass) {
+    super(pageSize);
+    this.pageclass = pageclass;
+    File f = new File(fileName);
+    existed = f.exists() && f.length() > 0;
+    try {
+      file = new RandomAccessFile(f, "rw");
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading mapped page file.", e);
+    }
+  }
+
+  /**
+   * Get the mapped region containing a page, mapping it if necessary.
+   *
+   * @param pageID Page id
+   * @return Mapped region
+   */
+  private ByteBuffer region(int pageID) {
+    final int r = pageID / regionPages;
+    MappedByteBuffer[] regs = regions;
+    if(r < regs.length && regs[r] != null) {
+      return regs[r];
+    }
+    return mapRegion(r);
+  }
+
+  /**
+   * Map a region of the file.
+   *
+   * @param r Region number
+   * @return Mapped region
+   */
+  private synchronized ByteBuffer mapRegion(int r) {
+    MappedByteBuffer[] regs = regions;
+    if(r < regs.length && regs[r] != null) {
+      return regs[r]; // Mapped concurrently.
+    }
+    try {
+      final long len = regionPages * (long) pageSize;
+      final long start = header.getReservedPages() * (long) pageSize + r * len;
+      MappedByteBuffer buf = file.getChannel().map(MapMode.READ_WRITE, start, len);
+      regs = Arrays.copyOf(regs, Math.max(regs.length, r + 1));
+      regs[r] = buf;
+      regions = regs;
+      return buf;
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in mapping page file region " + r, e);
+    }
+  }
+
+  /**
+   * Reads the page with the given id from this file.
+   *
+   * @param pageID the id of the page to be returned
+   * @return the page with the given pageId
+   */
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    PageInput in = new PageInput(region(pageID), (pageID % regionPages) * pageSize, pageSize);
+    try {
+      final int type = in.readInt();
+      if(type == EMPTY_PAGE) {
+        return null;
+      }
+      if(type != FILLED_PAGE) {
+        throw new IllegalArgumentException("Unknown type: " + type);
+      }
+      P page = pageclass.newInstance();
+      page.readExternal(in);
+      return page;
+    }
+    catch(InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO Error in page file", e);
+    }
+  }
+
+  /**
+   * Deletes the node with the specified id from this file.
+   *
+   * @param pageID the id of the node to be deleted
+   */
+  @Override
+  public void deletePage(int pageID) {
+    // put id to empty pages list
+    super.deletePage(pageID);
+    countWrite();
+    region(pageID).putInt((pageID % regionPages) * pageSize, EMPTY_PAGE);
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    countWrite();
+    PageOutput out = new PageOutput(region(pageID), (pageID % regionPages) * pageSize, pageSize);
+    try {
+      out.writeInt(FILLED_PAGE);
+      page.writeExternal(out);
+    }
+    catch(IOException e) {
+      throw new AbortException("Error writing page " + pageID + " of size " + pageSize, e);
+    }
+    page.setDirty(false);
+  }
+
+  /**
+   * Closes this file.
+   */
+  @Override
+  public void close() {
+    try {
+      for(MappedByteBuffer buf : regions) {
+        if(buf != null) {
+          buf.force();
+        }
+      }
+      regions = new MappedByteBuffer[0];
+      // The unused tail is kept, as the regions may still be mapped.
+      if(!emptyPages.isEmpty() && header instanceof TreeIndexHeader) {
+        // write the list of empty pages to the end of the file
+        ((TreeIndexHeader) header).writeEmptyPages(emptyPages, file);
+      }
+      if(header instanceof TreeIndexHeader) {
+        ((TreeIndexHeader) header).setLargestPageID(nextPageID);
+      }
+      header.writeHeader(file);
+      file.close();
+    }
+    catch(IOException e) {
+      throw new AbortException("IO Error closing page file", e);
+    }
+  }
+
+  /**
+   * Clears this PageFile.
+   *
+   * All pages are marked as empty, but the file is not truncated while it is
+   * mapped.
+   */
+  @Override
+  public void clear() {
+    for(int i = 0; i < nextPageID; i++) {
+      region(i).putInt((i % regionPages) * pageSize, EMPTY_PAGE);
+    }
+    emptyPages.clear();
+    nextPageID = 0;
+  }
+
+  /**
+   * Get the header of this page file.
+   *
+   * @return the header used by this page file
+   */
+  public PageHeader getHeader() {
+    return header;
+  }
+
+  /**
+   * Set the next page id to the given value. If this means that any page ids
+   * stored in <code>emptyPages</code> are smaller than
+   * <code>next_page_id</code>, they are removed from this file's observation
+   * stack.
+   *
+   * @param next_page_id the id of the next page to be inserted (if there are no
+   *        more empty pages to be filled)
+   */
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    this.header = header;
+    try {
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        header.readHeader(file);
+        this.pageSize = header.getPageSize();
+        regionPages = Math.max(1, REGION_SIZE / pageSize);
+        if(header instanceof TreeIndexHeader) {
+          TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+          nextPageID = tiHeader.getLargestPageID();
+          try {
+            emptyPages = tiHeader.readEmptyPages(file);
+          }
+          catch(ClassNotFoundException e) {
+            throw new AbortException("ClassNotFoundException occurred when reading empty pages.", e);
+          }
+        }
+        else { // must scan complete file
+          final long numpages = file.length() / pageSize - header.getReservedPages();
+          for(int i = 0; i < numpages; i++) {
+            final int type = region(i).getInt((i % regionPages) * pageSize);
+            if(type == EMPTY_PAGE) {
+              emptyPages.push(i);
+            }
+            else if(type == FILLED_PAGE) {
+              nextPageID = i + 1;
+            }
+            else {
+              throw new IllegalArgumentException("Unknown type: " + type);
+            }
+          }
+          // Drop the empty pages in the unused tail.
+          setNextPageID(nextPageID);
+        }
+      }
+      else {
+        LOG.debug("Initializing with a new page file.");
+        this.pageSize = header.getPageSize();
+        regionPages = Math.max(1, REGION_SIZE / pageSize);
+        header.writeHeader(file);
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("IOException occurred.", e);
+    }
+    // Return "new file" status
+    return existed;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Read a page from a byte buffer, using absolute positions only (so
+   * concurrent readers may share the buffer).
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class PageInput implements ObjectInput {
+    /**
+     * Buffer to read from.
+     */
+    private final ByteBuffer buf;
+
+    /**
+     * Current and end position.
+     */
+    private int pos, end;
+
+    /**
+     * Constructor.
+     *
+     * @param buf Buffer
+     * @param start Page start
+     * @param size Page size
+     */
+    PageInput(ByteBuffer buf, int start, int size) {
+      this.buf = buf;
+      this.pos = start;
+      this.end = start + size;
+    }
+
+    /**
+     * Advance the position, checking the page boundary.
+     *
+     * @param n Number of bytes
+     * @return Previous position
+     * @throws EOFException when reading beyond the page
+     */
+    private int advance(int n) throws EOFException {
+      if(pos + n > end) {
+        throw new EOFException("Read beyond page boundary.");
+      }
+      final int p = pos;
+      pos += n;
+      return p;
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+      readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+      int p = advance(len);
+      for(int i = 0; i < len; i++) {
+        b[off + i] = buf.get(p + i);
+      }
+    }
+
+    @Override
+    public int skipBytes(int n) {
+      final int s = Math.max(0, Math.min(n, end - pos));
+      pos += s;
+      return s;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+      return buf.get(advance(1)) != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      return buf.get(advance(1));
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+      return buf.get(advance(1)) & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+      return buf.getShort(advance(ByteArrayUtil.SIZE_SHORT));
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+      return buf.getShort(advance(ByteArrayUtil.SIZE_SHORT)) & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+      return buf.getChar(advance(ByteArrayUtil.SIZE_SHORT));
+    }
+
+    @Override
+    public int readInt() throws IOException {
+      return buf.getInt(advance(ByteArrayUtil.SIZE_INT));
+    }
+
+    @Override
+    public long readLong() throws IOException {
+      return buf.getLong(advance(ByteArrayUtil.SIZE_LONG));
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+      return buf.getFloat(advance(ByteArrayUtil.SIZE_FLOAT));
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+      return buf.getDouble(advance(ByteArrayUtil.SIZE_DOUBLE));
+    }
+
+    @Override
+    public String readLine() throws IOException {
+      if(pos >= end) {
+        return null;
+      }
+      StringBuilder line = new StringBuilder();
+      while(pos < end) {
+        final int c = readUnsignedByte();
+        if(c == '\n') {
+          break;
+        }
+        if(c == '\r') {
+          if(pos < end && buf.get(pos) == '\n') {
+            ++pos;
+          }
+          break;
+        }
+        line.append((char) c);
+      }
+      return line.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+      byte[] b = new byte[readUnsignedShort()];
+      readFully(b);
+      return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object readObject() throws ClassNotFoundException, IOException {
+      byte[] b = new byte[readInt()];
+      readFully(b);
+      try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(b))) {
+        return ois.readObject();
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      return pos < end ? readUnsignedByte() : -1;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+      return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      final int n = Math.min(len, end - pos);
+      if(n <= 0) {
+        return -1;
+      }
+      readFully(b, off, n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) {
+      return skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public int available() {
+      return end - pos;
+    }
+
+    @Override
+    public void close() {
+      // Nothing to do.
+    }
+  }
+
+  /**
+   * Write a page into a byte buffer, using absolute positions only.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class PageOutput implements ObjectOutput {
+    /**
+     * Buffer to write to.
+     */
+    private final ByteBuffer buf;
+
+    /**
+     * Current and end position.
+     */
+    private int pos, end;
+
+    /**
+     * Constructor.
+     *
+     * @param buf Buffer
+     * @param start Page start
+     * @param size Page size
+     */
+    PageOutput(ByteBuffer buf, int start, int size) {
+      this.buf = buf;
+      this.pos = start;
+      this.end = start + size;
+    }
+
+    /**
+     * Advance the position, checking the page boundary.
+     *
+     * @param n Number of bytes
+     * @return Previous position
+     * @throws IOException when writing beyond the page
+     */
+    private int advance(int n) throws IOException {
+      if(pos + n > end) {
+        throw new IOException("Page size exceeded.");
+      }
+      final int p = pos;
+      pos += n;
+      return p;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      buf.put(advance(1), (byte) b);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+      write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      int p = advance(len);
+      for(int i = 0; i < len; i++) {
+        buf.put(p + i, b[off + i]);
+      }
+    }
+
+    @Override
+    public void writeBoolean(boolean v) throws IOException {
+      buf.put(advance(1), (byte) (v ? 1 : 0));
+    }
+
+    @Override
+    public void writeByte(int v) throws IOException {
+      buf.put(advance(1), (byte) v);
+    }
+
+    @Override
+    public void writeShort(int v) throws IOException {
+      buf.putShort(advance(ByteArrayUtil.SIZE_SHORT), (short) v);
+    }
+
+    @Override
+    public void writeChar(int v) throws IOException {
+      buf.putChar(advance(ByteArrayUtil.SIZE_SHORT), (char) v);
+    }
+
+    @Override
+    public void writeInt(int v) throws IOException {
+      buf.putInt(advance(ByteArrayUtil.SIZE_INT), v);
+    }
+
+    @Override
+    public void writeLong(long v) throws IOException {
+      buf.putLong(advance(ByteArrayUtil.SIZE_LONG), v);
+    }
+
+    @Override
+    public void writeFloat(float v) throws IOException {
+      buf.putFloat(advance(ByteArrayUtil.SIZE_FLOAT), v);
+    }
+
+    @Override
+    public void writeDouble(double v) throws IOException {
+      buf.putDouble(advance(ByteArrayUtil.SIZE_DOUBLE), v);
+    }
+
+    @Override
+    public void writeBytes(String s) throws IOException {
+      for(int i = 0; i < s.length(); i++) {
+        writeByte(s.charAt(i));
+      }
+    }
+
+    @Override
+    public void writeChars(String s) throws IOException {
+      for(int i = 0; i < s.length(); i++) {
+        writeChar(s.charAt(i));
+      }
+    }
+
+    @Override
+    public void writeUTF(String s) throws IOException {
+      byte[] b = s.getBytes(StandardCharsets.UTF_8);
+      if(b.length > 0xFFFF) {
+        throw new UTFDataFormatException("String too long.");
+      }
+      writeShort(b.length);
+      write(b);
+    }
+
+    @Override
+    public void writeObject(Object obj) throws IOException {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+        oos.writeObject(obj);
+      }
+      writeInt(baos.size());
+      write(baos.toByteArray());
+    }
+
+    @Override
+    public void flush() {
+      // Nothing to do.
+    }
+
+    @Override
+    public void close() {
+      // Nothing to do.
+    }
+  }
+}
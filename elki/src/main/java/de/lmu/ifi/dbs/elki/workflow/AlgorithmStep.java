@@ -28,14 +28,17 @@ import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.BasicResult;
 import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.result.ResultHierarchy;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.hierarchy.Hierarchy.Iter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 
 /**
@@ -64,14 +67,31 @@ public class AlgorithmStep implements WorkflowStep {
    */
   private Result stepresult;
 
+  /**
+   * Number of threads for parallel algorithms, 0 for the shared default.
+   */
+  private int threads;
+
   /**
    * Constructor.
    *
    * @param algorithms
    */
   public AlgorithmStep(List<Algorithm> algorithms) {
+    this(algorithms, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param algorithms Algorithms to run
+   * @param threads Number of threads for parallel algorithms, 0 for the shared
+   *        default core.
+   */
+  public AlgorithmStep(List<Algorithm> algorithms, int threads) {
     super();
     this.algorithms = algorithms;
+    this.threads = threads;
   }
 
   /**
@@ -96,6 +116,31 @@ public class AlgorithmStep implements WorkflowStep {
       }
     }
     stepresult = new BasicResult("Algorithm Step", "algorithm-step");
+    // Use a separate thread pool for this job, if requested.
+    ParallelCore core = threads > 0 ? new ParallelCore(threads) : null;
+    ParallelCore prev = ParallelCore.getCore();
+    if(core != null) {
+      ParallelCore.setCore(core);
+    }
+    try {
+      runAlgorithms(database, hier);
+    }
+    finally {
+      if(core != null) {
+        ParallelCore.setCore(prev); // Restore the previous binding
+        core.shutdown();
+      }
+    }
+    return stepresult;
+  }
+
+  /**
+   * Run all algorithms.
+   *
+   * @param database Database
+   * @param hier Result hierarchy
+   */
+  private void runAlgorithms(Database database, ResultHierarchy hier) {
     for(Algorithm algorithm : algorithms) {
       Thread.currentThread().setName(algorithm.toString());
       Duration duration = LOG.isStatistics() ? LOG.newDuration(algorithm.getClass().getName() + ".runtime").begin() : null;
@@ -116,12 +161,14 @@ public class AlgorithmStep implements WorkflowStep {
           ((Index) it.get()).logStatistics();
         }
       }
+      if(LOG.isStatistics()) {
+        ParallelCore.getCore().logStatistics(LOG);
+      }
       if(res != null) {
         // Make sure the result is attached, but usually this is a noop:
         hier.add(database, res);
       }
     }
-    return stepresult;
   }
 
   /**
@@ -151,6 +198,11 @@ public class AlgorithmStep implements WorkflowStep {
      */
     protected List<Algorithm> algorithms;
 
+    /**
+     * Number of threads for parallel algorithms.
+     */
+    protected int threads = 0;
+
     /**
      * Flag to allow verbose messages while running the application.
      * <p>
@@ -167,6 +219,14 @@ public class AlgorithmStep implements WorkflowStep {
      */
     public static final OptionID ALGORITHM_ID = new OptionID("algorithm", "Algorithm to run.");
 
+    /**
+     * Parameter to limit the number of threads used by parallel algorithms.
+     * <p>
+     * Key: {@code -parallel.threads}
+     * </p>
+     */
+    public static final OptionID THREADS_ID = new OptionID("parallel.threads", "Number of threads to use for parallel algorithms, using a separate thread pool for this job. By default, a shared pool using all available processors is used.");
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -180,6 +240,12 @@ public class AlgorithmStep implements WorkflowStep {
       if(config.grab(ALGORITHM_PARAM)) {
         algorithms = ALGORITHM_PARAM.instantiateClasses(config);
       }
+      IntParameter threadsP = new IntParameter(THREADS_ID) //
+          .setOptional(true) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
     }
 
     @Override
@@ -187,7 +253,7 @@ public class AlgorithmStep implements WorkflowStep {
       if(time) {
         LoggingConfiguration.setStatistics();
       }
-      return new AlgorithmStep(algorithms);
+      return new AlgorithmStep(algorithms, threads);
     }
   }
 }
@@ -20,6 +20,12 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
@@ -28,11 +34,16 @@ import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
@@ -42,6 +53,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.ParameterException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -104,6 +116,98 @@ public class KNNJoinTest {
     }
   }
 
+  @Test
+  public void testLinearScanBulk() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("data/testdata/unittests/hierarchical-3d2d1d.csv", 600, null, null);
+    Relation<NumberVector> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+
+    ParallelCore.setCore(new ParallelCore(4));
+    try {
+      testLinearScanBulk(db, relation, ids, EuclideanDistanceFunction.STATIC);
+      testLinearScanBulk(db, relation, ids, ManhattanDistanceFunction.STATIC);
+    }
+    finally {
+      ParallelCore.setCore(null);
+    }
+  }
+
+  /**
+   * Compare bulk and parallel bulk queries to single queries.
+   *
+   * @param db Database
+   * @param relation Relation
+   * @param ids Query ids
+   * @param df Distance function
+   */
+  private void testLinearScanBulk(Database db, Relation<NumberVector> relation, ArrayDBIDs ids, DistanceFunction<? super NumberVector> df) {
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(relation, df);
+    KNNQuery<NumberVector> knnq = QueryUtil.getLinearScanKNNQuery(dq);
+    KNNQuery<NumberVector> pknnq = QueryUtil.getLinearScanKNNQuery(dq, DatabaseQuery.HINT_PARALLEL);
+    List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(ids, 5);
+    List<? extends KNNList> pbulk = pknnq.getKNNForBulkDBIDs(ids, 5);
+    int i = 0;
+    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance(), i++) {
+      KNNList single = knnq.getKNNForDBID(iditer, 5);
+      assertSameKNN(single, bulk.get(i));
+      assertSameKNN(single, pbulk.get(i));
+    }
+  }
+
+  /**
+   * Parallel bulk queries issued from worker threads must not wait for the
+   * (busy) workers of the same core.
+   */
+  @Test(timeout = 60000)
+  public void testLinearScanBulkInWorker() throws InterruptedException, ExecutionException {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("data/testdata/unittests/hierarchical-3d2d1d.csv", 600, null, null);
+    Relation<NumberVector> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(relation, EuclideanDistanceFunction.STATIC);
+    final KNNQuery<NumberVector> knnq = QueryUtil.getLinearScanKNNQuery(dq);
+    final KNNQuery<NumberVector> pknnq = QueryUtil.getLinearScanKNNQuery(dq, DatabaseQuery.HINT_PARALLEL);
+    ParallelCore core = new ParallelCore(2);
+    ParallelCore.setCore(core);
+    core.connect();
+    try {
+      // Occupy all workers with bulk queries.
+      List<Future<List<? extends KNNList>>> futures = new ArrayList<>();
+      for(int t = 0; t < 2; t++) {
+        futures.add(core.submit(new Callable<List<? extends KNNList>>() {
+          @Override
+          public List<? extends KNNList> call() {
+            return pknnq.getKNNForBulkDBIDs(ids, 5);
+          }
+        }));
+      }
+      List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(ids, 5);
+      for(Future<List<? extends KNNList>> f : futures) {
+        List<? extends KNNList> pbulk = f.get();
+        for(int i = 0; i < ids.size(); i++) {
+          assertSameKNN(bulk.get(i), pbulk.get(i));
+        }
+      }
+    }
+    finally {
+      core.disconnect();
+      ParallelCore.setCore(null);
+      core.shutdown();
+    }
+  }
+
+  /**
+   * Compare two kNN lists.
+   *
+   * @param expected Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameKNN(KNNList expected, KNNList actual) {
+    org.junit.Assert.assertEquals("kNN size", expected.size(), actual.size());
+    for(DoubleDBIDListIter e = expected.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      org.junit.Assert.assertEquals("kNN distance", e.doubleValue(), a.doubleValue(), 1e-15);
+    }
+  }
+
   /**
    * Test {@link RStarTree} using a file based database connection.
    *
@@ -0,0 +1,85 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.affinitypropagation;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test sparse Affinity Propagation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class SparseAffinityPropagationTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run SparseAffinityPropagation with fixed parameters and compare the result
+   * to a golden standard.
+   */
+  @Test
+  public void testSparseAffinityPropagationResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(SparseAffinityPropagation.Parameterizer.K_ID, 100);
+    SparseAffinityPropagation<DoubleVector> apc = ClassGenericsUtil.parameterizeOrAbort(SparseAffinityPropagation.class, params);
+    testParameterizationOk(params);
+
+    // run SparseAffinityPropagation on database
+    Clustering<MedoidModel> result = apc.run(db);
+
+    testFMeasure(db, result, 0.94473981);
+    testClusterSizes(result, new int[] { 6, 7, 55, 107, 155 });
+  }
+
+  /**
+   * Run SparseAffinityPropagation with a smaller k, using multiple threads.
+   */
+  @Test
+  public void testSparseAffinityPropagationParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(SparseAffinityPropagation.Parameterizer.K_ID, 50);
+    SparseAffinityPropagation<DoubleVector> apc = ClassGenericsUtil.parameterizeOrAbort(SparseAffinityPropagation.class, params);
+    testParameterizationOk(params);
+
+    ParallelCore.setCore(new ParallelCore(4));
+    try {
+      Clustering<MedoidModel> result = apc.run(db);
+      testFMeasure(db, result, 0.70870974);
+      testClusterSizes(result, new int[] { 3, 7, 8, 43, 44, 55, 66, 104 });
+    }
+    finally {
+      ParallelCore.setCore(null);
+    }
+  }
+}
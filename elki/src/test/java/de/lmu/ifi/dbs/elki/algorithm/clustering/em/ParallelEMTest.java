@@ -0,0 +1,170 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.EMModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full parallel EM run, and compares the result with a clustering
+ * derived from the data set labels.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelEMTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run EM with fixed parameters and compare the result to a golden standard.
+   */
+  @Test
+  public void testEMResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = makeEM(1, 6, MultivariateGaussianModelFactory.class).run(db);
+    testFMeasure(db, result, 0.967410);
+    testClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  /**
+   * Run EM with fixed parameters and compare the result to a golden standard.
+   */
+  @Test
+  public void testEMResultsDiagonal() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = makeEM(0, 5, DiagonalGaussianModelFactory.class).run(db);
+    testFMeasure(db, result, 0.9681384);
+    testClusterSizes(result, new int[] { 7, 91, 99, 200, 313 });
+  }
+
+  /**
+   * Run EM with fixed parameters and compare the result to a golden standard.
+   */
+  @Test
+  public void testEMResultsSpherical() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = makeEM(1, 4, SphericalGaussianModelFactory.class).run(db);
+    testFMeasure(db, result, 0.812082);
+    testClusterSizes(result, new int[] { 87, 143, 163, 317 });
+  }
+
+  /**
+   * The result must not depend on the number of threads. Use small blocks,
+   * so that there are many more blocks than threads, and the partial models
+   * of many blocks are merged.
+   */
+  @Test
+  public void testReproducible() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    // Use separate instances, as the random generator is stateful.
+    Clustering<EMModel> single = runWithThreads(withBlocksize(makeEM(1, 6, MultivariateGaussianModelFactory.class), 16), db, 1);
+    Clustering<EMModel> multi = runWithThreads(withBlocksize(makeEM(1, 6, MultivariateGaussianModelFactory.class), 16), db, 4);
+    assertSameModels(single, multi, 0.);
+    // Merging many blocks must match the serial EM, up to rounding.
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 1);
+    params.addParameter(EM.Parameterizer.K_ID, 6);
+    params.addParameter(EM.Parameterizer.INIT_ID, MultivariateGaussianModelFactory.class);
+    EM<DoubleVector, EMModel> em = ClassGenericsUtil.parameterizeOrAbort(EM.class, params);
+    testParameterizationOk(params);
+    assertSameModels(em.run(db), multi, 1e-8);
+  }
+
+  /**
+   * Compare the models of two clusterings.
+   *
+   * @param c1 First clustering
+   * @param c2 Second clustering
+   * @param tol Tolerance
+   */
+  private void assertSameModels(Clustering<EMModel> c1, Clustering<EMModel> c2, double tol) {
+    List<Cluster<EMModel>> l1 = c1.getAllClusters(), l2 = c2.getAllClusters();
+    assertEquals("Number of clusters differs.", l1.size(), l2.size());
+    for(int i = 0; i < l1.size(); i++) {
+      assertEquals("Cluster size differs.", l1.get(i).size(), l2.get(i).size());
+      EMModel m1 = l1.get(i).getModel(), m2 = l2.get(i).getModel();
+      assertArrayEquals("Mean differs.", m1.getMean(), m2.getMean(), tol);
+      for(int j = 0; j < m1.getMean().length; j++) {
+        assertArrayEquals("Covariance differs.", m1.getCovarianceMatrix()[j], m2.getCovarianceMatrix()[j], tol);
+      }
+    }
+  }
+
+  /**
+   * Copy an EM instance, with a different block size.
+   *
+   * @param em EM instance
+   * @param blocksize Block size
+   * @return New instance
+   */
+  private ParallelEM<DoubleVector, EMModel> withBlocksize(ParallelEM<DoubleVector, EMModel> em, int blocksize) {
+    return new ParallelEM<>(em.k, em.delta, em.mfactory, em.maxiter, false, blocksize);
+  }
+
+  /**
+   * Run EM using the given number of threads.
+   *
+   * @param em Algorithm
+   * @param db Database
+   * @param threads Number of threads
+   * @return Clustering
+   */
+  private Clustering<EMModel> runWithThreads(ParallelEM<DoubleVector, EMModel> em, Database db, int threads) {
+    ParallelCore.setCore(new ParallelCore(threads));
+    try {
+      return em.run(db);
+    }
+    finally {
+      ParallelCore.setCore(null);
+    }
+  }
+
+  /**
+   * Make the EM instance.
+   *
+   * @param seed Random seed
+   * @param k Number of clusters
+   * @param factory Model factory
+   * @return EM instance
+   */
+  private ParallelEM<DoubleVector, EMModel> makeEM(int seed, int k, Class<?> factory) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, seed);
+    params.addParameter(EM.Parameterizer.K_ID, k);
+    params.addParameter(EM.Parameterizer.INIT_ID, factory);
+    ParallelEM<DoubleVector, EMModel> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+    return em;
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full mini-batch KMeans run, and compares the result with a
+ * clustering derived from the data set labels.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class KMeansMiniBatchTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run KMeans with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testKMeansMiniBatch() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    KMeansMiniBatch<DoubleVector> kmeans = makeKMeans();
+    Clustering<KMeansModel> result = kmeans.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Use the means of a database run to assign a data stream.
+   *
+   * @throws IOException on file errors
+   */
+  @Test
+  public void testKMeansMiniBatchStream() throws IOException {
+    final String filename = UNITTEST + "different-densities-2d-no-noise.ascii";
+    Database db = makeSimpleDatabase(filename, 1000);
+    KMeansMiniBatch<DoubleVector> kmeans = makeKMeans();
+    Clustering<KMeansModel> result = kmeans.run(db);
+    List<Cluster<KMeansModel>> clusters = result.getAllClusters();
+    double[][] means = new double[clusters.size()][];
+    for(int i = 0; i < means.length; i++) {
+      means[i] = clusters.get(i).getModel().getMean();
+    }
+    NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+    try (InputStream is = open(filename)) {
+      parser.initStream(is);
+      Clustering<KMeansModel> sresult = kmeans.assign(parser, means);
+      List<Cluster<KMeansModel>> sclusters = sresult.getAllClusters();
+      assertEquals("Number of clusters differs.", clusters.size(), sclusters.size());
+      for(int i = 0; i < means.length; i++) {
+        assertEquals("Cluster size differs.", clusters.get(i).size(), sclusters.get(i).size());
+      }
+    }
+  }
+
+  /**
+   * Train the means on a data stream, and compare them to the
+   * means of a database run.
+   */
+  @Test
+  public void testKMeansMiniBatchTrain() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    KMeansMiniBatch<DoubleVector> kmeans = makeKMeans(100);
+    List<Cluster<KMeansModel>> clusters = kmeans.run(db).getAllClusters();
+    double[][] smeans = kmeans.train(interleavedStream(db));
+    assertEquals("Number of means differs.", clusters.size(), smeans.length);
+    for(Cluster<KMeansModel> c : clusters) {
+      assertEquals("No trained mean close to the database mean.", 0., nearestDistance(c.getModel().getMean(), smeans), 0.5);
+    }
+  }
+
+  /**
+   * Cluster a stream with batches smaller than k.
+   */
+  @Test
+  public void testKMeansMiniBatchSmallBatches() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    KMeansMiniBatch<DoubleVector> kmeans = makeKMeans(2);
+    Clustering<KMeansModel> result = kmeans.cluster(interleavedStream(db));
+    // Same quality as the database run.
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Stream the database contents with their object ids, interleaving the five
+   * clusters (the file is sorted by cluster), as the stream initializes the
+   * means with the first k objects.
+   *
+   * @param db Database
+   * @return Stream
+   */
+  private BundleStreamSource interleavedStream(Database db) {
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DBIDRange range = DBIDUtil.assertRange(rel.getDBIDs());
+    final int size = range.size(), stride = size / 5;
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(size);
+    List<DoubleVector> vecs = new ArrayList<>(size);
+    DBIDArrayIter it = range.iter();
+    for(int i = 0; i < size; i++) {
+      it.seek((i % 5) * stride + i / 5);
+      ids.add(it);
+      vecs.add(rel.get(it));
+    }
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), vecs);
+    bundle.setDBIDs(ids);
+    return bundle.asStream();
+  }
+
+  /**
+   * Distance to the nearest of the given means.
+   *
+   * @param mean Mean
+   * @param means Candidate means
+   * @return Minimum Euclidean distance
+   */
+  private static double nearestDistance(double[] mean, double[][] means) {
+    double min = Double.POSITIVE_INFINITY;
+    for(double[] m : means) {
+      min = Math.min(min, EuclideanDistanceFunction.STATIC.distance(DoubleVector.wrap(mean), DoubleVector.wrap(m)));
+    }
+    return min;
+  }
+
+  /**
+   * Make the k-means instance.
+   *
+   * @return Mini-batch k-means
+   */
+  private KMeansMiniBatch<DoubleVector> makeKMeans() {
+    return makeKMeans(100);
+  }
+
+  /**
+   * Make the k-means instance.
+   *
+   * @param batchsize Batch size
+   * @return Mini-batch k-means
+   */
+  private KMeansMiniBatch<DoubleVector> makeKMeans(int batchsize) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 7);
+    params.addParameter(KMeans.MAXITER_ID, 50);
+    params.addParameter(KMeansMiniBatch.Parameterizer.BATCHSIZE_ID, batchsize);
+    params.addParameter(KMeansMiniBatch.Parameterizer.RANDOM_ID, 0);
+    KMeansMiniBatch<DoubleVector> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansMiniBatch.class, params);
+    testParameterizationOk(params);
+    return kmeans;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansHamerly;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Compare the parallel Hamerly k-means with the serial version, using several
+ * threads.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelHamerlyKMeansTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run the parallel and the serial variant with the same initial means, and
+   * compare the results.
+   */
+  @Test
+  public void testParallelKMeansHamerly() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 7);
+    KMeansHamerly<DoubleVector> serial = ClassGenericsUtil.parameterizeOrAbort(KMeansHamerly.class, params);
+    testParameterizationOk(params);
+    Clustering<KMeansModel> expected = serial.run(db);
+
+    Clustering<KMeansModel> result;
+    ParallelCore.setCore(new ParallelCore(4));
+    try {
+      params = new ListParameterization();
+      params.addParameter(KMeans.K_ID, 5);
+      params.addParameter(KMeans.SEED_ID, 7);
+      ParallelHamerlyKMeans<DoubleVector> kmeans = ClassGenericsUtil.parameterizeOrAbort(ParallelHamerlyKMeans.class, params);
+      testParameterizationOk(params);
+      result = kmeans.run(db);
+    }
+    finally {
+      ParallelCore.setCore(null);
+    }
+    List<Cluster<KMeansModel>> ecl = expected.getAllClusters(), rcl = result.getAllClusters();
+    assertEquals("Number of clusters differs.", ecl.size(), rcl.size());
+    for(int i = 0; i < ecl.size(); i++) {
+      DBIDs eids = DBIDUtil.ensureSet(ecl.get(i).getIDs());
+      assertEquals("Cluster size differs.", eids.size(), rcl.get(i).size());
+      for(DBIDIter it = rcl.get(i).getIDs().iter(); it.valid(); it.advance()) {
+        assertTrue("Cluster assignment differs.", eids.contains(it));
+      }
+      assertArrayEquals("Cluster mean differs.", ecl.get(i).getModel().getMean(), rcl.get(i).getModel().getMean(), 1e-10);
+    }
+  }
+}
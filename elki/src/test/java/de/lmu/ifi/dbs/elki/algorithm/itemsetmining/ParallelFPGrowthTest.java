@@ -0,0 +1,134 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Regression test for parallel FPGrowth.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelFPGrowthTest extends AbstractFrequentItemsetAlgorithmTest {
+  @Test
+  public void testMissing() {
+    Database db = loadTransactions(UNITTEST + "itemsets/missing1.txt", 4);
+    {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(FPGrowth.Parameterizer.MINSUPP_ID, 1);
+      ParallelFPGrowth ap = ClassGenericsUtil.parameterizeOrAbort(ParallelFPGrowth.class, params);
+      FrequentItemsetsResult res = ap.run(db);
+      assertEquals("Size not as expected.", 14, res.getItemsets().size());
+      for(Itemset i : res.getItemsets()) {
+        assertEquals("Bad support", 4 - i.length(), i.getSupport());
+      }
+    }
+    {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(FPGrowth.Parameterizer.MINSUPP_ID, 0.5);
+      ParallelFPGrowth ap = ClassGenericsUtil.parameterizeOrAbort(ParallelFPGrowth.class, params);
+      FrequentItemsetsResult res = ap.run(db);
+      assertEquals("Size not as expected.", 10, res.getItemsets().size());
+      for(Itemset i : res.getItemsets()) {
+        assertEquals("Bad support", 4 - i.length(), i.getSupport());
+      }
+    }
+    {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(FPGrowth.Parameterizer.MINSUPP_ID, 4);
+      ParallelFPGrowth ap = ClassGenericsUtil.parameterizeOrAbort(ParallelFPGrowth.class, params);
+      FrequentItemsetsResult res = ap.run(db);
+      assertEquals("Size not as expected.", 0, res.getItemsets().size());
+    }
+    {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(FPGrowth.Parameterizer.MINSUPP_ID, 1);
+      params.addParameter(FPGrowth.Parameterizer.MINLENGTH_ID, 2);
+      params.addParameter(FPGrowth.Parameterizer.MAXLENGTH_ID, 3);
+      ParallelFPGrowth ap = ClassGenericsUtil.parameterizeOrAbort(ParallelFPGrowth.class, params);
+      FrequentItemsetsResult res = ap.run(db);
+      assertEquals("Size not as expected.", 10, res.getItemsets().size());
+      for(Itemset i : res.getItemsets()) {
+        assertEquals("Bad support", 4 - i.length(), i.getSupport());
+      }
+    }
+  }
+
+  @Test
+  public void testIncreasing() {
+    Database db = loadTransactions(UNITTEST + "itemsets/increasing.txt", 4);
+    {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(FPGrowth.Parameterizer.MINSUPP_ID, 1);
+      ParallelFPGrowth ap = ClassGenericsUtil.parameterizeOrAbort(ParallelFPGrowth.class, params);
+      FrequentItemsetsResult res = ap.run(db);
+      assertEquals("Size not as expected.", 15, res.getItemsets().size());
+    }
+    {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(FPGrowth.Parameterizer.MINSUPP_ID, 3);
+      ParallelFPGrowth ap = ClassGenericsUtil.parameterizeOrAbort(ParallelFPGrowth.class, params);
+      FrequentItemsetsResult res = ap.run(db);
+      assertEquals("Size not as expected.", 3, res.getItemsets().size());
+    }
+  }
+
+  @Test
+  public void testLargeParallel() {
+    Database db = loadTransactions(UNITTEST + "itemsets/zutaten.txt.gz", 16401);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FPGrowth.Parameterizer.MINSUPP_ID, 50);
+    params.addParameter(FPGrowth.Parameterizer.MINLENGTH_ID, 2);
+    params.addParameter(FPGrowth.Parameterizer.MAXLENGTH_ID, 4);
+    FPGrowth fp = ClassGenericsUtil.parameterizeOrAbort(FPGrowth.class, params);
+    FrequentItemsetsResult ref = fp.run(db);
+    params = new ListParameterization();
+    params.addParameter(FPGrowth.Parameterizer.MINSUPP_ID, 50);
+    params.addParameter(FPGrowth.Parameterizer.MINLENGTH_ID, 2);
+    params.addParameter(FPGrowth.Parameterizer.MAXLENGTH_ID, 4);
+    ParallelFPGrowth ap = ClassGenericsUtil.parameterizeOrAbort(ParallelFPGrowth.class, params);
+    ParallelCore.setCore(new ParallelCore(4));
+    FrequentItemsetsResult res;
+    try {
+      res = ap.run(db);
+    }
+    finally {
+      ParallelCore.setCore(null);
+    }
+    List<Itemset> a = ref.getItemsets(), b = res.getItemsets();
+    assertEquals("Size not as expected.", 884, a.size());
+    assertEquals("Size not as expected.", a.size(), b.size());
+    for(int i = 0; i < a.size(); i++) {
+      assertEquals("Itemsets differ.", 0, a.get(i).compareTo(b.get(i)));
+      assertEquals("Bad support", a.get(i).getSupport(), b.get(i).getSupport());
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.outlier.lof;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.MultipleObjectsBundleDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Tests the streaming LOF algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class StreamingLOFTest extends AbstractSimpleAlgorithmTest {
+  @Test
+  public void testStreamingLOF() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+
+    // Parameterization
+    ListParameterization params = new ListParameterization();
+    params.addParameter(LOF.Parameterizer.K_ID, 10);
+    params.addParameter(StreamingLOF.Parameterizer.WINDOW_ID, 2000);
+    params.addParameter(StreamingLOF.Parameterizer.BATCHSIZE_ID, 100);
+
+    // setup Algorithm
+    StreamingLOF<DoubleVector> lof = ClassGenericsUtil.parameterizeOrAbort(StreamingLOF.class, params);
+    testParameterizationOk(params);
+
+    // The window holds all data, so the result must be the same as LOF.
+    OutlierResult result = lof.run(db);
+
+    testSingleScore(result, 1293, 1.1945314199156365);
+    testAUC(db, "Noise", result, 0.8921680672268908);
+  }
+
+  @Test
+  public void testSlidingWindow() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    StreamingLOF<DoubleVector> slof = new StreamingLOF<>(10, EuclideanDistanceFunction.STATIC, 500, 50, null);
+
+    final int[] changes = new int[2];
+    StreamingLOF.Listener listener = new StreamingLOF.Listener() {
+      @Override
+      public void update(DBIDs removed, DoubleDBIDList changed) {
+        changes[0] += removed.size();
+        changes[1] += changed.size();
+      }
+    };
+    ParallelCore.setCore(new ParallelCore(4));
+    try {
+      StreamingLOF<DoubleVector>.Window w = slof.newWindow(rel.getDataTypeInformation());
+      ArrayModifiableDBIDs bids = DBIDUtil.newArray();
+      List<DoubleVector> batch = new ArrayList<>();
+      ArrayModifiableDBIDs deleted = DBIDUtil.newArray();
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+        bids.add(it);
+        batch.add(rel.get(it));
+        if(batch.size() == 50) {
+          // Also delete one object of the previous batch.
+          w.update(deleted, bids, batch, listener);
+          deleted.clear();
+          deleted.add(bids.iter().seek(7));
+          bids.clear();
+          batch.clear();
+        }
+      }
+      w.update(deleted, bids, batch, listener);
+      assertEquals("Window size", 500, w.size());
+      assertEquals("Removed objects", 1345 - 500, changes[0]);
+
+      // Compare to LOF on the window contents.
+      Relation<DoubleVector> wrel = w.getRelation();
+      ArrayModifiableDBIDs wids = DBIDUtil.newArray(wrel.getDBIDs());
+      List<DoubleVector> data = new ArrayList<>(wids.size());
+      for(DBIDIter it = wids.iter(); it.valid(); it.advance()) {
+        data.add(wrel.get(it));
+      }
+      Database wdb = new StaticArrayDatabase(new MultipleObjectsBundleDatabaseConnection(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), data)), null);
+      wdb.initialize();
+      OutlierResult expected = new LOF<DoubleVector>(10, EuclideanDistanceFunction.STATIC).run(wdb);
+      DBIDIter it = wids.iter();
+      for(DBIDIter it2 = expected.getScores().iterDBIDs(); it2.valid(); it2.advance(), it.advance()) {
+        assertEquals("LOF score differs", expected.getScores().doubleValue(it2), w.getLOF(it), 1e-12);
+      }
+    }
+    finally {
+      ParallelCore.setCore(null);
+    }
+  }
+}
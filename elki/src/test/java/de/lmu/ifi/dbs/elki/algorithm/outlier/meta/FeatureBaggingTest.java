@@ -25,6 +25,7 @@ import org.junit.Test;
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -78,4 +79,30 @@ public class FeatureBaggingTest extends AbstractSimpleAlgorithmTest {
     testAUC(db, "Noise", result, 0.92470588);
     testSingleScore(result, 1293, 1.2047264);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testFeatureBaggingParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+
+    // Parameterization
+    ListParameterization params = new ListParameterization();
+    params.addParameter(LOF.Parameterizer.K_ID, 10);
+    params.addParameter(FeatureBagging.Parameterizer.NUM_ID, 10);
+    params.addParameter(FeatureBagging.Parameterizer.SEED_ID, 1);
+
+    // setup Algorithm
+    FeatureBagging fb = ClassGenericsUtil.parameterizeOrAbort(FeatureBagging.class, params);
+    testParameterizationOk(params);
+
+    // The result must not depend on the number of threads.
+    ParallelCore.setCore(new ParallelCore(4));
+    try {
+      OutlierResult result = fb.run(db);
+      testAUC(db, "Noise", result, 0.94758434);
+      testSingleScore(result, 1293, 12.816102);
+    }
+    finally {
+      ParallelCore.setCore(null);
+    }
+  }
+}
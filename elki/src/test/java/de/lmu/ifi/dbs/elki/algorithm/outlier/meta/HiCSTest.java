@@ -28,6 +28,7 @@ import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.KolmogorovSmirnovTest;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.WelchTTest;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -57,8 +58,8 @@ public class HiCSTest extends AbstractSimpleAlgorithmTest {
     // run HiCS on database
     OutlierResult result = fb.run(db);
 
-    testAUC(db, "Noise", result, 0.85340056);
-    testSingleScore(result, 1293, 4.935802);
+    testAUC(db, "Noise", result, 0.65979832);
+    testSingleScore(result, 1293, 1.3496738);
   }
 
   @Test
@@ -79,7 +80,35 @@ public class HiCSTest extends AbstractSimpleAlgorithmTest {
     // run HiCS on database
     OutlierResult result = fb.run(db);
 
-    testAUC(db, "Noise", result, 0.867159);
-    testSingleScore(result, 1293, 4.7877822);
+    testAUC(db, "Noise", result, 0.85340056);
+    testSingleScore(result, 1293, 4.935802);
+  }
+
+  @Test
+  public void testHiCSParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+
+    // Parameterization
+    ListParameterization params = new ListParameterization();
+    params.addParameter(LOF.Parameterizer.K_ID, 10);
+    params.addParameter(HiCS.Parameterizer.LIMIT_ID, 10);
+    params.addParameter(HiCS.Parameterizer.SEED_ID, 0);
+    params.addParameter(HiCS.Parameterizer.TEST_ID, KolmogorovSmirnovTest.STATIC);
+    params.addFlag(HiCS.Parameterizer.PARALLEL_ID);
+
+    // setup Algorithm
+    HiCS<DoubleVector> fb = ClassGenericsUtil.parameterizeOrAbort(HiCS.class, params);
+    testParameterizationOk(params);
+
+    // The result must not depend on the number of threads.
+    ParallelCore.setCore(new ParallelCore(4));
+    try {
+      OutlierResult result = fb.run(db);
+      testAUC(db, "Noise", result, 0.65979832);
+      testSingleScore(result, 1293, 1.3496738);
+    }
+    finally {
+      ParallelCore.setCore(null);
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.projection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test that the Barnes-Hut t-SNE embedding does not depend on the number of
+ * threads.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class BarnesHutTSNETest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Compare the embeddings with one and with four threads.
+   */
+  @Test
+  public void testParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    Relation<DoubleVector> serial = runTSNE(db, rel, new ParallelCore(1));
+    Relation<DoubleVector> parallel = runTSNE(db, rel, new ParallelCore(4));
+    assertEquals("Embedding size differs.", serial.size(), parallel.size());
+    for(DBIDIter it = serial.iterDBIDs(); it.valid(); it.advance()) {
+      DoubleVector v = serial.get(it);
+      assertEquals("Embedding dimensionality.", 2, v.getDimensionality());
+      assertArrayEquals("Embedding differs.", v.toArray(), parallel.get(it).toArray(), 0.);
+    }
+  }
+
+  /**
+   * Run t-SNE using the given parallel core.
+   *
+   * @param db Database
+   * @param rel Input relation
+   * @param core Parallel core
+   * @return Embedding
+   */
+  private static Relation<DoubleVector> runTSNE(Database db, Relation<NumberVector> rel, ParallelCore core) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(TSNE.Parameterizer.ITER_ID, 100);
+    params.addParameter(TSNE.Parameterizer.RANDOM_ID, 0);
+    params.addFlag(AbstractProjectionAlgorithm.KEEP_ID);
+    BarnesHutTSNE<NumberVector> tsne = ClassGenericsUtil.parameterizeOrAbort(BarnesHutTSNE.class, params);
+    testParameterizationOk(params);
+    ParallelCore.setCore(core);
+    try {
+      return tsne.run(db, rel);
+    }
+    finally {
+      ParallelCore.setCore(null);
+    }
+  }
+}
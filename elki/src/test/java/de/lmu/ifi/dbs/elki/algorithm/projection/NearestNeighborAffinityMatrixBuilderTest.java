@@ -0,0 +1,155 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.projection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.DoubleArray;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.IntegerArray;
+import net.jafama.FastMath;
+
+/**
+ * Test the nearest neighbor affinity matrix against a straightforward
+ * computation with one kNN query per object.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class NearestNeighborAffinityMatrixBuilderTest {
+  /**
+   * Compare the blocked, parallel computation to the reference.
+   */
+  @Test
+  public void testAffinityMatrix() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(AbstractSimpleAlgorithmTest.UNITTEST + "3clusters-and-noise-2d.csv", 330, null, null);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    NearestNeighborAffinityMatrixBuilder<NumberVector> builder = new NearestNeighborAffinityMatrixBuilder<>(SquaredEuclideanDistanceFunction.STATIC, 10., 30, 64);
+
+    AffinityMatrix mat;
+    ParallelCore.setCore(new ParallelCore(4));
+    try {
+      mat = builder.computeAffinityMatrix(rel, 1.);
+    }
+    finally {
+      ParallelCore.setCore(null);
+    }
+
+    int[][] indices = new int[rel.size()][];
+    double[][] pij = referencePij(builder, rel, indices, 1.);
+    assertEquals("Matrix size differs.", pij.length, mat.size());
+    for(int i = 0; i < pij.length; i++) {
+      int c = 0, prev = -1;
+      for(int it = mat.iter(i); mat.iterValid(i, it); it = mat.iterAdvance(i, it), c++) {
+        final int j = mat.iterDim(i, it);
+        assertTrue("Row not sorted by index.", j > prev);
+        prev = j;
+        int off = containsIndex(indices[i], j);
+        assertTrue("Unexpected neighbor.", off >= 0);
+        assertEquals("Affinity differs.", pij[i][off], mat.iterValue(i, it), 1e-15);
+        assertEquals("Lookup differs.", pij[i][off], mat.get(i, j), 1e-15);
+      }
+      assertEquals("Number of neighbors differs.", indices[i].length, c);
+    }
+  }
+
+  /**
+   * Reference implementation, with one kNN query per object and a linear
+   * search for the symmetric entries.
+   *
+   * @param builder Affinity matrix builder
+   * @param rel Data relation
+   * @param indices Output of indexes
+   * @param initialScale Initial scaling factor
+   * @return Affinities
+   */
+  private static double[][] referencePij(NearestNeighborAffinityMatrixBuilder<NumberVector> builder, Relation<NumberVector> rel, int[][] indices, double initialScale) {
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(SquaredEuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = rel.getKNNQuery(dq, builder.numberOfNeighbours + 1);
+    DBIDRange ids = (DBIDRange) rel.getDBIDs();
+    final double logPerp = FastMath.log(builder.perplexity);
+    double[][] pij = new double[ids.size()][];
+    DoubleArray dists = new DoubleArray();
+    IntegerArray inds = new IntegerArray();
+    for(DBIDArrayIter ix = ids.iter(); ix.valid(); ix.advance()) {
+      dists.clear();
+      inds.clear();
+      builder.convertNeighbors(ids, ix, false, knnq.getKNNForDBID(ix, builder.numberOfNeighbours + 1), dists, inds);
+      NearestNeighborAffinityMatrixBuilder.computeSigma(ix.getOffset(), dists, builder.perplexity, logPerp, //
+          pij[ix.getOffset()] = new double[dists.size()]);
+      indices[ix.getOffset()] = inds.toArray();
+    }
+    double sum = 0.;
+    for(int i = 0; i < pij.length; i++) {
+      for(int j = 0; j < pij[i].length; j++) {
+        sum += pij[i][j];
+      }
+    }
+    final double scale = initialScale / (2 * sum);
+    for(int i = 0; i < pij.length; i++) {
+      final double[] pij_i = pij[i];
+      for(int offi = 0; offi < pij_i.length; offi++) {
+        int j = indices[i][offi];
+        int offj = containsIndex(indices[j], i);
+        if(offj >= 0) {
+          if(i < j) {
+            final double val = pij_i[offi] + pij[j][offj];
+            pij_i[offi] = pij[j][offj] = MathUtil.max(val * scale, NearestNeighborAffinityMatrixBuilder.MIN_PIJ);
+          }
+        }
+        else {
+          pij_i[offi] = MathUtil.max(pij_i[offi] * scale, NearestNeighborAffinityMatrixBuilder.MIN_PIJ);
+        }
+      }
+    }
+    return pij;
+  }
+
+  /**
+   * Find {@code i} in an unsorted index array.
+   *
+   * @param is Index array
+   * @param i Index to search
+   * @return Position of index i, or {@code -1} if not found.
+   */
+  private static int containsIndex(int[] is, int i) {
+    for(int j = 0; j < is.length; j++) {
+      if(i == is[j]) {
+        return j;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.ids.generic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+
+/**
+ * Test the k-distance and tie handling of {@link KNNSubList}.
+ *
+ * @author Erich Schubert
+ */
+public class KNNSubListTest {
+  /**
+   * Neighbor distances, with ties at the third neighbor.
+   */
+  static final double[] DISTANCES = { 1., 2., 3., 3., 3., 4., 5. };
+
+  @Test
+  public void testSubList() {
+    KNNList inner = makeList();
+    // No tie at k=2:
+    KNNList sub = new KNNSubList(inner, 2);
+    assertEquals("Wrong k.", 2, sub.getK());
+    assertEquals("Wrong k-distance.", 2., sub.getKNNDistance(), 0.);
+    assertEquals("Wrong size.", 2, sub.size());
+    // k=3 must include the tied fourth and fifth neighbor:
+    sub = new KNNSubList(inner, 3);
+    assertEquals("Wrong k-distance.", 3., sub.getKNNDistance(), 0.);
+    assertEquals("Ties not included.", 5, sub.size());
+    int i = 0;
+    for(DoubleDBIDListIter it = sub.iter(); it.valid(); it.advance(), i++) {
+      assertEquals("Wrong distance.", DISTANCES[i], it.doubleValue(), 0.);
+      assertEquals("Wrong offset.", i, it.getOffset());
+      assertTrue("Wrong neighbor.", DBIDUtil.equal(it, inner.get(i)));
+    }
+    assertEquals("Iterator size mismatch.", sub.size(), i);
+    // k=1 is the nearest neighbor only:
+    sub = new KNNSubList(inner, 1);
+    assertEquals("Wrong k-distance.", 1., sub.getKNNDistance(), 0.);
+    assertEquals("Wrong size.", 1, sub.size());
+    // Full k keeps the entire list:
+    sub = new KNNSubList(inner, DISTANCES.length);
+    assertEquals("Wrong k-distance.", inner.getKNNDistance(), sub.getKNNDistance(), 0.);
+    assertEquals("Wrong size.", inner.size(), sub.size());
+  }
+
+  /**
+   * Build a kNN list with the distances above.
+   *
+   * @return kNN list
+   */
+  private static KNNList makeList() {
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(DISTANCES.length);
+    KNNHeap heap = DBIDUtil.newHeap(DISTANCES.length);
+    // Insert in reverse order, the heap has to sort.
+    DBIDArrayIter it = ids.iter().seek(DISTANCES.length - 1);
+    for(; it.valid(); it.retract()) {
+      heap.insert(DISTANCES[it.getOffset()], it);
+    }
+    return heap.toKNNList();
+  }
+}
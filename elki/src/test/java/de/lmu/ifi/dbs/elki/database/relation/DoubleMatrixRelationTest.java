@@ -0,0 +1,139 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansLloyd;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DoubleMatrixDistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the contiguous array storage of vector relations.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class DoubleMatrixRelationTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Data file to use.
+   */
+  private static final String FILENAME = UNITTEST + "different-densities-2d-no-noise.ascii";
+
+  /**
+   * Load the data set with dense storage.
+   *
+   * @return Database
+   */
+  private Database makeDenseDatabase() {
+    ListParameterization params = new ListParameterization();
+    params.addFlag(StaticArrayDatabase.Parameterizer.DENSE_ID);
+    return makeSimpleDatabase(FILENAME, 1000, params, null);
+  }
+
+  /**
+   * Compare the stored values to the default storage.
+   */
+  @Test
+  public void testValues() {
+    Relation<NumberVector> dense = makeDenseDatabase().getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    Relation<NumberVector> ref = makeSimpleDatabase(FILENAME, 1000).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Dense storage not used.", ((Object) dense) instanceof DoubleMatrixRelation);
+    assertEquals("Dimensionality differs.", RelationUtil.dimensionality(ref), RelationUtil.dimensionality(dense));
+    for(DBIDIter it = dense.iterDBIDs(), it2 = ref.iterDBIDs(); it.valid(); it.advance(), it2.advance()) {
+      NumberVector v = dense.get(it), v2 = ref.get(it2);
+      assertEquals("Dimensionality differs.", v2.getDimensionality(), v.getDimensionality());
+      for(int d = 0; d < v.getDimensionality(); d++) {
+        assertEquals("Value differs.", v2.doubleValue(d), v.doubleValue(d), 0.);
+      }
+    }
+  }
+
+  /**
+   * Test the offset-based distance kernels.
+   */
+  @Test
+  public void testDistances() {
+    Relation<NumberVector> dense = makeDenseDatabase().getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    testDistance(dense, SquaredEuclideanDistanceFunction.STATIC);
+    testDistance(dense, EuclideanDistanceFunction.STATIC);
+    testDistance(dense, ManhattanDistanceFunction.STATIC);
+    testDistance(dense, CosineDistanceFunction.STATIC);
+  }
+
+  /**
+   * Compare an optimized distance query to the distance function.
+   *
+   * @param rel Relation
+   * @param df Distance function
+   */
+  private void testDistance(Relation<NumberVector> rel, PrimitiveDistanceFunction<? super NumberVector> df) {
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(df);
+    assertTrue("Optimized distance query not used.", dq instanceof DoubleMatrixDistanceQuery);
+    DBIDIter it = rel.iterDBIDs(), it2 = rel.iterDBIDs();
+    final NumberVector ref = DoubleVector.copy(rel.get(it2).toArray());
+    for(it2.advance(); it2.valid(); it2.advance()) {
+      final NumberVector v1 = rel.get(it), v2 = rel.get(it2);
+      final double exp = df.distance(v1, v2);
+      assertEquals("Distance differs.", exp, dq.distance(it, it2), 1e-15);
+      assertEquals("Distance differs.", exp, dq.distance(v1, it2), 1e-15);
+      assertEquals("Distance differs.", exp, dq.distance(it, v2), 1e-15);
+      // Other vector types must still be accepted.
+      assertEquals("Distance differs.", df.distance(ref, v2), dq.distance(ref, it2), 1e-15);
+      it.advance();
+    }
+  }
+
+  /**
+   * Run k-means on the dense storage, which must give the same result.
+   */
+  @Test
+  public void testKMeans() {
+    Database db = makeDenseDatabase();
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 7);
+    KMeansLloyd<NumberVector> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansLloyd.class, params);
+    testParameterizationOk(params);
+    Clustering<?> result = kmeans.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+}
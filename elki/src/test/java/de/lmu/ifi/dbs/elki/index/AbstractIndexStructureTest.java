@@ -27,15 +27,24 @@ import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.WriteDataStoreProcessor;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedObject;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -156,6 +165,39 @@ public abstract class AbstractIndexStructureTest {
     }
   }
 
+  /**
+   * Test routine for concurrent kNN queries: the kNN of every object are
+   * computed in parallel, and compared to a linear scan.
+   *
+   * @param inputparams Parameters
+   * @param expectKNNQuery Expected kNN query class
+   */
+  protected void testParallelKNN(ListParameterization inputparams, Class<?> expectKNNQuery) {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams, null);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k);
+    assertTrue("Returned knn query is not of expected class: expected " + expectKNNQuery + " got " + knnq.getClass(), expectKNNQuery.isAssignableFrom(knnq.getClass()));
+
+    WritableDataStore<KNNList> store = DataStoreUtil.makeStorage(rep.getDBIDs(), DataStoreFactory.HINT_TEMP, KNNList.class);
+    KNNProcessor<DoubleVector> knnm = new KNNProcessor<>(k, knnq);
+    SharedObject<KNNList> knnv = new SharedObject<>();
+    knnm.connectKNNOutput(knnv);
+    WriteDataStoreProcessor<KNNList> storem = new WriteDataStoreProcessor<>(store);
+    storem.connectInput(knnv);
+    ParallelExecutor.run(rep.getDBIDs(), knnm, storem);
+
+    LinearScanDistanceKNNQuery<DoubleVector> linq = new LinearScanDistanceKNNQuery<>(dist);
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList expect = linq.getKNNForDBID(iter, k), got = store.get(iter);
+      assertEquals("Result size does not match expectation!", expect.size(), got.size());
+      DoubleDBIDListIter ei = expect.iter(), gi = got.iter();
+      for(; ei.valid(); ei.advance(), gi.advance()) {
+        assertEquals("Expected distance doesn't match.", ei.doubleValue(), gi.doubleValue(), 1e-15);
+      }
+    }
+  }
+
   /**
    * Actual test routine, for cosine distance
    *
@@ -0,0 +1,207 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.external.DiskCacheBasedDoubleDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.external.DiskCacheBasedFloatDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.persistent.OnDiskUpperTriangleMatrix;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Test the memory-mapped distance matrix on the file formats written by the
+ * cache applications.
+ *
+ * @author Erich Schubert
+ */
+public class OnDiskDistanceMatrixTest {
+  // the following values depend on the data set used!
+  static String dataset = "data/testdata/unittests/uebungsblatt-2d-mini.csv";
+
+  // size of the data set
+  int shoulds = 20;
+
+  @Test
+  public void testDoubleFile() throws IOException {
+    Relation<DoubleVector> rel = makeRelation();
+    DistanceQuery<DoubleVector> dq = EuclideanDistanceFunction.STATIC.instantiate(rel);
+    File file = writeMatrix(rel, rel.size(), false);
+    OnDiskDistanceMatrix<DoubleVector> matrix = new OnDiskDistanceMatrix<>(rel, EuclideanDistanceFunction.STATIC, file, false);
+    try {
+      matrix.initialize();
+      // Double precision files must reproduce the distances exactly.
+      DistanceQuery<DoubleVector> mdq = matrix.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+      for(DBIDIter a = rel.iterDBIDs(); a.valid(); a.advance()) {
+        for(DBIDIter b = rel.iterDBIDs(); b.valid(); b.advance()) {
+          assertEquals("Distances do not agree.", dq.distance(a, b), mdq.distance(a, b), 0.);
+        }
+      }
+      assertKNN(matrix, dq);
+    }
+    finally {
+      matrix.close();
+    }
+  }
+
+  @Test
+  public void testFloatFile() throws IOException {
+    Relation<DoubleVector> rel = makeRelation();
+    DistanceQuery<DoubleVector> dq = EuclideanDistanceFunction.STATIC.instantiate(rel);
+    File file = writeMatrix(rel, rel.size(), true);
+    OnDiskDistanceMatrix<DoubleVector> matrix = new OnDiskDistanceMatrix<>(rel, EuclideanDistanceFunction.STATIC, file, true);
+    try {
+      matrix.initialize();
+      // Float files must return exactly the stored float values.
+      DistanceQuery<DoubleVector> mdq = matrix.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+      for(DBIDIter a = rel.iterDBIDs(); a.valid(); a.advance()) {
+        for(DBIDIter b = rel.iterDBIDs(); b.valid(); b.advance()) {
+          assertEquals("Distances do not agree.", (float) dq.distance(a, b), mdq.distance(a, b), 0.);
+        }
+      }
+      assertKNN(matrix, dq);
+    }
+    finally {
+      matrix.close();
+    }
+  }
+
+  @Test
+  public void testPrecisionMismatch() throws IOException {
+    Relation<DoubleVector> rel = makeRelation();
+    File file = writeMatrix(rel, rel.size(), false);
+    OnDiskDistanceMatrix<DoubleVector> matrix = new OnDiskDistanceMatrix<>(rel, EuclideanDistanceFunction.STATIC, file, true);
+    try {
+      matrix.initialize();
+      fail("A double matrix file was accepted as float matrix.");
+    }
+    catch(AbortException e) {
+      // Expected.
+    }
+    finally {
+      matrix.close();
+    }
+  }
+
+  @Test
+  public void testSizeMismatch() throws IOException {
+    Relation<DoubleVector> rel = makeRelation();
+    File file = writeMatrix(rel, rel.size() - 1, false);
+    OnDiskDistanceMatrix<DoubleVector> matrix = new OnDiskDistanceMatrix<>(rel, EuclideanDistanceFunction.STATIC, file, false);
+    try {
+      matrix.initialize();
+      fail("A matrix file of the wrong size was accepted.");
+    }
+    catch(AbortException e) {
+      assertTrue("Unexpected message: " + e.getMessage(), e.getMessage().contains("size " + (rel.size() - 1)));
+    }
+  }
+
+  /**
+   * Verify the kNN query against the stored distances.
+   *
+   * @param matrix Matrix index
+   * @param dq Distance query
+   */
+  private void assertKNN(OnDiskDistanceMatrix<DoubleVector> matrix, DistanceQuery<DoubleVector> dq) {
+    DistanceQuery<DoubleVector> mdq = matrix.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = matrix.getKNNQuery(dq);
+    for(DBIDIter a = dq.getRelation().iterDBIDs(); a.valid(); a.advance()) {
+      KNNList knn = knnq.getKNNForDBID(a, 3);
+      assertTrue("kNN too small.", knn.size() >= 3);
+      double prev = 0.;
+      for(DoubleDBIDListIter it = knn.iter(); it.valid(); it.advance()) {
+        assertEquals("kNN distance does not match the matrix.", mdq.distance(a, it), it.doubleValue(), 0.);
+        assertTrue("kNN not sorted.", prev <= it.doubleValue());
+        prev = it.doubleValue();
+      }
+      for(DBIDIter b = dq.getRelation().iterDBIDs(); b.valid(); b.advance()) {
+        assertTrue("Missed a nearer neighbor.", mdq.distance(a, b) >= knn.getKNNDistance() || knn.contains(b));
+      }
+    }
+  }
+
+  /**
+   * Load the test data set.
+   *
+   * @return Relation
+   */
+  private Relation<DoubleVector> makeRelation() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, null, null);
+    return db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+  }
+
+  /**
+   * Write a matrix file, as done by the cache applications.
+   *
+   * @param rel Relation
+   * @param size Matrix size to write (may be smaller than the relation)
+   * @param useFloat Use float precision
+   * @return Temporary file
+   * @throws IOException on errors
+   */
+  private File writeMatrix(Relation<DoubleVector> rel, int size, boolean useFloat) throws IOException {
+    DistanceQuery<DoubleVector> dq = EuclideanDistanceFunction.STATIC.instantiate(rel);
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.deleteOnExit();
+    file.delete();
+    DBIDRange ids = DBIDUtil.assertRange(rel.getDBIDs());
+    try (OnDiskUpperTriangleMatrix out = useFloat ? //
+        new OnDiskUpperTriangleMatrix(file, DiskCacheBasedFloatDistanceFunction.FLOAT_CACHE_MAGIC, 0, ByteArrayUtil.SIZE_FLOAT, size) : //
+        new OnDiskUpperTriangleMatrix(file, DiskCacheBasedDoubleDistanceFunction.DOUBLE_CACHE_MAGIC, 0, ByteArrayUtil.SIZE_DOUBLE, size)) {
+      DBIDArrayIter id1 = ids.iter(), id2 = ids.iter();
+      for(int x = 0; x < size; x++) {
+        for(int y = x; y < size; y++) {
+          final double d = dq.distance(id1.seek(x), id2.seek(y));
+          if(useFloat) {
+            out.getRecordBuffer(x, y).putFloat((float) d);
+          }
+          else {
+            out.getRecordBuffer(x, y).putDouble(d);
+          }
+        }
+      }
+    }
+    return file;
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.AbstractNumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Regression test for the precomputed distance matrix.
+ *
+ * @author Erich Schubert
+ */
+public class PrecomputedDistanceMatrixTest {
+  // the following values depend on the data set used!
+  static String dataset = "data/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // size of the data set
+  int shoulds = 330;
+
+  // number of kNN to query
+  int k = 10;
+
+  @Test
+  public void testDoublePrecision() {
+    testMatrix(EuclideanDistanceFunction.STATIC, false, false, -1, 0.);
+  }
+
+  @Test
+  public void testFloatPrecision() {
+    testMatrix(EuclideanDistanceFunction.STATIC, true, false, -1, 1e-6);
+  }
+
+  @Test
+  public void testParallel() {
+    testMatrix(EuclideanDistanceFunction.STATIC, false, true, -1, 0.);
+  }
+
+  /**
+   * Use small chunks, such that the matrix spans many chunks.
+   */
+  @Test
+  public void testChunked() {
+    testMatrix(EuclideanDistanceFunction.STATIC, false, true, 10, 0.);
+    testMatrix(EuclideanDistanceFunction.STATIC, true, false, 10, 1e-6);
+  }
+
+  /**
+   * Non-symmetric distances store the full matrix.
+   */
+  @Test
+  public void testAsymmetric() {
+    testMatrix(new AsymmetricDistanceFunction(), false, false, -1, 0.);
+    testMatrix(new AsymmetricDistanceFunction(), false, true, 10, 0.);
+  }
+
+  private void testMatrix(NumberVectorDistanceFunction<? super DoubleVector> df, boolean useFloat, boolean parallel, int chunkbits, double tol) {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, null, null);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rel, df);
+    LinearScanDistanceKNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+
+    PrecomputedDistanceMatrix<DoubleVector> matrix = chunkbits > 0 ? //
+        new PrecomputedDistanceMatrix<>(rel, df, useFloat, parallel, chunkbits) : //
+        new PrecomputedDistanceMatrix.Factory<DoubleVector>(df, useFloat, parallel).instantiate(rel);
+    matrix.initialize();
+    DistanceQuery<DoubleVector> mat_dist_query = matrix.getDistanceQuery(df);
+    KNNQuery<DoubleVector> mat_knn_query = matrix.getKNNQuery(distanceQuery);
+    RangeQuery<DoubleVector> mat_range_query = matrix.getRangeQuery(distanceQuery);
+
+    for(DBIDIter a = rel.iterDBIDs(); a.valid(); a.advance()) {
+      for(DBIDIter b = rel.iterDBIDs(); b.valid(); b.advance()) {
+        assertEquals("Distances do not agree.", distanceQuery.distance(a, b), mat_dist_query.distance(a, b), tol);
+      }
+      KNNList lin_knn = lin_knn_query.getKNNForDBID(a, k);
+      KNNList mat_knn = mat_knn_query.getKNNForDBID(a, k);
+      assertEquals("kNN sizes do not agree.", lin_knn.size(), mat_knn.size());
+      for(DoubleDBIDListIter lin = lin_knn.iter(), mat = mat_knn.iter(); lin.valid(); lin.advance(), mat.advance()) {
+        assertEquals("kNN distances do not agree.", lin.doubleValue(), mat.doubleValue(), tol);
+      }
+      final double eps = lin_knn.getKNNDistance() * 0.999;
+      DoubleDBIDList range = mat_range_query.getRangeForDBID(a, eps);
+      for(DoubleDBIDListIter it = range.iter(); it.valid(); it.advance()) {
+        assertTrue("Range query result too far.", it.doubleValue() <= eps);
+      }
+      assertTrue("Range query result too small.", range.size() >= 1);
+    }
+  }
+
+  /**
+   * Non-symmetric test distance: Euclidean distance plus a penalty for
+   * decreasing the first coordinate.
+   *
+   * @author Erich Schubert
+   */
+  private static class AsymmetricDistanceFunction extends AbstractNumberVectorDistanceFunction {
+    @Override
+    public double distance(NumberVector o1, NumberVector o2) {
+      return EuclideanDistanceFunction.STATIC.distance(o1, o2) + Math.max(0., o1.doubleValue(0) - o2.doubleValue(0));
+    }
+
+    @Override
+    public boolean isSymmetric() {
+      return false;
+    }
+  }
+}
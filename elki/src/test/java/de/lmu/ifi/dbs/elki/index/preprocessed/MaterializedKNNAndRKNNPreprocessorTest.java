@@ -60,6 +60,7 @@ import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNAndRKNNPreprocessor;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -91,23 +92,7 @@ public class MaterializedKNNAndRKNNPreprocessorTest {
 
   @Test
   public void testPreprocessor() {
-    UpdatableDatabase db;
-    // get database
-    try (InputStream is = AbstractSimpleAlgorithmTest.open(dataset)) {
-      ListParameterization params = new ListParameterization();
-      // Setup parser and data loading
-      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
-      InputStreamDatabaseConnection dbc = new InputStreamDatabaseConnection(is, new ArrayList<>(), parser);
-
-      // We want to allow the use of indexes via "params"
-      params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, dbc);
-      db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
-      db.initialize();
-    }
-    catch(IOException e) {
-      fail("Test data " + dataset + " not found.");
-      return;
-    }
+    UpdatableDatabase db = makeDatabase();
 
     Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
     DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
@@ -162,6 +147,57 @@ public class MaterializedKNNAndRKNNPreprocessorTest {
     testRKNNQueries(rep, lin_rknn_query, preproc_rknn_query, k);
   }
 
+  /**
+   * Test the parallel materialization of the preprocessor.
+   */
+  @Test
+  public void testParallelPreprocessor() {
+    UpdatableDatabase db = makeDatabase();
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+
+    // get linear queries
+    LinearScanDistanceKNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+    LinearScanRKNNQuery<DoubleVector> lin_rknn_query = new LinearScanRKNNQuery<>(distanceQuery, lin_knn_query, k);
+
+    ParallelCore.setCore(new ParallelCore(4));
+    try {
+      MaterializeKNNAndRKNNPreprocessor<DoubleVector> preproc = new MaterializeKNNAndRKNNPreprocessor<>(rep, distanceQuery.getDistanceFunction(), k, true);
+      KNNQuery<DoubleVector> preproc_knn_query = preproc.getKNNQuery(distanceQuery, k);
+      RKNNQuery<DoubleVector> preproc_rknn_query = preproc.getRKNNQuery(distanceQuery);
+      testKNNQueries(rep, lin_knn_query, preproc_knn_query, k);
+      testRKNNQueries(rep, lin_rknn_query, preproc_rknn_query, k);
+      testKNNQueries(rep, lin_knn_query, preproc_knn_query, k / 2);
+    }
+    finally {
+      ParallelCore.setCore(null);
+    }
+  }
+
+  /**
+   * Load the test data set.
+   *
+   * @return Database
+   */
+  private UpdatableDatabase makeDatabase() {
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(dataset)) {
+      ListParameterization params = new ListParameterization();
+      // Setup parser and data loading
+      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+      InputStreamDatabaseConnection dbc = new InputStreamDatabaseConnection(is, new ArrayList<>(), parser);
+
+      // We want to allow the use of indexes via "params"
+      params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, dbc);
+      UpdatableDatabase db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+      db.initialize();
+      return db;
+    }
+    catch(IOException e) {
+      fail("Test data " + dataset + " not found.");
+      return null;
+    }
+  }
+
   private void testKNNQueries(Relation<DoubleVector> rep, KNNQuery<DoubleVector> lin_knn_query, KNNQuery<DoubleVector> preproc_knn_query, int k) {
     ArrayDBIDs sample = DBIDUtil.ensureArray(rep.getDBIDs());
     List<? extends KNNList> lin_knn_ids = lin_knn_query.getKNNForBulkDBIDs(sample, k);
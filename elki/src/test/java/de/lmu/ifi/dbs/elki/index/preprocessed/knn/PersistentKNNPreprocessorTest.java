@@ -0,0 +1,161 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Regression test for the persistent kNN preprocessor.
+ *
+ * @author Erich Schubert
+ */
+public class PersistentKNNPreprocessorTest {
+  // the following values depend on the data set used!
+  static String dataset = "data/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // size of the data set
+  int shoulds = 330;
+
+  // number of kNN to materialize
+  int k = 10;
+
+  @Test
+  public void testDoublePrecision() throws IOException {
+    testPersistent(false, 0.);
+  }
+
+  @Test
+  public void testFloatPrecision() throws IOException {
+    testPersistent(true, 1e-6);
+  }
+
+  private void testPersistent(boolean useFloat, double tol) throws IOException {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, null, null);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    LinearScanDistanceKNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.deleteOnExit();
+    file.delete();
+
+    // First run: compute and write the file.
+    PersistentKNNPreprocessor<DoubleVector> first = new PersistentKNNPreprocessor.Factory<DoubleVector>(k, EuclideanDistanceFunction.STATIC, file, useFloat).instantiate(rel);
+    first.initialize();
+    assertTrue("kNN file was not written.", file.exists());
+    compareKNN(rel, distanceQuery, lin_knn_query, first.getKNNQuery(distanceQuery, k), k, tol);
+    final long modified = file.lastModified();
+
+    // Second run: reuse the file for a smaller k.
+    final int k2 = k >> 1;
+    PersistentKNNPreprocessor<DoubleVector> second = new PersistentKNNPreprocessor.Factory<DoubleVector>(k2, EuclideanDistanceFunction.STATIC, file, useFloat).instantiate(rel);
+    second.initialize();
+    assertEquals("kNN file was rewritten.", modified, file.lastModified());
+    compareKNN(rel, distanceQuery, lin_knn_query, second.getKNNQuery(distanceQuery, k2), k2, tol);
+    compareKNN(rel, distanceQuery, lin_knn_query, second.getKNNQuery(distanceQuery, k2), k2 - 1, tol);
+  }
+
+  /**
+   * Open an existing file lazily from several threads at once.
+   */
+  @Test(timeout = 60000)
+  public void testConcurrentOpen() throws Exception {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, null, null);
+    final Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    final DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    final LinearScanDistanceKNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.deleteOnExit();
+    file.delete();
+    PersistentKNNPreprocessor.Factory<DoubleVector> factory = new PersistentKNNPreprocessor.Factory<>(k, EuclideanDistanceFunction.STATIC, file, false);
+    factory.instantiate(rel).initialize();
+
+    for(int round = 0; round < 10; round++) {
+      // The file exists, so initialize() does not map it yet.
+      PersistentKNNPreprocessor<DoubleVector> pre = factory.instantiate(rel);
+      pre.initialize();
+      final KNNQuery<DoubleVector> knn_query = pre.getKNNQuery(distanceQuery, k);
+      ExecutorService pool = Executors.newFixedThreadPool(4);
+      try {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for(int t = 0; t < 4; t++) {
+          futures.add(pool.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              start.await();
+              compareKNN(rel, distanceQuery, lin_knn_query, knn_query, k, 0.);
+              return null;
+            }
+          }));
+        }
+        start.countDown();
+        for(Future<?> f : futures) {
+          f.get();
+        }
+      }
+      finally {
+        pool.shutdown();
+      }
+    }
+  }
+
+  private void compareKNN(Relation<DoubleVector> rel, DistanceQuery<DoubleVector> distanceQuery, KNNQuery<DoubleVector> lin_knn_query, KNNQuery<DoubleVector> knn_query, int k, double tol) {
+    for(DBIDIter a = rel.iterDBIDs(); a.valid(); a.advance()) {
+      KNNList lin_knn = lin_knn_query.getKNNForDBID(a, k);
+      KNNList knn = knn_query.getKNNForDBID(a, k);
+      assertEquals("kNN distances do not agree.", lin_knn.getKNNDistance(), knn.getKNNDistance(), tol);
+      assertTrue("kNN list too small.", knn.size() >= k);
+      DoubleDBIDListIter lin = lin_knn.iter(), it = knn.iter();
+      for(int i = 0; i < k; i++, lin.advance(), it.advance()) {
+        assertEquals("kNN distances do not agree.", lin.doubleValue(), it.doubleValue(), tol);
+        assertEquals("kNN distances do not agree.", distanceQuery.distance(a, it), it.doubleValue(), tol);
+      }
+    }
+  }
+}
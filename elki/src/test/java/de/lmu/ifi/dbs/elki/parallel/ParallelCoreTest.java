@@ -0,0 +1,236 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.Algorithm;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.Logging.Level;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.workflow.AlgorithmStep;
+
+/**
+ * Test the parallel core, and binding cores to jobs.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelCoreTest {
+  /**
+   * Task returning the core visible to the worker thread.
+   */
+  private static final Callable<ParallelCore> GET_CORE = new Callable<ParallelCore>() {
+    @Override
+    public ParallelCore call() {
+      return ParallelCore.getCore();
+    }
+  };
+
+  @Test
+  public void testBindingInherited() throws InterruptedException, ExecutionException {
+    final ParallelCore def = ParallelCore.getCore();
+    final AtomicInteger created = new AtomicInteger();
+    final ThreadFactory base = Executors.defaultThreadFactory();
+    ParallelCore core = new ParallelCore(3, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        created.incrementAndGet();
+        return base.newThread(r);
+      }
+    });
+    assertEquals("Parallelism not as configured.", 3, core.getParallelism());
+    ParallelCore.setCore(core);
+    try {
+      assertSame("Core not bound.", core, ParallelCore.getCore());
+      core.connect();
+      try {
+        List<Future<ParallelCore>> futures = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+          futures.add(core.submit(GET_CORE));
+        }
+        for(Future<ParallelCore> f : futures) {
+          assertSame("Binding not inherited by worker.", core, f.get());
+        }
+      }
+      finally {
+        core.disconnect();
+      }
+      assertTrue("Thread factory not used.", created.get() > 0 && created.get() <= 3);
+    }
+    finally {
+      ParallelCore.setCore(null);
+      core.shutdown();
+    }
+    assertSame("Default core not restored.", def, ParallelCore.getCore());
+  }
+
+  @Test
+  public void testSequential() throws InterruptedException, ExecutionException {
+    final Thread caller = Thread.currentThread();
+    Future<Thread> f = ParallelCore.SEQUENTIAL.submit(new Callable<Thread>() {
+      @Override
+      public Thread call() {
+        return Thread.currentThread();
+      }
+    });
+    assertTrue("Sequential task not run immediately.", f.isDone());
+    assertSame("Sequential task not run in the calling thread.", caller, f.get());
+    assertEquals("Default parallelism not all processors.", ParallelCore.ALL_PROCESSORS, new ParallelCore(0).getParallelism());
+  }
+
+  @Test
+  public void testShutdownDeferred() throws InterruptedException, ExecutionException {
+    ParallelCore core = new ParallelCore(2);
+    core.connect();
+    try {
+      core.shutdown();
+      // Still connected, so the pool must remain usable.
+      assertSame("Task not run after deferred shutdown.", ParallelCore.getCore(), core.submit(GET_CORE).get());
+    }
+    finally {
+      core.disconnect();
+    }
+    assertNull("Pool not shut down after the last disconnect.", core.executor);
+    try {
+      core.connect();
+      fail("Connected to a core that was shut down.");
+    }
+    catch(IllegalStateException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testAlgorithmStep() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(AbstractSimpleAlgorithmTest.UNITTEST + "3clusters-and-noise-2d.csv", 330, null, null);
+    final List<ParallelCore> seen = new ArrayList<>();
+    Algorithm alg = new Algorithm() {
+      @Override
+      public Result run(Database database) {
+        ParallelCore core = ParallelCore.getCore();
+        core.connect();
+        try {
+          seen.add(core);
+          seen.add(core.submit(GET_CORE).get());
+        }
+        catch(InterruptedException | ExecutionException e) {
+          throw new RuntimeException(e);
+        }
+        finally {
+          core.disconnect();
+        }
+        return null;
+      }
+
+      @Override
+      public TypeInformation[] getInputTypeRestriction() {
+        return TypeUtil.array(TypeUtil.ANY);
+      }
+    };
+    ParallelCore outer = new ParallelCore(2);
+    ParallelCore.setCore(outer);
+    try {
+      new AlgorithmStep(Arrays.asList(alg), 2).runAlgorithms(db);
+      assertSame("Previous core not restored.", outer, ParallelCore.getCore());
+    }
+    finally {
+      ParallelCore.setCore(null);
+      outer.shutdown();
+    }
+    assertEquals(2, seen.size());
+    assertNotSame("Job did not use its own core.", outer, seen.get(0));
+    assertEquals("Job core has wrong parallelism.", 2, seen.get(0).getParallelism());
+    assertSame("Binding not inherited by worker.", seen.get(0), seen.get(1));
+  }
+
+  @Test
+  public void testStatistics() throws InterruptedException, ExecutionException {
+    final String name = ParallelCoreTest.class.getName() + ".statistics";
+    // Initialize the logging configuration first, as this resets handlers.
+    final Logging log = Logging.getLogger(name);
+    Logger jlog = Logger.getLogger(name);
+    final List<String> messages = new ArrayList<>();
+    Handler handler = new Handler() {
+      @Override
+      public void publish(LogRecord record) {
+        messages.add(record.getMessage());
+      }
+
+      @Override
+      public void flush() {
+        // Nothing to do
+      }
+
+      @Override
+      public void close() {
+        // Nothing to do
+      }
+    };
+    jlog.setUseParentHandlers(false);
+    jlog.setLevel(Level.STATISTICS);
+    jlog.addHandler(handler);
+    ParallelCore core = new ParallelCore(2);
+    core.connect();
+    try {
+      for(int i = 0; i < 5; i++) {
+        core.submit(GET_CORE).get();
+      }
+      core.logStatistics(log);
+    }
+    finally {
+      core.disconnect();
+      core.shutdown();
+      jlog.removeHandler(handler);
+    }
+    final String prefix = ParallelCore.class.getName();
+    assertTrue(messages.toString(), messages.contains(prefix + ".threads: 2"));
+    assertTrue(messages.toString(), messages.contains(prefix + ".tasks: 5"));
+    boolean peak = false;
+    for(String m : messages) {
+      peak |= m.equals(prefix + ".peak-busy-threads: 1") || m.equals(prefix + ".peak-busy-threads: 2");
+    }
+    assertTrue(messages.toString(), peak);
+  }
+}
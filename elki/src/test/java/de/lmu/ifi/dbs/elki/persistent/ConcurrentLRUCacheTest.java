@@ -0,0 +1,170 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Test the concurrent LRU cache with several threads reading, writing and
+ * evicting pages at the same time.
+ *
+ * @author Erich Schubert
+ */
+public class ConcurrentLRUCacheTest {
+  /**
+   * Page size.
+   */
+  static final int PAGESIZE = 100;
+
+  /**
+   * Number of pages.
+   */
+  static final int NUMPAGES = 200;
+
+  /**
+   * Number of threads.
+   */
+  static final int THREADS = 4;
+
+  @Test(timeout = 60000)
+  public void testConcurrentAccess() throws Exception {
+    final MemoryPageFile<TestPage> file = new MemoryPageFile<>(PAGESIZE);
+    // Much smaller than the number of pages, to force evictions.
+    final ConcurrentLRUCache<TestPage> cache = new ConcurrentLRUCache<>(16 * PAGESIZE, 4, file);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    for(int i = 0; i < NUMPAGES; i++) {
+      cache.writePage(new TestPage(i, 0));
+    }
+    // Each thread updates its own pages, but reads all pages.
+    final int[][] versions = new int[THREADS][NUMPAGES];
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for(int t = 0; t < THREADS; t++) {
+        final int thread = t;
+        futures.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            final int[] mine = versions[thread];
+            Random rnd = new Random(thread);
+            start.await();
+            for(int i = 0; i < 20000; i++) {
+              final int own = rnd.nextInt(NUMPAGES / THREADS) * THREADS + thread;
+              if(rnd.nextBoolean()) {
+                cache.writePage(new TestPage(own, ++mine[own]));
+              }
+              TestPage page = cache.readPage(own);
+              assertNotNull("Page lost.", page);
+              assertEquals("Stale page version.", mine[own], page.version);
+              final int other = rnd.nextInt(NUMPAGES);
+              page = cache.readPage(other);
+              assertNotNull("Page lost.", page);
+              assertEquals("Wrong page returned.", other, page.getPageID());
+            }
+            return null;
+          }
+        }));
+      }
+      start.countDown();
+      for(Future<?> f : futures) {
+        f.get();
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+    // All updates must be written back to the file.
+    cache.flush();
+    for(int i = 0; i < NUMPAGES; i++) {
+      TestPage page = file.readPage(i);
+      assertNotNull("Page not written back.", page);
+      assertEquals("Stale page written back.", versions[i % THREADS][i], page.version);
+    }
+  }
+
+  /**
+   * Immutable test page, with a version number.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class TestPage implements Page {
+    /**
+     * Page id.
+     */
+    private int id;
+
+    /**
+     * Page version.
+     */
+    final int version;
+
+    /**
+     * Dirty flag.
+     */
+    private volatile boolean dirty;
+
+    /**
+     * Constructor.
+     *
+     * @param id Page id
+     * @param version Page version
+     */
+    TestPage(int id, int version) {
+      this.id = id;
+      this.version = version;
+    }
+
+    @Override
+    public int getPageID() {
+      return id;
+    }
+
+    @Override
+    public void setPageID(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean isDirty() {
+      return dirty;
+    }
+
+    @Override
+    public void setDirty(boolean dirty) {
+      this.dirty = dirty;
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.junit.Test;
+
+/**
+ * Test the memory-mapped page file, in particular reopening and clearing an
+ * existing file.
+ *
+ * @author Erich Schubert
+ */
+public class MappedPageFileTest {
+  /**
+   * Page size.
+   */
+  static final int PAGESIZE = 64;
+
+  @Test
+  public void testReopenAndClear() throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.deleteOnExit();
+    file.delete();
+    MappedPageFile<TestPage> pf = new MappedPageFile<>(PAGESIZE, file.getPath(), TestPage.class);
+    pf.initialize(new DefaultPageHeader(PAGESIZE));
+    for(int i = 0; i < 10; i++) {
+      assertEquals("Page id not assigned in order.", i, pf.writePage(new TestPage("page " + i)));
+    }
+    pf.deletePage(9);
+    pf.close();
+
+    // Reopen; the deleted last page is not used anymore.
+    pf = new MappedPageFile<>(PAGESIZE, file.getPath(), TestPage.class);
+    pf.initialize(new DefaultPageHeader(PAGESIZE));
+    assertEquals("Number of pages after reopening.", 9, pf.getNextPageID());
+    for(int i = 0; i < 9; i++) {
+      TestPage page = pf.readPage(i);
+      assertNotNull("Page lost.", page);
+      assertEquals("Page contents.", "page " + i, page.first);
+      assertEquals("Page contents.", "second line", page.second);
+    }
+    assertNull("Deleted page.", pf.readPage(9));
+
+    pf.clear();
+    assertEquals("Pages after clearing.", 0, pf.getNextPageID());
+    assertNull("Page not cleared.", pf.readPage(0));
+    pf.close();
+
+    pf = new MappedPageFile<>(PAGESIZE, file.getPath(), TestPage.class);
+    pf.initialize(new DefaultPageHeader(PAGESIZE));
+    assertEquals("Pages after clearing and reopening.", 0, pf.getNextPageID());
+    pf.close();
+  }
+
+  /**
+   * Test page, storing two lines of text.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class TestPage extends AbstractExternalizablePage {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Page contents.
+     */
+    String first, second;
+
+    /**
+     * Constructor for deserialization.
+     */
+    public TestPage() {
+      super();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param first First line
+     */
+    TestPage(String first) {
+      super();
+      this.first = first;
+      this.second = "second line";
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      super.writeExternal(out);
+      out.writeBytes(first + "\r\n" + second + "\n");
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      super.readExternal(in);
+      first = in.readLine();
+      second = in.readLine();
+    }
+  }
+}